@@ -1,14 +1,18 @@
 package com.musicapp.backend.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
 public class AwsS3Config {
 
     @Value("${aws.accessKeyId}")
@@ -28,4 +32,24 @@ public class AwsS3Config {
                 .credentialsProvider(StaticCredentialsProvider.create(credentials))
                 .build();
     }
-}
\ No newline at end of file
+
+    @Bean
+    @ConditionalOnProperty(name = "media.stream.mode", havingValue = "async")
+    public S3AsyncClient s3AsyncClient() {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "media.stream.redirect.enabled", havingValue = "true")
+    public S3Presigner s3Presigner() {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
+        return S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .build();
+    }
+}
@@ -1,12 +1,10 @@
 package com.musicapp.backend.config;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,19 +12,8 @@ import java.util.List;
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
 
-    @Value("${aws.s3.bucketName}")
-    private String bucketName;
+    // /uploads/** được phục vụ bởi MediaFileController (cache metadata + cache block trên đĩa)
 
-    @Value("${aws.s3.region}")
-    private String region;
-
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        String s3Url = String.format("https://%s.s3.%s.amazonaws.com/", bucketName, region);
-        registry
-                .addResourceHandler("/uploads/**")
-                .addResourceLocations(s3Url);
-    }
     /*@Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
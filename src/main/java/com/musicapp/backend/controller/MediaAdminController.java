@@ -0,0 +1,134 @@
+package com.musicapp.backend.controller;
+
+import com.musicapp.backend.dto.BaseResponse;
+import com.musicapp.backend.service.AsyncAudioStreamer;
+import com.musicapp.backend.service.AudioIngestService;
+import com.musicapp.backend.service.AudioPrefetchService;
+import com.musicapp.backend.service.ImageDerivativeService;
+import com.musicapp.backend.service.ListenCountBuffer;
+import com.musicapp.backend.service.ListenDedupFilter;
+import com.musicapp.backend.service.ListenHistoryRetentionService;
+import com.musicapp.backend.service.ListenRollupService;
+import com.musicapp.backend.service.MediaGarbageCollector;
+import com.musicapp.backend.service.MediaBlockCache;
+import com.musicapp.backend.service.PremiumEntitlementCache;
+import com.musicapp.backend.service.PresignedUrlService;
+import com.musicapp.backend.service.StreamBufferPool;
+import com.musicapp.backend.service.UploadedMediaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/v1/admin/media")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ADMIN')")
+public class MediaAdminController {
+
+    private final MediaBlockCache mediaBlockCache;
+    private final StreamBufferPool streamBufferPool;
+    private final Optional<AsyncAudioStreamer> asyncAudioStreamer;
+    private final Optional<PresignedUrlService> presignedUrlService;
+    private final AudioPrefetchService audioPrefetchService;
+    private final PremiumEntitlementCache premiumEntitlementCache;
+    private final MediaGarbageCollector mediaGarbageCollector;
+    private final AudioIngestService audioIngestService;
+    private final ImageDerivativeService imageDerivativeService;
+    private final UploadedMediaService uploadedMediaService;
+    private final ListenCountBuffer listenCountBuffer;
+    private final ListenRollupService listenRollupService;
+    private final ListenDedupFilter listenDedupFilter;
+    private final ListenHistoryRetentionService listenHistoryRetentionService;
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getCacheStats() {
+        return ResponseEntity.ok(BaseResponse.success(mediaBlockCache.getStats()));
+    }
+
+    @GetMapping("/stream/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getStreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(streamBufferPool.getStats());
+        asyncAudioStreamer.ifPresent(streamer -> stats.putAll(streamer.getStats()));
+        presignedUrlService.ifPresent(presigner -> stats.putAll(presigner.getStats()));
+        return ResponseEntity.ok(BaseResponse.success(stats));
+    }
+
+    @GetMapping("/prefetch/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getPrefetchStats() {
+        return ResponseEntity.ok(BaseResponse.success(audioPrefetchService.getStats()));
+    }
+
+    @GetMapping("/entitlement/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getEntitlementStats() {
+        return ResponseEntity.ok(BaseResponse.success(premiumEntitlementCache.getStats()));
+    }
+
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getIngestStats() {
+        return ResponseEntity.ok(BaseResponse.success(audioIngestService.getStats()));
+    }
+
+    @GetMapping("/images/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getImageStats() {
+        return ResponseEntity.ok(BaseResponse.success(imageDerivativeService.getStats()));
+    }
+
+    @GetMapping("/uploads/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getUploadStats() {
+        return ResponseEntity.ok(BaseResponse.success(uploadedMediaService.getStats()));
+    }
+
+    @GetMapping("/listens/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getListenStats() {
+        return ResponseEntity.ok(BaseResponse.success(listenCountBuffer.getStats()));
+    }
+
+    @GetMapping("/listens/rollup/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getListenRollupStats() {
+        return ResponseEntity.ok(BaseResponse.success(listenRollupService.getStats()));
+    }
+
+    @GetMapping("/listens/dedup/stats")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getListenDedupStats() {
+        return ResponseEntity.ok(BaseResponse.success(listenDedupFilter.getStats()));
+    }
+
+    @GetMapping("/listens/partitions")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getListenHistoryPartitions() {
+        return ResponseEntity.ok(BaseResponse.success(listenHistoryRetentionService.describePartitions()));
+    }
+
+    /**
+     * Chạy retention listen_history ở nền; không truyền dryRun thì theo media.listens.retention.dry-run.
+     */
+    @PostMapping("/listens/retention/run")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> runListenRetention(@RequestParam(required = false) Boolean dryRun) {
+        if (!listenHistoryRetentionService.start(dryRun)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(BaseResponse.error("Listen history retention is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(BaseResponse.success("Listen history retention started", listenHistoryRetentionService.getLastReport()));
+    }
+
+    /**
+     * Chạy GC ở nền; xem kết quả qua GET /gc/report. Không truyền dryRun thì theo media.gc.dry-run.
+     */
+    @PostMapping("/gc/run")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> runGarbageCollector(@RequestParam(required = false) Boolean dryRun) {
+        if (!mediaGarbageCollector.start(dryRun)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(BaseResponse.error("Media GC is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(BaseResponse.success("Media GC started", mediaGarbageCollector.getLastReport()));
+    }
+
+    @GetMapping("/gc/report")
+    public ResponseEntity<BaseResponse<Map<String, Object>>> getGarbageCollectorReport() {
+        return ResponseEntity.ok(BaseResponse.success(mediaGarbageCollector.getLastReport()));
+    }
+}
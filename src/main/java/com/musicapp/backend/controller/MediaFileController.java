@@ -0,0 +1,167 @@
+package com.musicapp.backend.controller;
+
+import com.musicapp.backend.service.UploadedMediaService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * File upload công khai (ảnh bìa, avatar, bản thu nhỏ...). Thay cho resource handler trỏ thẳng tới URL S3:
+ * metadata được cache, dữ liệu đi qua cache block trên đĩa, và client nhận ETag / Last-Modified để hỏi lại bằng 304.
+ */
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class MediaFileController {
+
+    private static final String UPLOADS_PREFIX = "/uploads/";
+    // Key được sinh mới ở mỗi lần upload (theo nội dung) nên object dưới một URL không bao giờ đổi
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    // Ảnh gốc trả thay cho bản thu nhỏ chưa có: URL này có thể có bản thu nhỏ thật về sau
+    private static final String FALLBACK_CACHE_CONTROL = "public, max-age=3600";
+
+    private final UploadedMediaService uploadedMediaService;
+
+    @GetMapping("/uploads/**")
+    public ResponseEntity<StreamingResponseBody> getUpload(
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String httpRangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletRequest request) {
+
+        String key = keyOf(request);
+        if (key == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            UploadedMediaService.MediaFile file = uploadedMediaService.find(key);
+            if (file == null) {
+                return ResponseEntity.notFound().build();
+            }
+            long fileSize = file.size();
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.add(HttpHeaders.CACHE_CONTROL, file.fallback() ? FALLBACK_CACHE_CONTROL : IMMUTABLE_CACHE_CONTROL);
+            if (file.etag() != null) {
+                headers.setETag(file.etag());
+            }
+            if (file.lastModified() != null) {
+                headers.setLastModified(file.lastModified());
+            }
+
+            if (isNotModified(request, file, ifNoneMatch)) {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+            }
+
+            headers.add(HttpHeaders.CONTENT_TYPE, file.contentType());
+            long start = 0;
+            long end = fileSize - 1;
+            HttpStatus status = HttpStatus.OK;
+
+            // Chỉ hỗ trợ một range; nhiều range (hiếm với ảnh) thì gửi cả file. Audio đi qua /api/v1/stream
+            boolean honourRange = httpRangeHeader != null
+                    && (ifRange == null || (file.etag() != null && ifRange.trim().equals(file.etag())));
+            if (honourRange) {
+                HttpRange range = singleRange(httpRangeHeader);
+                if (range != null) {
+                    try {
+                        start = range.getRangeStart(fileSize);
+                        end = range.getRangeEnd(fileSize);
+                    } catch (IllegalArgumentException e) {
+                        headers.add(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                        return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                    }
+                    headers.add(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+                    status = HttpStatus.PARTIAL_CONTENT;
+                }
+            }
+            headers.setContentLength(end - start + 1);
+
+            if (HttpMethod.HEAD.matches(request.getMethod()) || fileSize == 0) {
+                return new ResponseEntity<>(headers, status);
+            }
+            long from = start;
+            long to = end;
+            StreamingResponseBody responseBody = outputStream -> uploadedMediaService.copy(file, from, to, outputStream);
+            return new ResponseEntity<>(responseBody, headers, status);
+
+        } catch (Exception e) {
+            log.error("Error serving upload {}: {}", key, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Key của object theo URL, null nếu đường dẫn không hợp lệ.
+     */
+    private static String keyOf(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(UPLOADS_PREFIX)) {
+            return null;
+        }
+        String key = UriUtils.decode(path.substring(UPLOADS_PREFIX.length()), StandardCharsets.UTF_8);
+        if (key.isBlank() || key.startsWith("/") || key.contains("..") || key.contains("\\")) {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     * If-None-Match (so sánh yếu) được ưu tiên; chỉ khi client không gửi nó mới xét If-Modified-Since.
+     */
+    private static boolean isNotModified(HttpServletRequest request, UploadedMediaService.MediaFile file, String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            if (file.etag() == null) {
+                return false;
+            }
+            if (ifNoneMatch.trim().equals("*")) {
+                return true;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(file.etag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (file.lastModified() == null) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // Header HTTP chỉ có độ chính xác tới giây
+        return ifModifiedSince >= 0 && file.lastModified().toEpochMilli() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static HttpRange singleRange(String httpRangeHeader) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(httpRangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
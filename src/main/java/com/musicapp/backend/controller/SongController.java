@@ -6,7 +6,11 @@ import com.musicapp.backend.dto.BaseResponse;
 import com.musicapp.backend.dto.PagedResponse;
 import com.musicapp.backend.dto.song.*;
 import com.musicapp.backend.entity.User;
+import com.musicapp.backend.service.AudioWaveformService;
 import com.musicapp.backend.service.SongService;
+import com.musicapp.backend.service.StreamingUploadService;
+import com.musicapp.backend.service.StreamingUploadService.FilePart;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -14,6 +18,8 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -23,13 +29,21 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/songs")
 @RequiredArgsConstructor
 public class SongController {
 
+    private static final Map<String, FilePart> STREAMED_FILE_PARTS = Map.of(
+            "audioFile", FilePart.audio("audio"),
+            "thumbnailFile", FilePart.image("images/songs", false),
+            "newSingerAvatars", FilePart.image("images/singers", true));
+
     private final SongService songService;
+    private final StreamingUploadService streamingUploadService;
+    private final AudioWaveformService audioWaveformService;
 
     @GetMapping("/all-for-playlist")
     @PreAuthorize("isAuthenticated()")
@@ -81,9 +95,35 @@ public class SongController {
         return ResponseEntity.ok(BaseResponse.success(song));
     }
 
+    /**
+     * Waveform dựng sẵn của bài hát: các cặp (min, max) 8 bit có dấu, đã chuẩn hóa theo điểm lớn nhất.
+     * 404 nếu file chưa được phân tích hoặc định dạng không hỗ trợ.
+     */
+    @GetMapping("/{id}/waveform")
+    public ResponseEntity<byte[]> getWaveform(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        AudioWaveformService.Waveform waveform = audioWaveformService.getForSong(id);
+        HttpHeaders headers = new HttpHeaders();
+        // Như endpoint stream: waveform gắn với nội dung file audio, ETag đổi khi file bị thay
+        headers.add(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        if (waveform.etag() != null) {
+            headers.add(HttpHeaders.ETAG, waveform.etag());
+            if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(waveform.etag()))) {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+            }
+        }
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return new ResponseEntity<>(waveform.peaks(), headers, HttpStatus.OK);
+    }
+
     @PostMapping("/{id}/listen")
-    public ResponseEntity<BaseResponse<Void>> incrementListenCount(@PathVariable Long id) {
-        songService.incrementListenCount(id);
+    public ResponseEntity<BaseResponse<Void>> incrementListenCount(
+            @PathVariable Long id,
+            @AuthenticationPrincipal User currentUser,
+            HttpServletRequest request) {
+        // Lượt nghe lặp bị bỏ qua nhưng vẫn trả 200 để client spam không phân biệt được
+        songService.incrementListenCount(id, currentUser, request);
         return ResponseEntity.ok(BaseResponse.success("Listen count incremented", null));
     }
 
@@ -154,6 +194,24 @@ public class SongController {
         return ResponseEntity.ok(BaseResponse.success("Song created and approved successfully", newSong));
     }
 
+    /**
+     * Cùng các part như POST /api/v1/songs/admin nhưng body được đọc dần và từng file được chuyển thẳng lên storage.
+     */
+    @PostMapping(value = "/admin/stream", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BaseResponse<SongDto>> createSongByAdminStreaming(
+            HttpServletRequest httpRequest,
+            @AuthenticationPrincipal User admin) {
+        SongDto newSong = streamingUploadService.handle(httpRequest, STREAMED_FILE_PARTS, form ->
+                songService.createSongByAdmin(
+                        form.json("songRequest", AdminCreateSongRequest.class),
+                        form.claim("audioFile"),
+                        form.claim("thumbnailFile"),
+                        form.claimByFileName("newSingerAvatars"),
+                        admin));
+        return ResponseEntity.ok(BaseResponse.success("Song created and approved successfully", newSong));
+    }
+
     @PutMapping(value = "/admin/{id}", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<BaseResponse<SongDto>> updateSongByAdmin(
@@ -2,18 +2,37 @@
 
 package com.musicapp.backend.controller;
 
-import com.musicapp.backend.entity.Song;
-import com.musicapp.backend.exception.ResourceNotFoundException;
-import com.musicapp.backend.repository.SongRepository;
+import com.musicapp.backend.entity.User;
+import com.musicapp.backend.service.AsyncAudioStreamer;
+import com.musicapp.backend.service.AudioMetadataService;
+import com.musicapp.backend.service.AudioPrefetchService;
+import com.musicapp.backend.service.AudioObjectMetadata;
+import com.musicapp.backend.service.AudioSeekIndexService;
 import com.musicapp.backend.service.FileStorageService;
+import com.musicapp.backend.service.PresignedUrlService;
+import com.musicapp.backend.service.SeekTable;
+import com.musicapp.backend.service.StreamTokenService;
+import com.musicapp.backend.service.SubscriptionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
-import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/stream")
@@ -21,59 +40,295 @@ import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 @Slf4j
 public class StreamingController {
 
+    // Object audio không bao giờ bị ghi đè (mỗi lần upload sinh key mới) nên có thể cache vĩnh viễn
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
     private final FileStorageService fileStorageService;
-    private final SongRepository songRepository;
+    private final AudioMetadataService audioMetadataService;
+    private final AudioSeekIndexService audioSeekIndexService;
+    private final AudioPrefetchService audioPrefetchService;
+    private final StreamTokenService streamTokenService;
+    private final SubscriptionService subscriptionService;
+    // Chỉ có khi media.stream.mode=async
+    private final Optional<AsyncAudioStreamer> asyncAudioStreamer;
+    // Chỉ có khi media.stream.redirect.enabled=true
+    private final Optional<PresignedUrlService> presignedUrlService;
 
     @GetMapping("/songs/{id}")
     public ResponseEntity<StreamingResponseBody> streamSong(
             @PathVariable Long id,
-            @RequestHeader(value = "Range", required = false) String httpRangeHeader) {
-
-        Song song = songRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Song not found with id: " + id));
+            @RequestParam(value = "token", required = false) String streamToken,
+            @RequestParam(value = "t", required = false) Double seekSeconds,
+            @RequestParam(value = "ctx", required = false) String playContext,
+            @RequestParam(value = "next", required = false) List<Long> nextSongIds,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String httpRangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @AuthenticationPrincipal User currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response) {
 
-        String key = song.getFilePath().substring("/uploads/".length());
+        AudioObjectMetadata metadata;
+        if (streamToken != null) {
+            StreamTokenService.StreamToken token = streamTokenService.verify(streamToken);
+            if (token == null || !token.metadata().getSongId().equals(id)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            // Token chỉ dùng được bởi người được cấp (request không kèm JWT, vd. thẻ <audio>, thì không so được)
+            if (token.userId() != null && currentUser != null && !token.userId().equals(currentUser.getId())) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            // Chỉ đọc cache, không truy vấn DB: token đã ký đủ key, kích thước, ETag và cờ premium. Khi metadata của bài
+            // đã nằm trong cache thì đối chiếu lại, nên file bị thay hay bài chuyển sang premium có hiệu lực ngay;
+            // cache chưa có thì dùng metadata đã ký (cache được nạp nền cho các request sau).
+            // Quyền premium hiện tại của người được cấp cũng đọc từ cache trong bộ nhớ: gói bị hủy có hiệu lực ngay
+            AudioObjectMetadata cached = audioMetadataService.getCachedForSong(id);
+            if (cached != null && !streamTokenService.matches(token, cached)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            metadata = cached != null ? cached : token.metadata();
+            if (metadata.isPremium() && (token.tier() != StreamTokenService.Tier.PREMIUM || token.userId() == null
+                    || !subscriptionService.hasActivePremiumSubscription(token.userId()))) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+        } else {
+            metadata = audioMetadataService.getForSong(id);
+            // Cả hai lần tra đều nằm trong bộ nhớ (metadata cache + PremiumEntitlementCache)
+            if (metadata.isPremium() && (currentUser == null || !subscriptionService.hasActivePremiumSubscription(currentUser.getId()))) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+        }
+        if (metadata.getFileSize() == null) {
+            // Bản ghi cũ: metadata đang được backfill nền, client thử lại sau vài giây
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        String key = metadata.getKey();
 
         try {
-            GetObjectResponse s3ObjectAttributes = fileStorageService.getS3ObjectAttributes(key);
-            long fileSize = s3ObjectAttributes.contentLength();
-            String contentType = s3ObjectAttributes.contentType();
+            long fileSize = metadata.getFileSize();
+            String contentType = metadata.getContentType() != null ? metadata.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            String etag = etagFor(metadata);
 
             HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Type", contentType);
-            headers.add("Accept-Ranges", "bytes");
+            headers.add(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.add(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+            if (etag != null) {
+                headers.add(HttpHeaders.ETAG, etag);
+            }
 
-            if (httpRangeHeader == null) {
-                // Gửi toàn bộ file nếu không có Range header
-                headers.add("Content-Length", String.valueOf(fileSize));
-                StreamingResponseBody responseBody = outputStream -> {
-                    fileStorageService.getS3ObjectRange(key, "bytes=0-" + (fileSize - 1), outputStream);
-                };
-                return new ResponseEntity<>(responseBody, headers, HttpStatus.OK);
+            // Client đã có đúng bản này -> không gửi lại byte nào
+            if (etag != null && ifNoneMatch != null && matchesAny(ifNoneMatch, etag)) {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
             }
 
-            // Xử lý Range header
-            String[] ranges = httpRangeHeader.substring("bytes=".length()).split("-");
-            long rangeStart = Long.parseLong(ranges[0]);
-            long rangeEnd = ranges.length > 1 ? Long.parseLong(ranges[1]) : fileSize - 1;
+            // Chế độ redirect: ở đây chỉ xét quyền, client tải thẳng từ S3 (trình duyệt gửi lại Range tới URL mới).
+            // Seek theo ?t= phải cắt đúng đầu frame nên vẫn đi qua proxy bên dưới
+            boolean timeSeek = httpRangeHeader == null && seekSeconds != null && seekSeconds > 0;
+            if (presignedUrlService.isPresent() && !timeSeek) {
+                String location = presignedUrlService.get().urlFor(key, metadata.getContentType());
+                if (location != null) {
+                    HttpHeaders redirect = new HttpHeaders();
+                    redirect.setLocation(URI.create(location));
+                    // Mỗi lượt nghe phải qua bước xét quyền nên bản thân redirect không được cache
+                    redirect.add(HttpHeaders.CACHE_CONTROL, "no-store");
+                    return new ResponseEntity<>(redirect, HttpStatus.FOUND);
+                }
+            }
+
+            // If-Range không khớp (hoặc là một ngày, vì object không có Last-Modified) -> bỏ qua Range, gửi cả file
+            boolean honourRange = httpRangeHeader != null
+                    && (ifRange == null || (etag != null && isStrong(ifRange) && ifRange.trim().equals(etag)));
+
+            List<ByteRange> ranges = null;
+            if (honourRange) {
+                ranges = parseRanges(httpRangeHeader, fileSize);
+                if (ranges != null && ranges.isEmpty()) {
+                    headers.add(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+                    return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                }
+            }
 
-            if (rangeStart > fileSize || rangeEnd >= fileSize) {
-                rangeEnd = fileSize - 1;
+            // ?t=giây chỉ áp dụng khi client không gửi Range: bắt đầu từ đúng đầu frame gần nhất trước thời điểm đó
+            if (ranges == null && httpRangeHeader == null && seekSeconds != null && seekSeconds > 0) {
+                SeekTable seekTable = audioSeekIndexService.getTable(key);
+                int index = seekTable.indexFor((long) (seekSeconds * 1000));
+                if (index >= 0) {
+                    headers.add("X-Seek-Time-Ms", String.valueOf(seekTable.timeAt(index)));
+                    ranges = List.of(new ByteRange(seekTable.offsetAt(index), fileSize - 1));
+                }
             }
 
-            long contentLength = (rangeEnd - rangeStart) + 1;
-            headers.add("Content-Length", String.valueOf(contentLength));
-            headers.add("Content-Range", "bytes " + rangeStart + "-" + rangeEnd + "/" + fileSize);
+            // Bài vừa bắt đầu phát (không phải seek/tua giữa chừng) -> nạp trước đoạn đầu của các bài kế tiếp
+            if (seekSeconds == null && (ranges == null || ranges.get(0).start() == 0)
+                    && (playContext != null || nextSongIds != null)) {
+                audioPrefetchService.onStreamStart(id, playContext, nextSongIds);
+            }
+
+            if (ranges == null) {
+                // Gửi toàn bộ file nếu không có Range header hợp lệ
+                headers.add(HttpHeaders.CONTENT_TYPE, contentType);
+                headers.setContentLength(fileSize);
+                return single(request, response, headers, HttpStatus.OK, key, fileSize, new ByteRange(0, fileSize - 1));
+            }
 
-            StreamingResponseBody responseBody = outputStream -> {
-                fileStorageService.getS3ObjectRange(key, httpRangeHeader, outputStream);
-            };
+            if (ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                headers.add(HttpHeaders.CONTENT_TYPE, contentType);
+                headers.setContentLength(range.length());
+                headers.add(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + fileSize);
+                return single(request, response, headers, HttpStatus.PARTIAL_CONTENT, key, fileSize, range);
+            }
 
-            return new ResponseEntity<>(responseBody, headers, HttpStatus.PARTIAL_CONTENT);
+            return multipart(headers, key, fileSize, contentType, ranges);
 
         } catch (Exception e) {
             log.error("Error streaming song with id {}: {}", id, e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
\ No newline at end of file
+
+    private ResponseEntity<StreamingResponseBody> single(HttpServletRequest request, HttpServletResponse response, HttpHeaders headers,
+                                                         HttpStatus status, String key, long fileSize, ByteRange range) throws Exception {
+        if (asyncAudioStreamer.isPresent()) {
+            return streamAsync(request, response, headers, status, key, fileSize, range.start(), range.end());
+        }
+        StreamingResponseBody responseBody = outputStream -> {
+            fileStorageService.streamRange(key, fileSize, range.start(), range.end(), outputStream);
+        };
+        return new ResponseEntity<>(responseBody, headers, status);
+    }
+
+    /**
+     * Nhiều range -> multipart/byteranges. Content-Length được tính trước từ các header của từng part.
+     */
+    private ResponseEntity<StreamingResponseBody> multipart(HttpHeaders headers, String key, long fileSize,
+                                                            String contentType, List<ByteRange> ranges) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range.start() + "-" + range.end() + "/" + fileSize + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        headers.add(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        headers.setContentLength(contentLength);
+
+        StreamingResponseBody responseBody = outputStream -> {
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                outputStream.write(partHeaders.get(i));
+                fileStorageService.streamRange(key, fileSize, range.start(), range.end(), outputStream);
+            }
+            outputStream.write(closing);
+        };
+        return new ResponseEntity<>(responseBody, headers, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * Phân tích Range header theo RFC 9110.
+     * Trả về null nếu header sai cú pháp (bị bỏ qua, gửi cả file), danh sách rỗng nếu không range nào thỏa mãn được (416).
+     * Các range chồng lấn hoặc liền kề được gộp lại để client không nhận trùng byte.
+     */
+    private List<ByteRange> parseRanges(String httpRangeHeader, long fileSize) {
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(httpRangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (httpRanges.isEmpty()) {
+            return null;
+        }
+
+        List<ByteRange> satisfiable = new ArrayList<>();
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(fileSize);
+                long end = httpRange.getRangeEnd(fileSize);
+                if (start <= end && start < fileSize) {
+                    satisfiable.add(new ByteRange(start, end));
+                }
+            } catch (IllegalArgumentException e) {
+                // Range nằm ngoài file (vd. bytes=500- với file 100 byte hoặc bytes=-0) -> bỏ qua range này
+            }
+        }
+        if (satisfiable.size() <= 1) {
+            return satisfiable;
+        }
+
+        satisfiable.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = satisfiable.get(0);
+        for (int i = 1; i < satisfiable.size(); i++) {
+            ByteRange next = satisfiable.get(i);
+            if (next.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * ETag mạnh của object: ưu tiên checksum SHA-256 của nội dung, nếu chưa có thì dùng ETag của S3.
+     */
+    private static String etagFor(AudioObjectMetadata metadata) {
+        String value = metadata.getChecksum() != null ? metadata.getChecksum() : metadata.getEtag();
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return "\"" + value.replace("\"", "") + "\"";
+    }
+
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match dùng so sánh yếu: bỏ tiền tố W/
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStrong(String ifRange) {
+        String value = ifRange.trim();
+        return value.startsWith("\"") && value.endsWith("\"");
+    }
+
+    /**
+     * Ghi status/header trực tiếp lên response rồi giao phần thân cho AsyncAudioStreamer.
+     * Trả về null để Spring MVC coi request đã được xử lý.
+     */
+    private ResponseEntity<StreamingResponseBody> streamAsync(HttpServletRequest request, HttpServletResponse response, HttpHeaders headers,
+                                                              HttpStatus status, String key, long fileSize, long start, long end) throws Exception {
+        response.setStatus(status.value());
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        asyncAudioStreamer.get().stream(request, response, key, fileSize, start, end);
+        return null;
+    }
+}
@@ -6,7 +6,10 @@ import com.musicapp.backend.dto.submission.CreateSubmissionRequest;
 import com.musicapp.backend.dto.submission.ReviewSubmissionRequest;
 import com.musicapp.backend.dto.submission.SubmissionDto;
 import com.musicapp.backend.entity.SongSubmission.SubmissionStatus;
+import com.musicapp.backend.service.StreamingUploadService;
+import com.musicapp.backend.service.StreamingUploadService.FilePart;
 import com.musicapp.backend.service.SubmissionService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
@@ -19,19 +22,28 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/submissions")
 public class SubmissionController {
 
+    private static final Map<String, FilePart> STREAMED_FILE_PARTS = Map.of(
+            "audioFile", FilePart.audio("audio"),
+            "thumbnailFile", FilePart.image("images/songs", false),
+            "newSingerAvatars", FilePart.image("images/singers", true));
+
     @Autowired
     private SubmissionService submissionService;
 
+    @Autowired
+    private StreamingUploadService streamingUploadService;
+
     @PostMapping(consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
     @PreAuthorize("hasRole('CREATOR')")
     public ResponseEntity<BaseResponse<SubmissionDto>> createSubmission(
             @RequestPart("submissionRequest") @Valid CreateSubmissionRequest request,
-            @RequestPart("audioFile") MultipartFile audioFile,
+            @RequestPart(value = "audioFile", required = false) MultipartFile audioFile,
             @RequestPart(value = "thumbnailFile", required = false) MultipartFile thumbnailFile,
             @RequestPart(value = "newSingerAvatars", required = false) List<MultipartFile> newSingerAvatars,
             Authentication authentication) {
@@ -41,6 +53,26 @@ public class SubmissionController {
         return ResponseEntity.ok(BaseResponse.success("Submission created successfully", submission));
     }
 
+    /**
+     * Cùng các part như POST /api/v1/submissions nhưng body được đọc dần và từng file được chuyển thẳng lên storage.
+     */
+    @PostMapping(value = "/stream", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE })
+    @PreAuthorize("hasRole('CREATOR')")
+    public ResponseEntity<BaseResponse<SubmissionDto>> createSubmissionStreaming(
+            HttpServletRequest httpRequest,
+            Authentication authentication) {
+
+        String username = authentication.getName();
+        SubmissionDto submission = streamingUploadService.handle(httpRequest, STREAMED_FILE_PARTS, form ->
+                submissionService.createSubmission(
+                        form.json("submissionRequest", CreateSubmissionRequest.class),
+                        form.claim("audioFile"),
+                        form.claim("thumbnailFile"),
+                        form.claimByFileName("newSingerAvatars"),
+                        username));
+        return ResponseEntity.ok(BaseResponse.success("Submission created successfully", submission));
+    }
+
     @GetMapping("/my")
     @PreAuthorize("hasRole('CREATOR') or hasRole('ADMIN')")
     public ResponseEntity<PagedResponse<SubmissionDto>> getMySubmissions(
@@ -0,0 +1,77 @@
+package com.musicapp.backend.controller;
+
+import com.musicapp.backend.dto.BaseResponse;
+import com.musicapp.backend.dto.upload.CreateUploadRequest;
+import com.musicapp.backend.dto.upload.UploadSessionDto;
+import com.musicapp.backend.entity.User;
+import com.musicapp.backend.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Upload file audio theo từng chunk, tiếp tục được sau khi mất kết nối. Sau khi hoàn tất,
+ * uploadId được gửi trong {@code CreateSubmissionRequest.audioUploadId} thay cho phần audioFile.
+ */
+@RestController
+@RequestMapping("/api/v1/uploads")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('CREATOR')")
+public class UploadController {
+
+    public static final String CHUNK_CHECKSUM_HEADER = "X-Chunk-Checksum";
+
+    private final UploadSessionService uploadSessionService;
+
+    @PostMapping
+    public ResponseEntity<BaseResponse<UploadSessionDto>> createUpload(
+            @Valid @RequestBody CreateUploadRequest request,
+            @AuthenticationPrincipal User currentUser) {
+        UploadSessionDto upload = uploadSessionService.create(request, currentUser);
+        return ResponseEntity.ok(BaseResponse.success("Upload session created", upload));
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<BaseResponse<UploadSessionDto>> getUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal User currentUser) {
+        return ResponseEntity.ok(BaseResponse.success(uploadSessionService.getStatus(uploadId, currentUser)));
+    }
+
+    /**
+     * Thân request là nội dung thô của chunk; header X-Chunk-Checksum chứa SHA-256 (hex) của nó.
+     */
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ResponseEntity<BaseResponse<UploadSessionDto>> putChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader(value = CHUNK_CHECKSUM_HEADER, required = false) String checksum,
+            @AuthenticationPrincipal User currentUser,
+            HttpServletRequest request) throws IOException {
+        UploadSessionDto upload = uploadSessionService.putChunk(uploadId, index, request.getInputStream(),
+                request.getContentLengthLong(), checksum, currentUser);
+        return ResponseEntity.ok(BaseResponse.success(upload));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<BaseResponse<UploadSessionDto>> completeUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal User currentUser) {
+        UploadSessionDto upload = uploadSessionService.complete(uploadId, currentUser);
+        return ResponseEntity.ok(BaseResponse.success("Upload completed", upload));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<BaseResponse<Void>> abortUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal User currentUser) {
+        uploadSessionService.abort(uploadId, currentUser);
+        return ResponseEntity.ok(BaseResponse.success("Upload aborted", null));
+    }
+}
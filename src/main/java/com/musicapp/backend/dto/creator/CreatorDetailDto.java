@@ -6,6 +6,7 @@ import lombok.Data;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class CreatorDetailDto {
@@ -14,6 +15,7 @@ public class CreatorDetailDto {
     private String email;
     private String phoneNumber;
     private String avatarPath;
+    private Map<Integer, String> avatarVariants;
     private LocalDate dateOfBirth;
     private String gender;
     private LocalDateTime createdAt;
@@ -6,6 +6,7 @@ import lombok.Data;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -13,6 +14,7 @@ public class PlaylistDetailDto {
     private Long id;
     private String name;
     private String thumbnailPath;
+    private Map<Integer, String> thumbnailVariants;
     private String visibility;
     private LocalDateTime createdAt;
     private Long creatorId;
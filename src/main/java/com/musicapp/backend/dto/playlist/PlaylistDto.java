@@ -9,6 +9,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -18,6 +19,7 @@ public class PlaylistDto {
     private Long id;
     private String name;
     private String thumbnailPath;
+    private Map<Integer, String> thumbnailVariants;
     private String visibility;
     private LocalDateTime createdAt;
     private Long creatorId;
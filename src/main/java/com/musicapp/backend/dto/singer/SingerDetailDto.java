@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -16,6 +17,7 @@ public class SingerDetailDto {
     private Long id;
     private String name;
     private String avatarPath;
+    private Map<Integer, String> avatarVariants;
     private Long songCount;
     private List<SongDto> songs;
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,6 +17,7 @@ public class SingerDto {
     private String name;
     private String email;
     private String avatarPath;
+    private Map<Integer, String> avatarVariants;
     private Long songCount;
     private Long creatorId;
     private String creatorName;
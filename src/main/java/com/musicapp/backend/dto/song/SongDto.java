@@ -9,6 +9,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -21,14 +22,24 @@ public class SongDto {
     private String lyrics;
     private String filePath;
     private String thumbnailPath;
+    // Bản thu nhỏ JPEG theo kích thước cạnh lớn nhất (px) -> URL
+    private Map<Integer, String> thumbnailVariants;
     private Long listenCount;
     private String status;
     private LocalDateTime createdAt;
     private String color;
 
+    // Thông số audio (null nếu file chưa được phân tích)
+    private Long durationMs;
+    private Integer bitrate; // kbps
+    private Integer sampleRate;
+    private Integer channels;
+    private Double loudnessLufs;
+
     // Premium features
     private Boolean isPremium;
     private Boolean canAccess; // Can current user access this song
+    private String streamToken; // Token ký sẵn cho /api/v1/stream/songs/{id}?token=..., chỉ có khi canAccess
 
     // Creator info
     private Long creatorId;
@@ -26,6 +26,9 @@ public class CreateSubmissionRequest {
     @Builder.Default
     private Boolean isPremium = false;
 
+    // Id của upload session đã hoàn tất (/api/v1/uploads), dùng thay cho phần audioFile
+    private String audioUploadId;
+
     private List<Long> tagIds;
     private List<Long> existingSingerIds;
 
@@ -0,0 +1,33 @@
+package com.musicapp.backend.dto.upload;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateUploadRequest {
+
+    @NotBlank(message = "File name is required")
+    private String fileName;
+
+    private String contentType;
+
+    @NotNull(message = "Total size is required")
+    @Positive(message = "Total size must be positive")
+    private Long totalSize;
+
+    // Không bắt buộc: server chọn kích thước mặc định và giới hạn trong khoảng cho phép
+    private Integer chunkSize;
+
+    // SHA-256 (hex) của cả file, không bắt buộc
+    @Pattern(regexp = "^[0-9a-fA-F]{64}$", message = "Checksum must be a hex SHA-256 digest")
+    private String checksum;
+}
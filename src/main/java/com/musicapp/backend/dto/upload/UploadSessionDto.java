@@ -0,0 +1,28 @@
+package com.musicapp.backend.dto.upload;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionDto {
+    private String uploadId;
+    private String fileName;
+    private Long totalSize;
+    private Integer chunkSize;
+    private Integer chunkCount;
+    private List<Integer> receivedChunks;
+    private long receivedBytes;
+    // Số byte liên tục từ đầu file đã nhận: client tiếp tục gửi từ đây
+    private long resumeOffset;
+    private String status;
+    private String checksum;
+    private LocalDateTime expiresAt;
+}
@@ -9,6 +9,7 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -21,6 +22,7 @@ public class UserProfileDto {
     private String email;
     private String phoneNumber;
     private String avatarPath;
+    private Map<Integer, String> avatarVariants;
     private LocalDate dateOfBirth;
     private String gender;
     private String provider;
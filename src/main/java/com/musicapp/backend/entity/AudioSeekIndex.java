@@ -0,0 +1,49 @@
+package com.musicapp.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bảng seek (thời gian -> offset frame) của một file audio, gắn với key của object trong storage
+ * nên yêu cầu upload và bài hát được duyệt từ nó dùng chung một bản.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "audio_seek_index")
+public class AudioSeekIndex {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_key", nullable = false, unique = true, length = 512)
+    private String fileKey;
+
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "entry_count", nullable = false)
+    private Integer entryCount;
+
+    @Column(name = "resolution_ms", nullable = false)
+    private Integer resolutionMs;
+
+    // Rỗng nếu file không quét được (vd. AAC trong container MP4)
+    @Lob
+    @Column(name = "seek_table", columnDefinition = "MEDIUMBLOB")
+    private byte[] seekTable;
+
+    @Column(name = "created_at")
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,42 @@
+package com.musicapp.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Waveform dựng sẵn của một file audio (các cặp min/max 8 bit), gắn với key của object trong storage
+ * như {@link AudioSeekIndex}.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "audio_waveforms")
+public class AudioWaveform {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_key", nullable = false, unique = true, length = 512)
+    private String fileKey;
+
+    @Column(name = "peak_count", nullable = false)
+    private Integer peakCount;
+
+    @Lob
+    @Column(name = "peaks", nullable = false, columnDefinition = "BLOB")
+    private byte[] peaks;
+
+    @Column(name = "created_at")
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,59 @@
+package com.musicapp.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một object trong storage được định danh theo SHA-256 của nội dung. refCount đếm số lần file được
+ * upload (bài hát, yêu cầu upload, ảnh...) trỏ tới object này; object chỉ bị xóa khi không còn tham chiếu.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "media_objects")
+public class MediaObject {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String sha256;
+
+    @Column(name = "file_key", nullable = false, unique = true, length = 512)
+    private String fileKey;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(length = 100)
+    private String etag;
+
+    // Màu chủ đạo (#rrggbb) của ảnh, tính lúc tạo bản thu nhỏ; null với audio
+    @Column(name = "dominant_color", length = 7)
+    private String dominantColor;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at")
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Lần cuối object được upload (hoặc upload trùng nội dung); GC không đụng tới object vừa được tham chiếu
+    @Column(name = "last_referenced_at")
+    @Builder.Default
+    private LocalDateTime lastReferencedAt = LocalDateTime.now();
+}
@@ -39,6 +39,37 @@ public class SongSubmission {
     @Column(name = "file_path", nullable = false)
     private String filePath;
 
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "etag", length = 100)
+    private String etag;
+
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
+    // Thông số audio đọc ở bước ingest (AudioIngestService); null cho tới khi phân tích xong
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "bitrate")
+    private Integer bitrate;
+
+    @Column(name = "sample_rate")
+    private Integer sampleRate;
+
+    @Column(name = "channels")
+    private Integer channels;
+
+    @Column(name = "loudness_lufs")
+    private Double loudnessLufs;
+
+    @Column(name = "audio_analyzed_at")
+    private LocalDateTime audioAnalyzedAt;
+
     @Column(name = "thumbnail_path")
     private String thumbnailPath;
 
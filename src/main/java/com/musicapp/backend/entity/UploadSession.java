@@ -0,0 +1,79 @@
+package com.musicapp.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Phiên upload nhiều phần (resumable). Các chunk đã nhận nằm trong thư mục staging trên đĩa,
+ * bảng này chỉ giữ thông tin phiên và kết quả sau khi ghép file.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id", nullable = false)
+    private User owner;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "chunk_count", nullable = false)
+    private Integer chunkCount;
+
+    // SHA-256 (hex) của cả file do client khai báo, được kiểm tra khi hoàn tất
+    @Column(name = "expected_checksum", length = 64)
+    private String expectedChecksum;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private UploadStatus status = UploadStatus.UPLOADING;
+
+    // Các cột dưới đây chỉ có sau khi hoàn tất
+    @Column(name = "file_path", length = 512)
+    private String filePath;
+
+    @Column(length = 100)
+    private String etag;
+
+    @Column(length = 64)
+    private String checksum;
+
+    @Column(name = "created_at")
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public enum UploadStatus {
+        UPLOADING,
+        COMPLETED,
+        CONSUMED
+    }
+}
@@ -6,6 +6,7 @@ import com.musicapp.backend.entity.Like;
 import com.musicapp.backend.entity.Playlist;
 import com.musicapp.backend.entity.User;
 import com.musicapp.backend.repository.LikeRepository;
+import com.musicapp.backend.service.ImageDerivativeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import java.util.stream.Collectors;
@@ -16,6 +17,7 @@ public class PlaylistMapper {
 
     private final SongMapper songMapper;
     private final LikeRepository likeRepository;
+    private final ImageDerivativeService imageDerivativeService;
 
     public PlaylistDto toDto(Playlist playlist, User currentUser) {
         if (playlist == null) {
@@ -26,6 +28,7 @@ public class PlaylistMapper {
                 .id(playlist.getId())
                 .name(playlist.getName())
                 .thumbnailPath(playlist.getThumbnailPath())
+                .thumbnailVariants(imageDerivativeService.variantsOf(playlist.getThumbnailPath()))
                 .visibility(playlist.getVisibility().name())
                 .createdAt(playlist.getCreatedAt())
                 .listenCount(playlist.getListenCount())
@@ -47,6 +50,7 @@ public class PlaylistMapper {
                 .id(playlist.getId())
                 .name(playlist.getName())
                 .thumbnailPath(playlist.getThumbnailPath())
+                .thumbnailVariants(imageDerivativeService.variantsOf(playlist.getThumbnailPath()))
                 .visibility(playlist.getVisibility().name())
                 .createdAt(playlist.getCreatedAt())
                 .listenCount(playlist.getListenCount())
@@ -5,6 +5,7 @@ import com.musicapp.backend.dto.singer.SingerDto;
 import com.musicapp.backend.dto.song.SongDto;
 import com.musicapp.backend.entity.Singer;
 import com.musicapp.backend.repository.SingerRepository;
+import com.musicapp.backend.service.ImageDerivativeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
@@ -15,6 +16,7 @@ import java.util.List;
 public class SingerMapper {
 
     private final SingerRepository singerRepository;
+    private final ImageDerivativeService imageDerivativeService;
 
     public SingerDto toDto(Singer singer) {
         if (singer == null) return null;
@@ -24,6 +26,7 @@ public class SingerMapper {
                 .name(singer.getName())
                 .email(singer.getEmail())
                 .avatarPath(singer.getAvatarPath())
+                .avatarVariants(imageDerivativeService.variantsOf(singer.getAvatarPath()))
                 .creatorId(singer.getCreator() != null ? singer.getCreator().getId() : null)
                 .creatorName(singer.getCreator() != null ? singer.getCreator().getDisplayName() : null)
                 .songCount(singerRepository.countSongsBySingerId(singer.getId()))
@@ -39,6 +42,7 @@ public class SingerMapper {
                 .name(singer.getName())
                 .email(singer.getEmail())
                 .avatarPath(singer.getAvatarPath())
+                .avatarVariants(imageDerivativeService.variantsOf(singer.getAvatarPath()))
                 .creatorId(singer.getCreator() != null ? singer.getCreator().getId() : null)
                 .creatorName(singer.getCreator() != null ? singer.getCreator().getDisplayName() : null)
                 .status(singer.getStatus().name())
@@ -51,6 +55,7 @@ public class SingerMapper {
                 .id(singer.getId())
                 .name(singer.getName())
                 .avatarPath(singer.getAvatarPath())
+                .avatarVariants(imageDerivativeService.variantsOf(singer.getAvatarPath()))
                 .songCount((long) songs.size())
                 .songs(songs)
                 .build();
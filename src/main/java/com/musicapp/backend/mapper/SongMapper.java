@@ -6,7 +6,9 @@ import com.musicapp.backend.entity.Song;
 import com.musicapp.backend.entity.User;
 import com.musicapp.backend.repository.LikeRepository;
 import com.musicapp.backend.repository.SongCommentRepository;
-import com.musicapp.backend.service.SubscriptionService;
+import com.musicapp.backend.service.ImageDerivativeService;
+import com.musicapp.backend.service.PremiumEntitlementCache;
+import com.musicapp.backend.service.StreamTokenService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,15 +23,23 @@ public class SongMapper {
     private final TagMapper tagMapper;
     private final LikeRepository likeRepository;
     private final SongCommentRepository songCommentRepository;
-    private final SubscriptionService subscriptionService;
+    private final PremiumEntitlementCache premiumEntitlementCache;
+    private final StreamTokenService streamTokenService;
+    private final ImageDerivativeService imageDerivativeService;
 
     @Transactional(readOnly = true)
     public SongDto toDto(Song song, User currentUser) {
         if (song == null) return null;
 
         boolean canAccess = true;
+        String streamToken;
         if (song.getIsPremium()) {
-            canAccess = (currentUser != null && subscriptionService.hasActivePremiumSubscription(currentUser.getId()));
+            // Token premium hết hạn cùng lúc với gói của người dùng
+            long premiumUntil = currentUser != null ? premiumEntitlementCache.premiumUntil(currentUser.getId()) : 0L;
+            canAccess = premiumUntil > System.currentTimeMillis();
+            streamToken = canAccess ? streamTokenService.issue(song, StreamTokenService.Tier.PREMIUM, currentUser.getId(), premiumUntil) : null;
+        } else {
+            streamToken = streamTokenService.issue(song, StreamTokenService.Tier.FREE, currentUser != null ? currentUser.getId() : null);
         }
 
         Long creatorId = song.getCreator() != null ? song.getCreator().getId() : null;
@@ -42,14 +52,21 @@ public class SongMapper {
                 .lyrics(song.getLyrics())
                 .filePath(song.getFilePath())
                 .thumbnailPath(song.getThumbnailPath())
+                .thumbnailVariants(imageDerivativeService.variantsOf(song.getThumbnailPath()))
                 .listenCount(song.getListenCount())
                 .status(song.getStatus().name())
                 .createdAt(song.getCreatedAt())
                 .color(song.getColor())
+                .durationMs(song.getDurationMs())
+                .bitrate(song.getBitrate())
+                .sampleRate(song.getSampleRate())
+                .channels(song.getChannels())
+                .loudnessLufs(song.getLoudnessLufs())
                 .creatorId(creatorId)
                 .creatorName(creatorName)
                 .isPremium(song.getIsPremium())
                 .canAccess(canAccess)
+                .streamToken(streamToken)
                 .singers(song.getSingers() != null ?
                         song.getSingers().stream()
                                 .map(singerMapper::toDto)
@@ -79,10 +96,16 @@ public class SongMapper {
                 .description(song.getDescription())
                 .filePath(song.getFilePath())
                 .thumbnailPath(song.getThumbnailPath())
+                .thumbnailVariants(imageDerivativeService.variantsOf(song.getThumbnailPath()))
                 .listenCount(song.getListenCount())
                 .status(song.getStatus().name())
                 .createdAt(song.getCreatedAt())
                 .color(song.getColor())
+                .durationMs(song.getDurationMs())
+                .bitrate(song.getBitrate())
+                .sampleRate(song.getSampleRate())
+                .channels(song.getChannels())
+                .loudnessLufs(song.getLoudnessLufs())
                 .creatorId(creatorId)
                 .creatorName(creatorName)
                 .build();
@@ -8,6 +8,7 @@ import com.musicapp.backend.entity.Role;
 import com.musicapp.backend.entity.Song;
 import com.musicapp.backend.entity.User;
 import com.musicapp.backend.entity.UserSubscription;
+import com.musicapp.backend.service.ImageDerivativeService;
 import com.musicapp.backend.service.SubscriptionService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -22,6 +23,7 @@ public class UserMapper {
 
     private final SongMapper songMapper;
     private final SubscriptionService subscriptionService;
+    private final ImageDerivativeService imageDerivativeService;
 
     public UserProfileDto toUserProfileDto(User user) {
         if (user == null) {
@@ -40,6 +42,7 @@ public class UserMapper {
                 .email(user.getEmail())
                 .phoneNumber(user.getPhoneNumber())
                 .avatarPath(user.getAvatarPath())
+                .avatarVariants(imageDerivativeService.variantsOf(user.getAvatarPath()))
                 .dateOfBirth(user.getDateOfBirth())
                 .gender(user.getGender())
                 .provider(user.getProvider())
@@ -88,6 +91,7 @@ public class UserMapper {
         dto.setEmail(user.getEmail());
         dto.setPhoneNumber(user.getPhoneNumber());
         dto.setAvatarPath(user.getAvatarPath());
+        dto.setAvatarVariants(imageDerivativeService.variantsOf(user.getAvatarPath()));
         dto.setDateOfBirth(user.getDateOfBirth());
         dto.setGender(user.getGender());
         dto.setCreatedAt(user.getCreatedAt());
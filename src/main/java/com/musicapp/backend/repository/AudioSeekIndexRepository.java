@@ -0,0 +1,17 @@
+package com.musicapp.backend.repository;
+
+import com.musicapp.backend.entity.AudioSeekIndex;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AudioSeekIndexRepository extends JpaRepository<AudioSeekIndex, Long> {
+
+    Optional<AudioSeekIndex> findByFileKey(String fileKey);
+
+    boolean existsByFileKey(String fileKey);
+
+    void deleteByFileKey(String fileKey);
+}
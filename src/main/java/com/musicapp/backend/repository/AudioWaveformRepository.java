@@ -0,0 +1,17 @@
+package com.musicapp.backend.repository;
+
+import com.musicapp.backend.entity.AudioWaveform;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AudioWaveformRepository extends JpaRepository<AudioWaveform, Long> {
+
+    Optional<AudioWaveform> findByFileKey(String fileKey);
+
+    boolean existsByFileKey(String fileKey);
+
+    void deleteByFileKey(String fileKey);
+}
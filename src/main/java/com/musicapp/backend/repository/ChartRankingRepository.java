@@ -32,4 +32,7 @@ public interface ChartRankingRepository extends JpaRepository<ChartRanking, Long
     List<ChartRanking> findAllWithSongDetails();
 
     List<ChartRanking> findAllByOrderByCurrentRankAsc();
+
+    @Query("SELECT cr.song.id FROM ChartRanking cr ORDER BY cr.currentRank ASC")
+    List<Long> findSongIdsOrderByRank();
 }
\ No newline at end of file
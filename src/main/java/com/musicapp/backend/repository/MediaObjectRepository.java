@@ -0,0 +1,60 @@
+package com.musicapp.backend.repository;
+
+import com.musicapp.backend.entity.MediaObject;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MediaObjectRepository extends JpaRepository<MediaObject, Long> {
+
+    Optional<MediaObject> findBySha256(String sha256);
+
+    boolean existsByFileKey(String fileKey);
+
+    @Query("SELECT m.dominantColor FROM MediaObject m WHERE m.fileKey = :fileKey")
+    Optional<String> findDominantColorByFileKey(@Param("fileKey") String fileKey);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaObject m SET m.dominantColor = :color WHERE m.fileKey = :fileKey")
+    int updateDominantColor(@Param("fileKey") String fileKey, @Param("color") String color);
+
+    @Modifying
+    @Query("UPDATE MediaObject m SET m.refCount = m.refCount + 1, m.lastReferencedAt = :now WHERE m.sha256 = :sha256")
+    int incrementRefCount(@Param("sha256") String sha256, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE MediaObject m SET m.refCount = m.refCount + 1, m.lastReferencedAt = :now WHERE m.fileKey = :fileKey")
+    int incrementRefCountByFileKey(@Param("fileKey") String fileKey, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE MediaObject m SET m.refCount = m.refCount - 1 WHERE m.fileKey = :fileKey AND m.refCount > 0")
+    int decrementRefCount(@Param("fileKey") String fileKey);
+
+    @Modifying
+    @Query("DELETE FROM MediaObject m WHERE m.fileKey = :fileKey AND m.refCount <= 0")
+    int deleteUnreferenced(@Param("fileKey") String fileKey);
+
+    @Query("SELECT m.fileKey FROM MediaObject m WHERE m.fileKey IN :fileKeys AND m.lastReferencedAt > :since")
+    List<String> findKeysReferencedSince(@Param("fileKeys") Collection<String> fileKeys, @Param("since") LocalDateTime since);
+
+    @Query("SELECT m.fileKey FROM MediaObject m WHERE m.lastReferencedAt > :since")
+    List<String> findAllKeysReferencedSince(@Param("since") LocalDateTime since);
+
+    @Query("SELECT m.fileKey FROM MediaObject m WHERE m.fileKey IN :fileKeys")
+    List<String> findExistingKeys(@Param("fileKeys") Collection<String> fileKeys);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MediaObject m WHERE m.fileKey IN :fileKeys")
+    int deleteByFileKeys(@Param("fileKeys") Collection<String> fileKeys);
+}
@@ -0,0 +1,11 @@
+package com.musicapp.backend.repository;
+
+/**
+ * Projection dùng cho GC: id của bản ghi cùng một đường dẫn file mà nó tham chiếu.
+ */
+public interface MediaPathView {
+
+    Long getId();
+
+    String getPath();
+}
@@ -9,7 +9,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PlaylistRepository extends JpaRepository<Playlist, Long> {
@@ -27,13 +29,22 @@ public interface PlaylistRepository extends JpaRepository<Playlist, Long> {
     @Query("SELECT p FROM Playlist p JOIN p.creator u JOIN u.roles r WHERE r.name = 'ROLE_CREATOR'")
     List<Playlist> findPlaylistsByCreators();
 
-    @Modifying
-    @Query("UPDATE Playlist p SET p.listenCount = p.listenCount + 1 WHERE p.id = :playlistId")
-    void incrementListenCount(@Param("playlistId") Long playlistId);
+    @Query("SELECT p.visibility FROM Playlist p WHERE p.id = :playlistId")
+    Optional<Playlist.PlaylistVisibility> findVisibilityById(@Param("playlistId") Long playlistId);
 
     @Query("SELECT p FROM Playlist p WHERE p.visibility = 'PUBLIC' AND LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<Playlist> searchPublicPlaylistsByName(@Param("keyword") String keyword, Pageable pageable);
 
+    @Query("SELECT s.id FROM Playlist p JOIN p.songs s WHERE p.id = :playlistId AND s.status = 'APPROVED' ORDER BY s.id ASC")
+    List<Long> findApprovedSongIdsByPlaylistId(@Param("playlistId") Long playlistId);
+
     @Modifying
     void deleteByCreatorIdAndVisibility(Long creatorId, Playlist.PlaylistVisibility visibility);
-}
\ No newline at end of file
+
+    // Keyset paging cho media GC
+    @Query("SELECT p.id AS id, p.thumbnailPath AS path FROM Playlist p WHERE p.id > :afterId ORDER BY p.id")
+    List<MediaPathView> findThumbnailPathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT p.thumbnailPath FROM Playlist p WHERE p.thumbnailPath IN :paths")
+    List<String> findThumbnailPathsIn(@Param("paths") Collection<String> paths);
+}
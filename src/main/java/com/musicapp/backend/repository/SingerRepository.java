@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -72,4 +73,10 @@ public interface SingerRepository extends JpaRepository<Singer, Long> {
     @Query("SELECT s FROM Singer s JOIN s.songs song WHERE s.status = 'APPROVED' GROUP BY s.id ORDER BY COUNT(song.id) DESC")
     List<Singer> findTopApprovedSingersBySongCount(Pageable pageable);
 
-}
\ No newline at end of file
+    // Keyset paging cho media GC
+    @Query("SELECT s.id AS id, s.avatarPath AS path FROM Singer s WHERE s.id > :afterId ORDER BY s.id")
+    List<MediaPathView> findAvatarPathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT s.avatarPath FROM Singer s WHERE s.avatarPath IN :paths")
+    List<String> findAvatarPathsIn(@Param("paths") Collection<String> paths);
+}
@@ -13,7 +13,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -58,10 +60,6 @@ public interface SongRepository extends JpaRepository<Song, Long>, JpaSpecificat
     @Query("SELECT s FROM Song s JOIN s.tags tag WHERE tag.id = :tagId AND s.status = 'APPROVED' ORDER BY s.createdAt DESC")
     Page<Song> findByTagIdAndApproved(@Param("tagId") Long tagId, Pageable pageable);
 
-    @Modifying
-    @Query("UPDATE Song s SET s.listenCount = s.listenCount + 1 WHERE s.id = :songId")
-    void incrementListenCount(@Param("songId") Long songId);
-
     long countByStatus(Song.SongStatus status);
 
     long countByCreatorId(Long creatorId);
@@ -113,4 +111,56 @@ public interface SongRepository extends JpaRepository<Song, Long>, JpaSpecificat
 
     @Query("SELECT s.id FROM Song s WHERE s.status = :status")
     List<Long> findIdsByStatus(@Param("status") Song.SongStatus status);
-}
\ No newline at end of file
+
+    List<Song> findTop100ByFileSizeIsNullAndIdGreaterThanOrderByIdAsc(Long id);
+
+    /**
+     * Ghi metadata lấy từ storage cho bản ghi cũ. Chỉ đụng tới các cột này (không ghi đè listen_count hay
+     * chỉnh sửa đồng thời) và không làm gì nếu file đã bị thay hoặc đã có metadata.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Song s SET s.fileSize = :fileSize, s.contentType = :contentType, s.etag = :etag, " +
+            "s.checksum = COALESCE(s.checksum, :checksum) " +
+            "WHERE s.id = :id AND s.filePath = :filePath AND s.fileSize IS NULL")
+    int fillStorageMetadata(@Param("id") Long id,
+                            @Param("filePath") String filePath,
+                            @Param("fileSize") Long fileSize,
+                            @Param("contentType") String contentType,
+                            @Param("etag") String etag,
+                            @Param("checksum") String checksum);
+
+    // Keyset paging cho media GC
+    @Query("SELECT s.id AS id, s.filePath AS path FROM Song s WHERE s.id > :afterId ORDER BY s.id")
+    List<MediaPathView> findFilePathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT s.id AS id, s.thumbnailPath AS path FROM Song s WHERE s.id > :afterId ORDER BY s.id")
+    List<MediaPathView> findThumbnailPathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Kiểm tra của hàng đợi xóa trong media GC: đường dẫn nào trong số này còn được dùng
+    @Query("SELECT s.filePath FROM Song s WHERE s.filePath IN :paths")
+    List<String> findFilePathsIn(@Param("paths") Collection<String> paths);
+
+    @Query("SELECT s.thumbnailPath FROM Song s WHERE s.thumbnailPath IN :paths")
+    List<String> findThumbnailPathsIn(@Param("paths") Collection<String> paths);
+
+    /**
+     * Ghi kết quả phân tích audio; không ghi gì nếu file đã bị thay trong lúc phân tích.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Song s SET s.durationMs = :durationMs, s.bitrate = :bitrate, s.sampleRate = :sampleRate, " +
+            "s.channels = :channels, s.loudnessLufs = :loudnessLufs, s.audioAnalyzedAt = :analyzedAt " +
+            "WHERE s.id = :id AND s.filePath = :filePath")
+    int updateAudioInfo(@Param("id") Long id,
+                        @Param("filePath") String filePath,
+                        @Param("durationMs") Long durationMs,
+                        @Param("bitrate") Integer bitrate,
+                        @Param("sampleRate") Integer sampleRate,
+                        @Param("channels") Integer channels,
+                        @Param("loudnessLufs") Double loudnessLufs,
+                        @Param("analyzedAt") LocalDateTime analyzedAt);
+
+    @Query("SELECT s.id FROM Song s WHERE s.audioAnalyzedAt IS NULL AND s.id > :afterId ORDER BY s.id")
+    List<Long> findUnanalyzedIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
@@ -5,11 +5,14 @@ import com.musicapp.backend.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -62,4 +65,55 @@ public interface SongSubmissionRepository extends JpaRepository<SongSubmission,
             "LEFT JOIN FETCH st.tag " +
             "WHERE s.id = :id")
     Optional<SongSubmission> findByIdWithAllRelations(@Param("id") Long id);
-}
\ No newline at end of file
+
+    List<SongSubmission> findTop100ByFileSizeIsNullAndIdGreaterThanOrderByIdAsc(Long id);
+
+    /**
+     * Ghi metadata lấy từ storage cho bản ghi cũ. Chỉ đụng tới các cột này (không ghi đè listen_count hay
+     * chỉnh sửa đồng thời) và không làm gì nếu file đã bị thay hoặc đã có metadata.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SongSubmission s SET s.fileSize = :fileSize, s.contentType = :contentType, s.etag = :etag, " +
+            "s.checksum = COALESCE(s.checksum, :checksum) " +
+            "WHERE s.id = :id AND s.filePath = :filePath AND s.fileSize IS NULL")
+    int fillStorageMetadata(@Param("id") Long id,
+                            @Param("filePath") String filePath,
+                            @Param("fileSize") Long fileSize,
+                            @Param("contentType") String contentType,
+                            @Param("etag") String etag,
+                            @Param("checksum") String checksum);
+
+    // Keyset paging cho media GC
+    @Query("SELECT s.id AS id, s.filePath AS path FROM SongSubmission s WHERE s.id > :afterId ORDER BY s.id")
+    List<MediaPathView> findFilePathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT s.id AS id, s.thumbnailPath AS path FROM SongSubmission s WHERE s.id > :afterId ORDER BY s.id")
+    List<MediaPathView> findThumbnailPathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT s.filePath FROM SongSubmission s WHERE s.filePath IN :paths")
+    List<String> findFilePathsIn(@Param("paths") Collection<String> paths);
+
+    @Query("SELECT s.thumbnailPath FROM SongSubmission s WHERE s.thumbnailPath IN :paths")
+    List<String> findThumbnailPathsIn(@Param("paths") Collection<String> paths);
+
+    /**
+     * Ghi kết quả phân tích audio; không ghi gì nếu file đã bị thay trong lúc phân tích.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE SongSubmission s SET s.durationMs = :durationMs, s.bitrate = :bitrate, s.sampleRate = :sampleRate, " +
+            "s.channels = :channels, s.loudnessLufs = :loudnessLufs, s.audioAnalyzedAt = :analyzedAt " +
+            "WHERE s.id = :id AND s.filePath = :filePath")
+    int updateAudioInfo(@Param("id") Long id,
+                        @Param("filePath") String filePath,
+                        @Param("durationMs") Long durationMs,
+                        @Param("bitrate") Integer bitrate,
+                        @Param("sampleRate") Integer sampleRate,
+                        @Param("channels") Integer channels,
+                        @Param("loudnessLufs") Double loudnessLufs,
+                        @Param("analyzedAt") LocalDateTime analyzedAt);
+
+    @Query("SELECT s.id FROM SongSubmission s WHERE s.audioAnalyzedAt IS NULL AND s.id > :afterId ORDER BY s.id")
+    List<Long> findUnanalyzedIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
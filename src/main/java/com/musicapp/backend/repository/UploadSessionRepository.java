@@ -0,0 +1,23 @@
+package com.musicapp.backend.repository;
+
+import com.musicapp.backend.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    List<UploadSession> findTop100ByExpiresAtBeforeOrderByExpiresAtAsc(LocalDateTime now);
+
+    @Query("SELECT u.filePath FROM UploadSession u WHERE u.filePath IS NOT NULL")
+    List<String> findAllFilePaths();
+
+    @Query("SELECT u.filePath FROM UploadSession u WHERE u.filePath IN :paths")
+    List<String> findFilePathsIn(@Param("paths") Collection<String> paths);
+}
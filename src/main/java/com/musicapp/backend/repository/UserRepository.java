@@ -7,6 +7,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -49,4 +51,11 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
     Optional<User> findByPhoneNumber(String phoneNumber);
-}
\ No newline at end of file
+
+    // Keyset paging cho media GC
+    @Query("SELECT u.id AS id, u.avatarPath AS path FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<MediaPathView> findAvatarPathsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT u.avatarPath FROM User u WHERE u.avatarPath IN :paths")
+    List<String> findAvatarPathsIn(@Param("paths") Collection<String> paths);
+}
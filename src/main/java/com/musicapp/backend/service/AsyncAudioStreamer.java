@@ -0,0 +1,419 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chế độ stream không chặn: dữ liệu đi từ {@link AsyncRangeReader} sang servlet qua WriteListener,
+ * mỗi lần chỉ request một buffer từ nguồn khi socket của client sẵn sàng ghi.
+ * Trong lúc chờ client chậm, request không giữ thread nào của Tomcat.
+ * <p>
+ * Khi cache block trên đĩa đang bật, dữ liệu được đọc qua {@link MediaBlockCache} như chế độ blocking
+ * (block đã có đọc từ đĩa, block thiếu được nạp từ S3 và ghi vào cache), từng chunk trên một pool thread nhỏ.
+ */
+@Component
+// Chế độ async đọc qua S3AsyncClient nên chỉ bật khi storage.backend=s3
+@ConditionalOnExpression("'${media.stream.mode:blocking}' == 'async' && '${storage.backend:s3}' == 's3'")
+@RequiredArgsConstructor
+@Slf4j
+public class AsyncAudioStreamer {
+
+    private final AsyncRangeReader rangeReader;
+    private final StreamBufferPool bufferPool;
+    private final FileStorageService fileStorageService;
+
+    @Value("${media.stream.async-timeout-ms:600000}")
+    private long asyncTimeoutMs;
+
+    @Value("${media.stream.async-read-threads:8}")
+    private int readThreads;
+
+    private ThreadPoolExecutor readExecutor;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicLong completedStreams = new AtomicLong();
+    private final AtomicLong failedStreams = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong blockCacheStreams = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        readExecutor = new ThreadPoolExecutor(readThreads, readThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "async-stream-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        readExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        readExecutor.shutdownNow();
+    }
+
+    /**
+     * Status và header phải được set trên response trước khi gọi hàm này.
+     */
+    public void stream(HttpServletRequest request, HttpServletResponse response, String key, long fileSize, long start, long end) throws IOException {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(asyncTimeoutMs);
+
+        ServletOutputStream outputStream = response.getOutputStream();
+        ServletWriteSubscriber subscriber = new ServletWriteSubscriber(asyncContext, response, outputStream, key);
+        asyncContext.addListener(subscriber);
+        activeStreams.incrementAndGet();
+        outputStream.setWriteListener(subscriber);
+
+        CompletableFuture<? extends Publisher<ByteBuffer>> source;
+        if (fileStorageService.usesBlockCache()) {
+            blockCacheStreams.incrementAndGet();
+            source = CompletableFuture.completedFuture(new BlockCachePublisher(key, fileSize, start, end));
+        } else {
+            source = rangeReader.readRange(key, start, end);
+        }
+        source.whenComplete((publisher, error) -> {
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                publisher.subscribe(subscriber);
+            }
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", "async");
+        stats.put("activeStreams", activeStreams.get());
+        stats.put("completedStreams", completedStreams.get());
+        stats.put("failedStreams", failedStreams.get());
+        stats.put("bytesSent", bytesSent.get());
+        stats.put("blockCacheStreams", blockCacheStreams.get());
+        stats.put("queuedReads", readExecutor.getQueue().size());
+        return stats;
+    }
+
+    /**
+     * Đọc range qua cache block của {@link FileStorageService#streamRange}, mỗi request một chunk tối đa
+     * bằng size class lớn nhất của pool. Dùng lại một buffer cho cả stream: subscriber chỉ request chunk tiếp theo
+     * sau khi đã ghi xong chunk trước, nên onComplete cũng chỉ phát ở lần request sau chunk cuối rồi mới trả buffer.
+     */
+    private class BlockCachePublisher implements Publisher<ByteBuffer> {
+
+        private final String key;
+        private final long fileSize;
+        private final long start;
+        private final long end;
+
+        BlockCachePublisher(String key, long fileSize, long start, long end) {
+            this.key = key;
+            this.fileSize = fileSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new BlockCacheSubscription(subscriber, key, fileSize, start, end));
+        }
+    }
+
+    private class BlockCacheSubscription implements Subscription {
+
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final String key;
+        private final long fileSize;
+        private final long end;
+        private final ByteBuffer buffer;
+
+        private final AtomicLong demand = new AtomicLong();
+        // Chỉ một task đọc chạy tại một thời điểm; position và finished chỉ được đụng tới trong task đó
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private long position;
+        private boolean finished;
+
+        BlockCacheSubscription(Subscriber<? super ByteBuffer> subscriber, String key, long fileSize, long start, long end) {
+            this.subscriber = subscriber;
+            this.key = key;
+            this.fileSize = fileSize;
+            this.end = end;
+            this.position = start;
+            this.buffer = bufferPool.acquire(end - start + 1);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " chunks"));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            // Task đọc thấy cờ và trả buffer về pool
+            schedule();
+        }
+
+        private void schedule() {
+            if (!reading.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                readExecutor.execute(this::readAvailable);
+            } catch (RejectedExecutionException e) {
+                // Đang tắt ứng dụng: buffer không được trả về pool
+                reading.set(false);
+                if (!cancelled) {
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        private void readAvailable() {
+            try {
+                while (!finished && (cancelled || demand.get() > 0)) {
+                    if (cancelled || position > end) {
+                        finished = true;
+                        bufferPool.release(buffer);
+                        if (!cancelled) {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    long to = Math.min(end, position + buffer.capacity() - 1);
+                    buffer.clear();
+                    fileStorageService.streamRange(key, fileSize, position, to, new BufferOutputStream(buffer));
+                    buffer.flip();
+                    position = to + 1;
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffer);
+                }
+            } catch (RuntimeException e) {
+                finished = true;
+                bufferPool.release(buffer);
+                subscriber.onError(e);
+            } finally {
+                reading.set(false);
+            }
+            // Request hoặc cancel đến đúng lúc task sắp kết thúc
+            if (!finished && (cancelled || demand.get() > 0)) {
+                schedule();
+            }
+        }
+    }
+
+    private static class BufferOutputStream extends OutputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferOutputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            buffer.put(bytes, offset, length);
+        }
+    }
+
+    private class ServletWriteSubscriber implements Subscriber<ByteBuffer>, WriteListener, AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final ServletOutputStream outputStream;
+        private final String key;
+
+        private Subscription subscription;
+        private ByteBuffer pending;
+        private boolean requested;
+        private boolean upstreamDone;
+        private boolean finished;
+
+        ServletWriteSubscriber(AsyncContext asyncContext, HttpServletResponse response, ServletOutputStream outputStream, String key) {
+            this.asyncContext = asyncContext;
+            this.response = response;
+            this.outputStream = outputStream;
+            this.key = key;
+        }
+
+        @Override
+        public synchronized void onSubscribe(Subscription subscription) {
+            if (finished) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            drain();
+        }
+
+        @Override
+        public synchronized void onNext(ByteBuffer buffer) {
+            pending = buffer;
+            requested = false;
+            drain();
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public synchronized void onError(Throwable error) {
+            log.warn("Async stream of {} failed: {}", key, error.getMessage());
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            finish(false);
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // Đã được xử lý trong finish()
+        }
+
+        @Override
+        public synchronized void onTimeout(AsyncEvent event) {
+            log.warn("Async stream of {} timed out.", key);
+            finish(false);
+        }
+
+        @Override
+        public synchronized void onError(AsyncEvent event) {
+            finish(false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void drain() {
+            if (finished) {
+                return;
+            }
+            try {
+                if (pending != null) {
+                    if (!writePending()) {
+                        // Socket chưa sẵn sàng, onWritePossible() sẽ gọi lại
+                        return;
+                    }
+                }
+                if (upstreamDone) {
+                    if (outputStream.isReady()) {
+                        finish(true);
+                    }
+                    return;
+                }
+                if (subscription != null && !requested && outputStream.isReady()) {
+                    requested = true;
+                    subscription.request(1);
+                }
+            } catch (IOException e) {
+                // Client ngắt kết nối giữa chừng
+                finish(false);
+            }
+        }
+
+        private boolean writePending() throws IOException {
+            if (pending.hasArray()) {
+                while (pending.hasRemaining() && outputStream.isReady()) {
+                    int length = pending.remaining();
+                    outputStream.write(pending.array(), pending.arrayOffset() + pending.position(), length);
+                    pending.position(pending.position() + length);
+                    record(length);
+                }
+            } else {
+                ByteBuffer chunk = bufferPool.acquire(pending.remaining());
+                try {
+                    byte[] array = chunk.array();
+                    while (pending.hasRemaining() && outputStream.isReady()) {
+                        int length = Math.min(array.length, pending.remaining());
+                        pending.get(array, 0, length);
+                        outputStream.write(array, 0, length);
+                        record(length);
+                    }
+                } finally {
+                    bufferPool.release(chunk);
+                }
+            }
+            if (pending.hasRemaining()) {
+                return false;
+            }
+            pending = null;
+            return true;
+        }
+
+        private void record(int length) {
+            bytesSent.addAndGet(length);
+            bufferPool.recordWrite(length);
+        }
+
+        private void finish(boolean success) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            activeStreams.decrementAndGet();
+            if (success) {
+                completedStreams.incrementAndGet();
+            } else {
+                failedStreams.incrementAndGet();
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException ignored) {
+                // Container đã tự kết thúc async context (timeout hoặc lỗi)
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.musicapp.backend.service;
+
+import org.reactivestreams.Publisher;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Nguồn đọc không chặn (non-blocking) cho một đoạn byte của object media.
+ * Publisher trả về phải tôn trọng backpressure: chỉ phát dữ liệu khi subscriber request.
+ */
+public interface AsyncRangeReader {
+
+    CompletableFuture<? extends Publisher<ByteBuffer>> readRange(String key, long start, long end);
+}
@@ -0,0 +1,405 @@
+package com.musicapp.backend.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Quét tuần tự các frame của file MP3 (MPEG-1/2/2.5 Layer I/II/III) hoặc AAC dạng ADTS
+ * và dựng {@link SeekTable}. Chỉ đọc header của từng frame nên không cần giải mã audio.
+ * Frame Xing/Info/VBRI ở đầu file VBR không chứa audio nên bị bỏ qua khi tính thời gian.
+ */
+public final class AudioFrameScanner {
+
+    private static final int MAX_FRAME_LENGTH = 8192; // frame ADTS dài nhất có thể (13 bit)
+    private static final int HEADER_LENGTH = 7;
+
+    private static final int[][] MPEG_BITRATES = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // V1 L1
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // V1 L2
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},     // V1 L3
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // V2 L1
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // V2 L2, L3
+    };
+    private static final int[][] MPEG_SAMPLE_RATES = {
+            {11025, 12000, 8000},  // MPEG 2.5
+            {},                    // reserved
+            {22050, 24000, 16000}, // MPEG 2
+            {44100, 48000, 32000}  // MPEG 1
+    };
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    /**
+     * Header của một frame. streamId gom các trường phải giống nhau giữa các frame liên tiếp của cùng một luồng.
+     */
+    private record Frame(int streamId, int length, int samples, int sampleRate, int channels, int sideInfoLength, boolean mpeg) {
+    }
+
+    /**
+     * Kết quả quét: bảng seek cùng thông số luồng lấy từ header frame. audioBytes là tổng độ dài các frame audio
+     * (không tính tag, frame Xing/VBRI) để tính bitrate trung bình của file VBR.
+     */
+    public record Summary(SeekTable seekTable, int sampleRate, int channels, long audioBytes) {
+    }
+
+    private AudioFrameScanner() {
+    }
+
+    /**
+     * @return bảng seek, hoặc {@link SeekTable#EMPTY} nếu không tìm thấy frame MP3/ADTS nào (vd. file MP4/M4A)
+     */
+    public static SeekTable scan(InputStream input, int resolutionMs) throws IOException {
+        return summarize(input, resolutionMs, 0).seekTable();
+    }
+
+    /**
+     * Như {@link #scan} nhưng trả thêm thông số luồng.
+     *
+     * @param startPosition vị trí của byte đầu tiên của input trong file (khi người gọi đã tự đọc qua tag ID3v2)
+     */
+    public static Summary summarize(InputStream input, int resolutionMs, long startPosition) throws IOException {
+        return summarize(input, resolutionMs, startPosition, null);
+    }
+
+    /**
+     * Như trên, đồng thời đưa mức âm lượng tương đối của từng frame vào waveform (nếu khác null).
+     */
+    public static Summary summarize(InputStream input, int resolutionMs, long startPosition, WaveformBuilder waveform) throws IOException {
+        PositionedInput in = new PositionedInput(input, startPosition);
+        in.skipId3v2();
+
+        byte[] frameBuffer = new byte[MAX_FRAME_LENGTH + HEADER_LENGTH];
+        long[] times = new long[256];
+        long[] offsets = new long[256];
+        int count = 0;
+
+        Frame locked = null;
+        boolean firstFrame = true;
+        long samples = 0;
+        int sampleRate = 0;
+        int channels = 0;
+        long audioBytes = 0;
+        long nextEntryMs = 0;
+
+        while (true) {
+            long framePosition = in.position();
+            in.mark(frameBuffer.length);
+            int headerRead = in.readFully(frameBuffer, 0, HEADER_LENGTH);
+            if (headerRead < 4) {
+                break;
+            }
+            Frame frame = parse(frameBuffer, headerRead);
+            if (frame == null || (locked != null && frame.streamId() != locked.streamId())) {
+                // Không phải đầu frame (rác, tag APE/ID3v1 ở cuối file...) -> dò tiếp từng byte
+                in.reset();
+                in.skipBytes(1);
+                locked = null;
+                continue;
+            }
+
+            int frameRead = headerRead + in.readFully(frameBuffer, headerRead, frame.length() - headerRead);
+            if (frameRead < frame.length()) {
+                break; // Frame cuối bị cắt cụt
+            }
+
+            if (locked == null) {
+                // Chưa khóa được luồng: chỉ chấp nhận nếu ngay sau đó là một frame cùng loại hoặc hết file
+                int nextRead = in.readFully(frameBuffer, frame.length(), HEADER_LENGTH);
+                Frame next = nextRead >= 4 ? parse(Arrays.copyOfRange(frameBuffer, frame.length(), frame.length() + nextRead), nextRead) : null;
+                in.reset();
+                if (nextRead >= 4 && (next == null || next.streamId() != frame.streamId())) {
+                    in.skipBytes(1);
+                    continue;
+                }
+                in.skipBytes(frame.length());
+                locked = frame;
+            }
+
+            if (firstFrame) {
+                firstFrame = false;
+                if (frame.mpeg() && isVbrHeader(frameBuffer, frame)) {
+                    continue;
+                }
+            }
+
+            sampleRate = frame.sampleRate();
+            channels = frame.channels();
+            audioBytes += frame.length();
+            if (waveform != null) {
+                double level = Math.max(0.0, frameLevel(frameBuffer, frame));
+                waveform.add(-level, level);
+            }
+            long timeMs = samples * 1000 / sampleRate;
+            if (timeMs >= nextEntryMs) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                times[count] = timeMs;
+                offsets[count] = framePosition;
+                count++;
+                nextEntryMs = (timeMs / resolutionMs + 1) * resolutionMs;
+            }
+            samples += frame.samples();
+        }
+
+        if (count == 0) {
+            return new Summary(SeekTable.EMPTY, 0, 0, 0);
+        }
+        SeekTable table = new SeekTable(samples * 1000 / sampleRate, Arrays.copyOf(times, count), Arrays.copyOf(offsets, count));
+        return new Summary(table, sampleRate, channels, audioBytes);
+    }
+
+    private static Frame parse(byte[] header, int available) {
+        int b0 = header[0] & 0xFF;
+        int b1 = header[1] & 0xFF;
+        int b2 = header[2] & 0xFF;
+        int b3 = header[3] & 0xFF;
+        if (b0 != 0xFF || (b1 & 0xE0) != 0xE0) {
+            return null;
+        }
+        int layerBits = (b1 >> 1) & 0x3;
+        if (layerBits == 0) {
+            return (b1 & 0xF0) == 0xF0 && available >= HEADER_LENGTH ? parseAdts(header) : null;
+        }
+
+        int versionBits = (b1 >> 3) & 0x3;
+        int bitrateIndex = (b2 >> 4) & 0xF;
+        int sampleRateIndex = (b2 >> 2) & 0x3;
+        // Bỏ qua free-format (bitrate 0) vì không suy ra được độ dài frame
+        if (versionBits == 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return null;
+        }
+        boolean mpeg1 = versionBits == 3;
+        int layer = 4 - layerBits;
+        int padding = (b2 >> 1) & 0x1;
+        boolean mono = ((b3 >> 6) & 0x3) == 3;
+
+        int bitrate = MPEG_BITRATES[mpeg1 ? layer - 1 : (layer == 1 ? 3 : 4)][bitrateIndex] * 1000;
+        int sampleRate = MPEG_SAMPLE_RATES[versionBits][sampleRateIndex];
+
+        int length;
+        int samples;
+        if (layer == 1) {
+            length = (12 * bitrate / sampleRate + padding) * 4;
+            samples = 384;
+        } else if (layer == 2 || mpeg1) {
+            length = 144 * bitrate / sampleRate + padding;
+            samples = 1152;
+        } else {
+            length = 72 * bitrate / sampleRate + padding;
+            samples = 576;
+        }
+        int sideInfoLength = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+        int streamId = (versionBits << 4) | (layerBits << 2) | sampleRateIndex;
+        return new Frame(streamId, length, samples, sampleRate, mono ? 1 : 2, layer == 3 ? sideInfoLength : 0, true);
+    }
+
+    private static Frame parseAdts(byte[] header) {
+        int b2 = header[2] & 0xFF;
+        int b3 = header[3] & 0xFF;
+        int b4 = header[4] & 0xFF;
+        int b5 = header[5] & 0xFF;
+        int b6 = header[6] & 0xFF;
+        int sampleRateIndex = (b2 >> 2) & 0xF;
+        if (sampleRateIndex >= ADTS_SAMPLE_RATES.length) {
+            return null;
+        }
+        int length = ((b3 & 0x3) << 11) | (b4 << 3) | ((b5 >> 5) & 0x7);
+        if (length < HEADER_LENGTH) {
+            return null;
+        }
+        int rawDataBlocks = (b6 & 0x3) + 1;
+        int channelConfig = ((b2 & 0x1) << 2) | ((b3 >> 6) & 0x3);
+        int streamId = 0x100 | sampleRateIndex;
+        // channel config 7 = 7.1 (8 kênh); 0 = khai báo trong PCE, coi như stereo
+        int channels = channelConfig == 7 ? 8 : channelConfig == 0 ? 2 : channelConfig;
+        return new Frame(streamId, length, 1024 * rawDataBlocks, ADTS_SAMPLE_RATES[sampleRateIndex], channels, 0, false);
+    }
+
+    /**
+     * Mức âm lượng tương đối của frame, suy ra từ global_gain mà không cần giải mã: lớn nhất trong các granule/kênh
+     * của side info Layer III, hoặc của phần tử SCE/CPE đầu tiên trong frame ADTS. Chỉ đúng tương đối giữa các frame
+     * của cùng một file (đủ để vẽ waveform đã chuẩn hóa). -1 nếu frame không có global_gain (Layer I/II...).
+     */
+    private static double frameLevel(byte[] frame, Frame header) {
+        int limit = header.length() * 8;
+        boolean crc = (frame[1] & 0x1) == 0;
+        if (header.mpeg()) {
+            if (header.sideInfoLength() == 0) {
+                return -1;
+            }
+            boolean mpeg1 = ((frame[1] >> 3) & 0x3) == 3;
+            int channels = header.channels();
+            int position = (4 + (crc ? 2 : 0)) * 8;
+            // main_data_begin, private_bits, scfsi (chỉ MPEG-1)
+            position += mpeg1 ? 9 + (channels == 1 ? 5 : 3) + 4 * channels : 8 + channels;
+            int granules = mpeg1 ? 2 : 1;
+            int entryBits = mpeg1 ? 59 : 63;
+            int gain = -1;
+            for (int i = 0; i < granules * channels; i++) {
+                int entry = position + i * entryBits;
+                int part23Length = bits(frame, entry, 12, limit);
+                int globalGain = bits(frame, entry + 21, 8, limit);
+                if (part23Length > 0 && globalGain > gain) {
+                    gain = globalGain; // granule không có dữ liệu Huffman là im lặng
+                }
+            }
+            return gain < 0 ? 0.0 : Math.pow(2.0, (gain - 210) / 4.0);
+        }
+
+        if (crc && (frame[6] & 0x3) != 0) {
+            return -1; // nhiều raw data block kèm CRC: có thêm bảng vị trí block
+        }
+        int position = (HEADER_LENGTH + (crc ? 2 : 0)) * 8;
+        int element = bits(frame, position, 3, limit);
+        position += 3 + 4; // id + element_instance_tag
+        int gain;
+        if (element == 0 || element == 3) {
+            gain = bits(frame, position, 8, limit); // SCE, LFE
+        } else if (element == 1) {
+            boolean commonWindow = bits(frame, position++, 1, limit) == 1;
+            if (commonWindow) {
+                // ics_info dùng chung rồi tới ms_mask, sau đó mới là kênh đầu tiên
+                position += 1;
+                int windowSequence = bits(frame, position, 2, limit);
+                position += 3;
+                int maxSfb;
+                int windowGroups = 1;
+                if (windowSequence == 2) {
+                    maxSfb = bits(frame, position, 4, limit);
+                    int grouping = bits(frame, position + 4, 7, limit);
+                    position += 11;
+                    windowGroups = 1 + 7 - Integer.bitCount(grouping);
+                } else {
+                    maxSfb = bits(frame, position, 6, limit);
+                    if (bits(frame, position + 6, 1, limit) != 0) {
+                        return -1; // predictor (AAC Main) không hỗ trợ
+                    }
+                    position += 7;
+                }
+                int msMask = bits(frame, position, 2, limit);
+                position += 2;
+                if (msMask == 1) {
+                    position += windowGroups * maxSfb;
+                }
+            }
+            gain = bits(frame, position, 8, limit);
+        } else {
+            return -1;
+        }
+        return gain < 0 ? -1 : Math.pow(2.0, (gain - 100) / 4.0);
+    }
+
+    /**
+     * Đọc count bit (big-endian) bắt đầu từ bit thứ position; -1 nếu vượt quá limit bit.
+     */
+    private static int bits(byte[] data, int position, int count, int limit) {
+        if (position < 0 || position + count > limit) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int bit = position + i;
+            value = (value << 1) | ((data[bit >> 3] >> (7 - (bit & 7))) & 1);
+        }
+        return value;
+    }
+
+    /**
+     * Frame đầu tiên của file VBR thường là frame rỗng chứa header Xing/Info (ngay sau side info)
+     * hoặc VBRI (offset cố định 36).
+     */
+    private static boolean isVbrHeader(byte[] frame, Frame header) {
+        if (header.sideInfoLength() > 0) {
+            int xingOffset = 4 + header.sideInfoLength();
+            if (header.length() >= xingOffset + 4) {
+                String tag = new String(frame, xingOffset, 4, StandardCharsets.US_ASCII);
+                if (tag.equals("Xing") || tag.equals("Info")) {
+                    return true;
+                }
+            }
+        }
+        return header.length() >= 40
+                && new String(frame, 36, 4, StandardCharsets.US_ASCII).equals("VBRI");
+    }
+
+    /**
+     * InputStream có bộ đệm, đếm vị trí tuyệt đối và cho phép mark/reset trong phạm vi một frame.
+     */
+    private static final class PositionedInput {
+        private final BufferedInputStream in;
+        private long position;
+        private long markedPosition;
+
+        PositionedInput(InputStream input, long startPosition) {
+            this.in = new BufferedInputStream(input, 64 * 1024);
+            this.position = startPosition;
+        }
+
+        long position() {
+            return position;
+        }
+
+        void mark(int readLimit) {
+            in.mark(readLimit);
+            markedPosition = position;
+        }
+
+        void reset() throws IOException {
+            in.reset();
+            position = markedPosition;
+        }
+
+        int readFully(byte[] buffer, int offset, int length) throws IOException {
+            int read = readInto(buffer, offset, length);
+            position += read;
+            return read;
+        }
+
+        private int readInto(byte[] buffer, int offset, int length) throws IOException {
+            int filled = 0;
+            while (filled < length) {
+                int read = in.read(buffer, offset + filled, length - filled);
+                if (read == -1) {
+                    break;
+                }
+                filled += read;
+            }
+            return filled;
+        }
+
+        void skipBytes(long count) throws IOException {
+            long remaining = count;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+                position += skipped;
+            }
+        }
+
+        void skipId3v2() throws IOException {
+            byte[] header = new byte[10];
+            mark(header.length);
+            int read = readInto(header, 0, header.length);
+            reset();
+            if (read < header.length || header[0] != 'I' || header[1] != 'D' || header[2] != '3') {
+                return;
+            }
+            // Kích thước tag dạng syncsafe integer (7 bit mỗi byte), không tính 10 byte header
+            long size = ((header[6] & 0x7F) << 21) | ((header[7] & 0x7F) << 14) | ((header[8] & 0x7F) << 7) | (header[9] & 0x7F);
+            boolean footer = (header[5] & 0x10) != 0;
+            skipBytes(10 + size + (footer ? 10 : 0));
+        }
+    }
+}
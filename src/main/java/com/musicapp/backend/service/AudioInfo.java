@@ -0,0 +1,19 @@
+package com.musicapp.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Thông số audio đọc từ container của file. Trường nào không xác định được thì null.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class AudioInfo {
+    private Long durationMs;
+    private Integer bitrate; // kbps, trung bình trên toàn file
+    private Integer sampleRate;
+    private Integer channels;
+    private Double loudnessLufs; // integrated loudness; lấy từ tag ReplayGain/R128 nếu không tính trực tiếp được
+}
@@ -0,0 +1,654 @@
+package com.musicapp.backend.service;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Đọc thời lượng, bitrate, sample rate, số kênh và loudness từ container audio bằng Java thuần, trong một lượt
+ * đọc tuần tự (không cần seek nên đọc thẳng được từ stream của S3).
+ * <ul>
+ *     <li>WAV (PCM/float): thông số từ chunk fmt, loudness được đo trực tiếp theo BS.1770 ({@link LoudnessMeter}).</li>
+ *     <li>FLAC: block STREAMINFO và VORBIS_COMMENT.</li>
+ *     <li>Ogg Vorbis/Opus: header nhận dạng, comment header và granule position của page cuối.</li>
+ *     <li>MP4/M4A: box mvhd và sample entry của track audio trong moov.</li>
+ *     <li>MP3/AAC ADTS: quét frame bằng {@link AudioFrameScanner} (đồng thời dựng luôn bảng seek) và tag ID3v2.</li>
+ * </ul>
+ * Các định dạng nén không được giải mã, nên loudness của chúng lấy từ tag ReplayGain / R128 nếu có.
+ */
+public final class AudioInfoExtractor {
+
+    private static final int MAX_TAG_FRAME = 4096;
+    private static final int MAX_COMMENT_BLOCK = 1024 * 1024;
+    private static final int MAX_MOOV_SIZE = 16 * 1024 * 1024;
+    private static final double REPLAYGAIN_REFERENCE_LUFS = -18.0; // ReplayGain 2.0 chuẩn hóa về -18 LUFS
+    private static final double R128_REFERENCE_LUFS = -23.0;
+
+    /**
+     * @param seekTable bảng seek dựng được trong cùng lượt đọc (chỉ với MP3/ADTS), null với định dạng khác
+     * @param waveform  các cặp (min, max) của {@link WaveformBuilder}; null nếu định dạng không hỗ trợ (FLAC, Ogg, MP4)
+     */
+    public record Result(AudioInfo info, SeekTable seekTable, byte[] waveform) {
+    }
+
+    private AudioInfoExtractor() {
+    }
+
+    /**
+     * @param waveformPeaks số cặp (min, max) của waveform
+     */
+    public static Result extract(InputStream input, long fileSize, int seekResolutionMs, int waveformPeaks) throws IOException {
+        Input in = new Input(input);
+        byte[] magic = in.peek(12);
+        if (ascii(magic, 0, "RIFF") && ascii(magic, 8, "WAVE")) {
+            WaveformBuilder waveform = new WaveformBuilder(waveformPeaks);
+            return new Result(wav(in, waveform), null, waveform.encode());
+        }
+        if (ascii(magic, 0, "fLaC")) {
+            return new Result(flac(in, fileSize), null, null);
+        }
+        if (ascii(magic, 0, "OggS")) {
+            return new Result(ogg(in, fileSize), null, null);
+        }
+        if (ascii(magic, 4, "ftyp")) {
+            return new Result(mp4(in, fileSize), null, null);
+        }
+        return mpeg(in, seekResolutionMs, new WaveformBuilder(waveformPeaks));
+    }
+
+    // ---------------------------------------------------------------- MP3 / ADTS
+
+    private static Result mpeg(Input in, int seekResolutionMs, WaveformBuilder waveform) throws IOException {
+        Double loudness = null;
+        byte[] header = in.peek(10);
+        if (header.length == 10 && ascii(header, 0, "ID3")) {
+            in.skip(10);
+            int version = header[3];
+            int flags = header[5] & 0xFF;
+            long tagEnd = 10 + syncsafe(header, 6);
+            if ((flags & 0x80) == 0 && (version == 3 || version == 4)) {
+                loudness = fromReplayGain(id3ReplayGain(in, version, flags, tagEnd));
+            }
+            in.skipTo(tagEnd + ((flags & 0x10) != 0 ? 10 : 0));
+        }
+
+        AudioFrameScanner.Summary summary = AudioFrameScanner.summarize(in.stream(), seekResolutionMs, in.position(), waveform);
+        SeekTable table = summary.seekTable();
+        if (table.size() == 0) {
+            return new Result(AudioInfo.builder().loudnessLufs(loudness).build(), table, null);
+        }
+        long durationMs = table.getDurationMs();
+        return new Result(AudioInfo.builder()
+                .durationMs(durationMs)
+                .bitrate(durationMs > 0 ? (int) (summary.audioBytes() * 8 / durationMs) : null)
+                .sampleRate(summary.sampleRate())
+                .channels(summary.channels())
+                .loudnessLufs(loudness)
+                .build(), table, waveform.encode());
+    }
+
+    /**
+     * Tìm frame TXXX:REPLAYGAIN_TRACK_GAIN trong tag ID3v2.3/2.4 (bỏ qua tag unsynchronised và frame nén/mã hóa).
+     */
+    private static String id3ReplayGain(Input in, int version, int flags, long tagEnd) throws IOException {
+        if ((flags & 0x40) != 0) {
+            byte[] extended = in.read(4);
+            // v2.4: kích thước gồm cả 4 byte này; v2.3: không gồm
+            in.skip(version == 4 ? syncsafe(extended, 0) - 4 : be32(extended, 0));
+        }
+        String gain = null;
+        while (in.position() + 10 <= tagEnd) {
+            byte[] frameHeader = in.read(10);
+            if (frameHeader[0] == 0) {
+                break; // padding
+            }
+            String id = new String(frameHeader, 0, 4, StandardCharsets.ISO_8859_1);
+            long frameSize = version == 4 ? syncsafe(frameHeader, 4) : be32(frameHeader, 4);
+            if (in.position() + frameSize > tagEnd) {
+                break;
+            }
+            int formatFlags = frameHeader[9] & 0xFF;
+            boolean plain = version == 4 ? (formatFlags & 0x4F) == 0 : (formatFlags & 0xE0) == 0;
+            if (id.equals("TXXX") && plain && frameSize <= MAX_TAG_FRAME) {
+                String[] entry = userTextFrame(in.read((int) frameSize));
+                if (entry != null && entry[0].equalsIgnoreCase("REPLAYGAIN_TRACK_GAIN")) {
+                    gain = entry[1];
+                }
+            } else {
+                in.skip(frameSize);
+            }
+        }
+        return gain;
+    }
+
+    /**
+     * Nội dung frame TXXX: byte mã hóa, mô tả kết thúc bằng ký tự 0, rồi giá trị.
+     */
+    private static String[] userTextFrame(byte[] body) {
+        if (body.length < 2) {
+            return null;
+        }
+        int encoding = body[0];
+        Charset charset = switch (encoding) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        int width = encoding == 1 || encoding == 2 ? 2 : 1;
+        for (int i = 1; i + width <= body.length; i += width) {
+            if (body[i] == 0 && (width == 1 || body[i + 1] == 0)) {
+                String description = new String(body, 1, i - 1, charset);
+                String value = new String(body, i + width, body.length - i - width, charset);
+                return new String[]{description, value.replace("\0", "").trim()};
+            }
+        }
+        return null;
+    }
+
+    // ---------------------------------------------------------------- WAV
+
+    private static AudioInfo wav(Input in, WaveformBuilder waveform) throws IOException {
+        in.skip(12);
+        int format = 0;
+        int channels = 0;
+        int sampleRate = 0;
+        long byteRate = 0;
+        int blockAlign = 0;
+        int bits = 0;
+
+        byte[] chunk;
+        while ((chunk = in.readOrNull(8)) != null) {
+            String id = new String(chunk, 0, 4, StandardCharsets.ISO_8859_1);
+            long size = le32(chunk, 4);
+            if (id.equals("fmt ") && size >= 16) {
+                byte[] fmt = in.read((int) Math.min(size, 64));
+                in.skip(size - fmt.length + (size & 1));
+                format = le16(fmt, 0);
+                channels = le16(fmt, 2);
+                sampleRate = (int) le32(fmt, 4);
+                byteRate = le32(fmt, 8);
+                blockAlign = le16(fmt, 12);
+                bits = le16(fmt, 14);
+                if (format == 0xFFFE && fmt.length >= 26) {
+                    format = le16(fmt, 24); // WAVE_FORMAT_EXTENSIBLE: 2 byte đầu của SubFormat GUID
+                }
+            } else if (id.equals("data")) {
+                if (byteRate == 0 || blockAlign == 0 || channels == 0) {
+                    break;
+                }
+                // Một số encoder ghi kích thước 0 / 0xFFFFFFFF khi không biết trước độ dài: đọc tới hết file
+                long limit = size == 0 || size == 0xFFFFFFFFL ? Long.MAX_VALUE : size;
+                LoudnessMeter meter = isMeasurable(format, bits, blockAlign / channels) ? new LoudnessMeter(sampleRate, channels) : null;
+                long dataBytes = readPcm(in, limit, format, channels, blockAlign, meter, waveform);
+                return AudioInfo.builder()
+                        .durationMs(dataBytes * 1000 / byteRate)
+                        .bitrate((int) (byteRate * 8 / 1000))
+                        .sampleRate(sampleRate)
+                        .channels(channels)
+                        .loudnessLufs(meter != null ? meter.integratedLoudness() : null)
+                        .build();
+            } else {
+                in.skip(size + (size & 1));
+            }
+        }
+        return AudioInfo.builder()
+                .sampleRate(sampleRate > 0 ? sampleRate : null)
+                .channels(channels > 0 ? channels : null)
+                .build();
+    }
+
+    private static boolean isMeasurable(int format, int bits, int bytesPerSample) {
+        if (format == 1) {
+            return bits > 0 && bytesPerSample >= 1 && bytesPerSample <= 4;
+        }
+        return format == 3 && (bytesPerSample == 4 || bytesPerSample == 8);
+    }
+
+    /**
+     * Đọc tối đa limit byte của chunk data, đưa từng mẫu vào meter và waveform (nếu giải mã được). Trả về số byte audio đã đọc.
+     */
+    private static long readPcm(Input in, long limit, int format, int channels, int blockAlign, LoudnessMeter meter,
+                                WaveformBuilder waveform) throws IOException {
+        if (meter == null) {
+            return in.skip(limit);
+        }
+        int bytesPerSample = blockAlign / channels;
+        byte[] buffer = new byte[Math.max(1, 65536 / blockAlign) * blockAlign];
+        long total = 0;
+        while (total < limit) {
+            int wanted = (int) Math.min(buffer.length, limit - total);
+            int read = in.readInto(buffer, 0, wanted);
+            if (read <= 0) {
+                break;
+            }
+            total += read;
+            int frames = read / blockAlign;
+            for (int f = 0; f < frames; f++) {
+                int frameOffset = f * blockAlign;
+                double low = 0.0;
+                double high = 0.0;
+                for (int ch = 0; ch < channels; ch++) {
+                    double sample = sample(buffer, frameOffset + ch * bytesPerSample, bytesPerSample, format);
+                    meter.add(ch, sample);
+                    low = Math.min(low, sample);
+                    high = Math.max(high, sample);
+                }
+                waveform.add(low, high);
+            }
+            if (read < wanted) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private static double sample(byte[] b, int offset, int bytes, int format) {
+        if (format == 3) {
+            return bytes == 4
+                    ? Float.intBitsToFloat((int) le32(b, offset))
+                    : Double.longBitsToDouble(le32(b, offset) | (le32(b, offset + 4) << 32));
+        }
+        return switch (bytes) {
+            case 1 -> ((b[offset] & 0xFF) - 128) / 128.0;
+            case 2 -> (short) le16(b, offset) / 32768.0;
+            case 3 -> (((b[offset + 2]) << 16) | ((b[offset + 1] & 0xFF) << 8) | (b[offset] & 0xFF)) / 8388608.0;
+            default -> (int) le32(b, offset) / 2147483648.0;
+        };
+    }
+
+    // ---------------------------------------------------------------- FLAC
+
+    private static AudioInfo flac(Input in, long fileSize) throws IOException {
+        in.skip(4);
+        int sampleRate = 0;
+        int channels = 0;
+        long totalSamples = 0;
+        String gain = null;
+
+        boolean last = false;
+        while (!last) {
+            byte[] blockHeader = in.read(4);
+            last = (blockHeader[0] & 0x80) != 0;
+            int type = blockHeader[0] & 0x7F;
+            int length = ((blockHeader[1] & 0xFF) << 16) | ((blockHeader[2] & 0xFF) << 8) | (blockHeader[3] & 0xFF);
+            if (type == 0 && length >= 18) {
+                byte[] info = in.read(length);
+                sampleRate = ((info[10] & 0xFF) << 12) | ((info[11] & 0xFF) << 4) | ((info[12] & 0xFF) >> 4);
+                channels = ((info[12] >> 1) & 0x7) + 1;
+                totalSamples = ((long) (info[13] & 0x0F) << 32) | be32(info, 14);
+            } else if (type == 4 && length <= MAX_COMMENT_BLOCK) {
+                gain = vorbisComment(in.read(length), 0, "REPLAYGAIN_TRACK_GAIN");
+            } else {
+                in.skip(length);
+            }
+        }
+
+        Long durationMs = sampleRate > 0 && totalSamples > 0 ? totalSamples * 1000 / sampleRate : null;
+        return AudioInfo.builder()
+                .durationMs(durationMs)
+                .bitrate(averageBitrate(fileSize - in.position(), durationMs))
+                .sampleRate(sampleRate > 0 ? sampleRate : null)
+                .channels(sampleRate > 0 ? channels : null)
+                .loudnessLufs(fromReplayGain(gain))
+                .build();
+    }
+
+    // ---------------------------------------------------------------- Ogg
+
+    private static AudioInfo ogg(Input in, long fileSize) throws IOException {
+        byte[] first = oggPage(in, true);
+        if (first == null) {
+            return AudioInfo.builder().build();
+        }
+        long serial = le32(first, 14);
+        byte[] packet = Arrays.copyOfRange(first, first.length - oggBodyLength(first), first.length);
+
+        boolean opus = ascii(packet, 0, "OpusHead");
+        boolean vorbis = packet.length >= 30 && packet[0] == 1 && ascii(packet, 1, "vorbis");
+        if (!opus && !vorbis) {
+            return AudioInfo.builder().build();
+        }
+        int channels = opus ? packet[9] & 0xFF : packet[11] & 0xFF;
+        int sampleRate = (int) le32(packet, 12); // Opus: input sample rate, chỉ mang tính thông tin
+        int preSkip = opus ? le16(packet, 10) : 0;
+
+        // Comment header nằm ở page thứ hai (nếu nó không tràn sang page sau, vd. vì ảnh bìa lớn)
+        Double loudness = null;
+        byte[] second = oggPage(in, true);
+        long lastGranule = 0;
+        if (second != null && le32(second, 14) == serial) {
+            int segments = second[26] & 0xFF;
+            boolean complete = segments > 0 && (second[27 + segments - 1] & 0xFF) < 255;
+            byte[] comments = Arrays.copyOfRange(second, second.length - oggBodyLength(second), second.length);
+            if (complete && opus && ascii(comments, 0, "OpusTags")) {
+                String gain = vorbisComment(comments, 8, "R128_TRACK_GAIN");
+                loudness = gain != null ? parseR128(gain) : null;
+            } else if (complete && vorbis && comments.length > 7 && comments[0] == 3 && ascii(comments, 1, "vorbis")) {
+                loudness = fromReplayGain(vorbisComment(comments, 7, "REPLAYGAIN_TRACK_GAIN"));
+            }
+            lastGranule = Math.max(lastGranule, granule(second));
+        }
+
+        byte[] page;
+        while ((page = oggPage(in, false)) != null) {
+            if (le32(page, 14) == serial && granule(page) >= 0) {
+                lastGranule = granule(page);
+            }
+        }
+
+        long durationMs = opus
+                ? Math.max(0, lastGranule - preSkip) * 1000 / 48000
+                : sampleRate > 0 ? lastGranule * 1000 / sampleRate : 0;
+        return AudioInfo.builder()
+                .durationMs(durationMs > 0 ? durationMs : null)
+                .bitrate(averageBitrate(fileSize, durationMs))
+                .sampleRate(sampleRate > 0 ? sampleRate : opus ? 48000 : null)
+                .channels(channels)
+                .loudnessLufs(loudness)
+                .build();
+    }
+
+    /**
+     * Đọc một page Ogg: trả về header + bảng segment, kèm body nếu withBody (ngược lại body bị bỏ qua).
+     * null nếu hết file hoặc không còn đồng bộ với page.
+     */
+    private static byte[] oggPage(Input in, boolean withBody) throws IOException {
+        byte[] header = in.readOrNull(27);
+        if (header == null || !ascii(header, 0, "OggS")) {
+            return null;
+        }
+        int segments = header[26] & 0xFF;
+        byte[] table = in.read(segments);
+        int bodyLength = 0;
+        for (byte lacing : table) {
+            bodyLength += lacing & 0xFF;
+        }
+        byte[] page = Arrays.copyOf(header, 27 + segments + (withBody && bodyLength <= MAX_COMMENT_BLOCK ? bodyLength : 0));
+        System.arraycopy(table, 0, page, 27, segments);
+        if (page.length > 27 + segments) {
+            byte[] body = in.read(bodyLength);
+            System.arraycopy(body, 0, page, 27 + segments, bodyLength);
+        } else {
+            in.skip(bodyLength);
+        }
+        return page;
+    }
+
+    private static int oggBodyLength(byte[] page) {
+        return page.length - 27 - (page[26] & 0xFF);
+    }
+
+    private static long granule(byte[] page) {
+        return le32(page, 6) | (le32(page, 10) << 32);
+    }
+
+    // ---------------------------------------------------------------- MP4
+
+    private static AudioInfo mp4(Input in, long fileSize) throws IOException {
+        byte[] header;
+        while ((header = in.readOrNull(8)) != null) {
+            long size = be32(header, 0);
+            String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+            int headerLength = 8;
+            if (size == 1) {
+                size = be64(in.read(8), 0);
+                headerLength = 16;
+            } else if (size == 0) {
+                break; // box kéo dài tới hết file (thường là mdat cuối cùng)
+            }
+            if (size < headerLength) {
+                break;
+            }
+            if (type.equals("moov")) {
+                if (size - headerLength > MAX_MOOV_SIZE) {
+                    break;
+                }
+                Mp4Info info = new Mp4Info();
+                parseBoxes(in.read((int) (size - headerLength)), 0, (int) (size - headerLength), info);
+                Long durationMs = info.timescale > 0 && info.duration > 0 ? info.duration * 1000 / info.timescale : null;
+                return AudioInfo.builder()
+                        .durationMs(durationMs)
+                        .bitrate(averageBitrate(fileSize, durationMs))
+                        .sampleRate(info.sampleRate > 0 ? info.sampleRate : null)
+                        .channels(info.channels > 0 ? info.channels : null)
+                        .build();
+            }
+            in.skip(size - headerLength);
+        }
+        return AudioInfo.builder().build();
+    }
+
+    private static final class Mp4Info {
+        long timescale;
+        long duration;
+        String handler;
+        int sampleRate;
+        int channels;
+    }
+
+    private static void parseBoxes(byte[] b, int start, int end, Mp4Info info) {
+        int offset = start;
+        while (offset + 8 <= end) {
+            long size = be32(b, offset);
+            String type = new String(b, offset + 4, 4, StandardCharsets.ISO_8859_1);
+            int headerLength = 8;
+            if (size == 1 && offset + 16 <= end) {
+                size = be64(b, offset + 8);
+                headerLength = 16;
+            } else if (size == 0) {
+                size = end - offset;
+            }
+            if (size < headerLength || offset + size > end) {
+                return;
+            }
+            int body = offset + headerLength;
+            int boxEnd = (int) (offset + size);
+            switch (type) {
+                case "trak", "mdia", "minf", "stbl" -> parseBoxes(b, body, boxEnd, info);
+                case "mvhd" -> {
+                    if (b[body] == 1 && body + 32 <= boxEnd) {
+                        info.timescale = be32(b, body + 20);
+                        info.duration = be64(b, body + 24);
+                    } else if (body + 20 <= boxEnd) {
+                        info.timescale = be32(b, body + 12);
+                        info.duration = be32(b, body + 16);
+                    }
+                }
+                case "hdlr" -> {
+                    if (body + 12 <= boxEnd) {
+                        info.handler = new String(b, body + 8, 4, StandardCharsets.ISO_8859_1);
+                    }
+                }
+                case "stsd" -> {
+                    // Sample entry đầu tiên của track audio: 8 byte header box + 8 byte SampleEntry + 8 byte reserved,
+                    // tiếp theo là channelcount (2), samplesize (2), 4 byte, samplerate (16.16)
+                    int entry = body + 8;
+                    if ("soun".equals(info.handler) && info.channels == 0 && entry + 36 <= boxEnd) {
+                        info.channels = be16(b, entry + 24);
+                        info.sampleRate = be16(b, entry + 32);
+                    }
+                }
+                default -> {
+                }
+            }
+            offset = boxEnd;
+        }
+    }
+
+    // ---------------------------------------------------------------- tiện ích
+
+    /**
+     * Giá trị của key trong một khối Vorbis comment (little-endian: vendor, số comment, các chuỗi KEY=value).
+     */
+    private static String vorbisComment(byte[] b, int offset, String key) {
+        try {
+            int position = offset;
+            long vendorLength = le32(b, position);
+            position += 4 + (int) vendorLength;
+            long count = le32(b, position);
+            position += 4;
+            String prefix = key.toUpperCase() + "=";
+            for (long i = 0; i < count && position + 4 <= b.length; i++) {
+                int length = (int) le32(b, position);
+                position += 4;
+                if (length < 0 || position + length > b.length) {
+                    return null;
+                }
+                String comment = new String(b, position, length, StandardCharsets.UTF_8);
+                position += length;
+                if (comment.length() > prefix.length() && comment.substring(0, prefix.length()).toUpperCase().equals(prefix)) {
+                    return comment.substring(prefix.length()).trim();
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Khối comment hỏng: bỏ qua
+        }
+        return null;
+    }
+
+    /**
+     * "-6.54 dB" -> loudness của track theo mức tham chiếu ReplayGain 2.0.
+     */
+    private static Double fromReplayGain(String gain) {
+        if (gain == null) {
+            return null;
+        }
+        try {
+            String value = gain.replaceAll("(?i)\\s*db\\s*$", "").trim();
+            return REPLAYGAIN_REFERENCE_LUFS - Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * R128_TRACK_GAIN: số nguyên Q7.8 (1/256 dB) so với -23 LUFS.
+     */
+    private static Double parseR128(String gain) {
+        try {
+            return R128_REFERENCE_LUFS - Integer.parseInt(gain.trim()) / 256.0;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer averageBitrate(long bytes, Long durationMs) {
+        return durationMs != null && durationMs > 0 && bytes > 0 ? (int) (bytes * 8 / durationMs) : null;
+    }
+
+    private static boolean ascii(byte[] b, int offset, String text) {
+        if (b.length < offset + text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (b[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long syncsafe(byte[] b, int offset) {
+        return ((b[offset] & 0x7FL) << 21) | ((b[offset + 1] & 0x7FL) << 14) | ((b[offset + 2] & 0x7FL) << 7) | (b[offset + 3] & 0x7FL);
+    }
+
+    private static int be16(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static long be32(byte[] b, int offset) {
+        return ((b[offset] & 0xFFL) << 24) | ((b[offset + 1] & 0xFFL) << 16) | ((b[offset + 2] & 0xFFL) << 8) | (b[offset + 3] & 0xFFL);
+    }
+
+    private static long be64(byte[] b, int offset) {
+        return (be32(b, offset) << 32) | be32(b, offset + 4);
+    }
+
+    private static int le16(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8);
+    }
+
+    private static long le32(byte[] b, int offset) {
+        return (b[offset] & 0xFFL) | ((b[offset + 1] & 0xFFL) << 8) | ((b[offset + 2] & 0xFFL) << 16) | ((b[offset + 3] & 0xFFL) << 24);
+    }
+
+    /**
+     * InputStream có bộ đệm và đếm vị trí tuyệt đối trong file.
+     */
+    private static final class Input {
+        private final BufferedInputStream in;
+        private long position;
+
+        Input(InputStream input) {
+            this.in = new BufferedInputStream(input, 64 * 1024);
+        }
+
+        long position() {
+            return position;
+        }
+
+        InputStream stream() {
+            return in;
+        }
+
+        byte[] peek(int length) throws IOException {
+            in.mark(length);
+            byte[] buffer = new byte[length];
+            int read = StreamBufferPool.readFully(in, buffer, length);
+            in.reset();
+            return read < length ? Arrays.copyOf(buffer, read) : buffer;
+        }
+
+        byte[] read(int length) throws IOException {
+            byte[] buffer = new byte[length];
+            if (readInto(buffer, 0, length) < length) {
+                throw new EOFException();
+            }
+            return buffer;
+        }
+
+        /**
+         * Như {@link #read(int)} nhưng trả về null khi đã hết file (hoặc chỉ còn một đoạn cụt).
+         */
+        byte[] readOrNull(int length) throws IOException {
+            byte[] buffer = new byte[length];
+            return readInto(buffer, 0, length) < length ? null : buffer;
+        }
+
+        int readInto(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.readNBytes(buffer, offset, length);
+            position += read;
+            return read;
+        }
+
+        /**
+         * @return số byte đã bỏ qua (ít hơn count nếu hết file)
+         */
+        long skip(long count) throws IOException {
+            long remaining = count;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+                position += skipped;
+            }
+            return count - remaining;
+        }
+
+        void skipTo(long target) throws IOException {
+            if (target > position) {
+                skip(target - position);
+            }
+        }
+    }
+}
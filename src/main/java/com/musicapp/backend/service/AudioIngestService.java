@@ -0,0 +1,243 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.repository.SongRepository;
+import com.musicapp.backend.repository.SongSubmissionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bước ingest chạy nền sau khi file audio được lưu: đọc file một lượt từ storage để lấy thời lượng, bitrate,
+ * sample rate, số kênh và loudness ({@link AudioInfoExtractor}), rồi ghi vào bài hát / yêu cầu upload.
+ * Trong cùng lượt đọc còn dựng waveform ({@link AudioWaveformService}) và, với MP3/AAC, bảng seek nếu file chưa có.
+ * <p>
+ * Việc được đưa vào một pool có giới hạn sau khi transaction tạo bản ghi commit; khi hàng đợi đầy thì bỏ qua,
+ * bản ghi sẽ được lượt backfill định kỳ xử lý sau (cột audio_analyzed_at còn null).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudioIngestService {
+
+    private enum Kind { SONG, SUBMISSION }
+
+    private record Target(Kind kind, Long id) {
+    }
+
+    private final SongRepository songRepository;
+    private final SongSubmissionRepository submissionRepository;
+    private final FileStorageService fileStorageService;
+    private final AudioSeekIndexService audioSeekIndexService;
+    private final AudioWaveformService audioWaveformService;
+
+    @Value("${media.ingest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.ingest.threads:2}")
+    private int threads;
+
+    @Value("${media.ingest.queue-size:200}")
+    private int queueSize;
+
+    @Value("${media.ingest.backfill-batch:100}")
+    private int backfillBatch;
+
+    private ThreadPoolExecutor executor;
+    private final Set<Target> queued = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "audio-ingest");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Phân tích file audio của bài hát sau khi transaction hiện tại commit (ngay lập tức nếu không có transaction).
+     */
+    public void analyzeSong(Long songId) {
+        afterCommit(new Target(Kind.SONG, songId));
+    }
+
+    public void analyzeSubmission(Long submissionId) {
+        afterCommit(new Target(Kind.SUBMISSION, submissionId));
+    }
+
+    /**
+     * Xử lý các bản ghi chưa được phân tích: tạo trước khi có bước ingest, hoặc bị bỏ qua vì hàng đợi đầy / server restart.
+     */
+    @Scheduled(fixedDelayString = "${media.ingest.backfill-delay-ms:300000}", initialDelay = 120000)
+    public void backfill() {
+        if (!enabled) {
+            return;
+        }
+        int scheduled = backfill(Kind.SONG);
+        if (scheduled >= 0) {
+            int submissions = backfill(Kind.SUBMISSION);
+            scheduled = submissions >= 0 ? scheduled + submissions : -1;
+        }
+        if (scheduled != 0) {
+            log.info("Audio ingest backfill scheduled {} records{}.", Math.abs(scheduled), scheduled < 0 ? " (queue full)" : "");
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("submitted", submitted.get());
+        stats.put("analyzed", analyzed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("running", executor.getActiveCount());
+        return stats;
+    }
+
+    /**
+     * @return số bản ghi đã đưa vào hàng đợi, hoặc số âm nếu dừng giữa chừng vì hàng đợi đầy
+     */
+    private int backfill(Kind kind) {
+        int scheduled = 0;
+        long lastId = 0L;
+        List<Long> ids;
+        while (!(ids = unanalyzedIdsAfter(kind, lastId)).isEmpty()) {
+            for (Long id : ids) {
+                lastId = id;
+                Target target = new Target(kind, id);
+                if (queued.contains(target)) {
+                    continue;
+                }
+                if (!submit(target)) {
+                    return -Math.max(1, scheduled);
+                }
+                scheduled++;
+            }
+        }
+        return scheduled;
+    }
+
+    private List<Long> unanalyzedIdsAfter(Kind kind, long lastId) {
+        PageRequest page = PageRequest.of(0, backfillBatch);
+        return kind == Kind.SONG
+                ? songRepository.findUnanalyzedIdsAfter(lastId, page)
+                : submissionRepository.findUnanalyzedIdsAfter(lastId, page);
+    }
+
+    private void afterCommit(Target target) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(target);
+                }
+            });
+        } else {
+            submit(target);
+        }
+    }
+
+    private boolean submit(Target target) {
+        if (!queued.add(target)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> analyze(target));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.remove(target);
+            rejected.incrementAndGet();
+            log.debug("Audio ingest queue is full, {} {} is left for backfill", target.kind(), target.id());
+            return false;
+        }
+    }
+
+    private void analyze(Target target) {
+        // Bỏ khỏi tập đang chờ trước khi đọc bản ghi: nếu file bị thay trong lúc phân tích thì lần schedule mới vẫn được nhận
+        queued.remove(target);
+
+        String filePath;
+        Long fileSize;
+        if (target.kind() == Kind.SONG) {
+            var song = songRepository.findById(target.id()).orElse(null);
+            if (song == null) {
+                return;
+            }
+            filePath = song.getFilePath();
+            fileSize = song.getFileSize();
+        } else {
+            var submission = submissionRepository.findById(target.id()).orElse(null);
+            if (submission == null) {
+                return;
+            }
+            filePath = submission.getFilePath();
+            fileSize = submission.getFileSize();
+        }
+
+        String key = fileStorageService.toKey(filePath);
+        AudioInfo info;
+        try {
+            long size = fileSize != null ? fileSize : fileStorageService.getObjectAttributes(key).size();
+            AudioInfoExtractor.Result result;
+            try (InputStream in = fileStorageService.openStream(key)) {
+                result = AudioInfoExtractor.extract(in, size, audioSeekIndexService.getResolutionMs(), audioWaveformService.getPeaks());
+            }
+            if (result.seekTable() != null && result.seekTable().size() > 0) {
+                audioSeekIndexService.indexScanned(key, result.seekTable());
+            }
+            if (result.waveform() != null) {
+                audioWaveformService.save(key, result.waveform());
+            }
+            info = result.info();
+            analyzed.incrementAndGet();
+        } catch (Exception e) {
+            // Vẫn đánh dấu đã phân tích để backfill không thử lại mãi một file hỏng; các trường để null
+            log.warn("Could not analyze audio of {} {} ({}): {}", target.kind(), target.id(), key, e.getMessage());
+            info = AudioInfo.builder().build();
+            failed.incrementAndGet();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (target.kind() == Kind.SONG) {
+            songRepository.updateAudioInfo(target.id(), filePath, info.getDurationMs(), info.getBitrate(),
+                    info.getSampleRate(), info.getChannels(), info.getLoudnessLufs(), now);
+        } else {
+            submissionRepository.updateAudioInfo(target.id(), filePath, info.getDurationMs(), info.getBitrate(),
+                    info.getSampleRate(), info.getChannels(), info.getLoudnessLufs(), now);
+        }
+    }
+}
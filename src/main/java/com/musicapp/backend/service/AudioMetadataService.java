@@ -0,0 +1,237 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.Song;
+import com.musicapp.backend.entity.SongSubmission;
+import com.musicapp.backend.exception.ResourceNotFoundException;
+import com.musicapp.backend.repository.SongRepository;
+import com.musicapp.backend.repository.SongSubmissionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudioMetadataService {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    private final SongRepository songRepository;
+    private final SongSubmissionRepository submissionRepository;
+    private final FileStorageService fileStorageService;
+
+    private final Map<Long, AudioObjectMetadata> cache = new ConcurrentHashMap<>();
+
+    @Value("${media.metadata.cache-size:50000}")
+    private int maxEntries;
+
+    private final Set<Long> pendingBackfill = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingLoad = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor backfillExecutor;
+
+    @PostConstruct
+    void init() {
+        backfillExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000), runnable -> {
+            Thread thread = new Thread(runnable, "audio-metadata-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    /**
+     * Trả về metadata audio của bài hát. Sau lần gọi đầu tiên kết quả nằm trong bộ nhớ,
+     * nên một range request không cần truy vấn DB hay gọi HEAD tới S3.
+     * <p>
+     * Bản ghi cũ chưa được backfill có fileSize null: không HEAD ngay trên request mà xếp bài vào hàng đợi
+     * backfill nền, kết quả này cũng không được cache.
+     */
+    public AudioObjectMetadata getForSong(Long songId) {
+        AudioObjectMetadata metadata = cache.get(songId);
+        if (metadata != null) {
+            return metadata;
+        }
+        Song song = songRepository.findById(songId)
+                .orElseThrow(() -> new ResourceNotFoundException("Song not found with id: " + songId));
+        metadata = toMetadata(song);
+        if (song.getFileSize() == null) {
+            requestBackfill(songId);
+            return metadata;
+        }
+        if (cache.size() >= maxEntries) {
+            Iterator<Long> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(songId, metadata);
+        return metadata;
+    }
+
+    /**
+     * Chỉ đọc cache, không bao giờ truy vấn DB trên thread gọi. Cache chưa có bài thì trả về null và nạp nền,
+     * để các request sau của cùng bài đối chiếu được với metadata hiện tại.
+     */
+    public AudioObjectMetadata getCachedForSong(Long songId) {
+        AudioObjectMetadata metadata = cache.get(songId);
+        if (metadata == null) {
+            requestLoad(songId);
+        }
+        return metadata;
+    }
+
+    /**
+     * Xóa metadata đã cache của bài hát. Trong transaction thì xóa thêm một lần sau commit: một range request
+     * chạy song song trước khi commit vẫn đọc được dòng cũ và nạp lại vào cache.
+     */
+    public void evict(Long songId) {
+        cache.remove(songId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(songId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Backfill metadata cho các bài hát và yêu cầu upload được tạo trước khi có các cột này.
+     * Chạy 10 phút một lần, mỗi lượt xử lý theo trang 100 bản ghi.
+     */
+    @Scheduled(fixedDelayString = "${media.metadata.backfill-delay-ms:600000}", initialDelay = 60000)
+    public void backfillMissingMetadata() {
+        int songs = 0;
+        long lastId = 0L;
+        List<Song> songPage;
+        while (!(songPage = songRepository.findTop100ByFileSizeIsNullAndIdGreaterThanOrderByIdAsc(lastId)).isEmpty()) {
+            for (Song song : songPage) {
+                lastId = song.getId();
+                try {
+                    if (backfillSong(song)) {
+                        songs++;
+                    }
+                } catch (Exception e) {
+                    log.warn("Could not backfill audio metadata for song {}: {}", song.getId(), e.getMessage());
+                }
+            }
+        }
+
+        int submissions = 0;
+        lastId = 0L;
+        List<SongSubmission> submissionPage;
+        while (!(submissionPage = submissionRepository.findTop100ByFileSizeIsNullAndIdGreaterThanOrderByIdAsc(lastId)).isEmpty()) {
+            for (SongSubmission submission : submissionPage) {
+                lastId = submission.getId();
+                try {
+                    String key = fileStorageService.toKey(submission.getFilePath());
+                    StorageBackend.ObjectStat attributes = fileStorageService.getObjectAttributes(key);
+                    submissions += submissionRepository.fillStorageMetadata(submission.getId(), submission.getFilePath(),
+                            attributes.size(), attributes.contentType(), attributes.etag(), checksumOf(key));
+                } catch (Exception e) {
+                    log.warn("Could not backfill audio metadata for submission {}: {}", submission.getId(), e.getMessage());
+                }
+            }
+        }
+
+        if (songs > 0 || submissions > 0) {
+            log.info("Backfilled audio metadata for {} songs and {} submissions.", songs, submissions);
+        }
+    }
+
+    private void requestLoad(Long songId) {
+        if (!pendingLoad.add(songId)) {
+            return;
+        }
+        try {
+            backfillExecutor.execute(() -> {
+                try {
+                    getForSong(songId);
+                } catch (Exception e) {
+                    log.debug("Could not load audio metadata for song {}: {}", songId, e.getMessage());
+                } finally {
+                    pendingLoad.remove(songId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingLoad.remove(songId);
+        }
+    }
+
+    private void requestBackfill(Long songId) {
+        if (!pendingBackfill.add(songId)) {
+            return;
+        }
+        try {
+            backfillExecutor.execute(() -> {
+                try {
+                    songRepository.findById(songId)
+                            .filter(song -> song.getFileSize() == null)
+                            .ifPresent(this::backfillSong);
+                } catch (Exception e) {
+                    log.warn("Could not backfill audio metadata for song {}: {}", songId, e.getMessage());
+                } finally {
+                    pendingBackfill.remove(songId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Hàng đợi đầy: lượt backfill định kỳ sẽ xử lý bài này
+            pendingBackfill.remove(songId);
+        }
+    }
+
+    private boolean backfillSong(Song song) {
+        String key = fileStorageService.toKey(song.getFilePath());
+        StorageBackend.ObjectStat attributes = fileStorageService.getObjectAttributes(key);
+        int updated = songRepository.fillStorageMetadata(song.getId(), song.getFilePath(),
+                attributes.size(), attributes.contentType(), attributes.etag(), checksumOf(key));
+        evict(song.getId());
+        return updated > 0;
+    }
+
+    /**
+     * Key lưu theo nội dung có dạng thư-mục/sha256.ext; key cũ (tên file gốc) thì không suy ra được checksum.
+     */
+    private static String checksumOf(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        int dot = name.indexOf('.');
+        String base = dot >= 0 ? name.substring(0, dot) : name;
+        return SHA256_HEX.matcher(base).matches() ? base : null;
+    }
+
+    private AudioObjectMetadata toMetadata(Song song) {
+        return AudioObjectMetadata.builder()
+                .songId(song.getId())
+                .key(fileStorageService.toKey(song.getFilePath()))
+                .fileSize(song.getFileSize())
+                .contentType(song.getContentType())
+                .etag(song.getEtag())
+                .checksum(song.getChecksum())
+                .premium(Boolean.TRUE.equals(song.getIsPremium()))
+                .build();
+    }
+}
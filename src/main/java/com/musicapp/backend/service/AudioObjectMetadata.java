@@ -0,0 +1,23 @@
+package com.musicapp.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Metadata của file audio gắn với một bài hát, đủ để trả lời một range request mà không cần gọi S3.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class AudioObjectMetadata {
+    private Long songId;
+    private String key;
+    // null với bài cũ chưa được backfill metadata từ storage
+    private Long fileSize;
+    private String contentType;
+    private String etag;
+    private String checksum;
+    // Với metadata lấy từ token stream đây là giá trị lúc cấp token
+    private boolean premium;
+}
@@ -0,0 +1,201 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.repository.ChartRankingRepository;
+import com.musicapp.backend.repository.PlaylistRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Khi một bài bắt đầu phát trong một ngữ cảnh đã biết (playlist, bảng xếp hạng, hàng đợi do client gửi lên),
+ * nạp trước vài trăm KB đầu của các bài kế tiếp vào {@link MediaBlockCache} trên một pool nền có giới hạn.
+ * Prefetch chỉ là tối ưu: mọi điều kiện không thỏa (pool đầy, nhiều request thật đang chạy, đã có trong cache)
+ * đều dẫn tới việc bỏ qua chứ không chờ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudioPrefetchService {
+
+    private final FileStorageService fileStorageService;
+    private final AudioMetadataService audioMetadataService;
+    private final MediaBlockCache mediaBlockCache;
+    private final PlaylistRepository playlistRepository;
+    private final ChartRankingRepository chartRankingRepository;
+
+    @Value("${media.prefetch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.prefetch.bytes:393216}")
+    private long prefetchBytes;
+
+    @Value("${media.prefetch.tracks:2}")
+    private int tracksAhead;
+
+    @Value("${media.prefetch.threads:2}")
+    private int threads;
+
+    @Value("${media.prefetch.queue-size:16}")
+    private int queueSize;
+
+    // Quá ngưỡng này số stream thật đang chạy thì không prefetch để nhường băng thông tới S3
+    @Value("${media.prefetch.max-foreground-streams:32}")
+    private int maxForegroundStreams;
+
+    private ThreadPoolExecutor executor;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private volatile List<Long> chartOrder = List.of();
+    private volatile long chartLoadedAt = 0;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skippedCached = new AtomicLong();
+    private final AtomicLong skippedBusy = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "audio-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param context  "playlist:{id}", "chart" hoặc "queue"
+     * @param nextIds  các bài kế tiếp theo thứ tự client đang phát; nếu có thì được ưu tiên hơn thứ tự suy ra ở server
+     */
+    public void onStreamStart(Long songId, String context, List<Long> nextIds) {
+        if (!enabled || !fileStorageService.usesBlockCache()) {
+            return;
+        }
+        List<Long> candidates;
+        try {
+            candidates = (nextIds != null && !nextIds.isEmpty()) ? nextIds : resolveNext(songId, context);
+        } catch (Exception e) {
+            log.debug("Could not resolve prefetch candidates for song {} in {}: {}", songId, context, e.getMessage());
+            return;
+        }
+
+        int scheduled = 0;
+        for (Long candidate : candidates) {
+            if (scheduled >= tracksAhead) {
+                break;
+            }
+            if (candidate == null || candidate.equals(songId)) {
+                continue;
+            }
+            scheduled++;
+            schedule(candidate);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("skippedCached", skippedCached.get());
+        stats.put("skippedBusy", skippedBusy.get());
+        stats.put("rejected", rejected.get());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("running", executor.getActiveCount());
+        return stats;
+    }
+
+    /**
+     * Chỉ xếp bài vào pool rồi trả về ngay; tra metadata và kiểm tra cache đều chạy trên thread prefetch.
+     */
+    private void schedule(Long songId) {
+        if (fileStorageService.getActiveStreams() >= maxForegroundStreams) {
+            skippedBusy.incrementAndGet();
+            return;
+        }
+        if (!inFlight.add(songId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    prefetch(songId);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.debug("Prefetch of song {} failed: {}", songId, e.getMessage());
+                } finally {
+                    inFlight.remove(songId);
+                }
+            });
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(songId);
+            rejected.incrementAndGet();
+        }
+    }
+
+    private void prefetch(Long songId) throws Exception {
+        AudioObjectMetadata metadata = audioMetadataService.getForSong(songId);
+        if (metadata.getFileSize() == null) {
+            return;
+        }
+        String key = metadata.getKey();
+        if (mediaBlockCache.isCached(key, 0) && mediaBlockCache.isCached(key, Math.min(prefetchBytes, metadata.getFileSize()) - 1)) {
+            skippedCached.incrementAndGet();
+            return;
+        }
+        fileStorageService.warmCache(key, metadata.getFileSize(), prefetchBytes);
+        completed.incrementAndGet();
+    }
+
+    private List<Long> resolveNext(Long songId, String context) {
+        if (context == null) {
+            return List.of();
+        }
+        if (context.equals("chart")) {
+            return after(chartOrder(), songId);
+        }
+        if (context.startsWith("playlist:")) {
+            Long playlistId = Long.parseLong(context.substring("playlist:".length()));
+            // Playlist lưu bài hát dạng Set nên không có thứ tự phát cố định; client nên gửi kèm next
+            return after(playlistRepository.findApprovedSongIdsByPlaylistId(playlistId), songId);
+        }
+        return List.of();
+    }
+
+    /**
+     * Thứ tự bảng xếp hạng chỉ đổi mỗi giờ nên được giữ trong bộ nhớ vài phút.
+     */
+    private List<Long> chartOrder() {
+        if (System.currentTimeMillis() - chartLoadedAt > TimeUnit.MINUTES.toMillis(5)) {
+            chartOrder = chartRankingRepository.findSongIdsOrderByRank();
+            chartLoadedAt = System.currentTimeMillis();
+        }
+        return chartOrder;
+    }
+
+    private static List<Long> after(List<Long> order, Long songId) {
+        int position = order.indexOf(songId);
+        if (position < 0 || position == order.size() - 1) {
+            return List.of();
+        }
+        return order.subList(position + 1, order.size());
+    }
+}
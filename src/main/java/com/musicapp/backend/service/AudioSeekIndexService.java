@@ -0,0 +1,206 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.AudioSeekIndex;
+import com.musicapp.backend.repository.AudioSeekIndexRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dựng và tra cứu bảng seek của file audio. Bảng được dựng lúc upload (quét ngay từ file multipart) hoặc ở bước ingest;
+ * file cũ chưa có bảng thì được quét từ storage trên một thread nền sau lần seek đầu tiên, request đó phát từ đầu file.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudioSeekIndexService {
+
+    private final AudioSeekIndexRepository seekIndexRepository;
+    private final FileStorageService fileStorageService;
+
+    private final Map<String, SeekTable> cache = new ConcurrentHashMap<>();
+
+    @Value("${media.seek.resolution-ms:500}")
+    private int resolutionMs;
+
+    @Value("${media.seek.cache-size:5000}")
+    private int maxEntries;
+
+    // File chưa có bảng (đang chờ dựng hoặc dựng lỗi) không được thử lại trong khoảng này
+    @Value("${media.seek.retry-after-ms:60000}")
+    private long retryAfterMs;
+
+    @Value("${media.seek.build-queue-size:100}")
+    private int buildQueueSize;
+
+    // key -> thời điểm được thử dựng lại bảng
+    private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor builder;
+
+    @PostConstruct
+    void init() {
+        builder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(buildQueueSize), runnable -> {
+            Thread thread = new Thread(runnable, "audio-seek-index");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Quét file vừa upload. Lỗi chỉ được ghi log, không làm hỏng việc upload.
+     */
+    public void indexUpload(String key, MultipartFile file) {
+        if (isIndexed(key)) {
+            return;
+        }
+        try (InputStream in = file.getInputStream()) {
+            save(key, AudioFrameScanner.scan(in, resolutionMs));
+        } catch (Exception e) {
+            log.warn("Could not build seek index for {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Như {@link #indexUpload(String, MultipartFile)} cho nội dung đọc từ stream (vd. các chunk đã ghép). Người gọi đóng stream.
+     */
+    public void indexUpload(String key, InputStream in) {
+        if (isIndexed(key)) {
+            return;
+        }
+        try {
+            save(key, AudioFrameScanner.scan(in, resolutionMs));
+        } catch (Exception e) {
+            log.warn("Could not build seek index for {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Lưu bảng seek đã được dựng ở nơi khác trong cùng lượt đọc file (bước ingest), nếu file chưa có bảng.
+     */
+    public void indexScanned(String key, SeekTable table) {
+        if (!isIndexed(key)) {
+            save(key, table);
+        }
+    }
+
+    public int getResolutionMs() {
+        return resolutionMs;
+    }
+
+    /**
+     * @return bảng seek của file, {@link SeekTable#EMPTY} nếu file không hỗ trợ seek theo thời gian hoặc chưa có bảng
+     * (khi đó bảng được dựng ở nền, không quét file trên request)
+     */
+    public SeekTable getTable(String key) {
+        SeekTable table = cache.get(key);
+        if (table != null) {
+            return table;
+        }
+        Long retryAt = unavailableUntil.get(key);
+        if (retryAt != null && retryAt > System.currentTimeMillis()) {
+            return SeekTable.EMPTY;
+        }
+        table = seekIndexRepository.findByFileKey(key)
+                .map(index -> SeekTable.decode(index.getSeekTable()))
+                .orElse(null);
+        if (table == null) {
+            scheduleBuild(key);
+            return SeekTable.EMPTY;
+        }
+        unavailableUntil.remove(key);
+        remember(key, table);
+        return table;
+    }
+
+    // Được gọi sau commit của transaction đã nhả file nên cần transaction riêng
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void delete(String key) {
+        cache.remove(key);
+        unavailableUntil.remove(key);
+        seekIndexRepository.deleteByFileKey(key);
+    }
+
+    /**
+     * Nhiều lượt seek cùng lúc vào một file chưa có bảng chỉ tạo một lần quét: key được đánh dấu trước khi xếp hàng
+     * và chỉ được bỏ đánh dấu khi dựng xong; dựng lỗi thì giữ đánh dấu tới retry-after-ms.
+     */
+    private void scheduleBuild(String key) {
+        long now = System.currentTimeMillis();
+        Long previous = unavailableUntil.get(key);
+        if (previous != null ? !unavailableUntil.replace(key, previous, now + retryAfterMs)
+                : unavailableUntil.putIfAbsent(key, now + retryAfterMs) != null) {
+            return;
+        }
+        if (unavailableUntil.size() > maxEntries) {
+            Iterator<String> it = unavailableUntil.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        try {
+            builder.execute(() -> {
+                try (InputStream in = fileStorageService.openStream(key)) {
+                    save(key, AudioFrameScanner.scan(in, resolutionMs));
+                    unavailableUntil.remove(key);
+                } catch (Exception e) {
+                    log.warn("Could not build seek index for {}: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Hàng đợi đầy: thử lại sau retry-after-ms
+        }
+    }
+
+    /**
+     * Storage lưu theo nội dung nên một upload trùng nội dung dùng lại key (và bảng seek) đã có.
+     */
+    private boolean isIndexed(String key) {
+        return cache.containsKey(key) || seekIndexRepository.existsByFileKey(key);
+    }
+
+    private SeekTable save(String key, SeekTable table) {
+        AudioSeekIndex index = seekIndexRepository.findByFileKey(key)
+                .orElseGet(() -> AudioSeekIndex.builder().fileKey(key).build());
+        index.setDurationMs(table.getDurationMs());
+        index.setEntryCount(table.size());
+        index.setResolutionMs(resolutionMs);
+        index.setSeekTable(table.encode());
+        seekIndexRepository.save(index);
+        remember(key, table);
+        return table;
+    }
+
+    private void remember(String key, SeekTable table) {
+        if (cache.size() >= maxEntries) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(key, table);
+    }
+}
@@ -0,0 +1,87 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.AudioWaveform;
+import com.musicapp.backend.exception.ResourceNotFoundException;
+import com.musicapp.backend.repository.AudioWaveformRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Waveform dựng sẵn ở bước ingest ({@link AudioIngestService}) để web player không phải tải và giải mã cả bài
+ * chỉ để vẽ waveform. Lưu theo key của object audio nên bài hát và yêu cầu upload dùng chung một bản.
+ */
+@Service
+@RequiredArgsConstructor
+public class AudioWaveformService {
+
+    /**
+     * @param peaks các cặp (min, max) 8 bit có dấu
+     * @param etag  gắn với nội dung file audio, đổi khi file bị thay
+     */
+    public record Waveform(byte[] peaks, String etag) {
+    }
+
+    private final AudioWaveformRepository waveformRepository;
+    private final AudioMetadataService audioMetadataService;
+
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+
+    @Value("${media.waveform.peaks:1000}")
+    private int peaks;
+
+    @Value("${media.waveform.cache-size:5000}")
+    private int maxEntries;
+
+    public int getPeaks() {
+        return peaks;
+    }
+
+    public void save(String key, byte[] encoded) {
+        AudioWaveform waveform = waveformRepository.findByFileKey(key)
+                .orElseGet(() -> AudioWaveform.builder().fileKey(key).build());
+        waveform.setPeakCount(encoded.length / 2);
+        waveform.setPeaks(encoded);
+        waveformRepository.save(waveform);
+        remember(key, encoded);
+    }
+
+    public Waveform getForSong(Long songId) {
+        AudioObjectMetadata metadata = audioMetadataService.getForSong(songId);
+        String key = metadata.getKey();
+        byte[] encoded = cache.get(key);
+        if (encoded == null) {
+            encoded = waveformRepository.findByFileKey(key)
+                    .map(AudioWaveform::getPeaks)
+                    .orElseThrow(() -> new ResourceNotFoundException("Waveform is not available for song with id: " + songId));
+            remember(key, encoded);
+        }
+        String version = metadata.getChecksum() != null ? metadata.getChecksum() : metadata.getEtag();
+        String etag = version != null ? "\"wf-" + version.replace("\"", "") + "-" + encoded.length / 2 + "\"" : null;
+        return new Waveform(encoded, etag);
+    }
+
+    // Được gọi sau commit của transaction đã nhả file nên cần transaction riêng
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void delete(String key) {
+        cache.remove(key);
+        waveformRepository.deleteByFileKey(key);
+    }
+
+    private void remember(String key, byte[] encoded) {
+        if (cache.size() >= maxEntries) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(key, encoded);
+    }
+}
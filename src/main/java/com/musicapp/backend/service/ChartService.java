@@ -9,7 +9,6 @@ import com.musicapp.backend.entity.Song;
 import com.musicapp.backend.entity.User;
 import com.musicapp.backend.mapper.SongMapper;
 import com.musicapp.backend.repository.ChartRankingRepository;
-import com.musicapp.backend.repository.ListenHistoryRepository;
 import com.musicapp.backend.repository.LikeRepository;
 import com.musicapp.backend.repository.SongRepository;
 import lombok.RequiredArgsConstructor;
@@ -33,7 +32,7 @@ import java.util.stream.Collectors;
 public class ChartService {
 
     private final SongRepository songRepository;
-    private final ListenHistoryRepository listenHistoryRepository;
+    private final ListenRollupService listenRollupService;
     private final LikeRepository likeRepository;
     private final ChartRankingRepository chartRankingRepository;
     private final SongMapper songMapper;
@@ -67,9 +66,14 @@ public class ChartService {
         Map<Long, Integer> previousRanks = chartRankingRepository.findAll().stream()
                 .collect(Collectors.toMap(r -> r.getSong().getId(), ChartRanking::getCurrentRank));
 
+        // Hai truy vấn trên bảng rollup cho mọi bài thay vì hai lần đếm listen_history cho từng bài
+        Map<Long, Long> listens24h = listenRollupService.countListensSinceBySong(now.minusHours(24));
+        Map<Long, Long> listens7d = listenRollupService.countListensSinceBySong(now.minusDays(7));
+
         List<ChartRanking> newRankings = allApprovedSongs.stream()
                 .map(song -> {
-                    double score = calculateTrendingScore(song, now);
+                    double score = calculateTrendingScore(song, now,
+                            listens24h.getOrDefault(song.getId(), 0L), listens7d.getOrDefault(song.getId(), 0L));
                     ChartRanking ranking = new ChartRanking();
                     ranking.setSong(song);
                     ranking.setScore(score);
@@ -92,9 +96,7 @@ public class ChartService {
         log.info("Finished chart calculation job. Processed and saved top {} songs.", Math.min(100, newRankings.size()));
     }
 
-    private double calculateTrendingScore(Song song, LocalDateTime now) {
-        long listens24h = listenHistoryRepository.countListensForSongSince(song.getId(), now.minusHours(24));
-        long listens7d = listenHistoryRepository.countListensForSongSince(song.getId(), now.minusDays(7));
+    private double calculateTrendingScore(Song song, LocalDateTime now, long listens24h, long listens7d) {
         long totalLikes = likeRepository.countByLikeableIdAndLikeableType(song.getId(), Like.LikeableType.SONG);
 
         double newSongBonus = 0;
@@ -2,112 +2,462 @@
 
 package com.musicapp.backend.service;
 
+import com.musicapp.backend.entity.MediaObject;
 import com.musicapp.backend.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Service
+@Slf4j
 public class FileStorageService {
 
     @Autowired
-    private S3Client s3Client;
+    private StorageBackend storageBackend;
 
-    @Value("${aws.s3.bucketName}")
-    private String bucketName;
+    @Autowired
+    private MediaBlockCache mediaBlockCache;
+
+    @Autowired
+    private MediaObjectService mediaObjectService;
+
+    @Autowired
+    private StreamBufferPool streamBufferPool;
+
+    @Autowired
+    private MediaGarbageCollector mediaGarbageCollector;
 
-    @Value("${aws.s3.region}")
-    private String region;
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Value("${media.upload.stream-memory-threshold:1048576}")
+    private long streamMemoryThreshold;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
 
     public String storeFile(MultipartFile file, String subfolder) {
-        String originalFileName = StringUtils.cleanPath(Objects.requireNonNull(file.getOriginalFilename()));
+        return storeFileWithMetadata(file, subfolder).getPath();
+    }
+
+    /**
+     * Upload file lên storage và trả về metadata (kích thước, content type, ETag, SHA-256) được ghi nhận ngay lúc upload,
+     * để luồng streaming không cần gọi HEAD tới storage nữa.
+     */
+    public StoredFile storeFileWithMetadata(MultipartFile file, String subfolder) {
+        return storeStream(file, file.getSize(), file.getOriginalFilename(), file.getContentType(), subfolder);
+    }
+
+    /**
+     * Lưu theo nội dung: key là SHA-256 của file nên cùng một nội dung chỉ được ghi một lần, các lần upload sau
+     * chỉ tăng số tham chiếu trong media_objects và dùng chung key (do đó dùng chung block cache, bảng seek...).
+     * Nguồn được đọc hai lần: lần đầu để băm (file tạm cục bộ của multipart hoặc các chunk staging),
+     * lần hai để upload nếu nội dung chưa có.
+     * <p>
+     * Tham chiếu được ghi trong transaction riêng; nếu transaction của người gọi rollback sau đó thì tham chiếu
+     * được trả lại, vì không bản ghi nào còn trỏ tới file.
+     */
+    public StoredFile storeStream(InputStreamSource source, long size, String fileName, String contentType, String subfolder) {
+        String originalFileName = StringUtils.cleanPath(Objects.requireNonNull(fileName));
 
         if (originalFileName.contains("..")) {
             throw new BadRequestException("Sorry! Filename contains invalid path sequence " + originalFileName);
         }
 
         try {
-            String fileExtension = "";
-            int lastDotIndex = originalFileName.lastIndexOf(".");
-            if (lastDotIndex >= 0) {
-                fileExtension = originalFileName.substring(lastDotIndex);
+            String checksum;
+            try (InputStream in = source.getInputStream()) {
+                checksum = sha256(in);
+            }
+            Optional<MediaObject> existing = mediaObjectService.retain(checksum);
+            if (existing.isPresent()) {
+                return releaseOnRollback(toStoredFile(existing.get()));
             }
-            String newFileName = UUID.randomUUID().toString() + fileExtension;
-            String key = subfolder + "/" + newFileName;
 
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .contentType(file.getContentType()) // Thêm content type khi upload
-                    .build();
+            String key = subfolder + "/" + checksum + extensionOf(originalFileName);
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String etag;
+            try (InputStream in = new DigestInputStream(source.getInputStream(), digest)) {
+                etag = storageBackend.put(key, in, size, contentType);
+            }
+            if (!HexFormat.of().formatHex(digest.digest()).equals(checksum)) {
+                storageBackend.delete(key);
+                throw new IOException("Content of " + originalFileName + " changed while it was being stored");
+            }
+            StoredFile stored = releaseOnRollback(register(checksum, key, size, contentType, etag));
+            createDerivatives(stored, key, source);
+            return stored;
+
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+        }
+    }
+
+    /**
+     * Lưu nội dung chỉ đọc được một lần (part của request multipart đang được đọc dần), chưa biết trước kích thước.
+     * Nội dung tới stream-memory-threshold byte được giữ trong bộ nhớ rồi lưu như {@link #storeStream}; lớn hơn thì
+     * vừa upload lên một key tạm vừa băm, sau đó đổi sang key theo nội dung ngay trên storage, hoặc bỏ bản tạm
+     * nếu nội dung đã có. Key tạm sót lại khi lỗi nằm trong prefix của GC nên sẽ được dọn.
+     *
+     * @throws BadRequestException nếu nội dung rỗng hoặc vượt quá maxSize byte
+     */
+    public StoredFile storeUpload(InputStream data, String fileName, String contentType, String subfolder, long maxSize) {
+        String originalFileName = StringUtils.cleanPath(Objects.requireNonNull(fileName));
+        if (originalFileName.contains("..")) {
+            throw new BadRequestException("Sorry! Filename contains invalid path sequence " + originalFileName);
+        }
+
+        String tempKey = null;
+        try {
+            byte[] head = new byte[(int) Math.min(streamMemoryThreshold, maxSize + 1)];
+            int headLength = StreamBufferPool.readFully(data, head, head.length);
+            if (headLength == 0) {
+                throw new BadRequestException("File " + originalFileName + " is empty");
+            }
+            if (headLength < head.length) {
+                return storeStream(() -> new ByteArrayInputStream(head, 0, headLength), headLength, originalFileName, contentType, subfolder);
+            }
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            LimitedInputStream in = new LimitedInputStream(
+                    new DigestInputStream(new SequenceInputStream(new ByteArrayInputStream(head), data), digest), maxSize);
+            String extension = extensionOf(originalFileName);
+            tempKey = subfolder + "/incoming/" + UUID.randomUUID() + extension;
+            String etag = storageBackend.put(tempKey, in, -1, contentType);
+            long size = in.getCount();
+            String checksum = HexFormat.of().formatHex(digest.digest());
 
-            return "/uploads/" + key;
+            Optional<MediaObject> existing = mediaObjectService.retain(checksum);
+            if (existing.isPresent()) {
+                storageBackend.delete(tempKey);
+                return releaseOnRollback(toStoredFile(existing.get()));
+            }
+            String key = subfolder + "/" + checksum + extension;
+            etag = storageBackend.move(tempKey, key);
+            tempKey = null;
+            StoredFile stored = releaseOnRollback(register(checksum, key, size, contentType, etag));
+            createDerivatives(stored, key, () -> storageBackend.openStream(key));
+            return stored;
 
-        } catch (IOException ex) {
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            if (ex instanceof UploadTooLargeException) {
+                throw new BadRequestException("File " + originalFileName + " exceeds the maximum size of " + maxSize + " bytes");
+            }
             throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+        } finally {
+            if (tempKey != null) {
+                deleteQuietly(tempKey);
+            }
+        }
+    }
+
+    /**
+     * Thêm một tham chiếu tới file đã lưu cho bản ghi mới trỏ cùng file với bản ghi khác (vd. bài hát được tạo
+     * từ yêu cầu được duyệt), để xóa một trong hai bản ghi không xóa mất file của bản ghi còn lại.
+     */
+    public void retainFile(String fileUrl) {
+        if (fileUrl == null || !fileUrl.contains("/uploads/")) {
+            return;
+        }
+        if (mediaObjectService.retainKey(toKey(fileUrl))) {
+            releaseOnRollback(fileUrl);
+        }
+    }
+
+    /**
+     * Bỏ một tham chiếu tới file; khi không còn ai dùng, object được xếp vào hàng đợi để
+     * {@link MediaGarbageCollector} xóa theo lô ở nền.
+     *
+     * @return true nếu object không còn được tham chiếu và sẽ bị xóa
+     */
+    public boolean deleteFile(String fileUrl) {
+        if (fileUrl == null || fileUrl.isBlank()) {
+            return false;
+        }
+
+        try {
+            String key = toKey(fileUrl);
+            if (!mediaObjectService.release(key)) {
+                return false;
+            }
+            mediaBlockCache.evict(key);
+            mediaGarbageCollector.enqueueDelete(key);
+            if (imageDerivativeService.isImageKey(key)) {
+                imageDerivativeService.variantKeysOf(key).forEach(mediaGarbageCollector::enqueueDelete);
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Could not release file {}: {}", fileUrl, e.getMessage());
+            return false;
         }
     }
 
-    public void deleteFile(String fileUrl) {
+    /**
+     * Bỏ tham chiếu tới file cũ của một bản ghi vừa được trỏ sang file khác (hoặc bị xóa). Trong transaction thì chỉ
+     * làm sau commit: nếu lưu file thay thế lỗi hay transaction rollback, bản ghi vẫn trỏ tới file cũ nên file cũ
+     * phải còn nguyên.
+     *
+     * @param onDeleted nhận key của object khi object không còn được tham chiếu, để dọn dữ liệu đi kèm key
+     *                  (chạy sau commit nên phải tự mở transaction mới nếu cần)
+     */
+    public void deleteFileAfterCommit(String fileUrl, Consumer<String> onDeleted) {
         if (fileUrl == null || fileUrl.isBlank()) {
             return;
         }
+        Runnable release = () -> {
+            if (deleteFile(fileUrl) && onDeleted != null) {
+                onDeleted.accept(toKey(fileUrl));
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            release.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                release.run();
+            }
+        });
+    }
+
+    public void deleteFileAfterCommit(String fileUrl) {
+        deleteFileAfterCommit(fileUrl, null);
+    }
+
+    /**
+     * Màu chủ đạo của ảnh đã lưu (tính lúc upload), null nếu không phải ảnh trong storage của mình hoặc ảnh
+     * được upload trước khi có bước tạo bản thu nhỏ.
+     */
+    public String dominantColorOf(String fileUrl) {
+        if (fileUrl == null || !fileUrl.contains("/uploads/")) {
+            return null;
+        }
+        return mediaObjectService.findDominantColor(toKey(fileUrl)).orElse(null);
+    }
+
+    public String toKey(String fileUrl) {
+        return fileUrl.substring(fileUrl.indexOf("/uploads/") + 9);
+    }
+
+    public StorageBackend.ObjectStat getObjectAttributes(String key) {
+        try {
+            return storageBackend.stat(key);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read attributes of " + key, e);
+        }
+    }
+
+    /**
+     * Mở stream đọc toàn bộ object, dùng cho các tác vụ xử lý nền (quét frame, ...). Người gọi phải đóng stream.
+     */
+    public InputStream openStream(String key) throws IOException {
+        return storageBackend.openStream(key);
+    }
+
+    /**
+     * Ghi đoạn byte [start, end] của object vào outputStream. Với backend ở xa (S3) thì ưu tiên đọc
+     * từ cache trên đĩa và chỉ gọi S3 cho các block chưa được cache.
+     */
+    public void streamRange(String key, long fileSize, long start, long end, OutputStream outputStream) {
+        activeStreams.incrementAndGet();
+        try {
+            if (!usesBlockCache()) {
+                storageBackend.copyRange(key, start, end, outputStream);
+                return;
+            }
+            mediaBlockCache.copyRange(key, fileSize, start, end, outputStream, originFor(key));
+        } catch (IOException e) {
+            throw new RuntimeException("Error streaming object " + key, e);
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    /**
+     * Nạp trước length byte đầu của object vào cache trên đĩa. Không làm gì nếu không dùng cache.
+     */
+    public void warmCache(String key, long fileSize, long length) throws IOException {
+        if (!usesBlockCache() || fileSize <= 0) {
+            return;
+        }
+        mediaBlockCache.copyRange(key, fileSize, 0, Math.min(length, fileSize) - 1, OutputStream.nullOutputStream(), originFor(key));
+    }
+
+    /**
+     * Backend cục bộ đã đọc thẳng từ đĩa nên không đi qua cache block.
+     */
+    public boolean usesBlockCache() {
+        return mediaBlockCache.isEnabled() && storageBackend.isRemote();
+    }
+
+    /**
+     * Số request đang stream dữ liệu thật tới client (không tính prefetch).
+     */
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    private MediaBlockCache.OriginReader originFor(String key) {
+        return (from, to) -> storageBackend.openRange(key, from, to);
+    }
 
+    /**
+     * Ghi nhận object vừa ghi vào media_objects. Nếu một upload cùng nội dung vừa đăng ký trước thì dùng
+     * object của nó và bỏ bản của mình khi khác key.
+     */
+    private StoredFile register(String checksum, String key, long size, String contentType, String etag) throws IOException {
         try {
-            String key = fileUrl.substring(fileUrl.indexOf("/uploads/") + 9);
+            return toStoredFile(mediaObjectService.register(checksum, key, size, contentType, etag));
+        } catch (DataIntegrityViolationException e) {
+            MediaObject winner = mediaObjectService.retain(checksum)
+                    .orElseThrow(() -> new IOException("Could not register stored object " + key, e));
+            if (!winner.getFileKey().equals(key)) {
+                storageBackend.delete(key);
+            }
+            return toStoredFile(winner);
+        }
+    }
+
+    private StoredFile releaseOnRollback(StoredFile stored) {
+        releaseOnRollback(stored.getPath());
+        return stored;
+    }
+
+    /**
+     * Trả lại tham chiếu vừa thêm (đã commit trong transaction riêng) nếu transaction đang chạy rollback.
+     */
+    private void releaseOnRollback(String fileUrl) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteFile(fileUrl);
+                }
+            }
+        });
+    }
 
-            DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(key)
-                    .build();
+    /**
+     * Ảnh mới (chưa có object cùng nội dung) thì tạo bản thu nhỏ và lưu màu chủ đạo; ảnh trùng nội dung đã có sẵn.
+     */
+    private void createDerivatives(StoredFile stored, String key, InputStreamSource source) {
+        if (!stored.getKey().equals(key) || !imageDerivativeService.isImageKey(key)) {
+            return;
+        }
+        String color = imageDerivativeService.generate(key, source);
+        if (color != null) {
+            mediaObjectService.setDominantColor(key, color);
+        }
+    }
 
-            s3Client.deleteObject(deleteObjectRequest);
+    private void deleteQuietly(String key) {
+        try {
+            storageBackend.delete(key);
         } catch (Exception e) {
-            System.err.println("Could not delete file from S3: " + fileUrl + ". Reason: " + e.getMessage());
+            log.warn("Could not delete temporary object {}: {}", key, e.getMessage());
         }
     }
 
-    public GetObjectResponse getS3ObjectAttributes(String key) {
-        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .build();
-        HeadObjectResponse headObjectResponse = s3Client.headObject(headObjectRequest);
+    private static String extensionOf(String fileName) {
+        int lastDotIndex = fileName.lastIndexOf(".");
+        return lastDotIndex >= 0 ? fileName.substring(lastDotIndex).toLowerCase(Locale.ROOT) : "";
+    }
 
-        return GetObjectResponse.builder()
-                .contentLength(headObjectResponse.contentLength())
-                .contentType(headObjectResponse.contentType())
+    private static StoredFile toStoredFile(MediaObject object) {
+        return StoredFile.builder()
+                .path("/uploads/" + object.getFileKey())
+                .key(object.getFileKey())
+                .size(object.getSize())
+                .contentType(object.getContentType())
+                .etag(object.getEtag())
+                .checksum(object.getSha256())
                 .build();
     }
 
-    public void getS3ObjectRange(String key, String range, OutputStream outputStream) {
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .range(range)
-                .build();
+    private String sha256(InputStream in) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = streamBufferPool.acquire(Long.MAX_VALUE);
+        try {
+            byte[] array = buffer.array();
+            int read;
+            while ((read = in.read(array)) != -1) {
+                digest.update(array, 0, read);
+            }
+        } finally {
+            streamBufferPool.release(buffer);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-        try (ResponseInputStream<GetObjectResponse> s3is = s3Client.getObject(getObjectRequest)) {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = s3is.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
+    private static final class UploadTooLargeException extends IOException {
+        UploadTooLargeException() {
+            super("Upload exceeds the size limit");
+        }
+    }
+
+    /**
+     * Đếm số byte đã đọc và dừng upload (ném lỗi) ngay khi vượt quá giới hạn.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long maxSize;
+        private long count;
+
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                advance(read);
+            }
+            return read;
+        }
+
+        private void advance(int read) throws UploadTooLargeException {
+            count += read;
+            if (count > maxSize) {
+                throw new UploadTooLargeException();
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error streaming S3 object", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,292 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bản thu nhỏ của ảnh upload (bìa bài hát, playlist, avatar ca sĩ / người dùng) để các màn danh sách không phải
+ * tải ảnh gốc nhiều MB. Mỗi kích thước trong media.image.sizes là một JPEG vừa khung size x size, lưu cạnh ảnh gốc
+ * theo key suy ra được từ key gốc:
+ * <pre>
+ *     /uploads/images/songs/&lt;sha&gt;.png  ->  /uploads/derived/256/images/songs/&lt;sha&gt;.png.jpg
+ * </pre>
+ * Nên không cần bảng tra; khi bản thu nhỏ không có (ảnh cũ, định dạng ImageIO không đọc được như WebP) thì
+ * /uploads/derived/... trả về ảnh gốc. Việc giải mã chạy ngay trong request upload nhưng giới hạn số ảnh được
+ * giải mã đồng thời, vì một ảnh lớn chiếm hàng chục MB heap khi giải mã.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDerivativeService {
+
+    public static final String DERIVED_PREFIX = "derived/";
+    private static final String UPLOADS_SEGMENT = "/uploads/";
+    private static final String IMAGES_PREFIX = "images/";
+    private static final String VARIANT_EXTENSION = ".jpg";
+
+    private final StorageBackend storageBackend;
+
+    @Value("${media.image.sizes:64,256,640}")
+    private int[] sizes;
+
+    @Value("${media.image.quality:0.85}")
+    private float quality;
+
+    @Value("${media.image.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${media.image.wait-ms:10000}")
+    private long waitMs;
+
+    // Ảnh có số điểm ảnh lớn hơn bị bỏ qua trước khi giải mã (chống ảnh "bom giải nén")
+    @Value("${media.image.max-pixels:40000000}")
+    private long maxPixels;
+
+    private Semaphore permits;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skippedBusy = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        sizes = Arrays.stream(sizes).filter(size -> size > 0).distinct().sorted().toArray();
+        permits = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    public boolean isImageKey(String key) {
+        return key != null && key.startsWith(IMAGES_PREFIX);
+    }
+
+    /**
+     * Giải mã ảnh gốc vừa lưu, ghi các bản thu nhỏ và tính màu chủ đạo. Lỗi chỉ được ghi log, không làm hỏng upload.
+     *
+     * @return màu chủ đạo dạng #rrggbb, null nếu không giải mã được ảnh
+     */
+    public String generate(String key, InputStreamSource source) {
+        try {
+            if (!permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                skippedBusy.incrementAndGet();
+                log.warn("Too many images being processed, skipped thumbnails for {}", key);
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            BufferedImage image;
+            try (InputStream in = source.getInputStream()) {
+                image = decode(in);
+            }
+            if (image == null) {
+                log.debug("No thumbnails for {}: format not readable", key);
+                return null;
+            }
+            // Thu nhỏ dần từ kích thước lớn tới nhỏ, mỗi bản làm nguồn cho bản kế tiếp
+            BufferedImage current = image;
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                current = fit(current, sizes[i]);
+                byte[] jpeg = encodeJpeg(current);
+                storageBackend.put(variantKey(key, sizes[i]), new ByteArrayInputStream(jpeg), jpeg.length, "image/jpeg");
+            }
+            generated.incrementAndGet();
+            return dominantColor(sizes.length > 0 ? current : fit(image, 64));
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("Could not create thumbnails for {}: {}", key, e.getMessage());
+            return null;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * URL bản thu nhỏ theo kích thước cho một đường dẫn ảnh đã lưu; null nếu ảnh không nằm trong storage của mình
+     * (vd. avatar Google).
+     */
+    public Map<Integer, String> variantsOf(String path) {
+        if (path == null) {
+            return null;
+        }
+        int index = path.indexOf(UPLOADS_SEGMENT);
+        if (index < 0) {
+            return null;
+        }
+        String key = path.substring(index + UPLOADS_SEGMENT.length());
+        if (!isImageKey(key)) {
+            return null;
+        }
+        Map<Integer, String> variants = new LinkedHashMap<>();
+        for (int size : sizes) {
+            variants.put(size, UPLOADS_SEGMENT + variantKey(key, size));
+        }
+        return variants;
+    }
+
+    public List<String> variantKeysOf(String key) {
+        List<String> keys = new ArrayList<>(sizes.length);
+        for (int size : sizes) {
+            keys.add(variantKey(key, size));
+        }
+        return keys;
+    }
+
+    /**
+     * derived/&lt;size&gt;/&lt;key gốc&gt;.jpg -> key gốc; null nếu không phải key của bản thu nhỏ.
+     */
+    public static String originalKeyOf(String key) {
+        if (key == null || !key.startsWith(DERIVED_PREFIX) || !key.endsWith(VARIANT_EXTENSION)) {
+            return null;
+        }
+        int slash = key.indexOf('/', DERIVED_PREFIX.length());
+        if (slash < 0) {
+            return null;
+        }
+        return key.substring(slash + 1, key.length() - VARIANT_EXTENSION.length());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sizes", sizes);
+        stats.put("generated", generated.get());
+        stats.put("failed", failed.get());
+        stats.put("skippedBusy", skippedBusy.get());
+        stats.put("decoding", maxConcurrent - permits.availablePermits());
+        return stats;
+    }
+
+    private static String variantKey(String key, int size) {
+        return DERIVED_PREFIX + size + "/" + key + VARIANT_EXTENSION;
+    }
+
+    private BufferedImage decode(InputStream in) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException("Image has " + pixels + " pixels, limit is " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Thu nhỏ để vừa khung size x size (giữ tỉ lệ, không phóng to), nền trắng cho ảnh có alpha vì JPEG không có kênh alpha.
+     * Giảm một nửa mỗi bước cho tới khi gần kích thước đích để nội suy bilinear không bị răng cưa.
+     */
+    private static BufferedImage fit(BufferedImage source, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = Math.min(1.0, (double) size / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = source;
+        do {
+            int stepWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int stepHeight = Math.max(targetHeight, current.getHeight() / 2);
+            if (current != source && stepWidth == current.getWidth() && stepHeight == current.getHeight()) {
+                break;
+            }
+            BufferedImage next = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, stepWidth, stepHeight);
+                graphics.drawImage(current, 0, 0, stepWidth, stepHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (current.getWidth() > targetWidth || current.getHeight() > targetHeight);
+        return current;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Màu chiếm nhiều nhất sau khi lượng tử hóa 4 bit mỗi kênh, ưu tiên màu có độ bão hòa cao để nền trắng/đen
+     * hay xám không lấn át màu chính của ảnh. Trả về trung bình thật của các điểm ảnh trong ô màu thắng.
+     */
+    static String dominantColor(BufferedImage image) {
+        double[] weights = new double[4096];
+        long[][] sums = new long[4096][3];
+        int[] counts = new int[4096];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                int r = (rgb >> 16) & 0xFF;
+                int g = (rgb >> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                int max = Math.max(r, Math.max(g, b));
+                int min = Math.min(r, Math.min(g, b));
+                double saturation = max == 0 ? 0.0 : (double) (max - min) / max;
+                int bin = ((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4);
+                weights[bin] += 0.1 + saturation;
+                sums[bin][0] += r;
+                sums[bin][1] += g;
+                sums[bin][2] += b;
+                counts[bin]++;
+            }
+        }
+        int best = 0;
+        for (int bin = 1; bin < weights.length; bin++) {
+            if (weights[bin] > weights[best]) {
+                best = bin;
+            }
+        }
+        if (counts[best] == 0) {
+            return null;
+        }
+        return String.format("#%02x%02x%02x", sums[best][0] / counts[best], sums[best][1] / counts[best], sums[best][2] / counts[best]);
+    }
+}
@@ -0,0 +1,343 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Đếm lượt nghe trong bộ nhớ rồi ghi xuống DB theo lô, thay cho một UPDATE songs + một INSERT listen_history
+ * ở mỗi lượt nghe (bài hot biến thành tranh chấp khóa trên cùng một dòng).
+ * <p>
+ * Mỗi bài hát / playlist có một {@link LongAdder}; mỗi lần flush cộng dồn các bộ đếm bằng một câu
+ * UPDATE ... CASE cho mỗi lô id và chèn lịch sử nghe bằng JDBC batch. Flush chạy mỗi flush-interval-ms hoặc
+ * sớm hơn khi số lượt chờ ghi đạt flush-threshold, và khi tắt ứng dụng. Không có nhật ký, process chết đột ngột
+ * sẽ mất tối đa số lượt nghe của một chu kỳ (không quá flush-threshold lượt cộng thêm những lượt đến trong lúc đang flush).
+ * Khi DB lỗi, số đếm được cộng trả lại để lần sau ghi tiếp; lịch sử nghe chờ ghi bị giới hạn ở max-pending-history.
+ * <p>
+ * Khi bật {@link ListenEventJournal}, mỗi lượt nghe còn được append vào nhật ký trên đĩa trước khi trả về (không chờ
+ * force), nên process chết giữa hai lần flush không làm mất lượt nào: lúc khởi động các segment còn lại được đọc lại
+ * và flush. Mất điện thì mất tối đa các lượt của khoảng sync-interval-ms cuối cùng của nhật ký.
+ * Mỗi lần flush ghi cả ảnh chụp trong một transaction rồi mới xóa các segment mà ảnh chụp đó phủ; nếu chết đúng
+ * giữa commit và lúc xóa thì các lượt của segment đó bị đếm hai lần (at-least-once).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ListenCountBuffer {
+
+    // userId null = người nghe chưa đăng nhập
+    private record Listen(long songId, Long userId, long at) {
+    }
+
+    private record Snapshot(Map<Long, Long> songs, Map<Long, Long> playlists, List<Listen> history, long journalMark) {
+
+        boolean isEmpty() {
+            return songs.isEmpty() && playlists.isEmpty() && history.isEmpty();
+        }
+    }
+
+    private static final int UPDATE_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ListenEventJournal journal;
+
+    @Value("${media.listens.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.listens.flush-threshold:5000}")
+    private int flushThreshold;
+
+    @Value("${media.listens.history-batch-size:1000}")
+    private int historyBatchSize;
+
+    @Value("${media.listens.max-pending-history:200000}")
+    private int maxPendingHistory;
+
+    // Không xóa phần tử khi flush: LongAdder.sumThenReset lấy từng ô bằng getAndSet nên lượt tăng đồng thời không bị mất,
+    // còn xóa thì một luồng đang giữ bộ đếm cũ sẽ tăng vào bộ đếm đã bị bỏ. Số phần tử tối đa bằng số bài/playlist.
+    private final Map<Long, LongAdder> songCounts = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder> playlistCounts = new ConcurrentHashMap<>();
+    private final Queue<Listen> history = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingHistory = new AtomicInteger();
+    private final AtomicInteger pendingSinceFlush = new AtomicInteger();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Ghi nhận lượt nghe giữ read lock (append nhật ký + tăng bộ đếm là một bước); flush giữ write lock trong lúc
+    // lấy ảnh chụp và xoay segment, nên một lượt nghe hoặc nằm trọn trong ảnh chụp hoặc nằm trọn ở segment mới
+    private final ReentrantReadWriteLock recordLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ExecutorService executor;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong songListens = new AtomicLong();
+    private final AtomicLong playlistListens = new AtomicLong();
+    private final AtomicLong historyWritten = new AtomicLong();
+    private final AtomicLong historyDropped = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "listen-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            recover();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        flush();
+        log.info("Listen counter flushed on shutdown ({} history rows pending).", pendingHistory.get());
+    }
+
+    public void recordSongListen(Long songId, Long userId) {
+        if (!enabled) {
+            writeDirectly(songId, userId);
+            return;
+        }
+        long at = System.currentTimeMillis();
+        Lock lock = recordLock.readLock();
+        lock.lock();
+        try {
+            if (journal.isEnabled()) {
+                journal.append(ListenEventJournal.SONG_LISTEN, songId, userId, at);
+            }
+            bufferSongListen(songId, userId, at);
+        } finally {
+            lock.unlock();
+        }
+        songListens.incrementAndGet();
+        onRecorded();
+    }
+
+    public void recordPlaylistListen(Long playlistId) {
+        if (!enabled) {
+            jdbcTemplate.update("UPDATE playlists SET listen_count = listen_count + 1 WHERE id = ?", playlistId);
+            return;
+        }
+        Lock lock = recordLock.readLock();
+        lock.lock();
+        try {
+            if (journal.isEnabled()) {
+                journal.append(ListenEventJournal.PLAYLIST_LISTEN, playlistId, null, System.currentTimeMillis());
+            }
+            playlistCounts.computeIfAbsent(playlistId, id -> new LongAdder()).increment();
+        } finally {
+            lock.unlock();
+        }
+        playlistListens.incrementAndGet();
+        onRecorded();
+    }
+
+    @Scheduled(fixedDelayString = "${media.listens.flush-interval-ms:5000}", initialDelay = 5000)
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * Ghi mọi thứ đang chờ xuống DB trong một transaction. Chỉ một lượt flush chạy tại một thời điểm.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            pendingSinceFlush.set(0);
+            Snapshot snapshot;
+            Lock lock = recordLock.writeLock();
+            lock.lock();
+            try {
+                snapshot = drain();
+            } finally {
+                lock.unlock();
+            }
+            if (!snapshot.isEmpty()) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(snapshot));
+                } catch (RuntimeException e) {
+                    // Cộng trả lại để lần flush sau ghi tiếp; các segment nhật ký được giữ nguyên
+                    failedFlushes.incrementAndGet();
+                    restore(snapshot);
+                    log.warn("Could not flush listen counts ({} songs, {} playlists, {} history rows): {}",
+                            snapshot.songs().size(), snapshot.playlists().size(), snapshot.history().size(), e.getMessage());
+                    return;
+                }
+                historyWritten.addAndGet(snapshot.history().size());
+            }
+            journal.compact(snapshot.journalMark());
+            flushes.incrementAndGet();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("songListens", songListens.get());
+        stats.put("playlistListens", playlistListens.get());
+        stats.put("pendingHistory", pendingHistory.get());
+        stats.put("historyWritten", historyWritten.get());
+        stats.put("historyDropped", historyDropped.get());
+        stats.put("flushes", flushes.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("recoveredFromJournal", recovered.get());
+        stats.put("journal", journal.getStats());
+        return stats;
+    }
+
+    private void onRecorded() {
+        if (pendingSinceFlush.incrementAndGet() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void writeDirectly(Long songId, Long userId) {
+        jdbcTemplate.update("UPDATE songs SET listen_count = listen_count + 1 WHERE id = ?", songId);
+        jdbcTemplate.update("INSERT INTO listen_history (song_id, user_id, listen_timestamp) VALUES (?, ?, ?)",
+                songId, userId, new Timestamp(System.currentTimeMillis()));
+    }
+
+    private void bufferSongListen(long songId, Long userId, long at) {
+        songCounts.computeIfAbsent(songId, id -> new LongAdder()).increment();
+        if (pendingHistory.incrementAndGet() > maxPendingHistory) {
+            // DB không theo kịp (hoặc đang lỗi): giữ bộ đếm, bỏ dòng lịch sử để bộ nhớ có giới hạn
+            pendingHistory.decrementAndGet();
+            historyDropped.incrementAndGet();
+        } else {
+            history.add(new Listen(songId, userId, at));
+        }
+    }
+
+    /**
+     * Đọc lại các lượt nghe còn trong nhật ký từ lần chạy trước và ghi chúng xuống DB ngay.
+     */
+    private void recover() {
+        try {
+            journal.replay(event -> {
+                if (event.type() == ListenEventJournal.SONG_LISTEN) {
+                    bufferSongListen(event.id(), event.userId(), event.timestamp());
+                } else {
+                    playlistCounts.computeIfAbsent(event.id(), id -> new LongAdder()).increment();
+                }
+                recovered.incrementAndGet();
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not replay the listen journal: {}", e.getMessage());
+            return;
+        }
+        if (recovered.get() > 0) {
+            log.info("Recovered {} listens from the journal.", recovered.get());
+            flush();
+        }
+    }
+
+    /**
+     * Lấy và xóa mọi thứ đang chờ. Gọi khi giữ write lock của recordLock.
+     */
+    private Snapshot drain() {
+        Map<Long, Long> songs = sumThenReset(songCounts);
+        Map<Long, Long> playlists = sumThenReset(playlistCounts);
+        List<Listen> listens = new ArrayList<>();
+        Listen listen;
+        while ((listen = history.poll()) != null) {
+            listens.add(listen);
+        }
+        pendingHistory.addAndGet(-listens.size());
+        return new Snapshot(songs, playlists, listens, journal.rotate());
+    }
+
+    private static Map<Long, Long> sumThenReset(Map<Long, LongAdder> counts) {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<Long, LongAdder> entry : counts.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        return deltas;
+    }
+
+    private void restore(Snapshot snapshot) {
+        snapshot.songs().forEach((id, delta) -> songCounts.computeIfAbsent(id, key -> new LongAdder()).add(delta));
+        snapshot.playlists().forEach((id, delta) -> playlistCounts.computeIfAbsent(id, key -> new LongAdder()).add(delta));
+        for (Listen listen : snapshot.history()) {
+            if (pendingHistory.incrementAndGet() > maxPendingHistory) {
+                pendingHistory.decrementAndGet();
+                historyDropped.incrementAndGet();
+            } else {
+                history.add(listen);
+            }
+        }
+    }
+
+    private void write(Snapshot snapshot) {
+        writeCounts("songs", snapshot.songs());
+        writeCounts("playlists", snapshot.playlists());
+        writeHistory(snapshot.history());
+    }
+
+    /**
+     * UPDATE table SET listen_count = listen_count + CASE id WHEN ? THEN ? ... END WHERE id IN (...) cho mỗi lô id.
+     */
+    private void writeCounts(String table, Map<Long, Long> deltas) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(deltas.entrySet());
+        for (int from = 0; from < entries.size(); from += UPDATE_CHUNK) {
+            List<Map.Entry<Long, Long>> chunk = entries.subList(from, Math.min(entries.size(), from + UPDATE_CHUNK));
+            StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET listen_count = listen_count + CASE id");
+            List<Object> args = new ArrayList<>(chunk.size() * 3);
+            for (Map.Entry<Long, Long> entry : chunk) {
+                sql.append(" WHEN ? THEN ?");
+                args.add(entry.getKey());
+                args.add(entry.getValue());
+            }
+            sql.append(" ELSE 0 END WHERE id IN (").append(String.join(",", Collections.nCopies(chunk.size(), "?"))).append(")");
+            chunk.forEach(entry -> args.add(entry.getKey()));
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+    }
+
+    /**
+     * Chèn lịch sử nghe theo JDBC batch. INSERT ... SELECT bỏ qua bài đã bị xóa thay vì làm hỏng cả lô vì khóa ngoại.
+     */
+    private void writeHistory(List<Listen> listens) {
+        if (listens.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO listen_history (song_id, user_id, listen_timestamp) SELECT id, ?, ? FROM songs WHERE id = ?",
+                listens, historyBatchSize, (statement, row) -> {
+                    statement.setObject(1, row.userId(), Types.BIGINT);
+                    statement.setTimestamp(2, new Timestamp(row.at()));
+                    statement.setLong(3, row.songId());
+                });
+    }
+}
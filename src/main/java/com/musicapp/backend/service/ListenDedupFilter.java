@@ -0,0 +1,226 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Chặn lượt nghe lặp: cùng một người nghe (user id, hoặc hash IP khi chưa đăng nhập) và cùng một bài chỉ được đếm
+ * một lần trong mỗi min-gap-seconds.
+ * <p>
+ * Dùng {@code generations} Bloom filter xoay vòng: mỗi min-gap / (generations - 1) giây filter cũ nhất được xóa và
+ * trở thành filter hiện tại. Một cặp (người nghe, bài) được nhớ trong khoảng từ min-gap tới
+ * min-gap * generations / (generations - 1), nên khoảng cách tối thiểu luôn được đảm bảo; bộ nhớ cố định theo
+ * expected-per-window bất kể lưu lượng. Bloom filter có thể báo trùng nhầm (khoảng false-positive-rate khi lưu lượng
+ * đúng như cấu hình), tức là thỉnh thoảng bỏ sót một lượt nghe hợp lệ - không bao giờ đếm thừa.
+ */
+@Service
+@Slf4j
+public class ListenDedupFilter {
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Value("${media.listens.dedup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.listens.dedup.min-gap-seconds:30}")
+    private long minGapSeconds;
+
+    @Value("${media.listens.dedup.generations:4}")
+    private int generations;
+
+    // Số cặp (người nghe, bài) khác nhau dự kiến trong một thế hệ filter
+    @Value("${media.listens.dedup.expected-per-window:200000}")
+    private int expectedPerWindow;
+
+    @Value("${media.listens.dedup.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    // Chỉ bật khi ứng dụng đứng sau proxy tin cậy; client tự gửi header này được
+    @Value("${media.listens.dedup.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    private AtomicLongArray[] filters;
+    private int bits;
+    private int hashes;
+    private long rotateEveryMs;
+
+    // Chỉ đổi khi giữ rotationLock
+    private volatile int current;
+    private volatile long nextRotationAt;
+    private final Object rotationLock = new Object();
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+
+    // Để hash IP không tra ngược được từ bảng hash của toàn bộ dải IPv4
+    private final long salt = new SecureRandom().nextLong();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        generations = Math.max(2, generations);
+        double n = Math.max(1000, expectedPerWindow);
+        double p = Math.min(0.1, Math.max(1e-6, falsePositiveRate));
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        bits = (int) Math.min(Integer.MAX_VALUE - 63L, (m + 63) / 64 * 64);
+        hashes = Math.max(1, (int) Math.round(bits / n * Math.log(2)));
+        filters = new AtomicLongArray[generations];
+        for (int i = 0; i < generations; i++) {
+            filters[i] = new AtomicLongArray(bits / 64);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        rotateEveryMs = Math.max(1, minGapSeconds * 1000 / (generations - 1));
+        nextRotationAt = System.currentTimeMillis() + rotateEveryMs;
+        log.info("Listen dedup filter: {} generations x {} KB, {} hashes, rotating every {} ms.",
+                generations, bits / 8 / 1024, hashes, rotateEveryMs);
+    }
+
+    /**
+     * Ghi nhận một lượt nghe nếu người nghe này chưa nghe bài này trong min-gap-seconds.
+     *
+     * @return false nếu là lượt nghe lặp và không được đếm
+     */
+    public boolean accept(Long userId, HttpServletRequest request, Long songId) {
+        if (!enabled) {
+            return true;
+        }
+        long listener = userId != null ? mix(userId) : mix(hashAddress(clientAddress(request)) ^ salt) ^ 0x5bd1e995L;
+        return accept(listener, songId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("accepted", accepted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("rotations", rotations.get());
+        if (filters == null) {
+            return stats;
+        }
+        stats.put("minGapSeconds", minGapSeconds);
+        stats.put("generations", generations);
+        stats.put("hashes", hashes);
+        stats.put("memoryBytes", (long) generations * bits / 8);
+        // Tỉ lệ bit đã bật của filter hiện tại; báo trùng nhầm ~ fill^hashes
+        double fill = (double) bitCount(filters[current]) / bits;
+        stats.put("currentFillRatio", fill);
+        stats.put("estimatedFalsePositiveRate", Math.pow(fill, hashes));
+        return stats;
+    }
+
+    private boolean accept(long listener, long songId) {
+        rotateIfDue();
+        long h1 = mix(listener ^ mix(songId));
+        long h2 = mix(h1) | 1;
+        synchronized (stripes[(int) (h1 >>> 58)]) {
+            for (AtomicLongArray filter : filters) {
+                if (contains(filter, h1, h2)) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            }
+            put(filters[current], h1, h2);
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    private void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < nextRotationAt) {
+            return;
+        }
+        synchronized (rotationLock) {
+            // Ứng dụng nhàn rỗi lâu thì xoay nhiều lần (tối đa bằng số thế hệ: mọi filter đều rỗng)
+            for (int i = 0; i < generations && now >= nextRotationAt; i++) {
+                int next = (current + 1) % generations;
+                AtomicLongArray oldest = filters[next];
+                for (int word = 0; word < oldest.length(); word++) {
+                    oldest.set(word, 0);
+                }
+                current = next;
+                nextRotationAt += rotateEveryMs;
+                rotations.incrementAndGet();
+            }
+            if (now >= nextRotationAt) {
+                nextRotationAt = now + rotateEveryMs;
+            }
+        }
+    }
+
+    private boolean contains(AtomicLongArray filter, long h1, long h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            if ((filter.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void put(AtomicLongArray filter, long h1, long h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            long mask = 1L << bit;
+            filter.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m);
+        }
+    }
+
+    private int bitIndex(long hash) {
+        return (int) ((hash >>> 1) % bits);
+    }
+
+    private static long bitCount(AtomicLongArray filter) {
+        long count = 0;
+        for (int word = 0; word < filter.length(); word++) {
+            count += Long.bitCount(filter.get(word));
+        }
+        return count;
+    }
+
+    /**
+     * Địa chỉ client; sau proxy tin cậy thì lấy phần tử cuối của X-Forwarded-For (do chính proxy thêm vào) vì
+     * các phần tử phía trước client tự điền được.
+     */
+    private String clientAddress(HttpServletRequest request) {
+        if (request == null) {
+            return "";
+        }
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null && !forwardedFor.isBlank()) {
+                String[] hops = forwardedFor.split(",");
+                return hops[hops.length - 1].trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static long hashAddress(String address) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : address.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,372 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Nhật ký append-only trên đĩa cục bộ cho các sự kiện nghe mà {@link ListenCountBuffer} đang giữ trong bộ nhớ.
+ * <p>
+ * Mỗi segment bắt đầu bằng header 8 byte (magic, phiên bản định dạng); sau đó mỗi sự kiện là một bản ghi 29 byte
+ * (loại, id, người nghe, thời điểm, CRC32) ghi tuần tự vào segment được mmap. Segment không có header là định dạng 1
+ * (bản ghi 21 byte, chưa có người nghe) từ các bản trước và vẫn được đọc lại. Segment
+ * mới được mở khi segment hiện tại đầy hoặc khi buffer bắt đầu flush ({@link #rotate()}); sau khi flush đã commit
+ * xuống DB, các segment cũ hơn mốc đó bị xóa ({@link #compact(long)}). Khi khởi động, các segment còn sót lại
+ * (process chết trước khi flush) được đọc lại bằng {@link #replay(Consumer)}.
+ * <p>
+ * Ghi vào mmap đã sống sót khi JVM chết; force xuống đĩa (để sống sót cả khi mất điện) chạy trên một luồng riêng
+ * theo kiểu group commit, tối đa mỗi sync-interval-ms một lần: một lần force phủ mọi bản ghi được append từ lần trước.
+ * Người ghi không chờ force, nên mất điện chỉ làm mất các bản ghi của khoảng sync-interval-ms cuối cùng.
+ */
+@Service
+@Slf4j
+public class ListenEventJournal {
+
+    public static final byte SONG_LISTEN = 1;
+    public static final byte PLAYLIST_LISTEN = 2;
+
+    // userId null = người nghe chưa đăng nhập (ghi là 0 trong segment)
+    public record Event(byte type, long id, Long userId, long timestamp) {
+    }
+
+    private static final int SEGMENT_MAGIC = 0x4C534E4A; // "LSNJ"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int RECORD_SIZE = 1 + 8 + 8 + 8 + 4;
+    // Định dạng 1: segment không có header, bản ghi gồm loại, id, thời điểm, CRC32
+    private static final int LEGACY_RECORD_SIZE = 1 + 8 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "listen-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Value("${media.listens.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.listens.journal.dir:${java.io.tmpdir}/musicapp/listen-journal}")
+    private String journalDir;
+
+    @Value("${media.listens.journal.segment-bytes:4194304}")
+    private int segmentBytes;
+
+    // Khoảng cách giữa hai lần force: cửa sổ mất dữ liệu tối đa khi mất điện
+    @Value("${media.listens.journal.sync-interval-ms:200}")
+    private long syncIntervalMs;
+
+    private Path root;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition hasUnsynced = appendLock.newCondition();
+
+    // Các trường dưới đây chỉ được đọc/ghi khi giữ appendLock
+    private long activeSegment;
+    private MappedByteBuffer active;
+    private final List<MappedByteBuffer> sealedUnsynced = new ArrayList<>();
+    private long appendedSeq;
+    private final CRC32 crc = new CRC32();
+
+    private volatile long durableSeq;
+    private volatile boolean running;
+    private Thread syncThread;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong forces = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong corruptSegments = new AtomicLong();
+    private final AtomicLong segmentsDeleted = new AtomicLong();
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        root = Paths.get(journalDir);
+        Files.createDirectories(root);
+        List<Long> existing = segments();
+        openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+
+        running = true;
+        syncThread = new Thread(this::syncLoop, "listen-journal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+        log.info("Listen journal at {} ({} segment(s) left from the previous run).", root, existing.size());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        appendLock.lock();
+        try {
+            hasUnsynced.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            syncThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        forceAll();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ghi một sự kiện vào segment hiện tại. Không chờ force: luồng sync đưa bản ghi xuống đĩa trong vòng
+     * sync-interval-ms.
+     */
+    public void append(byte type, long id, Long userId, long timestamp) {
+        appendLock.lock();
+        try {
+            if (active.remaining() < RECORD_SIZE) {
+                sealActive();
+                openSegment(activeSegment + 1);
+            }
+            int start = active.position();
+            active.put(type).putLong(id).putLong(userId != null ? userId : 0).putLong(timestamp);
+            crc.reset();
+            crc.update(active.duplicate().position(start).limit(start + RECORD_SIZE - 4));
+            active.putInt((int) crc.getValue());
+            appended.incrementAndGet();
+            appendedSeq++;
+            hasUnsynced.signal();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Đóng segment hiện tại (nếu đã có dữ liệu) và mở segment mới. Gọi trong cùng khoảng khóa với lúc buffer lấy
+     * ảnh chụp số đếm, nên mọi sự kiện trong các segment nhỏ hơn mốc trả về đều đã nằm trong ảnh chụp đó.
+     *
+     * @return mốc: các segment có số nhỏ hơn có thể xóa sau khi ảnh chụp được commit
+     */
+    public long rotate() {
+        if (!enabled) {
+            return 0;
+        }
+        appendLock.lock();
+        try {
+            if (active.position() > HEADER_SIZE) {
+                sealActive();
+                openSegment(activeSegment + 1);
+            }
+            return activeSegment;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Xóa các segment có số nhỏ hơn {@code boundary}. File không xóa được (vd. Windows còn giữ mapping) sẽ được
+     * thử lại ở lần compact sau.
+     */
+    public void compact(long boundary) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (long segment : segments()) {
+                if (segment >= boundary) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(segmentPath(segment));
+                    segmentsDeleted.incrementAndGet();
+                } catch (IOException e) {
+                    log.warn("Could not delete listen journal segment {}: {}", segment, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list listen journal segments: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đọc lại mọi sự kiện trong các segment cũ hơn segment đang ghi. Gọi lúc khởi động, trước khi có append mới.
+     * Bản ghi có CRC sai (ghi dở khi máy sập) kết thúc segment đó.
+     */
+    public void replay(Consumer<Event> consumer) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (long segment : segments()) {
+                if (segment >= activeSegment) {
+                    break;
+                }
+                replaySegment(segment, consumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay listen journal", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("dir", root.toString());
+        stats.put("activeSegment", activeSegment);
+        stats.put("appended", appended.get());
+        stats.put("forces", forces.get());
+        stats.put("unsyncedRecords", appended.get() - durableSeq);
+        stats.put("replayed", replayed.get());
+        stats.put("corruptSegments", corruptSegments.get());
+        stats.put("segmentsDeleted", segmentsDeleted.get());
+        try {
+            stats.put("segmentsOnDisk", segments().size());
+        } catch (IOException e) {
+            stats.put("segmentsOnDisk", -1);
+        }
+        return stats;
+    }
+
+    private void replaySegment(long segment, Consumer<Event> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // Byte đầu của segment định dạng 1 là loại bản ghi (0, 1 hoặc 2), không trùng được với magic
+            int version = 1;
+            if (buffer.remaining() >= HEADER_SIZE && buffer.getInt(0) == SEGMENT_MAGIC) {
+                version = buffer.getInt(4);
+                buffer.position(HEADER_SIZE);
+            }
+            if (version != 1 && version != FORMAT_VERSION) {
+                corruptSegments.incrementAndGet();
+                log.warn("Listen journal segment {} has unknown format version {}; skipping it.", segment, version);
+                return;
+            }
+            boolean legacy = version == 1;
+            int recordSize = legacy ? LEGACY_RECORD_SIZE : RECORD_SIZE;
+            CRC32 check = new CRC32();
+            while (buffer.remaining() >= recordSize) {
+                int start = buffer.position();
+                byte type = buffer.get();
+                if (type == 0) {
+                    // Phần chưa ghi của segment (file được cấp phát sẵn toàn số 0)
+                    return;
+                }
+                long id = buffer.getLong();
+                long userId = legacy ? 0 : buffer.getLong();
+                long timestamp = buffer.getLong();
+                int stored = buffer.getInt();
+                check.reset();
+                check.update(buffer.duplicate().position(start).limit(start + recordSize - 4));
+                if ((int) check.getValue() != stored || (type != SONG_LISTEN && type != PLAYLIST_LISTEN)) {
+                    corruptSegments.incrementAndGet();
+                    log.warn("Listen journal segment {} is torn at offset {}; ignoring the rest.", segment, start);
+                    return;
+                }
+                consumer.accept(new Event(type, id, userId != 0 ? userId : null, timestamp));
+                replayed.incrementAndGet();
+            }
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            long target;
+            List<MappedByteBuffer> toForce;
+            appendLock.lock();
+            try {
+                while (running && appendedSeq == durableSeq) {
+                    hasUnsynced.await();
+                }
+                target = appendedSeq;
+                toForce = new ArrayList<>(sealedUnsynced);
+                sealedUnsynced.clear();
+                toForce.add(active);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                toForce.forEach(MappedByteBuffer::force);
+                forces.incrementAndGet();
+                durableSeq = target;
+            } catch (RuntimeException e) {
+                // Trả segment đã đóng về danh sách để force lại ở lượt sau
+                log.warn("Could not force listen journal: {}", e.getMessage());
+                appendLock.lock();
+                try {
+                    sealedUnsynced.addAll(0, toForce.subList(0, toForce.size() - 1));
+                } finally {
+                    appendLock.unlock();
+                }
+            }
+            // Gom các bản ghi đến trong khoảng này vào lần force sau
+            try {
+                Thread.sleep(syncIntervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void forceAll() {
+        appendLock.lock();
+        try {
+            sealedUnsynced.forEach(MappedByteBuffer::force);
+            sealedUnsynced.clear();
+            active.force();
+        } catch (RuntimeException e) {
+            log.warn("Could not force listen journal on shutdown: {}", e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void sealActive() {
+        sealedUnsynced.add(active);
+    }
+
+    private void openSegment(long segment) {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping vẫn dùng được sau khi channel đóng
+            active = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            active.putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION);
+            activeSegment = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open listen journal segment " + segment, e);
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+                    .filter(number -> !number.isEmpty() && number.chars().allMatch(Character::isDigit))
+                    .map(Long::parseLong)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return root.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+}
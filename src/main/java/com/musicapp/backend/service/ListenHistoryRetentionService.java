@@ -0,0 +1,346 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Giới hạn listen_history ở media.listens.retention.months tháng gần nhất; số liệu cũ hơn vẫn còn trong rollup.
+ * <p>
+ * Khi bảng được partition theo tháng (RANGE COLUMNS(listen_timestamp), tên pYYYYMM, cuối cùng là partition MAXVALUE),
+ * job giữ sẵn partition cho các tháng tới bằng cách tách partition MAXVALUE (đang rỗng nên không phải chép dữ liệu)
+ * và bỏ các partition đã hết hạn bằng DROP PARTITION - hoặc EXCHANGE sang bảng listen_history_archive_pYYYYMM rồi mới
+ * DROP khi mode=archive. Các lệnh này chỉ đổi metadata; lock_wait_timeout ngắn để ALTER bỏ cuộc thay vì xếp hàng
+ * sau một truy vấn dài và chặn mọi lệnh INSERT phía sau nó.
+ * <p>
+ * Bảng chưa partition thì xóa các dòng hết hạn theo từng lô nhỏ (mỗi lô một transaction ngắn). Trong cả hai trường
+ * hợp chỉ dữ liệu đã được {@link ListenRollupService} tổng hợp mới bị bỏ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ListenHistoryRetentionService {
+
+    private static final String TABLE = "listen_history";
+    private static final String ARCHIVE_PREFIX = "listen_history_archive_";
+    private static final String LOCK_NAME = "musicapp.listen_history_retention";
+    private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9_]+");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private record Partition(String name, LocalDate upperBound, long rows, long dataBytes, long indexBytes) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ListenRollupService listenRollupService;
+
+    @Value("${media.listens.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.listens.retention.dry-run:true}")
+    private boolean dryRunByDefault;
+
+    @Value("${media.listens.retention.months:6}")
+    private int retentionMonths;
+
+    // drop | archive
+    @Value("${media.listens.retention.mode:drop}")
+    private String mode;
+
+    @Value("${media.listens.retention.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${media.listens.retention.lock-wait-seconds:5}")
+    private int lockWaitSeconds;
+
+    @Value("${media.listens.retention.delete-batch-size:5000}")
+    private int deleteBatchSize;
+
+    @Value("${media.listens.retention.delete-pause-ms:200}")
+    private long deletePauseMs;
+
+    @Value("${media.listens.retention.max-delete-batches:2000}")
+    private int maxDeleteBatches;
+
+    private ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastReport = Map.of();
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "listen-retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(cron = "${media.listens.retention.cron:0 0 4 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            start(dryRunByDefault);
+        }
+    }
+
+    /**
+     * @param dryRun null = theo cấu hình media.listens.retention.dry-run
+     * @return false nếu đang có một lượt khác chạy
+     */
+    public boolean start(Boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        boolean effectiveDryRun = dryRun != null ? dryRun : dryRunByDefault;
+        executor.execute(() -> {
+            try {
+                run(effectiveDryRun);
+            } catch (Exception e) {
+                log.error("Listen history retention failed: {}", e.getMessage(), e);
+                lastReport = Map.of("finishedAt", LocalDateTime.now(), "error", String.valueOf(e.getMessage()));
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> getLastReport() {
+        Map<String, Object> report = new LinkedHashMap<>(lastReport);
+        report.put("running", running.get());
+        return report;
+    }
+
+    /**
+     * Kích thước từng partition và bảng archive (số dòng là ước lượng của InnoDB).
+     */
+    public Map<String, Object> describePartitions() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        List<Partition> partitions = partitions(jdbcTemplate);
+        description.put("partitioned", !partitions.isEmpty());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Partition partition : partitions) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("name", partition.name());
+            row.put("lessThan", partition.upperBound() != null ? partition.upperBound().toString() : "MAXVALUE");
+            row.put("rows", partition.rows());
+            row.put("dataBytes", partition.dataBytes());
+            row.put("indexBytes", partition.indexBytes());
+            rows.add(row);
+        }
+        description.put("partitions", rows);
+        description.put("archives", jdbcTemplate.queryForList(
+                "SELECT TABLE_NAME AS name, TABLE_ROWS AS `rows`, DATA_LENGTH AS dataBytes, INDEX_LENGTH AS indexBytes"
+                        + " FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME LIKE ? ORDER BY TABLE_NAME",
+                ARCHIVE_PREFIX.replace("_", "\\_") + "%"));
+        description.put("lastRun", getLastReport());
+        return description;
+    }
+
+    private void run(boolean dryRun) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", LocalDateTime.now());
+        report.put("dryRun", dryRun);
+        report.put("mode", mode);
+        // Giữ trọn tháng hiện tại và retention-months tháng trước đó
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+        long rolledUpId = listenRollupService.lastRolledUpId();
+        report.put("cutoff", cutoff.toString());
+        report.put("rolledUpId", rolledUpId);
+
+        // Mọi lệnh chạy trên một connection giữ named lock để hai node không cùng ALTER một bảng
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            JdbcTemplate session = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            Integer locked = session.queryForObject("SELECT GET_LOCK(?, 0)", Integer.class, LOCK_NAME);
+            if (locked == null || locked != 1) {
+                report.put("skipped", "Another node is running listen history retention");
+                return null;
+            }
+            session.execute("SET SESSION lock_wait_timeout = " + Math.max(1, lockWaitSeconds));
+            try {
+                List<Partition> partitions = partitions(session);
+                report.put("partitioned", !partitions.isEmpty());
+                if (partitions.isEmpty()) {
+                    deleteExpiredRows(session, cutoff, rolledUpId, dryRun, report);
+                } else {
+                    addFuturePartitions(session, partitions, dryRun, report);
+                    retireExpiredPartitions(session, partitions, cutoff, rolledUpId, dryRun, report);
+                }
+            } finally {
+                session.execute("SET SESSION lock_wait_timeout = DEFAULT");
+                session.queryForObject("SELECT RELEASE_LOCK(?)", Integer.class, LOCK_NAME);
+            }
+            return null;
+        });
+
+        report.put("finishedAt", LocalDateTime.now());
+        lastReport = report;
+        log.info("Listen history retention finished: {}", report);
+    }
+
+    /**
+     * Tách partition MAXVALUE để luôn có sẵn partition tới hết months-ahead tháng sau. Chỉ làm khi partition đó
+     * rỗng - nếu không REORGANIZE phải chép dữ liệu và giữ lock lâu.
+     */
+    private void addFuturePartitions(JdbcTemplate session, List<Partition> partitions, boolean dryRun, Map<String, Object> report) {
+        Partition catchAll = partitions.get(partitions.size() - 1);
+        if (catchAll.upperBound() != null) {
+            report.put("futurePartitions", "No MAXVALUE partition; new months are not added");
+            return;
+        }
+        LocalDate highest = partitions.stream()
+                .map(Partition::upperBound)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(LocalDate.now().withDayOfMonth(1));
+        LocalDate target = LocalDate.now().withDayOfMonth(1).plusMonths(monthsAhead + 1L);
+        if (!highest.isBefore(target)) {
+            return;
+        }
+        if (!session.queryForList("SELECT 1 FROM " + TABLE + " PARTITION (" + catchAll.name() + ") LIMIT 1").isEmpty()) {
+            report.put("futurePartitions", "Partition " + catchAll.name() + " has rows; reorganize it manually");
+            log.warn("Partition {} of {} is not empty; skipping automatic split.", catchAll.name(), TABLE);
+            return;
+        }
+
+        List<String> added = new ArrayList<>();
+        StringBuilder definitions = new StringBuilder();
+        for (LocalDate month = highest; month.isBefore(target); month = month.plusMonths(1)) {
+            String name = "p" + month.format(PARTITION_MONTH);
+            definitions.append("PARTITION ").append(name)
+                    .append(" VALUES LESS THAN ('").append(month.plusMonths(1)).append(" 00:00:00'), ");
+            added.add(name);
+        }
+        definitions.append("PARTITION ").append(catchAll.name()).append(" VALUES LESS THAN (MAXVALUE)");
+        if (!dryRun) {
+            session.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + catchAll.name() + " INTO (" + definitions + ")");
+        }
+        report.put("partitionsAdded", added);
+    }
+
+    /**
+     * Bỏ (hoặc archive rồi bỏ) các partition nằm hẳn trước cutoff và đã được rollup tổng hợp hết.
+     */
+    private void retireExpiredPartitions(JdbcTemplate session, List<Partition> partitions, LocalDate cutoff,
+                                         long rolledUpId, boolean dryRun, Map<String, Object> report) {
+        boolean archive = "archive".equalsIgnoreCase(mode);
+        List<String> retired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.upperBound() == null || partition.upperBound().isAfter(cutoff)) {
+                break;
+            }
+            Long maxId = session.queryForObject("SELECT MAX(id) FROM " + TABLE + " PARTITION (" + partition.name() + ")", Long.class);
+            if (maxId != null && maxId > rolledUpId) {
+                report.put("waitingForRollup", partition.name());
+                break;
+            }
+            if (!dryRun) {
+                if (archive && maxId != null && !archivePartition(session, partition, report)) {
+                    break;
+                }
+                session.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + partition.name());
+            }
+            retired.add(partition.name());
+        }
+        report.put(archive ? "partitionsArchived" : "partitionsDropped", retired);
+    }
+
+    /**
+     * Đổi dữ liệu của partition sang bảng archive rỗng cùng cấu trúc (EXCHANGE PARTITION chỉ đổi metadata).
+     */
+    private boolean archivePartition(JdbcTemplate session, Partition partition, Map<String, Object> report) {
+        String archiveTable = ARCHIVE_PREFIX + partition.name();
+        boolean exists = !session.queryForList(
+                "SELECT 1 FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?", archiveTable).isEmpty();
+        if (!exists) {
+            session.execute("CREATE TABLE " + archiveTable + " LIKE " + TABLE);
+            session.execute("ALTER TABLE " + archiveTable + " REMOVE PARTITIONING");
+        } else if (!session.queryForList("SELECT 1 FROM " + archiveTable + " LIMIT 1").isEmpty()) {
+            // EXCHANGE sẽ tráo dữ liệu của bảng archive ngược vào listen_history
+            report.put("archiveConflict", archiveTable + " already has rows");
+            log.warn("Archive table {} is not empty; leaving partition {} in place.", archiveTable, partition.name());
+            return false;
+        }
+        session.execute("ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partition.name()
+                + " WITH TABLE " + archiveTable + " WITHOUT VALIDATION");
+        return true;
+    }
+
+    /**
+     * Bảng chưa partition: xóa theo lô nhỏ theo thứ tự id, nghỉ giữa các lô để không dồn lock và replication lag.
+     */
+    private void deleteExpiredRows(JdbcTemplate session, LocalDate cutoff, long rolledUpId, boolean dryRun, Map<String, Object> report) {
+        if ("archive".equalsIgnoreCase(mode)) {
+            report.put("skipped", "Archive mode needs a partitioned listen_history");
+            return;
+        }
+        if (dryRun) {
+            return;
+        }
+        Timestamp before = Timestamp.valueOf(cutoff.atStartOfDay());
+        long deleted = 0;
+        for (int batch = 0; batch < maxDeleteBatches; batch++) {
+            int count = session.update("DELETE FROM " + TABLE + " WHERE listen_timestamp < ? AND id <= ? ORDER BY id LIMIT ?",
+                    before, rolledUpId, deleteBatchSize);
+            deleted += count;
+            if (count < deleteBatchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(deletePauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        report.put("rowsDeleted", deleted);
+    }
+
+    private static List<Partition> partitions(JdbcTemplate template) {
+        return template.query("SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH"
+                        + " FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?"
+                        + " AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION",
+                (rs, rowNum) -> new Partition(rs.getString(1), upperBoundOf(rs.getString(2)),
+                        rs.getLong(3), rs.getLong(4), rs.getLong(5)),
+                TABLE).stream()
+                .filter(partition -> SAFE_NAME.matcher(partition.name()).matches())
+                .toList();
+    }
+
+    /**
+     * PARTITION_DESCRIPTION của RANGE COLUMNS có dạng '2026-11-01 00:00:00' hoặc MAXVALUE (trả về null).
+     * Giá trị không đọc được được coi như MAXVALUE để partition đó không bao giờ bị bỏ.
+     */
+    private static LocalDate upperBoundOf(String description) {
+        if (description == null || description.equalsIgnoreCase("MAXVALUE")) {
+            return null;
+        }
+        String value = description.replace("'", "").trim();
+        try {
+            return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.musicapp.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tổng hợp listen_history thành song_listen_hourly / song_listen_daily (số lượt nghe + sketch người nghe) để các
+ * truy vấn theo cửa sổ thời gian đọc O(số bucket) dòng thay vì quét lịch sử nghe thô.
+ * <p>
+ * Job chạy tăng dần theo id của listen_history với mốc lưu trong listen_rollup_state; mỗi lô (đọc dòng, cộng vào
+ * rollup, dời mốc) là một transaction nên khởi động lại không đếm trùng hay bỏ sót. Bucket lấy theo listen_timestamp
+ * nên lượt nghe đến muộn (buffer/nhật ký flush sau) vẫn được cộng vào đúng giờ của nó.
+ * <p>
+ * id AUTO_INCREMENT được cấp trước khi transaction commit, nên dòng có id nhỏ có thể xuất hiện sau dòng có id lớn.
+ * Vì vậy job chỉ xử lý tới horizon_id - MAX(id) ghi nhận ở lần chạy trước - khi mọi transaction cấp các id đó
+ * (flush lượt nghe, vài mili giây) chắc chắn đã xong. Phần chưa tổng hợp (id > last_id) được các truy vấn đếm thô
+ * để kết quả luôn mới.
+ * <p>
+ * Cửa sổ [since, hiện tại] của các truy vấn đếm được tính chính xác: rollup chỉ dùng từ giờ tròn đầu tiên sau since,
+ * phần giờ lẻ phía trước (tối đa 59 phút) được đếm thô từ listen_history.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ListenRollupService {
+
+    private record BucketKey(long songId, LocalDateTime bucket) {
+    }
+
+    private record Range(String table, boolean daily, LocalDateTime from, LocalDateTime to) {
+    }
+
+    private static final class Bucket {
+        private long listens;
+        private final ListenerSketch users = new ListenerSketch();
+    }
+
+    private static final String STATE_NAME = "listen_history";
+    private static final String HOURLY = "song_listen_hourly";
+    private static final String DAILY = "song_listen_daily";
+    private static final int KEY_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${media.listens.rollup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.listens.rollup.batch-size:50000}")
+    private int batchSize;
+
+    // Giới hạn số lô mỗi lần chạy để lần backfill đầu tiên không giữ luồng scheduler quá lâu
+    @Value("${media.listens.rollup.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rowsRolledUp = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime lastRunAt;
+
+    @Scheduled(fixedDelayString = "${media.listens.rollup.interval-ms:60000}", initialDelay = 30000)
+    public void rollup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT IGNORE INTO listen_rollup_state (name, last_id, horizon_id) VALUES (?, 0, 0)", STATE_NAME);
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                Integer processed = transactionTemplate.execute(status -> rollupBatch());
+                if (processed == null || processed == 0) {
+                    break;
+                }
+            }
+            runs.incrementAndGet();
+            lastRunAt = LocalDateTime.now();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            log.warn("Listen rollup failed: {}", e.getMessage());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public long countListensSince(Long songId, LocalDateTime since) {
+        LocalDateTime from = firstFullHour(since);
+        long total = 0;
+        for (Range range : rangesFrom(from)) {
+            List<Object> args = new ArrayList<>(List.of(songId));
+            Long sum = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(listen_count), 0) FROM " + range.table()
+                    + " WHERE song_id = ?" + bucketCondition(range, args), Long.class, args.toArray());
+            total += sum != null ? sum : 0;
+        }
+        Long tail = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM listen_history WHERE id > ? AND song_id = ? AND listen_timestamp >= ?",
+                Long.class, lastRolledUpId(), songId, Timestamp.valueOf(from));
+        total += tail != null ? tail : 0;
+        if (since.isBefore(from)) {
+            Long head = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM listen_history WHERE song_id = ? AND listen_timestamp >= ? AND listen_timestamp < ?",
+                    Long.class, songId, Timestamp.valueOf(since), Timestamp.valueOf(from));
+            total += head != null ? head : 0;
+        }
+        return total;
+    }
+
+    /**
+     * Số người nghe (đã đăng nhập) khác nhau, ước lượng bằng cách gộp sketch của các bucket trong cửa sổ.
+     */
+    @Transactional(readOnly = true)
+    public long countUniqueListenersSince(Long songId, LocalDateTime since) {
+        LocalDateTime from = firstFullHour(since);
+        ListenerSketch users = new ListenerSketch();
+        for (Range range : rangesFrom(from)) {
+            List<Object> args = new ArrayList<>(List.of(songId));
+            jdbcTemplate.query("SELECT users_sketch FROM " + range.table() + " WHERE song_id = ?" + bucketCondition(range, args),
+                    rs -> {
+                        users.merge(ListenerSketch.fromBytes(rs.getBytes(1)));
+                    }, args.toArray());
+        }
+        jdbcTemplate.query("SELECT DISTINCT user_id FROM listen_history WHERE id > ? AND song_id = ? AND listen_timestamp >= ?"
+                        + " AND user_id IS NOT NULL",
+                rs -> {
+                    users.add(rs.getLong(1));
+                }, lastRolledUpId(), songId, Timestamp.valueOf(from));
+        if (since.isBefore(from)) {
+            jdbcTemplate.query("SELECT DISTINCT user_id FROM listen_history WHERE song_id = ? AND listen_timestamp >= ?"
+                            + " AND listen_timestamp < ? AND user_id IS NOT NULL",
+                    rs -> {
+                        users.add(rs.getLong(1));
+                    }, songId, Timestamp.valueOf(since), Timestamp.valueOf(from));
+        }
+        return users.estimate();
+    }
+
+    /**
+     * Số lượt nghe từ {@code since} của mọi bài có lượt nghe, gom theo song_id - dùng cho bảng xếp hạng.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Long> countListensSinceBySong(LocalDateTime since) {
+        LocalDateTime from = firstFullHour(since);
+        Map<Long, Long> totals = new HashMap<>();
+        for (Range range : rangesFrom(from)) {
+            List<Object> args = new ArrayList<>();
+            jdbcTemplate.query("SELECT song_id, SUM(listen_count) FROM " + range.table() + " WHERE 1 = 1"
+                            + bucketCondition(range, args) + " GROUP BY song_id",
+                    rs -> {
+                        totals.merge(rs.getLong(1), rs.getLong(2), Long::sum);
+                    }, args.toArray());
+        }
+        jdbcTemplate.query("SELECT song_id, COUNT(*) FROM listen_history WHERE id > ? AND listen_timestamp >= ? GROUP BY song_id",
+                rs -> {
+                    totals.merge(rs.getLong(1), rs.getLong(2), Long::sum);
+                }, lastRolledUpId(), Timestamp.valueOf(from));
+        if (since.isBefore(from)) {
+            jdbcTemplate.query("SELECT song_id, COUNT(*) FROM listen_history WHERE listen_timestamp >= ? AND listen_timestamp < ?"
+                            + " GROUP BY song_id",
+                    rs -> {
+                        totals.merge(rs.getLong(1), rs.getLong(2), Long::sum);
+                    }, Timestamp.valueOf(since), Timestamp.valueOf(from));
+        }
+        return totals;
+    }
+
+    /**
+     * id lớn nhất của listen_history đã được cộng vào rollup; các dòng có id nhỏ hơn hoặc bằng có thể xóa an toàn.
+     */
+    public long lastRolledUpId() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT last_id FROM listen_rollup_state WHERE name = ?", Long.class, STATE_NAME);
+        return ids.isEmpty() ? 0 : ids.get(0);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("runs", runs.get());
+        stats.put("batches", batches.get());
+        stats.put("rowsRolledUp", rowsRolledUp.get());
+        stats.put("failures", failures.get());
+        stats.put("lastRunAt", lastRunAt);
+        try {
+            jdbcTemplate.query("SELECT last_id, horizon_id FROM listen_rollup_state WHERE name = ?", rs -> {
+                stats.put("lastId", rs.getLong(1));
+                stats.put("horizonId", rs.getLong(2));
+            }, STATE_NAME);
+        } catch (RuntimeException e) {
+            stats.put("stateError", e.getMessage());
+        }
+        return stats;
+    }
+
+    /**
+     * Một lô: khóa dòng trạng thái (các node khác chờ), cộng các dòng (last_id, horizon_id] vào rollup, dời mốc.
+     *
+     * @return số dòng đã xử lý; 0 khi đã bắt kịp horizon (lúc đó horizon mới được ghi cho lần chạy sau)
+     */
+    private int rollupBatch() {
+        long[] state = jdbcTemplate.queryForObject(
+                "SELECT last_id, horizon_id FROM listen_rollup_state WHERE name = ? FOR UPDATE",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, STATE_NAME);
+        long lastId = state[0];
+        long horizonId = state[1];
+        if (lastId >= horizonId) {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM listen_history", Long.class);
+            jdbcTemplate.update("UPDATE listen_rollup_state SET horizon_id = ? WHERE name = ?",
+                    Math.max(lastId, maxId != null ? maxId : 0), STATE_NAME);
+            return 0;
+        }
+
+        Map<BucketKey, Bucket> hourly = new HashMap<>();
+        Map<BucketKey, Bucket> daily = new HashMap<>();
+        long[] maxSeen = {lastId};
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT id, song_id, user_id, listen_timestamp FROM listen_history"
+                        + " WHERE id > ? AND id <= ? ORDER BY id LIMIT ?",
+                rs -> {
+                    long songId = rs.getLong(2);
+                    long userId = rs.getLong(3);
+                    boolean anonymous = rs.wasNull();
+                    LocalDateTime at = rs.getTimestamp(4).toLocalDateTime();
+                    for (Bucket bucket : List.of(
+                            hourly.computeIfAbsent(new BucketKey(songId, at.truncatedTo(ChronoUnit.HOURS)), key -> new Bucket()),
+                            daily.computeIfAbsent(new BucketKey(songId, at.toLocalDate().atStartOfDay()), key -> new Bucket()))) {
+                        bucket.listens++;
+                        if (!anonymous) {
+                            bucket.users.add(userId);
+                        }
+                    }
+                    maxSeen[0] = rs.getLong(1);
+                    rows[0]++;
+                }, lastId, horizonId, batchSize);
+
+        upsert(HOURLY, false, hourly);
+        upsert(DAILY, true, daily);
+        // Lô không đầy nghĩa là đã đọc hết tới horizon (kể cả khi các id còn lại là khoảng trống)
+        long newLastId = rows[0] < batchSize ? horizonId : maxSeen[0];
+        jdbcTemplate.update("UPDATE listen_rollup_state SET last_id = ? WHERE name = ?", newLastId, STATE_NAME);
+
+        batches.incrementAndGet();
+        rowsRolledUp.addAndGet(rows[0]);
+        return Math.max(rows[0], 1);
+    }
+
+    /**
+     * Cộng dồn số lượt nghe và gộp sketch người nghe vào các dòng rollup (tạo mới nếu chưa có).
+     */
+    private void upsert(String table, boolean daily, Map<BucketKey, Bucket> buckets) {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        Map<BucketKey, byte[]> existing = loadSketches(table, daily, buckets.keySet());
+        List<Object[]> args = new ArrayList<>(buckets.size());
+        buckets.forEach((key, bucket) -> {
+            ListenerSketch users = ListenerSketch.fromBytes(existing.get(key));
+            users.merge(bucket.users);
+            args.add(new Object[]{key.songId(), bucketParam(key.bucket(), daily), bucket.listens, users.estimate(), users.toBytes()});
+        });
+        jdbcTemplate.batchUpdate("INSERT INTO " + table + " (song_id, bucket, listen_count, unique_users, users_sketch)"
+                + " VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE listen_count = listen_count + VALUES(listen_count),"
+                + " unique_users = VALUES(unique_users), users_sketch = VALUES(users_sketch)", args);
+    }
+
+    private Map<BucketKey, byte[]> loadSketches(String table, boolean daily, Collection<BucketKey> keys) {
+        Map<BucketKey, byte[]> sketches = new HashMap<>();
+        List<BucketKey> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += KEY_CHUNK) {
+            List<BucketKey> chunk = all.subList(from, Math.min(all.size(), from + KEY_CHUNK));
+            List<Object> args = new ArrayList<>(chunk.size() * 2);
+            chunk.forEach(key -> {
+                args.add(key.songId());
+                args.add(bucketParam(key.bucket(), daily));
+            });
+            jdbcTemplate.query("SELECT song_id, bucket, users_sketch FROM " + table + " WHERE (song_id, bucket) IN ("
+                            + String.join(",", Collections.nCopies(chunk.size(), "(?, ?)")) + ")",
+                    rs -> {
+                        sketches.put(new BucketKey(rs.getLong(1), bucketOf(rs, daily)), rs.getBytes(3));
+                    }, args.toArray());
+        }
+        return sketches;
+    }
+
+    /**
+     * Giờ tròn đầu tiên không sớm hơn since: rollup được dùng từ đây, phần [since, giờ này) đếm thô.
+     */
+    private static LocalDateTime firstFullHour(LocalDateTime since) {
+        LocalDateTime hour = since.truncatedTo(ChronoUnit.HOURS);
+        return hour.equals(since) ? hour : hour.plusHours(1);
+    }
+
+    /**
+     * Chia [from, hiện tại] thành: các giờ lẻ của ngày đầu, các ngày trọn vẹn, các giờ của hôm nay.
+     */
+    private static List<Range> rangesFrom(LocalDateTime from) {
+        LocalDate today = LocalDate.now();
+        LocalDate firstFullDay = from.toLocalTime().equals(LocalTime.MIDNIGHT) ? from.toLocalDate() : from.toLocalDate().plusDays(1);
+        if (!firstFullDay.isBefore(today)) {
+            return List.of(new Range(HOURLY, false, from, null));
+        }
+        return List.of(
+                new Range(HOURLY, false, from, firstFullDay.atStartOfDay()),
+                new Range(DAILY, true, firstFullDay.atStartOfDay(), today.atStartOfDay()),
+                new Range(HOURLY, false, today.atStartOfDay(), null));
+    }
+
+    private static String bucketCondition(Range range, List<Object> args) {
+        args.add(bucketParam(range.from(), range.daily()));
+        if (range.to() == null) {
+            return " AND bucket >= ?";
+        }
+        args.add(bucketParam(range.to(), range.daily()));
+        return " AND bucket >= ? AND bucket < ?";
+    }
+
+    private static Object bucketParam(LocalDateTime bucket, boolean daily) {
+        return daily ? Date.valueOf(bucket.toLocalDate()) : Timestamp.valueOf(bucket);
+    }
+
+    private static LocalDateTime bucketOf(ResultSet rs, boolean daily) throws SQLException {
+        return daily ? rs.getDate(2).toLocalDate().atStartOfDay() : rs.getTimestamp(2).toLocalDateTime();
+    }
+}
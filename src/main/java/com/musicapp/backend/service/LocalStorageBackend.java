@@ -0,0 +1,220 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Lưu file trên ổ đĩa cục bộ, dùng cho máy đơn hoặc chạy thử không cần S3.
+ * Mỗi thư mục con của key được chia thêm một cấp theo 2 ký tự hex đầu của SHA-256(key)
+ * để không thư mục nào chứa quá nhiều file; ghi qua file tạm rồi move nguyên tử vào chỗ.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+@RequiredArgsConstructor
+@Slf4j
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String TEMP_DIR = ".tmp";
+
+    private final StreamBufferPool streamBufferPool;
+
+    @Value("${storage.local.root:./data/storage}")
+    private String rootDir;
+
+    private Path root;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(rootDir).toAbsolutePath().normalize();
+        Files.createDirectories(root.resolve(TEMP_DIR));
+        log.info("Local storage backend ready at {}.", root);
+    }
+
+    @Override
+    public String put(String key, InputStream data, long size, String contentType) throws IOException {
+        Path target = resolve(key);
+        Path tmp = root.resolve(TEMP_DIR).resolve(UUID.randomUUID() + ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                streamBufferPool.copy(data, out, size < 0 ? Long.MAX_VALUE : size);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return etagOf(target);
+    }
+
+    @Override
+    public String move(String fromKey, String toKey) throws IOException {
+        Path target = resolve(toKey);
+        Files.createDirectories(target.getParent());
+        Files.move(existing(fromKey), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return etagOf(target);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    /**
+     * Duyệt cây thư mục và dựng lại key từ đường dẫn (bỏ cấp thư mục shard).
+     */
+    @Override
+    public Stream<ListedObject> list(String prefix) throws IOException {
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash > 0 ? root.resolve(prefix.substring(0, slash)).normalize() : root;
+        if (!start.startsWith(root) || !Files.isDirectory(start)) {
+            return Stream.empty();
+        }
+        return Files.walk(start)
+                .filter(Files::isRegularFile)
+                .filter(file -> !root.relativize(file).startsWith(TEMP_DIR))
+                .map(file -> {
+                    Path relative = root.relativize(file);
+                    Path dir = relative.getParent() != null ? relative.getParent().getParent() : null;
+                    String key = (dir != null ? dir.resolve(relative.getFileName()) : relative.getFileName()).toString().replace('\\', '/');
+                    try {
+                        return new ListedObject(key, Files.size(file), Files.getLastModifiedTime(file).toInstant());
+                    } catch (IOException e) {
+                        return null; // File vừa bị xóa trong lúc duyệt
+                    }
+                })
+                .filter(object -> object != null && object.key().startsWith(prefix));
+    }
+
+    @Override
+    public ObjectStat stat(String key) throws IOException {
+        Path file = existing(key);
+        String contentType = Files.probeContentType(file);
+        if (contentType == null) {
+            contentType = URLConnection.guessContentTypeFromName(file.getFileName().toString());
+        }
+        return new ObjectStat(Files.size(file), contentType, etagOf(file), Files.getLastModifiedTime(file).toInstant());
+    }
+
+    @Override
+    public InputStream openStream(String key) throws IOException {
+        return Files.newInputStream(existing(key));
+    }
+
+    @Override
+    public InputStream openRange(String key, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(existing(key), StandardOpenOption.READ);
+        channel.position(start);
+        return new RangeInputStream(Channels.newInputStream(channel), end - start + 1);
+    }
+
+    /**
+     * Đọc thẳng từ FileChannel theo vị trí vào buffer trong pool, không qua InputStream.
+     */
+    @Override
+    public void copyRange(String key, long start, long end, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(existing(key), StandardOpenOption.READ)) {
+            streamBufferPool.copy(channel, start, end - start + 1, outputStream);
+        }
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    /**
+     * Đường dẫn thật của key: root/&lt;thư mục của key&gt;/&lt;shard&gt;/&lt;tên file&gt;.
+     */
+    public Path resolve(String key) {
+        Path relative = Paths.get(key).normalize();
+        if (relative.isAbsolute() || relative.startsWith("..") || relative.startsWith(TEMP_DIR)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        Path parent = relative.getParent();
+        Path dir = parent != null ? root.resolve(parent) : root;
+        return dir.resolve(shard(key)).resolve(relative.getFileName());
+    }
+
+    private Path existing(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            throw new NoSuchFileException(key);
+        }
+        return file;
+    }
+
+    /**
+     * Object không bao giờ bị ghi đè nên kích thước + thời điểm ghi là đủ để nhận diện phiên bản.
+     */
+    private static String etagOf(Path file) throws IOException {
+        return "\"" + Long.toHexString(Files.size(file)) + "-" + Long.toHexString(Files.getLastModifiedTime(file).toMillis()) + "\"";
+    }
+
+    private static String shard(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.musicapp.backend.service;
+
+import java.util.Arrays;
+
+/**
+ * Đo integrated loudness (LUFS) theo ITU-R BS.1770-4 / EBU R128: lọc K-weighting (shelving + high-pass),
+ * block 400 ms chồng nhau 75%, gate tuyệt đối -70 LUFS và gate tương đối -10 LU.
+ * Nhận mẫu PCM đã chuẩn hóa về [-1, 1] theo từng frame (một mẫu cho mỗi kênh).
+ */
+public final class LoudnessMeter {
+
+    private static final double ABSOLUTE_GATE = -70.0;
+    private static final double RELATIVE_GATE = -10.0;
+
+    private final int channels;
+    private final double[] weights;
+    // Hệ số của hai bộ lọc biquad nối tiếp
+    private final double b0, b1, b2, a1, a2;
+    private final double c0, c1, c2, d1, d2;
+    // Trạng thái bộ lọc theo kênh
+    private final double[] x1, x2, y1, y2, z1, z2;
+
+    private final int subBlockLength; // 100 ms
+    private final double[] subBlockEnergy;
+    private int subBlockFill;
+    // Năng lượng (tổng theo kênh, chưa chia độ dài) của 4 sub-block gần nhất
+    private final double[][] recent = new double[4][];
+    private int recentCount;
+
+    private double[] blocks = new double[1024];
+    private int blockCount;
+
+    public LoudnessMeter(int sampleRate, int channels) {
+        this.channels = channels;
+        this.weights = new double[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            // Bố cục 5.1 của WAV: L R C LFE Ls Rs - bỏ LFE, tăng trọng số kênh surround
+            weights[ch] = channels == 6 && ch == 3 ? 0.0 : channels == 6 && ch >= 4 ? 1.41 : 1.0;
+        }
+
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0, gain / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        b0 = (vh + vb * k / q + k * k) / a0;
+        b1 = 2.0 * (k * k - vh) / a0;
+        b2 = (vh - vb * k / q + k * k) / a0;
+        a1 = 2.0 * (k * k - 1.0) / a0;
+        a2 = (1.0 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        double r0 = 1.0 + k / q + k * k;
+        c0 = 1.0;
+        c1 = -2.0;
+        c2 = 1.0;
+        d1 = 2.0 * (k * k - 1.0) / r0;
+        d2 = (1.0 - k / q + k * k) / r0;
+
+        x1 = new double[channels];
+        x2 = new double[channels];
+        y1 = new double[channels];
+        y2 = new double[channels];
+        z1 = new double[channels];
+        z2 = new double[channels];
+        subBlockLength = Math.max(1, sampleRate / 10);
+        subBlockEnergy = new double[channels];
+    }
+
+    /**
+     * Thêm mẫu của kênh ch; các kênh của một frame phải được thêm liên tiếp theo thứ tự, kênh cuối cùng kết thúc frame.
+     */
+    public void add(int ch, double sample) {
+        double y = b0 * sample + b1 * x1[ch] + b2 * x2[ch] - a1 * y1[ch] - a2 * y2[ch];
+        double z = c0 * y + c1 * y1[ch] + c2 * y2[ch] - d1 * z1[ch] - d2 * z2[ch];
+        x2[ch] = x1[ch];
+        x1[ch] = sample;
+        y2[ch] = y1[ch];
+        y1[ch] = y;
+        z2[ch] = z1[ch];
+        z1[ch] = z;
+        subBlockEnergy[ch] += z * z;
+
+        if (ch == channels - 1 && ++subBlockFill == subBlockLength) {
+            closeSubBlock();
+        }
+    }
+
+    private void closeSubBlock() {
+        double[] energy = subBlockEnergy.clone();
+        Arrays.fill(subBlockEnergy, 0.0);
+        subBlockFill = 0;
+
+        if (recentCount < 4) {
+            recent[recentCount++] = energy;
+        } else {
+            System.arraycopy(recent, 1, recent, 0, 3);
+            recent[3] = energy;
+        }
+        if (recentCount < 4) {
+            return;
+        }
+
+        double sum = 0.0;
+        for (int ch = 0; ch < channels; ch++) {
+            double channelEnergy = 0.0;
+            for (double[] subBlock : recent) {
+                channelEnergy += subBlock[ch];
+            }
+            sum += weights[ch] * channelEnergy / (4.0 * subBlockLength);
+        }
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        blocks[blockCount++] = sum;
+    }
+
+    /**
+     * @return integrated loudness, null nếu audio quá ngắn (dưới 400 ms) hoặc im lặng hoàn toàn
+     */
+    public Double integratedLoudness() {
+        double absoluteEnergy = 0.0;
+        int absoluteCount = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (loudness(blocks[i]) > ABSOLUTE_GATE) {
+                absoluteEnergy += blocks[i];
+                absoluteCount++;
+            }
+        }
+        if (absoluteCount == 0) {
+            return null;
+        }
+        double relativeThreshold = loudness(absoluteEnergy / absoluteCount) + RELATIVE_GATE;
+
+        double gatedEnergy = 0.0;
+        int gatedCount = 0;
+        for (int i = 0; i < blockCount; i++) {
+            double l = loudness(blocks[i]);
+            if (l > ABSOLUTE_GATE && l > relativeThreshold) {
+                gatedEnergy += blocks[i];
+                gatedCount++;
+            }
+        }
+        return gatedCount == 0 ? null : loudness(gatedEnergy / gatedCount);
+    }
+
+    private static double loudness(double energy) {
+        return energy <= 0.0 ? Double.NEGATIVE_INFINITY : -0.691 + 10.0 * Math.log10(energy);
+    }
+}
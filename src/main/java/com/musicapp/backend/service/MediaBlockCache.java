@@ -0,0 +1,484 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache trên ổ đĩa cục bộ cho các object media, chia thành các block có kích thước cố định.
+ * Các object trong bucket không bao giờ bị ghi đè (mỗi lần upload sinh key mới) nên block đã cache
+ * luôn hợp lệ cho đến khi bị evict theo LRU hoặc file bị xóa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MediaBlockCache {
+
+    /**
+     * Nguồn dữ liệu gốc (S3) dùng để nạp các block còn thiếu.
+     */
+    @FunctionalInterface
+    public interface OriginReader {
+        InputStream openRange(long start, long endInclusive) throws IOException;
+    }
+
+    private record BlockId(String keyHash, long index) {
+    }
+
+    private final StreamBufferPool bufferPool;
+
+    @Value("${media.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.cache.dir:${java.io.tmpdir}/musicapp/media-cache}")
+    private String cacheDir;
+
+    @Value("${media.cache.max-bytes:2147483648}")
+    private long maxBytes;
+
+    @Value("${media.cache.block-size:1048576}")
+    private int blockSize;
+
+    // Thời gian tối đa chờ một request khác nạp xong block trước khi tự đọc từ origin
+    @Value("${media.cache.coalesce-wait-ms:10000}")
+    private long coalesceWaitMs;
+
+    // Số block tối đa nạp trong một request tới origin trước khi bắt đầu phục vụ
+    @Value("${media.cache.fill-ahead-blocks:4}")
+    private int fillAheadBlocks;
+
+    private Path root;
+
+    // LinkedHashMap theo thứ tự truy cập -> phần tử đầu tiên là block ít được dùng gần đây nhất
+    private final LinkedHashMap<BlockId, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long currentBytes = 0;
+
+    // Block đang được nạp từ origin -> latch mở khi block đã nằm trên đĩa (hoặc việc nạp thất bại)
+    private final Map<BlockId, CountDownLatch> filling = new ConcurrentHashMap<>();
+    // Key bị evict trong lúc còn block đang nạp: request nạp cuối cùng evict khi phục vụ xong
+    private final Set<String> deferredEvictions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesFromCache = new AtomicLong();
+    private final AtomicLong bytesFromOrigin = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            log.info("Media block cache is disabled.");
+            return;
+        }
+        fillAheadBlocks = Math.max(1, fillAheadBlocks);
+        root = Paths.get(cacheDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        rebuildIndex();
+        log.info("Media block cache ready at {} ({} blocks, {} / {} bytes, block size {}).",
+                root, index.size(), currentBytes, maxBytes, blockSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ghi đoạn [start, end] của object vào outputStream. Block nào đã có trên đĩa được đọc qua FileChannel,
+     * các block liên tiếp còn thiếu (tối đa fill-ahead-blocks) được nạp bằng một request range duy nhất tới origin,
+     * ghi hết xuống đĩa rồi mới phục vụ từ đĩa, nên tốc độ nạp không phụ thuộc vào client chậm nhất.
+     * Block đang được một request khác nạp thì chờ request đó ghi xong rồi đọc từ đĩa, nên nhiều request cùng lúc
+     * cho một object chưa cache chỉ tạo một lần đọc từ origin.
+     */
+    public void copyRange(String key, long fileSize, long start, long end, OutputStream outputStream, OriginReader origin) throws IOException {
+        String keyHash = hash(key);
+
+        long block = start / blockSize;
+        long lastBlock = end / blockSize;
+
+        while (block <= lastBlock) {
+            Path cached = lookup(keyHash, block);
+            if (cached != null && serveFromFile(cached, block, fileSize, start, end, outputStream)) {
+                hits.incrementAndGet();
+                block++;
+                continue;
+            }
+
+            CountDownLatch pending = filling.get(new BlockId(keyHash, block));
+            if (pending != null) {
+                coalesced.incrementAndGet();
+                if (await(pending)) {
+                    continue;
+                }
+                // Request đang nạp quá chậm (origin chậm) -> đọc thẳng block này từ origin, không ghi cache
+                // và không đụng tới latch của request kia
+                serveFromOrigin(fileSize, block, start, end, outputStream, origin);
+                misses.incrementAndGet();
+                block++;
+                continue;
+            }
+
+            List<CountDownLatch> claimed = claim(keyHash, block, Math.min(lastBlock, block + fillAheadBlocks - 1));
+            if (claimed.isEmpty()) {
+                // Request khác vừa nhận nạp block này
+                continue;
+            }
+            long runEnd = block + claimed.size() - 1;
+            try {
+                fill(keyHash, fileSize, block, claimed, origin);
+                misses.addAndGet(claimed.size());
+                while (block <= runEnd && serveFromFile(blockPath(keyHash, block), block, fileSize, start, end, outputStream)) {
+                    block++;
+                }
+            } finally {
+                // Object bị evict trong lúc nạp: xóa sau khi đã phục vụ xong các block vừa nạp
+                if (deferredEvictions.contains(keyHash) && !isFilling(keyHash) && deferredEvictions.remove(keyHash)) {
+                    evictBlocks(keyHash);
+                }
+            }
+            // Block vừa nạp đã bị evict trước khi kịp đọc (cache quá nhỏ) -> vòng lặp nạp lại
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Block chứa offset của object đã nằm trong cache hay chưa (không cập nhật thứ tự LRU).
+     */
+    public boolean isCached(String key, long offset) {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (index) {
+            return index.containsKey(new BlockId(hash(key), offset / blockSize));
+        }
+    }
+
+    /**
+     * Xóa mọi block của object. Nếu đang có request ghi block vào thư mục của object thì việc xóa được hoãn tới khi
+     * request đó nạp và phục vụ xong.
+     */
+    public void evict(String key) {
+        if (!enabled) {
+            return;
+        }
+        String keyHash = hash(key);
+        if (isFilling(keyHash)) {
+            deferredEvictions.add(keyHash);
+            // Kiểm tra lại: lượt nạp có thể vừa kết thúc trước khi key được thêm vào
+            if (isFilling(keyHash) || !deferredEvictions.remove(keyHash)) {
+                return;
+            }
+        }
+        evictBlocks(keyHash);
+    }
+
+    private void evictBlocks(String keyHash) {
+        synchronized (index) {
+            Iterator<Map.Entry<BlockId, Long>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<BlockId, Long> entry = it.next();
+                if (entry.getKey().keyHash().equals(keyHash)) {
+                    currentBytes -= entry.getValue();
+                    it.remove();
+                }
+            }
+        }
+        Path dir = keyDir(keyHash);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(this::deleteQuietly);
+            Files.deleteIfExists(dir);
+        } catch (NoSuchFileException ignored) {
+            // Chưa có block nào được cache cho key này
+        } catch (IOException e) {
+            log.warn("Could not evict cached blocks in {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private boolean isFilling(String keyHash) {
+        return filling.keySet().stream().anyMatch(id -> id.keyHash().equals(keyHash));
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long lookups = hitCount + missCount;
+        int blockCount;
+        long usedBytes;
+        synchronized (index) {
+            blockCount = index.size();
+            usedBytes = currentBytes;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("blockSize", blockSize);
+        stats.put("maxBytes", maxBytes);
+        stats.put("usedBytes", usedBytes);
+        stats.put("blocks", blockCount);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("bytesFromCache", bytesFromCache.get());
+        stats.put("bytesFromOrigin", bytesFromOrigin.get());
+        stats.put("evictions", evictions.get());
+        stats.put("coalescedWaits", coalesced.get());
+        stats.put("fillingBlocks", filling.size());
+        return stats;
+    }
+
+    private boolean serveFromFile(Path file, long block, long fileSize, long start, long end, OutputStream outputStream) throws IOException {
+        long blockStart = block * blockSize;
+        long sliceStart = Math.max(start, blockStart);
+        long sliceEnd = Math.min(end, blockEnd(block, fileSize));
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            bufferPool.copy(channel, sliceStart - blockStart, sliceEnd - sliceStart + 1, outputStream);
+        } catch (NoSuchFileException e) {
+            // Block vừa bị evict giữa lúc lookup và lúc mở file -> coi như miss
+            return false;
+        }
+        bytesFromCache.addAndGet(sliceEnd - sliceStart + 1);
+        return true;
+    }
+
+    /**
+     * Nạp các block đã nhận từ origin xuống đĩa. Mỗi block được mở cho request đang chờ ngay khi ghi xong;
+     * nếu nạp lỗi giữa chừng thì các block còn lại cũng được mở để request đang chờ tự thử lại.
+     */
+    private void fill(String keyHash, long fileSize, long firstBlock, List<CountDownLatch> claimed, OriginReader origin) throws IOException {
+        long lastBlock = firstBlock + claimed.size() - 1;
+        long fetchStart = firstBlock * blockSize;
+        long fetchEnd = blockEnd(lastBlock, fileSize);
+        long block = firstBlock;
+
+        ByteBuffer pooled = bufferPool.acquire(fetchEnd - fetchStart + 1);
+        try {
+            Files.createDirectories(keyDir(keyHash));
+            try (InputStream in = origin.openRange(fetchStart, fetchEnd)) {
+                byte[] buffer = pooled.array();
+                for (; block <= lastBlock; block++) {
+                    long blockStart = block * blockSize;
+                    long blockLength = blockEnd(block, fileSize) - blockStart + 1;
+                    Path tmp = Files.createTempFile(keyDir(keyHash), block + "-", ".tmp");
+                    boolean committed = false;
+                    try (OutputStream blockOut = Files.newOutputStream(tmp)) {
+                        long offset = 0;
+                        while (offset < blockLength) {
+                            int read = StreamBufferPool.readFully(in, buffer, (int) Math.min(buffer.length, blockLength - offset));
+                            if (read == 0) {
+                                throw new IOException("Origin stream ended early at offset " + (blockStart + offset));
+                            }
+                            blockOut.write(buffer, 0, read);
+                            offset += read;
+                        }
+                        bytesFromOrigin.addAndGet(blockLength);
+                        blockOut.close();
+                        Files.move(tmp, blockPath(keyHash, block), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                        committed = true;
+                        register(new BlockId(keyHash, block), blockLength);
+                        release(new BlockId(keyHash, block), claimed.get((int) (block - firstBlock)));
+                    } finally {
+                        if (!committed) {
+                            deleteQuietly(tmp);
+                        }
+                    }
+                }
+            }
+        } finally {
+            bufferPool.release(pooled);
+            for (; block <= lastBlock; block++) {
+                release(new BlockId(keyHash, block), claimed.get((int) (block - firstBlock)));
+            }
+        }
+    }
+
+    /**
+     * Đọc một block thẳng từ origin cho riêng request này, không ghi vào cache.
+     */
+    private void serveFromOrigin(long fileSize, long block, long start, long end, OutputStream outputStream, OriginReader origin) throws IOException {
+        long blockStart = block * blockSize;
+        long fetchStart = Math.max(start, blockStart);
+        long fetchEnd = Math.min(end, blockEnd(block, fileSize));
+        ByteBuffer pooled = bufferPool.acquire(fetchEnd - fetchStart + 1);
+        try (InputStream in = origin.openRange(fetchStart, fetchEnd)) {
+            byte[] buffer = pooled.array();
+            long offset = fetchStart;
+            while (offset <= fetchEnd) {
+                int read = StreamBufferPool.readFully(in, buffer, (int) Math.min(buffer.length, fetchEnd - offset + 1));
+                if (read == 0) {
+                    throw new IOException("Origin stream ended early at offset " + offset);
+                }
+                writeIntersection(buffer, read, offset, start, end, outputStream);
+                offset += read;
+            }
+            bytesFromOrigin.addAndGet(fetchEnd - fetchStart + 1);
+        } finally {
+            bufferPool.release(pooled);
+        }
+    }
+
+    private void writeIntersection(byte[] buffer, int length, long bufferStart, long start, long end, OutputStream outputStream) throws IOException {
+        long from = Math.max(start, bufferStart);
+        long to = Math.min(end, bufferStart + length - 1);
+        if (from <= to) {
+            outputStream.write(buffer, (int) (from - bufferStart), (int) (to - from + 1));
+            bufferPool.recordWrite((int) (to - from + 1));
+        }
+    }
+
+    private long blockEnd(long block, long fileSize) {
+        return Math.min((block + 1) * blockSize, fileSize) - 1;
+    }
+
+    /**
+     * Nhận nạp dãy block liên tiếp còn thiếu bắt đầu từ first, dừng ở block đã có hoặc đang được request khác nạp.
+     * Mỗi block được kiểm tra lại sau khi đã nhận: một request khác có thể vừa nạp xong nó giữa lúc lookup và lúc nhận.
+     *
+     * @return latch của từng block đã nhận (phần tử i ứng với block first + i), rỗng nếu không nhận được block nào
+     */
+    private List<CountDownLatch> claim(String keyHash, long first, long last) {
+        List<CountDownLatch> claimed = new ArrayList<>();
+        for (long next = first; next <= last; next++) {
+            BlockId id = new BlockId(keyHash, next);
+            CountDownLatch latch = new CountDownLatch(1);
+            if (filling.putIfAbsent(id, latch) != null) {
+                break;
+            }
+            if (contains(keyHash, next)) {
+                release(id, latch);
+                break;
+            }
+            claimed.add(latch);
+        }
+        return claimed;
+    }
+
+    /**
+     * Báo cho các request đang chờ block này (đã ghi xong, hoặc nạp lỗi để chúng tự thử lại). Chỉ gỡ đúng latch
+     * của request đã nhận block, không gỡ latch mà request khác đăng ký sau đó.
+     */
+    private void release(BlockId id, CountDownLatch latch) {
+        filling.remove(id, latch);
+        latch.countDown();
+    }
+
+    private boolean await(CountDownLatch latch) throws IOException {
+        try {
+            return latch.await(coalesceWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a cached block");
+        }
+    }
+
+    private Path lookup(String keyHash, long block) {
+        if (!contains(keyHash, block)) {
+            return null;
+        }
+        return blockPath(keyHash, block);
+    }
+
+    private boolean contains(String keyHash, long block) {
+        synchronized (index) {
+            // get() cập nhật thứ tự truy cập của LinkedHashMap
+            return index.get(new BlockId(keyHash, block)) != null;
+        }
+    }
+
+    private void register(BlockId id, long size) {
+        List<BlockId> evicted = new ArrayList<>();
+        synchronized (index) {
+            Long previous = index.put(id, size);
+            currentBytes += size - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<BlockId, Long>> it = index.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<BlockId, Long> eldest = it.next();
+                if (eldest.getKey().equals(id)) {
+                    continue;
+                }
+                currentBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (BlockId victim : evicted) {
+            deleteQuietly(blockPath(victim.keyHash(), victim.index()));
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void rebuildIndex() throws IOException {
+        List<Path> blocks;
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            List<Path> all = files.filter(Files::isRegularFile).toList();
+            blocks = all.stream().filter(p -> p.getFileName().toString().endsWith(".blk")).toList();
+            leftovers = all.stream().filter(p -> p.getFileName().toString().endsWith(".tmp")).toList();
+        }
+        // Block đang ghi dở khi process dừng
+        leftovers.forEach(this::deleteQuietly);
+        List<Path> sorted = new ArrayList<>(blocks);
+        sorted.sort(Comparator.comparingLong(this::lastModified));
+        for (Path file : sorted) {
+            String name = file.getFileName().toString();
+            try {
+                long block = Long.parseLong(name.substring(0, name.length() - ".blk".length()));
+                register(new BlockId(file.getParent().getFileName().toString(), block), Files.size(file));
+            } catch (NumberFormatException | IOException e) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private Path keyDir(String keyHash) {
+        return root.resolve(keyHash.substring(0, 2)).resolve(keyHash);
+    }
+
+    private Path blockPath(String keyHash, long block) {
+        return keyDir(keyHash).resolve(block + ".blk");
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cache file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.repository.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Dọn object không còn được bản ghi nào tham chiếu (file bị thay khi cập nhật bài hát, playlist, ca sĩ...).
+ * So tập key được tham chiếu trong DB với danh sách object của storage (đọc dần theo trang), rồi xóa
+ * theo lô DeleteObjects có giới hạn tốc độ. Mặc định chỉ chạy dry-run: ghi báo cáo, không xóa gì.
+ * <p>
+ * Chỉ xóa object cũ hơn min-age-hours để không đụng tới file vừa upload mà transaction tạo bản ghi chưa commit.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MediaGarbageCollector {
+
+    private static final String UPLOADS_SEGMENT = "/uploads/";
+    private static final int REFERENCE_PAGE_SIZE = 5000;
+    private static final int MAX_BATCH_SIZE = 1000; // giới hạn của DeleteObjects
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 3600_000L;
+
+    private final StorageBackend storageBackend;
+    private final MediaBlockCache mediaBlockCache;
+    private final MediaObjectRepository mediaObjectRepository;
+    private final SongRepository songRepository;
+    private final SongSubmissionRepository submissionRepository;
+    private final PlaylistRepository playlistRepository;
+    private final SingerRepository singerRepository;
+    private final UserRepository userRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+
+    @Value("${media.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.gc.dry-run:true}")
+    private boolean dryRunByDefault;
+
+    @Value("${media.gc.prefixes:audio/,images/,derived/}")
+    private String[] prefixes;
+
+    @Value("${media.gc.min-age-hours:24}")
+    private long minAgeHours;
+
+    @Value("${media.gc.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${media.gc.deletes-per-second:200}")
+    private int deletesPerSecond;
+
+    @Value("${media.gc.report-sample-size:100}")
+    private int sampleSize;
+
+    // Key trong hàng đợi phải nằm đó ít nhất chừng này mới bị xóa (transaction trỏ lại tới key có thể chưa commit)
+    @Value("${media.gc.queue-grace-seconds:600}")
+    private long queueGraceSeconds;
+
+    // Lô xóa lỗi được xếp lại sau retry-backoff-seconds, nhân đôi mỗi lần (tối đa 1 giờ)
+    @Value("${media.gc.retry-backoff-seconds:60}")
+    private long retryBackoffSeconds;
+
+    @Value("${media.gc.delete-attempts:8}")
+    private int deleteAttempts;
+
+    private ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Map<String, Object> lastReport = Map.of();
+
+    // Object mà deleteFile đã bỏ tham chiếu cuối cùng, chờ được xóa theo lô từ thời điểm dueAt
+    private record PendingDelete(String key, long dueAt, int attempts) {
+    }
+
+    private final Queue<PendingDelete> pendingDeletes =
+            new PriorityBlockingQueue<>(64, Comparator.comparingLong(PendingDelete::dueAt));
+    private final AtomicLong pendingDeletesKept = new AtomicLong();
+    private final AtomicLong pendingDeletesRetried = new AtomicLong();
+    private final AtomicLong pendingDeletesDropped = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "media-gc");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Chạy 3 giờ 30 sáng mỗi ngày theo chế độ media.gc.dry-run.
+     */
+    @Scheduled(cron = "${media.gc.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            start(dryRunByDefault);
+        }
+    }
+
+    /**
+     * Chạy GC trên thread nền.
+     *
+     * @param dryRun null = theo cấu hình media.gc.dry-run
+     * @return false nếu đang có một lượt khác chạy
+     */
+    public boolean start(Boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        boolean effectiveDryRun = dryRun != null ? dryRun : dryRunByDefault;
+        executor.execute(() -> {
+            try {
+                run(effectiveDryRun);
+            } catch (Exception e) {
+                log.error("Media GC failed: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> getLastReport() {
+        Map<String, Object> report = new LinkedHashMap<>(lastReport);
+        report.put("running", running.get());
+        report.put("pendingDeletes", pendingDeletes.size());
+        report.put("pendingDeletesKept", pendingDeletesKept.get());
+        report.put("pendingDeletesRetried", pendingDeletesRetried.get());
+        report.put("pendingDeletesDropped", pendingDeletesDropped.get());
+        return report;
+    }
+
+    /**
+     * Xếp object vào hàng đợi xóa thay vì gọi DeleteObject đồng bộ trong request.
+     */
+    public void enqueueDelete(String key) {
+        pendingDeletes.add(new PendingDelete(key, System.currentTimeMillis() + queueGraceSeconds * 1000, 0));
+    }
+
+    /**
+     * Xóa theo lô các object đã nằm trong hàng đợi quá queue-grace-seconds. Hàng đợi chỉ dựa vào refcount nên trước
+     * khi xóa vẫn kiểm tra lại các key của lô: key còn được bảng nội dung nào trỏ tới (bài hát, yêu cầu upload,
+     * playlist, ca sĩ, người dùng, upload session) hoặc vừa được đăng ký lại (upload trùng nội dung) thì giữ lại.
+     * Lô xóa lỗi được xếp lại vào hàng đợi với backoff.
+     */
+    @Scheduled(fixedDelayString = "${media.gc.flush-delay-ms:30000}", initialDelay = 30000)
+    public void flushPendingDeletes() {
+        long now = System.currentTimeMillis();
+        PendingDelete head;
+        while ((head = pendingDeletes.peek()) != null && head.dueAt() <= now) {
+            List<PendingDelete> due = new ArrayList<>(batchSize);
+            while (due.size() < batchSize && (head = pendingDeletes.peek()) != null && head.dueAt() <= now) {
+                due.add(pendingDeletes.poll());
+            }
+            Set<String> stillUsed = findStillUsed(due.stream().map(PendingDelete::key).toList());
+            List<PendingDelete> batch = new ArrayList<>(due.size());
+            for (PendingDelete pending : due) {
+                if (isReferenced(stillUsed, pending.key())) {
+                    pendingDeletesKept.incrementAndGet();
+                } else {
+                    batch.add(pending);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                deleteBatch(batch.stream().map(PendingDelete::key).toList());
+            } catch (Exception e) {
+                log.warn("Could not delete a batch of {} queued objects, retrying later: {}", batch.size(), e.getMessage());
+                batch.forEach(this::retryLater);
+            }
+        }
+    }
+
+    private void retryLater(PendingDelete pending) {
+        int attempts = pending.attempts() + 1;
+        if (attempts >= deleteAttempts) {
+            // Object mồ côi còn lại sẽ được lượt GC đầy đủ tìm ra
+            pendingDeletesDropped.incrementAndGet();
+            log.warn("Giving up deleting {} after {} attempts.", pending.key(), attempts);
+            return;
+        }
+        long backoff = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffSeconds * 1000 << Math.min(attempts - 1, 20));
+        pendingDeletes.add(new PendingDelete(pending.key(), System.currentTimeMillis() + backoff, attempts));
+        pendingDeletesRetried.incrementAndGet();
+    }
+
+    /**
+     * Những key trong lô (hoặc ảnh gốc của bản thu nhỏ) còn được dùng: mỗi bảng một truy vấn IN theo đường dẫn
+     * /uploads/&lt;key&gt; như FileStorageService lưu, cộng các key vẫn còn bản ghi media_objects.
+     */
+    private Set<String> findStillUsed(List<String> keys) {
+        Set<String> lookup = new HashSet<>(keys);
+        keys.stream().map(ImageDerivativeService::originalKeyOf).filter(Objects::nonNull).forEach(lookup::add);
+        List<String> paths = lookup.stream().map(key -> UPLOADS_SEGMENT + key).toList();
+
+        Set<String> used = new HashSet<>(mediaObjectRepository.findExistingKeys(lookup));
+        Stream.of(songRepository.findFilePathsIn(paths),
+                        songRepository.findThumbnailPathsIn(paths),
+                        submissionRepository.findFilePathsIn(paths),
+                        submissionRepository.findThumbnailPathsIn(paths),
+                        playlistRepository.findThumbnailPathsIn(paths),
+                        singerRepository.findAvatarPathsIn(paths),
+                        userRepository.findAvatarPathsIn(paths),
+                        uploadSessionRepository.findFilePathsIn(paths))
+                .flatMap(List::stream)
+                .forEach(path -> addKey(used, path));
+        return used;
+    }
+
+    private void run(boolean dryRun) throws Exception {
+        long startedAt = System.currentTimeMillis();
+        LocalDateTime runStartedAt = LocalDateTime.now();
+        Set<String> referenced = collectReferencedKeys();
+        Instant cutoff = Instant.now().minus(minAgeHours, ChronoUnit.HOURS);
+        log.info("Media GC started (dryRun={}): {} referenced keys.", dryRun, referenced.size());
+
+        long scanned = 0;
+        long tooRecent = 0;
+        long orphans = 0;
+        long orphanBytes = 0;
+        long deleted = 0;
+        List<String> sample = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+
+        for (String prefix : prefixes) {
+            try (Stream<StorageBackend.ListedObject> objects = storageBackend.list(prefix.trim())) {
+                Iterator<StorageBackend.ListedObject> it = objects.iterator();
+                while (it.hasNext()) {
+                    StorageBackend.ListedObject object = it.next();
+                    scanned++;
+                    if (isReferenced(referenced, object.key())) {
+                        continue;
+                    }
+                    if (object.lastModified() != null && object.lastModified().isAfter(cutoff)) {
+                        tooRecent++;
+                        continue;
+                    }
+                    orphans++;
+                    orphanBytes += object.size();
+                    if (sample.size() < sampleSize) {
+                        sample.add(object.key());
+                    }
+                    if (!dryRun) {
+                        batch.add(object.key());
+                        if (batch.size() >= batchSize) {
+                            deleted += deleteOrphans(batch, runStartedAt);
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += deleteOrphans(batch, runStartedAt);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("dryRun", dryRun);
+        report.put("startedAt", runStartedAt);
+        report.put("durationMs", System.currentTimeMillis() - startedAt);
+        report.put("referencedKeys", referenced.size());
+        report.put("scannedObjects", scanned);
+        report.put("skippedRecent", tooRecent);
+        report.put("orphanObjects", orphans);
+        report.put("orphanBytes", orphanBytes);
+        report.put("deletedObjects", deleted);
+        report.put("orphanSample", sample);
+        lastReport = report;
+        log.info("Media GC finished (dryRun={}): scanned {}, orphans {} ({} bytes), deleted {}.",
+                dryRun, scanned, orphans, orphanBytes, deleted);
+    }
+
+    /**
+     * Bản thu nhỏ (derived/...) còn được dùng khi ảnh gốc của nó còn được tham chiếu.
+     */
+    private static boolean isReferenced(Set<String> referenced, String key) {
+        if (referenced.contains(key)) {
+            return true;
+        }
+        String original = ImageDerivativeService.originalKeyOf(key);
+        return original != null && referenced.contains(original);
+    }
+
+    /**
+     * Bỏ các key (hoặc ảnh gốc của bản thu nhỏ) vừa được upload trùng nội dung sau khi GC bắt đầu, xóa bản ghi media_objects rồi xóa object.
+     */
+    private int deleteOrphans(List<String> keys, LocalDateTime runStartedAt) {
+        Set<String> lookup = new HashSet<>(keys);
+        keys.stream().map(ImageDerivativeService::originalKeyOf).filter(Objects::nonNull).forEach(lookup::add);
+        Set<String> recent = new HashSet<>(mediaObjectRepository.findKeysReferencedSince(lookup, runStartedAt));
+        List<String> toDelete = new ArrayList<>(keys);
+        toDelete.removeIf(key -> isReferenced(recent, key));
+        if (toDelete.isEmpty()) {
+            return 0;
+        }
+        mediaObjectRepository.deleteByFileKeys(toDelete);
+        try {
+            return deleteBatch(toDelete);
+        } catch (Exception e) {
+            // Object còn lại vẫn là mồ côi, lượt sau sẽ xóa
+            log.warn("Could not delete a batch of {} objects: {}", toDelete.size(), e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Một lô DeleteObjects, sau đó ngủ đủ lâu để tốc độ xóa không vượt deletes-per-second (kể cả khi lô lỗi).
+     */
+    private int deleteBatch(List<String> keys) throws IOException {
+        long started = System.nanoTime();
+        try {
+            int deleted = storageBackend.deleteAll(keys);
+            keys.forEach(mediaBlockCache::evict);
+            return deleted;
+        } finally {
+            long minimumMillis = keys.size() * 1000L / Math.max(1, deletesPerSecond);
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            if (elapsedMillis < minimumMillis) {
+                try {
+                    Thread.sleep(minimumMillis - elapsedMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tất cả key đang được tham chiếu: đường dẫn file trong các bảng, file của upload session chưa dùng,
+     * và object vừa được upload trùng nội dung (có thể chưa kịp gắn vào bản ghi nào).
+     */
+    private Set<String> collectReferencedKeys() {
+        Set<String> keys = new HashSet<>();
+        collect(keys, songRepository::findFilePathsAfter);
+        collect(keys, songRepository::findThumbnailPathsAfter);
+        collect(keys, submissionRepository::findFilePathsAfter);
+        collect(keys, submissionRepository::findThumbnailPathsAfter);
+        collect(keys, playlistRepository::findThumbnailPathsAfter);
+        collect(keys, singerRepository::findAvatarPathsAfter);
+        collect(keys, userRepository::findAvatarPathsAfter);
+        uploadSessionRepository.findAllFilePaths().forEach(path -> addKey(keys, path));
+        LocalDateTime recent = LocalDateTime.ofInstant(Instant.now().minus(minAgeHours, ChronoUnit.HOURS), ZoneId.systemDefault());
+        keys.addAll(mediaObjectRepository.findAllKeysReferencedSince(recent));
+        return keys;
+    }
+
+    private void collect(Set<String> keys, BiFunction<Long, Pageable, List<MediaPathView>> query) {
+        long afterId = 0L;
+        List<MediaPathView> page;
+        while (!(page = query.apply(afterId, PageRequest.of(0, REFERENCE_PAGE_SIZE))).isEmpty()) {
+            for (MediaPathView row : page) {
+                addKey(keys, row.getPath());
+                afterId = row.getId();
+            }
+        }
+    }
+
+    private static void addKey(Set<String> keys, String path) {
+        // Đường dẫn không trỏ vào storage của mình (vd. avatar Google) thì bỏ qua
+        if (path == null) {
+            return;
+        }
+        int index = path.indexOf(UPLOADS_SEGMENT);
+        if (index >= 0) {
+            keys.add(path.substring(index + UPLOADS_SEGMENT.length()));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.MediaObject;
+import com.musicapp.backend.repository.MediaObjectRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Bảng đếm tham chiếu của storage theo nội dung. Mỗi thao tác chạy trong transaction riêng và dùng
+ * UPDATE nguyên tử, nên hai upload cùng nội dung chạy song song không làm sai số đếm.
+ */
+@Service
+@RequiredArgsConstructor
+public class MediaObjectService {
+
+    private final MediaObjectRepository mediaObjectRepository;
+
+    /**
+     * Thêm một tham chiếu tới object có nội dung này, nếu đã tồn tại.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Optional<MediaObject> retain(String sha256) {
+        if (mediaObjectRepository.incrementRefCount(sha256, LocalDateTime.now()) == 0) {
+            return Optional.empty();
+        }
+        return mediaObjectRepository.findBySha256(sha256);
+    }
+
+    /**
+     * Thêm một tham chiếu tới object đang nằm ở key này (một bản ghi mới dùng chung file của bản ghi khác).
+     *
+     * @return false nếu key không có trong media_objects (object cũ, tạo trước khi có bảng này)
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean retainKey(String key) {
+        return mediaObjectRepository.incrementRefCountByFileKey(key, LocalDateTime.now()) > 0;
+    }
+
+    /**
+     * Ghi nhận object vừa được ghi với một tham chiếu. Ném DataIntegrityViolationException nếu một upload khác
+     * cùng nội dung vừa đăng ký trước - người gọi khi đó dùng {@link #retain(String)}.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public MediaObject register(String sha256, String key, long size, String contentType, String etag) {
+        return mediaObjectRepository.saveAndFlush(MediaObject.builder()
+                .sha256(sha256)
+                .fileKey(key)
+                .size(size)
+                .contentType(contentType)
+                .etag(etag)
+                .refCount(1)
+                .build());
+    }
+
+    /**
+     * Bỏ một tham chiếu.
+     *
+     * @return true nếu object không còn được dùng và có thể xóa khỏi storage; object cũ (tạo trước khi có bảng này)
+     * luôn trả về true như trước
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public boolean release(String key) {
+        if (!mediaObjectRepository.existsByFileKey(key)) {
+            return true;
+        }
+        mediaObjectRepository.decrementRefCount(key);
+        return mediaObjectRepository.deleteUnreferenced(key) > 0;
+    }
+
+    public void setDominantColor(String key, String color) {
+        mediaObjectRepository.updateDominantColor(key, color);
+    }
+
+    public Optional<String> findDominantColor(String key) {
+        return mediaObjectRepository.findDominantColorByFileKey(key);
+    }
+}
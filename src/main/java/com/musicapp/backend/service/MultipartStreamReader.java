@@ -0,0 +1,307 @@
+package com.musicapp.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Đọc dần một body multipart/form-data (RFC 7578) trực tiếp từ stream của request: mỗi part được trả về
+ * kèm một InputStream đọc tới boundary kế tiếp, không ghi ra file tạm và không giữ cả part trong bộ nhớ.
+ * Bộ nhớ dùng cho mỗi request chỉ là một buffer cố định.
+ * <p>
+ * Part phải được đọc theo thứ tự; gọi {@link #next()} sẽ bỏ qua phần còn lại của part hiện tại.
+ */
+public final class MultipartStreamReader {
+
+    private static final int MAX_HEADER_BYTES = 8192;
+
+    public record Part(String name, String fileName, String contentType, InputStream body) {
+
+        public boolean isFile() {
+            return fileName != null;
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter; // CRLF + "--" + boundary
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean finished;
+    private PartInputStream current;
+
+    public MultipartStreamReader(InputStream in, String boundary, int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(bufferSize, delimiter.length * 4)];
+        // Boundary đầu tiên không có CRLF phía trước: thêm vào để mọi boundary đều có cùng dạng
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * Lấy boundary từ header Content-Type, null nếu không phải multipart hoặc thiếu boundary.
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        String boundary = parameter(contentType, "boundary");
+        return boundary == null || boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+    }
+
+    /**
+     * @return part kế tiếp, hoặc null khi đã tới boundary kết thúc
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current == null) {
+            skipToDelimiter(); // bỏ phần preamble
+        } else {
+            current.skip(Long.MAX_VALUE);
+        }
+
+        // Sau boundary: "--" là kết thúc, còn lại là CRLF (có thể có khoảng trắng thừa phía trước)
+        if (!ensure(2)) {
+            throw new IOException("Unexpected end of multipart stream");
+        }
+        if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        while (ensure(1) && (buffer[pos] == ' ' || buffer[pos] == '\t')) {
+            pos++;
+        }
+        if (!ensure(2) || buffer[pos] != '\r' || buffer[pos + 1] != '\n') {
+            throw new IOException("Malformed multipart boundary");
+        }
+        pos += 2;
+
+        String name = null;
+        String fileName = null;
+        String contentType = null;
+        int headerBytes = 0;
+        String line;
+        while (!(line = readHeaderLine()).isEmpty()) {
+            headerBytes += line.length() + 2;
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers are too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                name = parameter(value, "name");
+                fileName = parameter(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+        current = new PartInputStream();
+        return new Part(name, fileName, contentType, current);
+    }
+
+    private void skipToDelimiter() throws IOException {
+        PartInputStream preamble = new PartInputStream();
+        preamble.skip(Long.MAX_VALUE);
+    }
+
+    /**
+     * Dòng header mã hóa UTF-8 (trình duyệt gửi tên file UTF-8 không escape), không gồm CRLF.
+     */
+    private String readHeaderLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i + 1 < limit; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, pos, i - pos, StandardCharsets.UTF_8);
+                    pos = i + 2;
+                    return line;
+                }
+            }
+            scanned = Math.max(0, limit - pos - 1);
+            if (scanned > MAX_HEADER_BYTES) {
+                throw new IOException("Multipart part headers are too large");
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of multipart headers");
+            }
+        }
+    }
+
+    /**
+     * Đảm bảo có ít nhất count byte chưa đọc trong buffer.
+     */
+    private boolean ensure(int count) throws IOException {
+        while (limit - pos < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Dồn phần chưa đọc về đầu buffer rồi đọc thêm. false nếu stream đã hết.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            throw new IOException("Multipart buffer overflow");
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            if (buffer[i] != delimiter[0]) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Giá trị tham số name=value / name="value" của một header; dấu ; trong chuỗi có ngoặc kép không tách tham số.
+     */
+    private static String parameter(String header, String name) {
+        int start = header.indexOf(';');
+        while (start >= 0 && start < header.length()) {
+            int eq = header.indexOf('=', start);
+            if (eq < 0) {
+                return null;
+            }
+            String key = header.substring(start + 1, eq).trim();
+            int i = eq + 1;
+            while (i < header.length() && header.charAt(i) == ' ') {
+                i++;
+            }
+            String value;
+            int end;
+            if (i < header.length() && header.charAt(i) == '"') {
+                end = header.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = header.length();
+                }
+                value = header.substring(i + 1, end);
+                end = header.indexOf(';', end);
+            } else {
+                end = header.indexOf(';', i);
+                value = header.substring(i, end < 0 ? header.length() : end).trim();
+            }
+            if (key.equalsIgnoreCase(name)) {
+                return value;
+            }
+            start = end;
+        }
+        return null;
+    }
+
+    /**
+     * Nội dung của một part: đọc tới ngay trước delimiter rồi dừng (delimiter được tiêu thụ khi hết part).
+     */
+    private final class PartInputStream extends InputStream {
+
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!done) {
+                int available = available();
+                if (available > 0) {
+                    int n = Math.min(available, len);
+                    System.arraycopy(buffer, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+                if (done) {
+                    break;
+                }
+                if (!fill()) {
+                    throw new IOException("Unexpected end of multipart stream");
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Số byte chắc chắn thuộc part: tới delimiter nếu đã thấy, còn không thì trừ lại đoạn đuôi
+         * có thể là phần đầu của delimiter.
+         */
+        @Override
+        public int available() {
+            if (done) {
+                return 0;
+            }
+            int index = indexOfDelimiter();
+            if (index == pos) {
+                pos += delimiter.length;
+                done = true;
+                return 0;
+            }
+            if (index > pos) {
+                return index - pos;
+            }
+            return Math.max(0, limit - pos - (delimiter.length - 1));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && !done) {
+                int available = available();
+                if (available > 0) {
+                    int step = (int) Math.min(available, n - skipped);
+                    pos += step;
+                    skipped += step;
+                } else if (!done && !fill()) {
+                    throw new IOException("Unexpected end of multipart stream");
+                }
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            // Phần còn lại được bỏ qua ở lần gọi next()
+        }
+    }
+}
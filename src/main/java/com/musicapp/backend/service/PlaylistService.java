@@ -39,6 +39,7 @@ public class PlaylistService {
     private final SongRepository songRepository;
     private final PlaylistMapper playlistMapper;
     private final LikeRepository likeRepository;
+    private final ListenCountBuffer listenCountBuffer;
 
     public Page<PlaylistDto> searchPublicPlaylists(String keyword, Pageable pageable, User currentUser) {
         Page<Playlist> playlistPage = playlistRepository.searchPublicPlaylistsByName(keyword, pageable);
@@ -298,13 +299,12 @@ public class PlaylistService {
         return playlistPage.map(p -> playlistMapper.toDto(p, currentUser));
     }
 
-    @Transactional
     public void incrementListenCount(Long playlistId) {
-        Playlist playlist = playlistRepository.findById(playlistId)
+        Playlist.PlaylistVisibility visibility = playlistRepository.findVisibilityById(playlistId)
                 .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy playlist với ID: " + playlistId));
 
-        if (playlist.getVisibility() == Playlist.PlaylistVisibility.PUBLIC) {
-            playlistRepository.incrementListenCount(playlistId);
+        if (visibility == Playlist.PlaylistVisibility.PUBLIC) {
+            listenCountBuffer.recordPlaylistListen(playlistId);
         }
     }
 
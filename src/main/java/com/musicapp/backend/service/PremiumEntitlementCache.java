@@ -0,0 +1,104 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.UserSubscription;
+import com.musicapp.backend.repository.UserSubscriptionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache quyền Premium theo user id. Người dùng có gói: entry hết hạn đúng tại endDate của gói;
+ * người dùng không có gói: entry sống trong một khoảng ngắn (negative-ttl). Kích hoạt / hủy gói
+ * trong {@link SubscriptionService} xóa entry sau khi transaction commit.
+ */
+@Component
+@RequiredArgsConstructor
+public class PremiumEntitlementCache {
+
+    private static final long NOT_PREMIUM = 0L;
+
+    /**
+     * premiumUntil: thời điểm hết quyền (epoch millis), 0 nếu không có gói; validUntil: thời điểm entry hết hạn.
+     */
+    private record Entry(long premiumUntil, long validUntil) {
+    }
+
+    private final UserSubscriptionRepository subscriptionRepository;
+
+    private final Map<Long, Entry> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Value("${media.entitlement.cache-size:100000}")
+    private int maxEntries;
+
+    @Value("${media.entitlement.negative-ttl-seconds:300}")
+    private long negativeTtlSeconds;
+
+    public boolean hasPremium(Long userId) {
+        return premiumUntil(userId) > System.currentTimeMillis();
+    }
+
+    /**
+     * @return thời điểm (epoch millis) quyền Premium của người dùng hết hạn, 0 nếu hiện không có gói
+     */
+    public long premiumUntil(Long userId) {
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(userId);
+        if (entry != null && now < entry.validUntil()) {
+            hits.increment();
+            return entry.premiumUntil();
+        }
+        misses.increment();
+
+        entry = subscriptionRepository.findActiveSubscription(userId, LocalDateTime.now())
+                .map(UserSubscription::getEndDate)
+                .map(endDate -> {
+                    long until = endDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    return new Entry(until, until);
+                })
+                .orElseGet(() -> new Entry(NOT_PREMIUM, now + negativeTtlSeconds * 1000));
+        if (cache.size() >= maxEntries) {
+            Iterator<Long> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(userId, entry);
+        return entry.premiumUntil();
+    }
+
+    /**
+     * Xóa entry của người dùng. Nếu đang trong transaction thì xóa thêm một lần sau commit, để một request
+     * đọc song song trước khi commit không nạp lại trạng thái cũ vào cache.
+     */
+    public void invalidate(Long userId) {
+        cache.remove(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(userId);
+                }
+            });
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "entries", cache.size(),
+                "hits", hits.sum(),
+                "misses", misses.sum()
+        );
+    }
+}
@@ -0,0 +1,110 @@
+package com.musicapp.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chế độ stream bằng redirect: sau khi xét quyền, endpoint stream trả 302 tới URL GET đã ký của S3 để byte audio
+ * đi thẳng từ S3 tới client, JVM không phải chép dữ liệu. URL được dùng lại cho tới refresh-before-seconds trước
+ * khi hết hạn nên các lượt nghe cùng một file trong khoảng đó có cùng URL (trình duyệt/CDN cache được).
+ */
+@Service
+// URL ký chỉ có nghĩa với S3; tắt thì endpoint stream proxy như trước
+@ConditionalOnExpression("${media.stream.redirect.enabled:false} && '${storage.backend:s3}' == 's3'")
+@RequiredArgsConstructor
+@Slf4j
+public class PresignedUrlService {
+
+    private record Entry(String url, long refreshAt) {
+    }
+
+    private final S3Presigner s3Presigner;
+
+    @Value("${aws.s3.bucketName}")
+    private String bucketName;
+
+    @Value("${media.stream.redirect.ttl-seconds:900}")
+    private long ttlSeconds;
+
+    @Value("${media.stream.redirect.refresh-before-seconds:120}")
+    private long refreshBeforeSeconds;
+
+    @Value("${media.stream.redirect.cache-size:50000}")
+    private int maxEntries;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong redirects = new AtomicLong();
+    private final AtomicLong signed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * URL GET đã ký cho object, còn hạn ít nhất refresh-before-seconds.
+     *
+     * @return null nếu không ký được - người gọi proxy dữ liệu như bình thường
+     */
+    public String urlFor(String key, String contentType) {
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry == null || entry.refreshAt() <= now) {
+            try {
+                entry = new Entry(presign(key, contentType), now + Math.max(0, ttlSeconds - refreshBeforeSeconds) * 1000);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                log.warn("Could not presign {}: {}", key, e.getMessage());
+                return null;
+            }
+            remember(key, entry);
+        }
+        redirects.incrementAndGet();
+        return entry.url();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("redirects", redirects.get());
+        stats.put("presigned", signed.get());
+        stats.put("presignFailures", failures.get());
+        stats.put("cachedUrls", cache.size());
+        return stats;
+    }
+
+    private String presign(String key, String contentType) {
+        GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key);
+        if (contentType != null) {
+            getObjectRequest.responseContentType(contentType);
+        }
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(ttlSeconds))
+                .getObjectRequest(getObjectRequest.build())
+                .build();
+        signed.incrementAndGet();
+        return s3Presigner.presignGetObject(presignRequest).url().toString();
+    }
+
+    private void remember(String key, Entry entry) {
+        if (cache.size() >= maxEntries) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        cache.put(key, entry);
+    }
+}
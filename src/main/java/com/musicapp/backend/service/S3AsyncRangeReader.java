@@ -0,0 +1,35 @@
+package com.musicapp.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+// Chế độ async đọc qua S3AsyncClient nên chỉ bật khi storage.backend=s3
+@ConditionalOnExpression("'${media.stream.mode:blocking}' == 'async' && '${storage.backend:s3}' == 's3'")
+@RequiredArgsConstructor
+public class S3AsyncRangeReader implements AsyncRangeReader {
+
+    private final S3AsyncClient s3AsyncClient;
+
+    @Value("${aws.s3.bucketName}")
+    private String bucketName;
+
+    @Override
+    public CompletableFuture<? extends Publisher<ByteBuffer>> readRange(String key, long start, long end) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build();
+        return s3AsyncClient.getObject(getObjectRequest, AsyncResponseTransformer.toPublisher());
+    }
+}
@@ -0,0 +1,381 @@
+package com.musicapp.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class S3StorageBackend implements StorageBackend {
+
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024; // giới hạn dưới của S3 cho mọi part trừ part cuối
+
+    private final S3Client s3Client;
+    private final StreamBufferPool streamBufferPool;
+
+    @Value("${aws.s3.bucketName}")
+    private String bucketName;
+
+    @Value("${storage.s3.multipart-threshold:16777216}")
+    private long multipartThreshold;
+
+    @Value("${storage.s3.part-size:8388608}")
+    private long partSize;
+
+    @Value("${storage.s3.upload-threads:4}")
+    private int uploadThreads;
+
+    @Value("${storage.s3.part-retries:3}")
+    private int partRetries;
+
+    private ExecutorService uploadExecutor;
+    // Giới hạn số part đang nằm trong bộ nhớ trên toàn bộ các upload: tối đa (threads * 2) * part-size byte
+    private Semaphore bufferedParts;
+
+    @PostConstruct
+    void init() {
+        partSize = Math.max(partSize, MIN_PART_SIZE);
+        uploadExecutor = new ThreadPoolExecutor(uploadThreads, uploadThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "s3-part-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ((ThreadPoolExecutor) uploadExecutor).allowCoreThreadTimeOut(true);
+        bufferedParts = new Semaphore(uploadThreads * 2);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    /**
+     * File nhỏ: một PUT duy nhất. File từ multipart-threshold trở lên: multipart upload, các part được đọc
+     * tuần tự từ stream nhưng gửi song song trên pool dùng chung. Chưa biết kích thước: đọc part đầu tiên,
+     * nếu stream hết trước khi đầy part thì vẫn chỉ cần một PUT.
+     */
+    @Override
+    public String put(String key, InputStream data, long size, String contentType) throws IOException {
+        if (size >= 0 && size < multipartThreshold) {
+            return putSingle(key, RequestBody.fromInputStream(data, size), contentType);
+        }
+        return putMultipart(key, data, size, contentType);
+    }
+
+    private String putSingle(String key, RequestBody body, String contentType) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType) // Thêm content type khi upload
+                .build();
+        return s3Client.putObject(putObjectRequest, body).eTag();
+    }
+
+    private String putMultipart(String key, InputStream data, long size, String contentType) throws IOException {
+        byte[] firstPart = null;
+        if (size < 0) {
+            acquirePart();
+            boolean buffered = false;
+            try {
+                firstPart = new byte[(int) partSize];
+                int firstLength = StreamBufferPool.readFully(data, firstPart, firstPart.length);
+                if (firstLength < firstPart.length) {
+                    return putSingle(key, RequestBody.fromBytes(Arrays.copyOf(firstPart, firstLength)), contentType);
+                }
+                buffered = true;
+            } finally {
+                if (!buffered) {
+                    bufferedParts.release();
+                }
+            }
+        }
+
+        String uploadId;
+        try {
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build()).uploadId();
+        } catch (RuntimeException e) {
+            if (firstPart != null) {
+                bufferedParts.release();
+            }
+            throw e;
+        }
+
+        List<PendingPart> parts = new ArrayList<>();
+        try {
+            long remaining = size;
+            int partNumber = 1;
+            if (firstPart != null) {
+                byte[] part = firstPart;
+                firstPart = null; // permit của part này giờ do submitPart quản lý
+                submitPart(parts, key, uploadId, partNumber++, part);
+            }
+            while (size < 0 || remaining > 0) {
+                int partLength = (int) (size < 0 ? partSize : Math.min(partSize, remaining));
+                bufferedParts.acquire();
+                byte[] part;
+                try {
+                    part = new byte[partLength];
+                    int read = StreamBufferPool.readFully(data, part, part.length);
+                    if (size >= 0 && read < part.length) {
+                        throw new IOException("Upload stream ended before " + size + " bytes were read");
+                    }
+                    if (read == 0) {
+                        bufferedParts.release();
+                        break;
+                    }
+                    if (read < part.length) {
+                        part = Arrays.copyOf(part, read);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    bufferedParts.release();
+                    throw e;
+                }
+                submitPart(parts, key, uploadId, partNumber++, part);
+                if (size < 0 && part.length < partLength) {
+                    break;
+                }
+                remaining -= partLength;
+            }
+
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (PendingPart part : parts) {
+                completed.add(part.future().get());
+            }
+            completed.sort(Comparator.comparing(CompletedPart::partNumber));
+            return s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build()).eTag();
+        } catch (Exception e) {
+            if (firstPart != null) {
+                bufferedParts.release();
+            }
+            parts.forEach(PendingPart::cancel);
+            abort(key, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + key);
+            }
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Multipart upload of " + key + " failed", cause);
+        }
+    }
+
+    /**
+     * Part đã được đưa lên pool upload; permitHeld bảo đảm permit của bufferedParts được trả đúng một lần,
+     * kể cả khi part bị hủy trước khi kịp chạy.
+     */
+    private record PendingPart(Future<CompletedPart> future, AtomicBoolean permitHeld, Semaphore permits) {
+
+        void cancel() {
+            future.cancel(true);
+            if (permitHeld.getAndSet(false)) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Gửi part đã đọc (đang giữ một permit của bufferedParts) lên pool upload; permit được trả khi part gửi xong.
+     */
+    private void submitPart(List<PendingPart> parts, String key, String uploadId, int partNumber, byte[] part) {
+        AtomicBoolean permitHeld = new AtomicBoolean(true);
+        try {
+            parts.add(new PendingPart(uploadExecutor.submit(() -> {
+                try {
+                    return uploadPart(key, uploadId, partNumber, part);
+                } finally {
+                    if (permitHeld.getAndSet(false)) {
+                        bufferedParts.release();
+                    }
+                }
+            }), permitHeld, bufferedParts));
+        } catch (RuntimeException e) {
+            bufferedParts.release();
+            throw e;
+        }
+    }
+
+    private void acquirePart() throws InterruptedIOException {
+        try {
+            bufferedParts.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer");
+        }
+    }
+
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, byte[] data) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) data.length)
+                        .build(), RequestBody.fromBytes(data));
+                return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+            } catch (SdkException e) {
+                if (attempt > partRetries) {
+                    throw e;
+                }
+                log.warn("Upload of part {} of {} failed (attempt {}): {}", partNumber, key, attempt, e.getMessage());
+                Thread.sleep(200L << (attempt - 1));
+            }
+        }
+    }
+
+    /**
+     * Hủy multipart upload để S3 xóa các part đã nhận (nếu không, chúng vẫn bị tính phí lưu trữ).
+     */
+    private void abort(String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException e) {
+            log.warn("Could not abort multipart upload {} of {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    /**
+     * CopyObject phía server rồi xóa key cũ (CopyObject một lần hỗ trợ object tới 5 GB, lớn hơn max-file-size).
+     */
+    @Override
+    public String move(String fromKey, String toKey) {
+        CopyObjectResponse response = s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(fromKey)
+                .destinationBucket(bucketName)
+                .destinationKey(toKey)
+                .build());
+        delete(fromKey);
+        return response.copyObjectResult().eTag();
+    }
+
+    @Override
+    public void delete(String key) {
+        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        s3Client.deleteObject(deleteObjectRequest);
+    }
+
+    /**
+     * Một request DeleteObjects (quiet) cho cả lô; lỗi của từng key chỉ được ghi log.
+     */
+    @Override
+    public int deleteAll(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder()
+                        .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList())
+                        .quiet(true)
+                        .build())
+                .build());
+        for (S3Error error : response.errors()) {
+            log.warn("Could not delete {}: {} {}", error.key(), error.code(), error.message());
+        }
+        return keys.size() - response.errors().size();
+    }
+
+    @Override
+    public Stream<ListedObject> list(String prefix) {
+        return s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .build())
+                .contents()
+                .stream()
+                .map(object -> new ListedObject(object.key(), object.size(), object.lastModified()));
+    }
+
+    @Override
+    public ObjectStat stat(String key) throws IOException {
+        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+        HeadObjectResponse headObjectResponse;
+        try {
+            headObjectResponse = s3Client.headObject(headObjectRequest);
+        } catch (S3Exception e) {
+            // HEAD không có body nên lỗi 404 không phải lúc nào cũng được map thành NoSuchKeyException
+            if (e.statusCode() == 404) {
+                throw new NoSuchFileException(key);
+            }
+            throw e;
+        }
+        return new ObjectStat(headObjectResponse.contentLength(), headObjectResponse.contentType(),
+                headObjectResponse.eTag(), headObjectResponse.lastModified());
+    }
+
+    @Override
+    public InputStream openStream(String key) {
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public InputStream openRange(String key, long start, long end) {
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build());
+    }
+
+    @Override
+    public void copyRange(String key, long start, long end, OutputStream outputStream) throws IOException {
+        try (ResponseInputStream<GetObjectResponse> s3is = s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + start + "-" + end)
+                .build())) {
+            streamBufferPool.copy(s3is, outputStream, s3is.response().contentLength());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.musicapp.backend.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Bảng tra thời gian -> vị trí byte của đầu frame audio, các mốc cách nhau khoảng resolution ms.
+ * Khi lưu xuống DB, thời gian và offset được ghi dạng delta varint nên mỗi mốc chỉ tốn vài byte.
+ */
+public class SeekTable {
+
+    public static final SeekTable EMPTY = new SeekTable(0, new long[0], new long[0]);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final long durationMs;
+    private final long[] timesMs;
+    private final long[] offsets;
+
+    public SeekTable(long durationMs, long[] timesMs, long[] offsets) {
+        this.durationMs = durationMs;
+        this.timesMs = timesMs;
+        this.offsets = offsets;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int size() {
+        return timesMs.length;
+    }
+
+    public boolean isEmpty() {
+        return timesMs.length == 0;
+    }
+
+    public long timeAt(int index) {
+        return timesMs[index];
+    }
+
+    public long offsetAt(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Tìm nhị phân mốc cuối cùng có thời gian <= timeMs. Trả về -1 nếu bảng rỗng.
+     */
+    public int indexFor(long timeMs) {
+        if (timesMs.length == 0) {
+            return -1;
+        }
+        int found = Arrays.binarySearch(timesMs, timeMs);
+        if (found >= 0) {
+            return found;
+        }
+        int insertionPoint = -found - 1;
+        return Math.max(0, insertionPoint - 1);
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + timesMs.length * 5);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, timesMs.length);
+        writeVarLong(out, durationMs);
+        long previousTime = 0;
+        long previousOffset = 0;
+        for (int i = 0; i < timesMs.length; i++) {
+            writeVarLong(out, timesMs[i] - previousTime);
+            writeVarLong(out, offsets[i] - previousOffset);
+            previousTime = timesMs[i];
+            previousOffset = offsets[i];
+        }
+        return out.toByteArray();
+    }
+
+    public static SeekTable decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return EMPTY;
+        }
+        try {
+            InputStream in = new ByteArrayInputStream(data);
+            int version = in.read();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported seek table version " + version);
+            }
+            int count = (int) readVarLong(in);
+            long durationMs = readVarLong(in);
+            long[] times = new long[count];
+            long[] offsets = new long[count];
+            long time = 0;
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                time += readVarLong(in);
+                offset += readVarLong(in);
+                times[i] = time;
+                offsets[i] = offset;
+            }
+            return new SeekTable(durationMs, times, offsets);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted seek table", e);
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b == -1) {
+                throw new IOException("Unexpected end of seek table");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -127,10 +127,8 @@ public class SingerService {
         }
 
         if (avatarFile != null && !avatarFile.isEmpty()) {
-            if (singer.getAvatarPath() != null) {
-                fileStorageService.deleteFile(singer.getAvatarPath());
-            }
             String newAvatarPath = fileStorageService.storeFile(avatarFile, "images/singers");
+            fileStorageService.deleteFileAfterCommit(singer.getAvatarPath());
             singer.setAvatarPath(newAvatarPath);
         }
 
@@ -152,9 +150,7 @@ public class SingerService {
             throw new BadRequestException("Không thể xóa ca sĩ '" + singer.getName() + "' vì ca sĩ này đang được liên kết với " + songCount + " bài hát.");
         }
 
-        if (singer.getAvatarPath() != null) {
-            fileStorageService.deleteFile(singer.getAvatarPath());
-        }
+        fileStorageService.deleteFileAfterCommit(singer.getAvatarPath());
         singerRepository.delete(singer);
     }
 
@@ -13,6 +13,7 @@ import com.musicapp.backend.mapper.SongMapper;
 import com.musicapp.backend.repository.*;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -42,7 +43,12 @@ public class SongService {
     private final FileStorageService fileStorageService;
     private final LikeRepository likeRepository;
     private final PlaylistRepository playlistRepository;
-    private final ListenHistoryRepository listenHistoryRepository;
+    private final AudioMetadataService audioMetadataService;
+    private final AudioSeekIndexService audioSeekIndexService;
+    private final AudioWaveformService audioWaveformService;
+    private final AudioIngestService audioIngestService;
+    private final ListenCountBuffer listenCountBuffer;
+    private final ListenDedupFilter listenDedupFilter;
 
 
     @Transactional(readOnly = true)
@@ -236,6 +242,23 @@ public class SongService {
                 .collect(Collectors.toList());
     }
 
+    private void clearAudioInfo(Song song) {
+        song.setDurationMs(null);
+        song.setBitrate(null);
+        song.setSampleRate(null);
+        song.setChannels(null);
+        song.setLoudnessLufs(null);
+        song.setAudioAnalyzedAt(null);
+    }
+
+    /**
+     * Màu nền của bài hát lấy theo màu chủ đạo của ảnh bìa; ảnh không tính được màu (ảnh cũ, định dạng lạ) thì chọn ngẫu nhiên như trước.
+     */
+    private String colorFor(String thumbnailPath) {
+        String color = fileStorageService.dominantColorOf(thumbnailPath);
+        return color != null ? color : generateRandomHexColor();
+    }
+
     private String generateRandomHexColor() {
         Random random = new Random();
         int nextInt = random.nextInt(0xffffff + 1);
@@ -249,11 +272,37 @@ public class SongService {
             throw new BadRequestException("At least one existing singer or one new singer is required.");
         }
 
-        String audioFilePath = fileStorageService.storeFile(audioFile, "audio");
+        StoredFile storedAudio = fileStorageService.storeFileWithMetadata(audioFile, "audio");
+        audioSeekIndexService.indexUpload(storedAudio.getKey(), audioFile);
         String thumbnailFilePath = (thumbnailFile != null && !thumbnailFile.isEmpty())
                 ? fileStorageService.storeFile(thumbnailFile, "images/songs")
                 : null;
 
+        Map<String, MultipartFile> avatarFilesMap = (newSingerAvatars != null)
+                ? newSingerAvatars.stream().collect(Collectors.toMap(MultipartFile::getOriginalFilename, Function.identity(), (first, second) -> first))
+                : Collections.emptyMap();
+        return createSongByAdmin(request, storedAudio, thumbnailFilePath, fileName -> avatarFilesMap.containsKey(fileName)
+                ? fileStorageService.storeFile(avatarFilesMap.get(fileName), "images/singers")
+                : null, admin);
+    }
+
+    /**
+     * Như trên với các file đã được lưu sẵn (upload dạng stream). avatarPathFor trả về đường dẫn avatar
+     * theo tên file gốc, null nếu không có.
+     */
+    @Transactional
+    public SongDto createSongByAdmin(AdminCreateSongRequest request, StoredFile storedAudio, StoredFile thumbnail, Function<String, String> avatarPathFor, User admin) {
+        if ((request.getSingerIds() == null || request.getSingerIds().isEmpty()) &&
+                (request.getNewSingers() == null || request.getNewSingers().isEmpty())) {
+            throw new BadRequestException("At least one existing singer or one new singer is required.");
+        }
+        if (storedAudio == null) {
+            throw new BadRequestException("Audio file is required.");
+        }
+        return createSongByAdmin(request, storedAudio, thumbnail != null ? thumbnail.getPath() : null, avatarPathFor, admin);
+    }
+
+    private SongDto createSongByAdmin(AdminCreateSongRequest request, StoredFile storedAudio, String thumbnailFilePath, Function<String, String> avatarPathFor, User admin) {
         Set<Singer> singers = new HashSet<>();
         if (request.getSingerIds() != null && !request.getSingerIds().isEmpty()) {
             List<Singer> existingSingers = singerRepository.findAllById(request.getSingerIds());
@@ -269,20 +318,14 @@ public class SongService {
         }
 
         if (request.getNewSingers() != null && !request.getNewSingers().isEmpty()) {
-            Map<String, MultipartFile> avatarFilesMap = (newSingerAvatars != null)
-                    ? newSingerAvatars.stream().collect(Collectors.toMap(MultipartFile::getOriginalFilename, Function.identity(), (first, second) -> first))
-                    : Collections.emptyMap();
-
             for (AdminCreateSongRequest.NewSingerInfo newSingerInfo : request.getNewSingers()) {
                 if (StringUtils.hasText(newSingerInfo.getEmail()) && singerRepository.existsByEmail(newSingerInfo.getEmail())) {
                     throw new ResourceAlreadyExistsException("A singer with email '" + newSingerInfo.getEmail() + "' already exists.");
                 }
 
-                String avatarPath = null;
-                if (StringUtils.hasText(newSingerInfo.getAvatarFileName()) && avatarFilesMap.containsKey(newSingerInfo.getAvatarFileName())) {
-                    MultipartFile avatarFile = avatarFilesMap.get(newSingerInfo.getAvatarFileName());
-                    avatarPath = fileStorageService.storeFile(avatarFile, "images/singers");
-                }
+                String avatarPath = StringUtils.hasText(newSingerInfo.getAvatarFileName())
+                        ? avatarPathFor.apply(newSingerInfo.getAvatarFileName())
+                        : null;
 
                 Singer newSinger = Singer.builder()
                         .name(newSingerInfo.getName())
@@ -320,17 +363,22 @@ public class SongService {
                 .title(request.getTitle())
                 .description(description)
                 .lyrics(request.getLyrics())
-                .filePath(audioFilePath)
+                .filePath(storedAudio.getPath())
+                .fileSize(storedAudio.getSize())
+                .contentType(storedAudio.getContentType())
+                .etag(storedAudio.getEtag())
+                .checksum(storedAudio.getChecksum())
                 .thumbnailPath(thumbnailFilePath)
                 .creator(admin)
                 .singers(singers)
                 .tags(tags)
                 .isPremium(request.isPremium())
                 .status(Song.SongStatus.APPROVED)
-                .color(generateRandomHexColor())
+                .color(colorFor(thumbnailFilePath))
                 .build();
 
         Song savedSong = songRepository.save(song);
+        audioIngestService.analyzeSong(savedSong.getId());
         return songMapper.toDto(savedSong, admin);
     }
 
@@ -351,16 +399,30 @@ public class SongService {
         }
 
         if (request.getLyrics() != null) song.setLyrics(request.getLyrics());
-        if (request.getIsPremium() != null) song.setIsPremium(request.getIsPremium());
+        if (request.getIsPremium() != null) {
+            song.setIsPremium(request.getIsPremium());
+            // Endpoint stream đọc cờ premium từ metadata đã cache; evict xóa lại một lần sau commit
+            audioMetadataService.evict(songId);
+        }
 
         if (audioFile != null && !audioFile.isEmpty()) {
-            String audioFilePath = fileStorageService.storeFile(audioFile, "audio");
-            song.setFilePath(audioFilePath);
+            StoredFile storedAudio = fileStorageService.storeFileWithMetadata(audioFile, "audio");
+            audioSeekIndexService.indexUpload(storedAudio.getKey(), audioFile);
+            releaseAudioAfterCommit(song.getFilePath());
+            song.setFilePath(storedAudio.getPath());
+            song.setFileSize(storedAudio.getSize());
+            song.setContentType(storedAudio.getContentType());
+            song.setEtag(storedAudio.getEtag());
+            song.setChecksum(storedAudio.getChecksum());
+            clearAudioInfo(song);
+            audioMetadataService.evict(songId);
+            audioIngestService.analyzeSong(songId);
         }
         if (thumbnailFile != null && !thumbnailFile.isEmpty()) {
             String thumbnailFilePath = fileStorageService.storeFile(thumbnailFile, "images/songs");
+            fileStorageService.deleteFileAfterCommit(song.getThumbnailPath());
             song.setThumbnailPath(thumbnailFilePath);
-            song.setColor(generateRandomHexColor());
+            song.setColor(colorFor(thumbnailFilePath));
         }
 
         if (request.getSingerIds() != null) {
@@ -410,10 +472,11 @@ public class SongService {
                 .tags(tags)
                 .isPremium(request.getIsPremium())
                 .status(Song.SongStatus.PENDING)
-                .color(generateRandomHexColor())
+                .color(colorFor(request.getThumbnailPath()))
                 .build();
 
         Song savedSong = songRepository.save(song);
+        audioIngestService.analyzeSong(savedSong.getId());
         return songMapper.toDto(savedSong, creator);
     }
 
@@ -474,6 +537,20 @@ public class SongService {
         }
 
         songRepository.delete(song);
+        audioMetadataService.evict(id);
+        releaseAudioAfterCommit(song.getFilePath());
+        fileStorageService.deleteFileAfterCommit(song.getThumbnailPath());
+    }
+
+    /**
+     * Nhả tham chiếu của file audio sau khi transaction commit. Object có thể còn được bản ghi khác dùng chung
+     * (cùng nội dung): bảng seek/waveform chỉ bị xóa khi object bị xóa thật.
+     */
+    private void releaseAudioAfterCommit(String filePath) {
+        fileStorageService.deleteFileAfterCommit(filePath, oldKey -> {
+            audioSeekIndexService.delete(oldKey);
+            audioWaveformService.delete(oldKey);
+        });
     }
 
     @Transactional
@@ -496,16 +573,17 @@ public class SongService {
         return songMapper.toDto(rejectedSong, null);
     }
 
-    @Transactional
-    public void incrementListenCount(Long id) {
-        Song song = songRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Song not found with id: " + id));
-
-        songRepository.incrementListenCount(id);
-
-        ListenHistory history = new ListenHistory();
-        history.setSong(song);
-        listenHistoryRepository.save(history);
+    /**
+     * Kiểm tra bài hát qua cache metadata (không truy vấn DB với bài hot), bỏ lượt nghe lặp trong khoảng
+     * media.listens.dedup.min-gap-seconds, rồi ghi xuống DB theo lô.
+     */
+    public void incrementListenCount(Long id, User currentUser, HttpServletRequest request) {
+        audioMetadataService.getForSong(id);
+        Long userId = currentUser != null ? currentUser.getId() : null;
+        if (!listenDedupFilter.accept(userId, request, id)) {
+            return;
+        }
+        listenCountBuffer.recordSongListen(id, userId);
     }
 
     @Transactional(readOnly = true)
@@ -516,10 +594,7 @@ public class SongService {
 
     @Transactional(readOnly = true)
     public boolean canUserAccessSong(Long songId, String username) {
-        Song song = songRepository.findById(songId)
-                .orElseThrow(() -> new ResourceNotFoundException("Song not found with id: " + songId));
-
-        if (!song.getIsPremium()) {
+        if (!audioMetadataService.getForSong(songId).isPremium()) {
             return true;
         }
 
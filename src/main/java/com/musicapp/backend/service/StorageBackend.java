@@ -0,0 +1,77 @@
+package com.musicapp.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Nơi lưu trữ thực sự của file upload (S3 hoặc ổ đĩa cục bộ), chọn bằng storage.backend.
+ * Key là đường dẫn tương đối của object, vd. "audio/0f8c...mp3".
+ */
+public interface StorageBackend {
+
+    record ObjectStat(long size, String contentType, String etag, Instant lastModified) {
+    }
+
+    record ListedObject(String key, long size, Instant lastModified) {
+    }
+
+    /**
+     * Ghi object và trả về ETag của nó. Object chỉ xuất hiện khi đã ghi xong toàn bộ.
+     *
+     * @param size kích thước, hoặc -1 nếu chưa biết (đọc tới hết stream)
+     */
+    String put(String key, InputStream data, long size, String contentType) throws IOException;
+
+    /**
+     * Đổi key của một object ngay trên storage (không tải dữ liệu về) và trả về ETag ở key mới.
+     */
+    String move(String fromKey, String toKey) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Xóa nhiều object (tối đa 1000 mỗi lần gọi).
+     *
+     * @return số object đã xóa được
+     */
+    default int deleteAll(List<String> keys) throws IOException {
+        for (String key : keys) {
+            delete(key);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Liệt kê các object có key bắt đầu bằng prefix. Stream được nạp dần theo trang nên không giữ
+     * toàn bộ danh sách trong bộ nhớ; người gọi phải đóng stream.
+     */
+    Stream<ListedObject> list(String prefix) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException nếu object không tồn tại
+     */
+    ObjectStat stat(String key) throws IOException;
+
+    InputStream openStream(String key) throws IOException;
+
+    /**
+     * Mở stream đọc đoạn [start, end] (tính cả end) của object.
+     */
+    InputStream openRange(String key, long start, long end) throws IOException;
+
+    /**
+     * Ghi đoạn [start, end] của object vào outputStream.
+     */
+    void copyRange(String key, long start, long end, OutputStream outputStream) throws IOException;
+
+    /**
+     * false với backend đọc trực tiếp từ đĩa cục bộ -> không cần cache block trên đĩa phía trước.
+     */
+    default boolean isRemote() {
+        return true;
+    }
+}
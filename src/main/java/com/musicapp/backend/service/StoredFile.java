@@ -0,0 +1,20 @@
+package com.musicapp.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Kết quả của một lần upload: đường dẫn public cùng metadata của object đã lưu.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class StoredFile {
+    private String path;
+    private String key;
+    private long size;
+    private String contentType;
+    private String etag;
+    private String checksum;
+}
@@ -0,0 +1,181 @@
+package com.musicapp.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool các buffer dùng chung cho việc stream media, chia theo vài size class cố định.
+ * Buffer được chọn theo độ dài của range cần gửi và được làm đầy trước khi ghi ra,
+ * nhờ đó mỗi lần ghi vào OutputStream của servlet mang nhiều byte hơn và không sinh rác mỗi request.
+ */
+@Component
+public class StreamBufferPool {
+
+    private static final int[] SIZE_CLASSES = {16 * 1024, 64 * 1024, 256 * 1024};
+
+    @Value("${media.stream.buffers-per-class:64}")
+    private int maxPooledPerClass;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<ByteBuffer>[] pools = new ConcurrentLinkedQueue[SIZE_CLASSES.length];
+    private final AtomicInteger[] pooledCounts = new AtomicInteger[SIZE_CLASSES.length];
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public StreamBufferPool() {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+            pooledCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Lấy buffer nhỏ nhất đủ chứa expectedLength (tối đa bằng size class lớn nhất).
+     */
+    public ByteBuffer acquire(long expectedLength) {
+        acquisitions.incrementAndGet();
+        int sizeClass = sizeClassFor(expectedLength);
+        ByteBuffer buffer = pools[sizeClass].poll();
+        if (buffer != null) {
+            pooledCounts[sizeClass].decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        allocations.incrementAndGet();
+        allocatedBytes.addAndGet(SIZE_CLASSES[sizeClass]);
+        return ByteBuffer.allocate(SIZE_CLASSES[sizeClass]);
+    }
+
+    public void release(ByteBuffer buffer) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (SIZE_CLASSES[i] == buffer.capacity()) {
+                if (pooledCounts[i].incrementAndGet() <= maxPooledPerClass) {
+                    pools[i].offer(buffer);
+                } else {
+                    pooledCounts[i].decrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy toàn bộ InputStream sang OutputStream, mỗi lần ghi là một buffer đã được làm đầy.
+     */
+    public long copy(InputStream in, OutputStream out, long expectedLength) throws IOException {
+        ByteBuffer buffer = acquire(expectedLength);
+        try {
+            byte[] array = buffer.array();
+            long total = 0;
+            int filled;
+            while ((filled = readFully(in, array, array.length)) > 0) {
+                out.write(array, 0, filled);
+                recordWrite(filled);
+                total += filled;
+                if (filled < array.length) {
+                    break;
+                }
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Gửi một đoạn của file cục bộ: đọc theo vị trí vào buffer trong pool rồi ghi ra từng buffer đầy.
+     * OutputStream của servlet không phải channel nên không dùng được transferTo.
+     *
+     * @throws EOFException nếu file ngắn hơn position + count (file bị cắt hoặc bị thay giữa chừng)
+     */
+    public long copy(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+        ByteBuffer buffer = acquire(count);
+        try {
+            long remaining = count;
+            long offset = position;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) == -1) {
+                        break;
+                    }
+                }
+                int read = buffer.position();
+                if (read > 0) {
+                    out.write(buffer.array(), 0, read);
+                    recordWrite(read);
+                    offset += read;
+                    remaining -= read;
+                }
+                if (buffer.hasRemaining()) {
+                    throw new EOFException("File ended at " + offset + ", " + remaining + " of " + count + " bytes missing");
+                }
+            }
+            return count;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public static int readFully(InputStream in, byte[] array, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            int read = in.read(array, filled, length - filled);
+            if (read == -1) {
+                break;
+            }
+            filled += read;
+        }
+        return filled;
+    }
+
+    public void recordWrite(int length) {
+        writes.incrementAndGet();
+        bytesWritten.addAndGet(length);
+    }
+
+    public Map<String, Object> getStats() {
+        long writeCount = writes.get();
+        long acquired = acquisitions.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bufferAcquisitions", acquired);
+        stats.put("bufferAllocations", allocations.get());
+        stats.put("allocatedBytes", allocatedBytes.get());
+        stats.put("bufferReuseRatio", acquired == 0 ? 0.0 : 1.0 - (double) allocations.get() / acquired);
+        stats.put("writes", writeCount);
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("bytesPerWrite", writeCount == 0 ? 0 : bytesWritten.get() / writeCount);
+        Map<String, Integer> pooled = new LinkedHashMap<>();
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            pooled.put(String.valueOf(SIZE_CLASSES[i]), Math.max(0, pooledCounts[i].get()));
+        }
+        stats.put("pooledBuffers", pooled);
+        return stats;
+    }
+
+    private int sizeClassFor(long expectedLength) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (expectedLength <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return SIZE_CLASSES.length - 1;
+    }
+}
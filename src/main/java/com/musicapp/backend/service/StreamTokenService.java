@@ -0,0 +1,177 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.Song;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Cấp và kiểm tra token stream ký HMAC-SHA256. Token chứa key của object, kích thước, content type, ETag,
+ * cờ premium của bài, quyền truy cập (tier) và người được cấp, nên endpoint stream xác thực được một range request
+ * hoàn toàn trong bộ nhớ mà không cần đọc DB: chữ ký và hạn dùng kiểm tra ở đây, còn việc token có khớp file hiện tại
+ * của bài hát hay không ({@link #matches}) và quyền premium của người được cấp được kiểm tra lại với các cache
+ * trong bộ nhớ khi cache có sẵn.
+ * <p>
+ * Định dạng: base64url(payload) + "." + base64url(HMAC(payload)).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StreamTokenService {
+
+    public enum Tier { FREE, PREMIUM }
+
+    /**
+     * Nội dung đã được xác thực của một token.
+     *
+     * @param userId người được cấp token, null nếu cấp cho khách
+     */
+    public record StreamToken(AudioObjectMetadata metadata, Tier tier, Long userId, long expiresAtEpochSecond) {
+    }
+
+    // Bản 2 thêm user id, bản 3 thêm cờ premium; token bản cũ (sống tối đa token-ttl-seconds) bị từ chối
+    private static final int FORMAT_VERSION = 3;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final FileStorageService fileStorageService;
+
+    @Value("${media.stream.token-secret}")
+    private String secret;
+
+    @Value("${media.stream.token-ttl-seconds:1800}")
+    private long ttlSeconds;
+
+    // Mac không thread-safe; mỗi thread giữ một instance đã init sẵn khóa
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    /**
+     * Token cho bài hát mà người dùng hiện tại (null = khách) đã được phép nghe. Trả về null nếu metadata audio
+     * của bài chưa được ghi nhận (bản ghi cũ chưa backfill) - client khi đó stream theo cách cũ.
+     */
+    public String issue(Song song, Tier tier, Long userId) {
+        return issue(song, tier, userId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Như {@link #issue(Song, Tier, Long)} nhưng token không sống quá notAfterEpochMillis
+     * (vd. thời điểm gói Premium của người dùng hết hạn).
+     */
+    public String issue(Song song, Tier tier, Long userId, long notAfterEpochMillis) {
+        if (song.getId() == null || song.getFileSize() == null || song.getFilePath() == null) {
+            return null;
+        }
+        long expiresAt = Math.min(System.currentTimeMillis() / 1000 + ttlSeconds, notAfterEpochMillis / 1000);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(160);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(song.getId());
+            out.writeUTF(fileStorageService.toKey(song.getFilePath()));
+            out.writeLong(song.getFileSize());
+            writeNullable(out, song.getContentType());
+            writeNullable(out, song.getEtag());
+            writeNullable(out, song.getChecksum());
+            out.writeBoolean(Boolean.TRUE.equals(song.getIsPremium()));
+            out.writeByte(tier.ordinal());
+            out.writeLong(userId != null ? userId : 0L);
+            out.writeLong(expiresAt);
+            byte[] payload = buffer.toByteArray();
+
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            return encoder.encodeToString(payload) + "." + encoder.encodeToString(macs.get().doFinal(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode stream token", e);
+        }
+    }
+
+    /**
+     * @return nội dung token, hoặc null nếu token sai định dạng, bị sửa hoặc đã hết hạn
+     */
+    public StreamToken verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(token.substring(0, dot));
+            signature = decoder.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(signature, macs.get().doFinal(payload))) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            if (in.readByte() != FORMAT_VERSION) {
+                return null;
+            }
+            AudioObjectMetadata metadata = AudioObjectMetadata.builder()
+                    .songId(in.readLong())
+                    .key(in.readUTF())
+                    .fileSize(in.readLong())
+                    .contentType(readNullable(in))
+                    .etag(readNullable(in))
+                    .checksum(readNullable(in))
+                    .premium(in.readBoolean())
+                    .build();
+            Tier tier = Tier.values()[in.readByte()];
+            long userId = in.readLong();
+            long expiresAt = in.readLong();
+            if (expiresAt < System.currentTimeMillis() / 1000) {
+                return null;
+            }
+            return new StreamToken(metadata, tier, userId != 0 ? userId : null, expiresAt);
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Token được cấp cho đúng file hiện tại của bài hát. File bị thay (key mới) hay metadata đổi thì token cũ
+     * không còn dùng được, client phải lấy lại thông tin bài hát để nhận token mới.
+     */
+    public boolean matches(StreamToken token, AudioObjectMetadata current) {
+        AudioObjectMetadata signed = token.metadata();
+        return Objects.equals(signed.getSongId(), current.getSongId())
+                && Objects.equals(signed.getKey(), current.getKey())
+                && Objects.equals(signed.getFileSize(), current.getFileSize())
+                && Objects.equals(signed.getEtag(), current.getEtag())
+                && Objects.equals(signed.getChecksum(), current.getChecksum());
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not initialise " + ALGORITHM, e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,290 @@
+package com.musicapp.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.musicapp.backend.exception.BadRequestException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Upload dạng stream cho các endpoint tạo bài hát: đọc body multipart trực tiếp từ request và chuyển từng part
+ * thẳng lên storage, không qua file tạm của servlet container. Kích thước và loại file được kiểm tra ngay trong
+ * lúc đọc (theo magic bytes ở đầu part), nên một file sai loại hoặc quá lớn bị từ chối trước khi đọc hết.
+ * <p>
+ * Nếu request lỗi ở bất kỳ bước nào (kể cả khi transaction tạo bản ghi rollback), các file đã lưu được trả lại tham chiếu.
+ */
+@Service
+@RequiredArgsConstructor
+public class StreamingUploadService {
+
+    private static final int SNIFF_LENGTH = 12;
+
+    /**
+     * Part file được chấp nhận: thư mục lưu, loại (audio/image) và có cho phép nhiều file cùng tên part không.
+     */
+    public record FilePart(String subfolder, boolean audio, boolean multiple) {
+
+        public static FilePart audio(String subfolder) {
+            return new FilePart(subfolder, true, false);
+        }
+
+        public static FilePart image(String subfolder, boolean multiple) {
+            return new FilePart(subfolder, false, multiple);
+        }
+    }
+
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${media.upload.max-file-size:524288000}")
+    private long maxAudioSize;
+
+    @Value("${media.upload.max-image-size:10485760}")
+    private long maxImageSize;
+
+    @Value("${media.upload.stream-buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${media.upload.max-field-bytes:65536}")
+    private int maxFieldBytes;
+
+    @Value("${media.upload.max-parts:32}")
+    private int maxParts;
+
+    /**
+     * Đọc toàn bộ request rồi gọi handler với các field và file đã lưu. File không được handler dùng tới
+     * (vd. avatar không khớp ca sĩ nào) được trả lại tham chiếu sau khi handler xong.
+     */
+    public <T> T handle(HttpServletRequest request, Map<String, FilePart> fileParts, Function<StreamedForm, T> handler) {
+        String boundary = MultipartStreamReader.boundaryOf(request.getContentType());
+        if (boundary == null) {
+            throw new BadRequestException("Expected a multipart/form-data request");
+        }
+
+        StreamedForm form = new StreamedForm();
+        try {
+            read(new MultipartStreamReader(request.getInputStream(), boundary, bufferSize), fileParts, form);
+            T result = handler.apply(form);
+            form.release(false);
+            return result;
+        } catch (IOException e) {
+            form.release(true);
+            throw new BadRequestException("Could not read upload: " + e.getMessage());
+        } catch (RuntimeException e) {
+            form.release(true);
+            throw e;
+        }
+    }
+
+    private void read(MultipartStreamReader reader, Map<String, FilePart> fileParts, StreamedForm form) throws IOException {
+        int parts = 0;
+        int fieldBytes = 0;
+        MultipartStreamReader.Part part;
+        while ((part = reader.next()) != null) {
+            if (++parts > maxParts) {
+                throw new BadRequestException("Too many parts in upload (max " + maxParts + ")");
+            }
+            if (part.name() == null) {
+                throw new BadRequestException("Multipart part without a name");
+            }
+
+            if (!part.isFile()) {
+                byte[] value = part.body().readNBytes(maxFieldBytes - fieldBytes + 1);
+                fieldBytes += value.length;
+                if (fieldBytes > maxFieldBytes) {
+                    throw new BadRequestException("Form fields exceed " + maxFieldBytes + " bytes");
+                }
+                form.fields.put(part.name(), value);
+                continue;
+            }
+
+            FilePart rule = fileParts.get(part.name());
+            if (rule == null) {
+                throw new BadRequestException("Unexpected file part '" + part.name() + "'");
+            }
+            String name = part.name();
+            if (!rule.multiple() && form.uploads.stream().anyMatch(upload -> upload.field.equals(name))) {
+                throw new BadRequestException("Only one file is allowed for '" + part.name() + "'");
+            }
+            if (part.fileName().isBlank()) {
+                continue; // input file để trống trên form
+            }
+            form.uploads.add(new Upload(part.name(), part.fileName(), store(part, rule)));
+        }
+    }
+
+    /**
+     * Kiểm tra loại file theo magic bytes rồi chuyển phần còn lại của part lên storage.
+     */
+    private StoredFile store(MultipartStreamReader.Part part, FilePart rule) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(part.body(), SNIFF_LENGTH);
+        byte[] head = new byte[SNIFF_LENGTH];
+        int headLength = StreamBufferPool.readFully(in, head, head.length);
+        in.unread(head, 0, headLength);
+
+        String expected = rule.audio() ? "audio/" : "image/";
+        String detected = sniff(head, headLength);
+        if (detected == null || !detected.startsWith(expected)) {
+            throw new BadRequestException("File '" + part.fileName() + "' is not a supported " + (rule.audio() ? "audio" : "image") + " file");
+        }
+        String declared = part.contentType();
+        String contentType = declared != null && declared.toLowerCase(Locale.ROOT).startsWith(expected) ? declared : detected;
+
+        return fileStorageService.storeUpload(in, part.fileName(), contentType, rule.subfolder(),
+                rule.audio() ? maxAudioSize : maxImageSize);
+    }
+
+    /**
+     * Nhận diện định dạng theo vài byte đầu, null nếu không phải định dạng audio/ảnh được hỗ trợ.
+     */
+    static String sniff(byte[] h, int n) {
+        if (startsWith(h, n, 0, "ID3")) {
+            return "audio/mpeg";
+        }
+        if (n >= 3 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xFF) == 0xD8 && (h[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (n >= 2 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xF6) == 0xF0) {
+            return "audio/aac"; // ADTS: sync 12 bit, layer 00
+        }
+        if (n >= 2 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xE0) == 0xE0) {
+            return "audio/mpeg"; // MPEG audio frame sync
+        }
+        if (startsWith(h, n, 0, "fLaC")) {
+            return "audio/flac";
+        }
+        if (startsWith(h, n, 0, "OggS")) {
+            return "audio/ogg";
+        }
+        if (startsWith(h, n, 0, "RIFF") && startsWith(h, n, 8, "WAVE")) {
+            return "audio/wav";
+        }
+        if (startsWith(h, n, 0, "RIFF") && startsWith(h, n, 8, "WEBP")) {
+            return "image/webp";
+        }
+        if (startsWith(h, n, 4, "ftyp")) {
+            return "audio/mp4";
+        }
+        if (n >= 4 && (h[0] & 0xFF) == 0x89 && startsWith(h, n, 1, "PNG")) {
+            return "image/png";
+        }
+        if (startsWith(h, n, 0, "GIF8")) {
+            return "image/gif";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] h, int n, int offset, String magic) {
+        if (n < offset + magic.length()) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (h[offset + i] != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Upload {
+        private final String field;
+        private final String fileName;
+        private final StoredFile file;
+        private boolean claimed;
+
+        Upload(String field, String fileName, StoredFile file) {
+            this.field = field;
+            this.fileName = fileName;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Các field và file của một request đã đọc xong.
+     */
+    public final class StreamedForm {
+
+        private final Map<String, byte[]> fields = new HashMap<>();
+        private final List<Upload> uploads = new ArrayList<>();
+
+        /**
+         * Đọc field JSON và kiểm tra ràng buộc như @Valid.
+         */
+        public <T> T json(String name, Class<T> type) {
+            byte[] value = fields.get(name);
+            if (value == null) {
+                throw new BadRequestException("Missing part '" + name + "'");
+            }
+            T result;
+            try {
+                result = objectMapper.readValue(value, type);
+            } catch (IOException e) {
+                throw new BadRequestException("Invalid JSON in part '" + name + "'");
+            }
+            Set<ConstraintViolation<T>> violations = validator.validate(result);
+            if (!violations.isEmpty()) {
+                throw new BadRequestException(violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+            }
+            return result;
+        }
+
+        public String field(String name) {
+            byte[] value = fields.get(name);
+            return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+        }
+
+        /**
+         * File của part (null nếu không có); file được đánh dấu là đã dùng.
+         */
+        public StoredFile claim(String field) {
+            for (Upload upload : uploads) {
+                if (upload.field.equals(field)) {
+                    upload.claimed = true;
+                    return upload.file;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Tra đường dẫn file của part theo tên file gốc; file được đánh dấu là đã dùng khi được tra tới.
+         * Một file được dùng nhiều lần (hai ca sĩ chung avatar) thì mỗi lần thêm một tham chiếu, như khi lưu riêng từng lần.
+         */
+        public Function<String, String> claimByFileName(String field) {
+            return fileName -> {
+                for (Upload upload : uploads) {
+                    if (upload.field.equals(field) && upload.fileName.equals(fileName)) {
+                        if (upload.claimed) {
+                            fileStorageService.retainFile(upload.file.getPath());
+                        }
+                        upload.claimed = true;
+                        return upload.file.getPath();
+                    }
+                }
+                return null;
+            };
+        }
+
+        private void release(boolean all) {
+            for (Upload upload : uploads) {
+                if (all || !upload.claimed) {
+                    fileStorageService.deleteFile(upload.file.getPath());
+                }
+            }
+        }
+    }
+}
@@ -41,17 +41,57 @@ public class SubmissionService {
     private final SubmissionMapper submissionMapper;
     private final FileStorageService fileStorageService;
     private final NotificationRepository notificationRepository;
+    private final AudioSeekIndexService audioSeekIndexService;
+    private final UploadSessionService uploadSessionService;
+    private final AudioIngestService audioIngestService;
+    private final AudioWaveformService audioWaveformService;
 
     @Transactional
     public SubmissionDto createSubmission(CreateSubmissionRequest request, MultipartFile audioFile, MultipartFile thumbnailFile, List<MultipartFile> newSingerAvatars, String username) {
         User creator = userRepository.findByEmail(username)
                 .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy người dùng với email: " + username));
 
-        String audioFilePath = fileStorageService.storeFile(audioFile, "audio");
+        StoredFile storedAudio;
+        if (StringUtils.hasText(request.getAudioUploadId())) {
+            // File đã được upload theo từng chunk và dựng bảng seek khi hoàn tất
+            storedAudio = uploadSessionService.consume(request.getAudioUploadId(), creator);
+        } else if (audioFile != null && !audioFile.isEmpty()) {
+            storedAudio = fileStorageService.storeFileWithMetadata(audioFile, "audio");
+            audioSeekIndexService.indexUpload(storedAudio.getKey(), audioFile);
+        } else {
+            throw new BadRequestException("Cần có file audio hoặc audioUploadId.");
+        }
         String thumbnailFilePath = (thumbnailFile != null && !thumbnailFile.isEmpty())
                 ? fileStorageService.storeFile(thumbnailFile, "images/songs")
                 : null;
 
+        Map<String, MultipartFile> avatarFilesMap = (newSingerAvatars != null)
+                ? newSingerAvatars.stream().collect(Collectors.toMap(MultipartFile::getOriginalFilename, Function.identity(), (first, second) -> first))
+                : Collections.emptyMap();
+        return createSubmission(request, storedAudio, thumbnailFilePath, fileName -> avatarFilesMap.containsKey(fileName)
+                ? fileStorageService.storeFile(avatarFilesMap.get(fileName), "images/singers")
+                : null, creator);
+    }
+
+    /**
+     * Như trên với các file đã được lưu sẵn (upload dạng stream). avatarPathFor trả về đường dẫn avatar
+     * theo tên file gốc, null nếu không có.
+     */
+    @Transactional
+    public SubmissionDto createSubmission(CreateSubmissionRequest request, StoredFile storedAudio, StoredFile thumbnail, Function<String, String> avatarPathFor, String username) {
+        User creator = userRepository.findByEmail(username)
+                .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy người dùng với email: " + username));
+
+        if (storedAudio == null) {
+            if (!StringUtils.hasText(request.getAudioUploadId())) {
+                throw new BadRequestException("Cần có file audio hoặc audioUploadId.");
+            }
+            storedAudio = uploadSessionService.consume(request.getAudioUploadId(), creator);
+        }
+        return createSubmission(request, storedAudio, thumbnail != null ? thumbnail.getPath() : null, avatarPathFor, creator);
+    }
+
+    private SubmissionDto createSubmission(CreateSubmissionRequest request, StoredFile storedAudio, String thumbnailFilePath, Function<String, String> avatarPathFor, User creator) {
         if (CollectionUtils.isEmpty(request.getExistingSingerIds()) && CollectionUtils.isEmpty(request.getNewSingers())) {
             throw new BadRequestException("Cần có ít nhất một ca sĩ đã tồn tại hoặc ca sĩ mới.");
         }
@@ -66,14 +106,18 @@ public class SubmissionService {
                 .description(description)
                 .lyrics(request.getLyrics())
 
-                .filePath(audioFilePath)
+                .filePath(storedAudio.getPath())
+                .fileSize(storedAudio.getSize())
+                .contentType(storedAudio.getContentType())
+                .etag(storedAudio.getEtag())
+                .checksum(storedAudio.getChecksum())
                 .thumbnailPath(thumbnailFilePath)
                 .isPremium(request.getIsPremium())
                 .creator(creator)
                 .status(SongSubmission.SubmissionStatus.PENDING)
                 .build();
 
-        Set<Singer> allSingersForSubmission = processSingers(request, newSingerAvatars, creator);
+        Set<Singer> allSingersForSubmission = processSingers(request, avatarPathFor, creator);
 
         Set<Tag> tags = new HashSet<>();
         if (request.getTagIds() != null) {
@@ -88,29 +132,24 @@ public class SubmissionService {
         }
 
         SongSubmission savedSubmission = submissionRepository.save(submission);
+        audioIngestService.analyzeSubmission(savedSubmission.getId());
 
         notifyAdminsOfNewSubmission(savedSubmission, creator);
 
         return submissionMapper.toDto(savedSubmission, creator);
     }
 
-    private Set<Singer> processSingers(CreateSubmissionRequest request, List<MultipartFile> newSingerAvatars, User creator) {
+    private Set<Singer> processSingers(CreateSubmissionRequest request, Function<String, String> avatarPathFor, User creator) {
         Set<Singer> allSingers = new HashSet<>();
         if (!CollectionUtils.isEmpty(request.getNewSingers())) {
-            Map<String, MultipartFile> avatarFilesMap = (newSingerAvatars != null)
-                    ? newSingerAvatars.stream().collect(Collectors.toMap(MultipartFile::getOriginalFilename, Function.identity(), (first, second) -> first))
-                    : Collections.emptyMap();
-
             for (NewSingerInfo newSingerInfo : request.getNewSingers()) {
                 if (singerRepository.existsByEmail(newSingerInfo.getEmail())) {
                     throw new ResourceAlreadyExistsException("Một ca sĩ với email '" + newSingerInfo.getEmail() + "' đã tồn tại.");
                 }
 
-                String avatarPath = null;
-                if (StringUtils.hasText(newSingerInfo.getAvatarFileName()) && avatarFilesMap.containsKey(newSingerInfo.getAvatarFileName())) {
-                    MultipartFile avatarFile = avatarFilesMap.get(newSingerInfo.getAvatarFileName());
-                    avatarPath = fileStorageService.storeFile(avatarFile, "images/singers");
-                }
+                String avatarPath = StringUtils.hasText(newSingerInfo.getAvatarFileName())
+                        ? avatarPathFor.apply(newSingerInfo.getAvatarFileName())
+                        : null;
 
                 Singer newSinger = Singer.builder()
                         .name(newSingerInfo.getName())
@@ -203,15 +242,30 @@ public class SubmissionService {
         }
 
         if (audioFile != null && !audioFile.isEmpty()) {
-            fileStorageService.deleteFile(submission.getFilePath());
-            String newAudioPath = fileStorageService.storeFile(audioFile, "audio");
-            submission.setFilePath(newAudioPath);
+            StoredFile storedAudio = fileStorageService.storeFileWithMetadata(audioFile, "audio");
+            audioSeekIndexService.indexUpload(storedAudio.getKey(), audioFile);
+            // File cũ chỉ được nhả sau khi file mới đã lưu và transaction commit. Object có thể còn được bài hát khác
+            // dùng chung (cùng nội dung): chỉ xóa bảng seek/waveform khi object bị xóa thật
+            fileStorageService.deleteFileAfterCommit(submission.getFilePath(), oldKey -> {
+                audioSeekIndexService.delete(oldKey);
+                audioWaveformService.delete(oldKey);
+            });
+            submission.setFilePath(storedAudio.getPath());
+            submission.setFileSize(storedAudio.getSize());
+            submission.setContentType(storedAudio.getContentType());
+            submission.setEtag(storedAudio.getEtag());
+            submission.setChecksum(storedAudio.getChecksum());
+            submission.setDurationMs(null);
+            submission.setBitrate(null);
+            submission.setSampleRate(null);
+            submission.setChannels(null);
+            submission.setLoudnessLufs(null);
+            submission.setAudioAnalyzedAt(null);
+            audioIngestService.analyzeSubmission(submission.getId());
         }
         if (thumbnailFile != null && !thumbnailFile.isEmpty()) {
-            if (submission.getThumbnailPath() != null) {
-                fileStorageService.deleteFile(submission.getThumbnailPath());
-            }
             String newThumbnailPath = fileStorageService.storeFile(thumbnailFile, "images/songs");
+            fileStorageService.deleteFileAfterCommit(submission.getThumbnailPath());
             submission.setThumbnailPath(newThumbnailPath);
         }
 
@@ -323,6 +377,11 @@ public class SubmissionService {
                 .collect(Collectors.toSet());
 
         submissionRepository.delete(submission);
+        fileStorageService.deleteFileAfterCommit(submission.getFilePath(), oldKey -> {
+            audioSeekIndexService.delete(oldKey);
+            audioWaveformService.delete(oldKey);
+        });
+        fileStorageService.deleteFileAfterCommit(submission.getThumbnailPath());
 
         cleanupOrphanedPendingSingers(associatedSingers);
     }
@@ -332,9 +391,7 @@ public class SubmissionService {
             if (singer.getStatus() == Singer.SingerStatus.PENDING) {
                 long submissionCount = submissionSingersRepository.countBySingerId(singer.getId());
                 if (submissionCount == 0) {
-                    if (singer.getAvatarPath() != null) {
-                        fileStorageService.deleteFile(singer.getAvatarPath());
-                    }
+                    fileStorageService.deleteFileAfterCommit(singer.getAvatarPath());
                     singerRepository.delete(singer);
                 }
             }
@@ -397,7 +454,18 @@ public class SubmissionService {
                     .description(submission.getDescription())
                     .lyrics(submission.getLyrics())
                     .filePath(submission.getFilePath())
+                    .fileSize(submission.getFileSize())
+                    .contentType(submission.getContentType())
+                    .etag(submission.getEtag())
+                    .checksum(submission.getChecksum())
+                    .durationMs(submission.getDurationMs())
+                    .bitrate(submission.getBitrate())
+                    .sampleRate(submission.getSampleRate())
+                    .channels(submission.getChannels())
+                    .loudnessLufs(submission.getLoudnessLufs())
+                    .audioAnalyzedAt(submission.getAudioAnalyzedAt())
                     .thumbnailPath(submission.getThumbnailPath())
+                    .color(fileStorageService.dominantColorOf(submission.getThumbnailPath()))
                     .isPremium(submission.getIsPremium())
                     .status(Song.SongStatus.APPROVED)
                     .creator(submission.getCreator())
@@ -408,6 +476,13 @@ public class SubmissionService {
 
             Song savedSong = songRepository.save(approvedSong);
             submission.setApprovedSong(savedSong);
+            // Bài hát và yêu cầu cùng trỏ tới một file: mỗi bản ghi giữ một tham chiếu
+            fileStorageService.retainFile(savedSong.getFilePath());
+            fileStorageService.retainFile(savedSong.getThumbnailPath());
+            if (savedSong.getAudioAnalyzedAt() == null) {
+                // Yêu cầu được duyệt trước khi bước ingest kịp phân tích file
+                audioIngestService.analyzeSong(savedSong.getId());
+            }
 
             associatedSingers.stream()
                     .filter(singer -> singer.getStatus() == Singer.SingerStatus.PENDING)
@@ -33,6 +33,7 @@ public class SubscriptionService {
     private final UserSubscriptionRepository subscriptionRepository;
     private final SubscriptionMapper subscriptionMapper;
     private final UserRepository userRepository;
+    private final PremiumEntitlementCache premiumEntitlementCache;
 
     @Transactional
     public void activateSubscriptionFromTransaction(Transaction transaction) {
@@ -41,7 +42,8 @@ public class SubscriptionService {
         }
         User user = transaction.getUser();
 
-        if (hasActivePremiumSubscription(user.getId())) {
+        // Đọc thẳng DB thay vì cache: đây là thao tác ghi, không được dựa vào trạng thái có thể đã cũ
+        if (subscriptionRepository.findActiveSubscription(user.getId(), LocalDateTime.now()).isPresent()) {
             return;
         }
 
@@ -59,10 +61,14 @@ public class SubscriptionService {
         UserSubscription savedSubscription = subscriptionRepository.save(subscription);
 
         transaction.setSubscription(savedSubscription);
+        premiumEntitlementCache.invalidate(user.getId());
     }
 
+    /**
+     * Đọc qua {@link PremiumEntitlementCache}, nên được gọi trên mỗi range request mà không chạm DB.
+     */
     public boolean hasActivePremiumSubscription(Long userId) {
-        return subscriptionRepository.findActiveSubscription(userId, LocalDateTime.now()).isPresent();
+        return premiumEntitlementCache.hasPremium(userId);
     }
 
     public SubscriptionDto getUserActiveSubscription(String username) {
@@ -82,6 +88,7 @@ public class SubscriptionService {
         activeSubscription.setCancelledAt(LocalDateTime.now());
         activeSubscription.setAutoRenewal(false);
         UserSubscription updatedSubscription = subscriptionRepository.save(activeSubscription);
+        premiumEntitlementCache.invalidate(user.getId());
         return subscriptionMapper.toDto(updatedSubscription);
     }
 
@@ -0,0 +1,362 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.dto.upload.CreateUploadRequest;
+import com.musicapp.backend.dto.upload.UploadSessionDto;
+import com.musicapp.backend.entity.UploadSession;
+import com.musicapp.backend.entity.User;
+import com.musicapp.backend.exception.BadRequestException;
+import com.musicapp.backend.exception.ResourceNotFoundException;
+import com.musicapp.backend.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Upload có thể tiếp tục (resumable): tạo phiên, gửi từng chunk đánh số kèm SHA-256, hỏi các chunk đã nhận,
+ * rồi hoàn tất để ghép file và đưa lên storage. Chunk được lưu tạm trên đĩa cục bộ, một file mỗi chunk,
+ * nên trạng thái "đã nhận" chính là sự tồn tại của file và các chunk gửi song song không tranh chấp một bản ghi DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionService {
+
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileStorageService fileStorageService;
+    private final AudioSeekIndexService audioSeekIndexService;
+    private final StreamBufferPool streamBufferPool;
+
+    @Value("${media.upload.staging-dir:/tmp/musicapp/uploads}")
+    private String stagingDir;
+
+    @Value("${media.upload.chunk-size:5242880}")
+    private int defaultChunkSize;
+
+    @Value("${media.upload.max-chunk-size:33554432}")
+    private int maxChunkSize;
+
+    @Value("${media.upload.max-file-size:524288000}")
+    private long maxFileSize;
+
+    @Value("${media.upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    private Path stagingRoot;
+    // Chặn hai request hoàn tất cùng một phiên chạy song song
+    private final Set<String> completing = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void init() throws IOException {
+        stagingRoot = Paths.get(stagingDir).toAbsolutePath().normalize();
+        Files.createDirectories(stagingRoot);
+    }
+
+    @Transactional
+    public UploadSessionDto create(CreateUploadRequest request, User owner) {
+        String fileName = StringUtils.cleanPath(request.getFileName());
+        if (fileName.contains("..") || fileName.contains("/")) {
+            throw new BadRequestException("Invalid file name: " + request.getFileName());
+        }
+        if (request.getTotalSize() > maxFileSize) {
+            throw new BadRequestException("File is larger than the maximum of " + maxFileSize + " bytes");
+        }
+        int chunkSize = request.getChunkSize() != null
+                ? Math.max(MIN_CHUNK_SIZE, Math.min(maxChunkSize, request.getChunkSize()))
+                : defaultChunkSize;
+        int chunkCount = (int) ((request.getTotalSize() + chunkSize - 1) / chunkSize);
+
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .owner(owner)
+                .fileName(fileName)
+                .contentType(request.getContentType())
+                .totalSize(request.getTotalSize())
+                .chunkSize(chunkSize)
+                .chunkCount(chunkCount)
+                .expectedChecksum(request.getChecksum() != null ? request.getChecksum().toLowerCase() : null)
+                .expiresAt(LocalDateTime.now().plusHours(sessionTtlHours))
+                .build();
+        try {
+            Files.createDirectories(sessionDir(session.getId()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create upload staging directory", e);
+        }
+        return toDto(uploadSessionRepository.save(session));
+    }
+
+    public UploadSessionDto getStatus(String uploadId, User owner) {
+        return toDto(findOwned(uploadId, owner));
+    }
+
+    /**
+     * Ghi một chunk. Gửi lại một chunk đã nhận là hợp lệ (ghi đè), nên client chỉ cần thử lại chunk bị lỗi.
+     *
+     * @param sha256 SHA-256 (hex) của nội dung chunk, bắt buộc
+     */
+    public UploadSessionDto putChunk(String uploadId, int index, InputStream body, long contentLength, String sha256, User owner) {
+        UploadSession session = findOwned(uploadId, owner);
+        if (session.getStatus() != UploadSession.UploadStatus.UPLOADING) {
+            throw new BadRequestException("Upload " + uploadId + " is already completed");
+        }
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new BadRequestException("Chunk index must be between 0 and " + (session.getChunkCount() - 1));
+        }
+        long expectedLength = chunkLength(session, index);
+        if (contentLength != expectedLength) {
+            throw new BadRequestException("Chunk " + index + " must be exactly " + expectedLength + " bytes");
+        }
+        if (sha256 == null || sha256.isBlank()) {
+            throw new BadRequestException("Chunk checksum is required");
+        }
+
+        Path dir = sessionDir(uploadId);
+        Path tmp = dir.resolve(index + "." + UUID.randomUUID() + ".tmp");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long written;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW), digest)) {
+                written = streamBufferPool.copy(body, out, expectedLength);
+            }
+            if (written != expectedLength) {
+                throw new BadRequestException("Chunk " + index + " was truncated: received " + written + " of " + expectedLength + " bytes");
+            }
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256.trim())) {
+                throw new BadRequestException("Checksum mismatch for chunk " + index);
+            }
+            Files.move(tmp, chunkPath(uploadId, index), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Could not store chunk " + index + " of upload " + uploadId, e);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Thư mục staging được dọn khi phiên hết hạn
+            }
+        }
+        return toDto(session);
+    }
+
+    /**
+     * Ghép các chunk theo thứ tự, đưa file lên storage, dựng bảng seek rồi xóa thư mục staging.
+     * Gọi lại trên phiên đã hoàn tất chỉ trả về kết quả cũ. Không bọc trong transaction để không giữ
+     * kết nối DB trong lúc upload lên storage.
+     */
+    public UploadSessionDto complete(String uploadId, User owner) {
+        UploadSession current = findOwned(uploadId, owner);
+        if (current.getStatus() != UploadSession.UploadStatus.UPLOADING) {
+            return toDto(current);
+        }
+        if (!completing.add(uploadId)) {
+            throw new BadRequestException("Upload " + uploadId + " is already being completed");
+        }
+
+        StoredFile stored = null;
+        try {
+            // Đọc lại sau khi giữ cờ: request hoàn tất trước có thể vừa xong và xóa staging giữa hai lần đọc
+            UploadSession session = findOwned(uploadId, owner);
+            if (session.getStatus() != UploadSession.UploadStatus.UPLOADING) {
+                return toDto(session);
+            }
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < session.getChunkCount(); i++) {
+                if (!Files.isRegularFile(chunkPath(uploadId, i))) {
+                    missing.add(i);
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw new BadRequestException("Upload " + uploadId + " is missing chunks " + missing);
+            }
+
+            stored = fileStorageService.storeStream(() -> openAssembled(session), session.getTotalSize(),
+                    session.getFileName(), session.getContentType(), "audio");
+            if (session.getExpectedChecksum() != null && !session.getExpectedChecksum().equals(stored.getChecksum())) {
+                fileStorageService.deleteFile(stored.getPath());
+                throw new BadRequestException("Checksum mismatch for upload " + uploadId);
+            }
+            try (InputStream in = openAssembled(session)) {
+                audioSeekIndexService.indexUpload(stored.getKey(), in);
+            }
+
+            session.setStatus(UploadSession.UploadStatus.COMPLETED);
+            session.setFilePath(stored.getPath());
+            session.setEtag(stored.getEtag());
+            session.setChecksum(stored.getChecksum());
+            UploadSession saved = uploadSessionRepository.save(session);
+            deleteStaging(uploadId);
+            return toDto(saved);
+        } catch (IOException | UncheckedIOException e) {
+            // openAssembled báo lỗi đọc chunk qua UncheckedIOException
+            if (stored != null) {
+                fileStorageService.deleteFile(stored.getPath());
+            }
+            IOException cause = e instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) e;
+            if (cause instanceof NoSuchFileException) {
+                // Chunk bị xóa giữa chừng: phiên vừa bị hủy hoặc hết hạn
+                throw new BadRequestException("Upload " + uploadId + " was aborted while being completed");
+            }
+            throw new RuntimeException("Could not complete upload " + uploadId, cause);
+        } finally {
+            completing.remove(uploadId);
+        }
+    }
+
+    /**
+     * Dùng file của một phiên đã hoàn tất cho yêu cầu upload bài hát. Mỗi phiên chỉ dùng được một lần;
+     * nếu transaction của người gọi rollback thì phiên quay lại trạng thái COMPLETED.
+     */
+    @Transactional
+    public StoredFile consume(String uploadId, User owner) {
+        UploadSession session = findOwned(uploadId, owner);
+        if (session.getStatus() != UploadSession.UploadStatus.COMPLETED) {
+            throw new BadRequestException("Upload " + uploadId + " is not completed or has already been used");
+        }
+        session.setStatus(UploadSession.UploadStatus.CONSUMED);
+        uploadSessionRepository.save(session);
+        return StoredFile.builder()
+                .path(session.getFilePath())
+                .key(fileStorageService.toKey(session.getFilePath()))
+                .size(session.getTotalSize())
+                .contentType(session.getContentType())
+                .etag(session.getEtag())
+                .checksum(session.getChecksum())
+                .build();
+    }
+
+    @Transactional
+    public void abort(String uploadId, User owner) {
+        UploadSession session = findOwned(uploadId, owner);
+        if (session.getStatus() == UploadSession.UploadStatus.CONSUMED) {
+            throw new BadRequestException("Upload " + uploadId + " has already been used");
+        }
+        discard(session);
+    }
+
+    /**
+     * Dọn các phiên hết hạn: xóa chunk còn nằm trên đĩa và file đã hoàn tất nhưng chưa được dùng.
+     */
+    @Scheduled(fixedDelayString = "${media.upload.cleanup-delay-ms:3600000}", initialDelay = 300000)
+    @Transactional
+    public void cleanupExpiredSessions() {
+        int removed = 0;
+        List<UploadSession> expired;
+        while (!(expired = uploadSessionRepository.findTop100ByExpiresAtBeforeOrderByExpiresAtAsc(LocalDateTime.now())).isEmpty()) {
+            expired.forEach(this::discard);
+            uploadSessionRepository.flush();
+            removed += expired.size();
+        }
+        if (removed > 0) {
+            log.info("Removed {} expired upload sessions.", removed);
+        }
+    }
+
+    private void discard(UploadSession session) {
+        if (session.getStatus() == UploadSession.UploadStatus.COMPLETED) {
+            fileStorageService.deleteFile(session.getFilePath());
+        }
+        deleteStaging(session.getId());
+        uploadSessionRepository.delete(session);
+    }
+
+    private UploadSession findOwned(String uploadId, User owner) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getOwner().getId().equals(owner.getId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Upload not found with id: " + uploadId));
+    }
+
+    private InputStream openAssembled(UploadSession session) {
+        Iterator<Integer> indexes = IntStream.range(0, session.getChunkCount()).iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return indexes.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return new BufferedInputStream(Files.newInputStream(chunkPath(session.getId(), indexes.next())), 64 * 1024);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private UploadSessionDto toDto(UploadSession session) {
+        List<Integer> received = new ArrayList<>();
+        long receivedBytes = 0;
+        long resumeOffset = 0;
+        boolean contiguous = true;
+        if (session.getStatus() == UploadSession.UploadStatus.UPLOADING) {
+            for (int i = 0; i < session.getChunkCount(); i++) {
+                if (Files.isRegularFile(chunkPath(session.getId(), i))) {
+                    received.add(i);
+                    receivedBytes += chunkLength(session, i);
+                    if (contiguous) {
+                        resumeOffset += chunkLength(session, i);
+                    }
+                } else {
+                    contiguous = false;
+                }
+            }
+        } else {
+            receivedBytes = resumeOffset = session.getTotalSize();
+            for (int i = 0; i < session.getChunkCount(); i++) {
+                received.add(i);
+            }
+        }
+        return UploadSessionDto.builder()
+                .uploadId(session.getId())
+                .fileName(session.getFileName())
+                .totalSize(session.getTotalSize())
+                .chunkSize(session.getChunkSize())
+                .chunkCount(session.getChunkCount())
+                .receivedChunks(received)
+                .receivedBytes(receivedBytes)
+                .resumeOffset(resumeOffset)
+                .status(session.getStatus().name())
+                .checksum(session.getChecksum())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+
+    private static long chunkLength(UploadSession session, int index) {
+        long start = (long) index * session.getChunkSize();
+        return Math.min(session.getChunkSize(), session.getTotalSize() - start);
+    }
+
+    private Path sessionDir(String uploadId) {
+        return stagingRoot.resolve(uploadId);
+    }
+
+    private Path chunkPath(String uploadId, int index) {
+        return sessionDir(uploadId).resolve(index + CHUNK_SUFFIX);
+    }
+
+    private void deleteStaging(String uploadId) {
+        try {
+            FileSystemUtils.deleteRecursively(sessionDir(uploadId));
+        } catch (IOException e) {
+            log.warn("Could not delete staging directory of upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.musicapp.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Phục vụ GET /uploads/**: tra metadata của object (kích thước, content type, ETag, thời điểm ghi) qua một cache
+ * trong bộ nhớ, còn dữ liệu đi qua {@link FileStorageService#streamRange} (cache block trên đĩa với S3).
+ * Nhiều request cùng lúc cho một key chưa có trong cache chỉ tạo một lần stat tới storage.
+ * <p>
+ * Key không tồn tại cũng được nhớ trong thời gian ngắn để link hỏng không gọi HEAD tới S3 ở mỗi request.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadedMediaService {
+
+    /**
+     * @param fallback true nếu đây là ảnh gốc được trả thay cho bản thu nhỏ chưa có
+     */
+    public record MediaFile(String key, long size, String contentType, String etag, Instant lastModified, boolean fallback) {
+    }
+
+    // file == null: object không tồn tại
+    private record Entry(MediaFile file, long expiresAt) {
+    }
+
+    private final StorageBackend storageBackend;
+    private final FileStorageService fileStorageService;
+
+    @Value("${media.uploads.metadata-cache-size:20000}")
+    private int maxEntries;
+
+    @Value("${media.uploads.metadata-ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${media.uploads.negative-ttl-seconds:60}")
+    private long negativeTtlSeconds;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<MediaFile>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @return metadata của object; với bản thu nhỏ chưa có thì là ảnh gốc; null nếu không có object nào
+     */
+    public MediaFile find(String key) throws IOException {
+        MediaFile file = lookup(key);
+        if (file != null) {
+            return file;
+        }
+        String original = ImageDerivativeService.originalKeyOf(key);
+        if (original == null) {
+            return null;
+        }
+        MediaFile originalFile = lookup(original);
+        if (originalFile == null) {
+            return null;
+        }
+        fallbacks.incrementAndGet();
+        return new MediaFile(originalFile.key(), originalFile.size(), originalFile.contentType(),
+                originalFile.etag(), originalFile.lastModified(), true);
+    }
+
+    /**
+     * Ghi đoạn [start, end] của object. Nếu đọc lỗi (vd. object đã bị GC xóa) thì bỏ metadata đã cache để
+     * request sau stat lại.
+     */
+    public void copy(MediaFile file, long start, long end, OutputStream outputStream) {
+        try {
+            fileStorageService.streamRange(file.key(), file.size(), start, end, outputStream);
+        } catch (RuntimeException e) {
+            cache.remove(file.key());
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("fallbacks", fallbacks.get());
+        return stats;
+    }
+
+    private MediaFile lookup(String key) throws IOException {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return entry.file();
+        }
+
+        CompletableFuture<MediaFile> mine = new CompletableFuture<>();
+        CompletableFuture<MediaFile> running = loading.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        misses.incrementAndGet();
+        try {
+            MediaFile file = stat(key);
+            remember(key, file);
+            mine.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private MediaFile stat(String key) throws IOException {
+        StorageBackend.ObjectStat stat;
+        try {
+            stat = storageBackend.stat(key);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        String contentType = stat.contentType();
+        if (contentType == null || contentType.isBlank() || contentType.endsWith("/octet-stream")) {
+            contentType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+        }
+        String etag = stat.etag() == null || stat.etag().isBlank() ? null : "\"" + stat.etag().replace("\"", "") + "\"";
+        return new MediaFile(key, stat.size(), contentType, etag, stat.lastModified(), false);
+    }
+
+    private void remember(String key, MediaFile file) {
+        if (cache.size() >= maxEntries) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        long ttlMillis = (file != null ? ttlSeconds : negativeTtlSeconds) * 1000;
+        cache.put(key, new Entry(file, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private static MediaFile await(CompletableFuture<MediaFile> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for object metadata");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Could not read object metadata", e.getCause());
+        }
+    }
+}
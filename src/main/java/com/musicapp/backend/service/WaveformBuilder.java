@@ -0,0 +1,93 @@
+package com.musicapp.backend.service;
+
+/**
+ * Gom các cặp (min, max) theo thời gian thành một số cột cố định mà không cần biết trước độ dài audio:
+ * giữ tối đa 2 * peaks cột, khi đầy thì gộp từng đôi cột và nhân đôi số đơn vị mỗi cột. Bộ nhớ không đổi.
+ * <p>
+ * Kết quả ({@link #encode()}) là chuỗi byte min0, max0, min1, max1... (số nguyên có dấu 8 bit), được chuẩn hóa
+ * theo điểm lớn nhất của cả bài để client vẽ trực tiếp.
+ */
+public final class WaveformBuilder {
+
+    private final int peaks;
+    private final double[] min;
+    private final double[] max;
+    private int columns;
+    private long span = 1; // số đơn vị (frame PCM / frame nén) trong mỗi cột
+    private long fill;
+    private double currentMin = Double.POSITIVE_INFINITY;
+    private double currentMax = Double.NEGATIVE_INFINITY;
+
+    public WaveformBuilder(int peaks) {
+        this.peaks = Math.max(1, peaks);
+        this.min = new double[this.peaks * 2];
+        this.max = new double[this.peaks * 2];
+    }
+
+    public void add(double low, double high) {
+        if (low < currentMin) {
+            currentMin = low;
+        }
+        if (high > currentMax) {
+            currentMax = high;
+        }
+        if (++fill == span) {
+            closeColumn();
+        }
+    }
+
+    private void closeColumn() {
+        min[columns] = currentMin;
+        max[columns] = currentMax;
+        columns++;
+        fill = 0;
+        currentMin = Double.POSITIVE_INFINITY;
+        currentMax = Double.NEGATIVE_INFINITY;
+
+        if (columns == min.length) {
+            for (int i = 0; i < peaks; i++) {
+                min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+                max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+            }
+            columns = peaks;
+            span *= 2;
+        }
+    }
+
+    /**
+     * @return tối đa peaks cặp (min, max), hoặc null nếu chưa nhận gì hay toàn bộ là im lặng
+     */
+    public byte[] encode() {
+        if (fill > 0) {
+            closeColumn();
+        }
+        if (columns == 0) {
+            return null;
+        }
+        int count = Math.min(peaks, columns);
+        double[] low = new double[count];
+        double[] high = new double[count];
+        double peak = 0.0;
+        for (int i = 0; i < count; i++) {
+            int from = (int) ((long) i * columns / count);
+            int to = (int) ((long) (i + 1) * columns / count);
+            low[i] = Double.POSITIVE_INFINITY;
+            high[i] = Double.NEGATIVE_INFINITY;
+            for (int c = from; c < to; c++) {
+                low[i] = Math.min(low[i], min[c]);
+                high[i] = Math.max(high[i], max[c]);
+            }
+            peak = Math.max(peak, Math.max(Math.abs(low[i]), Math.abs(high[i])));
+        }
+        if (peak == 0.0) {
+            return null;
+        }
+
+        byte[] encoded = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            encoded[2 * i] = (byte) Math.round(low[i] / peak * 127);
+            encoded[2 * i + 1] = (byte) Math.round(high[i] / peak * 127);
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,123 @@
+package com.musicapp.backend.controller;
+
+import com.musicapp.backend.config.SecurityConfiguration;
+import com.musicapp.backend.security.JwtService;
+import com.musicapp.backend.service.UploadedMediaService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(MediaFileController.class)
+@Import(SecurityConfiguration.class)
+class MediaFileControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij"; // ảnh giả 20 byte
+    private static final String ETAG = "\"abc123\"";
+    private static final UploadedMediaService.MediaFile IMAGE = new UploadedMediaService.MediaFile(
+            "images/songs/abc.png", CONTENT.length(), "image/png", ETAG, Instant.parse("2026-01-01T00:00:00Z"), false);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UploadedMediaService uploadedMediaService;
+
+    // Các mock cho SecurityConfiguration
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean
+    private AuthenticationProvider authenticationProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(uploadedMediaService.find("images/songs/abc.png")).thenReturn(IMAGE);
+        doAnswer(invocation -> {
+            long start = invocation.getArgument(1);
+            long end = invocation.getArgument(2);
+            OutputStream out = invocation.getArgument(3);
+            out.write(CONTENT.substring((int) start, (int) end + 1).getBytes(StandardCharsets.US_ASCII));
+            return null;
+        }).when(uploadedMediaService).copy(any(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testGetUpload_Ok_ImmutableWithValidators() throws Exception {
+        MvcResult result = mockMvc.perform(get("/uploads/images/songs/abc.png"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void testGetUpload_IfNoneMatch_NotModified() throws Exception {
+        mockMvc.perform(get("/uploads/images/songs/abc.png").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+
+        verify(uploadedMediaService, never()).copy(any(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testGetUpload_IfModifiedSince_NotModified() throws Exception {
+        mockMvc.perform(get("/uploads/images/songs/abc.png").header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 01 Jan 2026 00:00:00 GMT"))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testGetUpload_Range_PartialContent() throws Exception {
+        MvcResult result = mockMvc.perform(get("/uploads/images/songs/abc.png").header(HttpHeaders.RANGE, "bytes=10-14"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-14/20"))
+                .andExpect(content().string("abcde"));
+    }
+
+    @Test
+    void testGetUpload_MissingVariant_FallsBackWithShortCache() throws Exception {
+        when(uploadedMediaService.find("derived/256/images/songs/abc.png.jpg")).thenReturn(new UploadedMediaService.MediaFile(
+                IMAGE.key(), IMAGE.size(), IMAGE.contentType(), IMAGE.etag(), IMAGE.lastModified(), true));
+
+        MvcResult result = mockMvc.perform(get("/uploads/derived/256/images/songs/abc.png.jpg"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=3600"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void testGetUpload_Unknown_NotFound() throws Exception {
+        mockMvc.perform(get("/uploads/images/songs/missing.png"))
+                .andExpect(status().isNotFound());
+    }
+}
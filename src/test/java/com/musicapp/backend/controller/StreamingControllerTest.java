@@ -0,0 +1,344 @@
+package com.musicapp.backend.controller;
+
+import com.musicapp.backend.config.SecurityConfiguration;
+import com.musicapp.backend.security.JwtService;
+import com.musicapp.backend.service.AudioMetadataService;
+import com.musicapp.backend.service.AudioObjectMetadata;
+import com.musicapp.backend.service.AudioPrefetchService;
+import com.musicapp.backend.service.AudioSeekIndexService;
+import com.musicapp.backend.service.FileStorageService;
+import com.musicapp.backend.service.PresignedUrlService;
+import com.musicapp.backend.service.SeekTable;
+import com.musicapp.backend.service.StreamTokenService;
+import com.musicapp.backend.service.SubscriptionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(StreamingController.class)
+@Import(SecurityConfiguration.class)
+class StreamingControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij"; // file giả 20 byte
+    private static final String ETAG = "\"abc123\"";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private AudioMetadataService audioMetadataService;
+
+    @MockBean
+    private AudioSeekIndexService audioSeekIndexService;
+
+    @MockBean
+    private AudioPrefetchService audioPrefetchService;
+
+    @MockBean
+    private StreamTokenService streamTokenService;
+
+    @MockBean
+    private SubscriptionService subscriptionService;
+
+    // Mặc định trả về null (không ký được URL) -> các test khác vẫn đi qua proxy
+    @MockBean
+    private PresignedUrlService presignedUrlService;
+
+    // Các mock cho SecurityConfiguration
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean
+    private AuthenticationProvider authenticationProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AudioObjectMetadata metadata = AudioObjectMetadata.builder()
+                .songId(1L)
+                .key("songs/test.mp3")
+                .fileSize((long) CONTENT.length())
+                .contentType("audio/mpeg")
+                .checksum("abc123")
+                .build();
+        when(audioMetadataService.getForSong(1L)).thenReturn(metadata);
+        when(audioMetadataService.getCachedForSong(1L)).thenReturn(metadata);
+        // streamRange ghi đúng đoạn [start, end] của nội dung giả
+        doAnswer(invocation -> {
+            long start = invocation.getArgument(2);
+            long end = invocation.getArgument(3);
+            OutputStream out = invocation.getArgument(4);
+            out.write(CONTENT.substring((int) start, (int) end + 1).getBytes(StandardCharsets.US_ASCII));
+            return null;
+        }).when(fileStorageService).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_SuffixRange_PartialContent() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1").header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 15-19/20"))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+                .andExpect(content().string("fghij"));
+    }
+
+    @Test
+    void testStream_MultipleRanges_MultipartByteranges() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1").header(HttpHeaders.RANGE, "bytes=0-1,10-11"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges; boundary=")))
+                .andExpect(content().string(containsString("Content-Range: bytes 10-11/20\r\n\r\nab")));
+    }
+
+    @Test
+    void testStream_IfNoneMatch_NotModified() throws Exception {
+        mockMvc.perform(get("/api/v1/stream/songs/1").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+
+        verify(fileStorageService, never()).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_UnsatisfiableRange_416() throws Exception {
+        mockMvc.perform(get("/api/v1/stream/songs/1").header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    void testStream_IfRangeMismatch_FullContent() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1")
+                        .header(HttpHeaders.RANGE, "bytes=0-4")
+                        .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void testStream_SeekByTime_StartsAtFrameBoundary() throws Exception {
+        // Mốc 0ms ở byte 0, mốc 500ms ở byte 8, mốc 1000ms ở byte 16
+        when(audioSeekIndexService.getTable("songs/test.mp3"))
+                .thenReturn(new SeekTable(1200, new long[]{0, 500, 1000}, new long[]{0, 8, 16}));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1").param("t", "0.7"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-19/20"))
+                .andExpect(header().string("X-Seek-Time-Ms", "500"))
+                .andExpect(content().string("89abcdefghij"));
+    }
+
+    @Test
+    void testStream_StartInPlaylist_TriggersPrefetch() throws Exception {
+        mockMvc.perform(get("/api/v1/stream/songs/1").param("ctx", "playlist:7").param("next", "2", "3"))
+                .andExpect(request().asyncStarted());
+
+        verify(audioPrefetchService).onStreamStart(1L, "playlist:7", List.of(2L, 3L));
+    }
+
+    @Test
+    void testStream_InvalidToken_ForbiddenWithoutMetadataLookup() throws Exception {
+        when(streamTokenService.verify("tampered")).thenReturn(null);
+
+        mockMvc.perform(get("/api/v1/stream/songs/1").param("token", "tampered"))
+                .andExpect(status().isForbidden());
+
+        verify(audioMetadataService, never()).getForSong(anyLong());
+        verify(audioMetadataService, never()).getCachedForSong(anyLong());
+    }
+
+    @Test
+    void testStream_TokenForReplacedFile_Forbidden() throws Exception {
+        // Token ký cho file cũ; bài hát đã được thay file (key mới trong metadata cache)
+        StreamTokenService.StreamToken token = new StreamTokenService.StreamToken(AudioObjectMetadata.builder()
+                .songId(1L)
+                .key("songs/old.mp3")
+                .fileSize((long) CONTENT.length())
+                .checksum("old")
+                .build(), StreamTokenService.Tier.FREE, null, Long.MAX_VALUE);
+        when(streamTokenService.verify("stale")).thenReturn(token);
+        when(streamTokenService.matches(eq(token), any())).thenReturn(false);
+
+        mockMvc.perform(get("/api/v1/stream/songs/1").param("token", "stale"))
+                .andExpect(status().isForbidden());
+
+        verify(fileStorageService, never()).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_PremiumTokenAfterSubscriptionEnded_Forbidden() throws Exception {
+        AudioObjectMetadata premium = AudioObjectMetadata.builder()
+                .songId(2L)
+                .key("songs/premium.mp3")
+                .fileSize((long) CONTENT.length())
+                .premium(true)
+                .build();
+        when(audioMetadataService.getCachedForSong(2L)).thenReturn(premium);
+        StreamTokenService.StreamToken token = new StreamTokenService.StreamToken(premium,
+                StreamTokenService.Tier.PREMIUM, 42L, Long.MAX_VALUE);
+        when(streamTokenService.verify("premium")).thenReturn(token);
+        when(streamTokenService.matches(token, premium)).thenReturn(true);
+        when(subscriptionService.hasActivePremiumSubscription(42L)).thenReturn(false);
+
+        mockMvc.perform(get("/api/v1/stream/songs/2").param("token", "premium"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testStream_ValidToken_Streams() throws Exception {
+        StreamTokenService.StreamToken token = new StreamTokenService.StreamToken(AudioObjectMetadata.builder()
+                .songId(1L)
+                .key("songs/test.mp3")
+                .fileSize((long) CONTENT.length())
+                .checksum("abc123")
+                .build(), StreamTokenService.Tier.FREE, null, Long.MAX_VALUE);
+        when(streamTokenService.verify("valid")).thenReturn(token);
+        when(streamTokenService.matches(eq(token), any())).thenReturn(true);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1").param("token", "valid")
+                        .header(HttpHeaders.RANGE, "bytes=0-4"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("01234"));
+    }
+
+    @Test
+    void testStream_ValidTokenOnMetadataCacheMiss_StreamsFromSignedMetadataWithoutDbRead() throws Exception {
+        // Metadata của bài chưa có trong cache: dùng metadata đã ký trong token, không đọc DB trên request
+        StreamTokenService.StreamToken token = new StreamTokenService.StreamToken(AudioObjectMetadata.builder()
+                .songId(4L)
+                .key("songs/cold.mp3")
+                .fileSize((long) CONTENT.length())
+                .contentType("audio/mpeg")
+                .build(), StreamTokenService.Tier.FREE, null, Long.MAX_VALUE);
+        when(streamTokenService.verify("cold")).thenReturn(token);
+
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/4").param("token", "cold")
+                        .header(HttpHeaders.RANGE, "bytes=0-4"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("01234"));
+
+        verify(audioMetadataService).getCachedForSong(4L);
+        verify(audioMetadataService, never()).getForSong(anyLong());
+        verify(fileStorageService).streamRange(eq("songs/cold.mp3"), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_PremiumTokenOnMetadataCacheMiss_ChecksSignedPremiumFlag() throws Exception {
+        StreamTokenService.StreamToken token = new StreamTokenService.StreamToken(AudioObjectMetadata.builder()
+                .songId(4L)
+                .key("songs/cold.mp3")
+                .fileSize((long) CONTENT.length())
+                .premium(true)
+                .build(), StreamTokenService.Tier.FREE, null, Long.MAX_VALUE);
+        when(streamTokenService.verify("cold-premium")).thenReturn(token);
+
+        mockMvc.perform(get("/api/v1/stream/songs/4").param("token", "cold-premium"))
+                .andExpect(status().isForbidden());
+
+        verify(audioMetadataService, never()).getForSong(anyLong());
+    }
+
+    @Test
+    void testStream_PremiumSongWithoutEntitlement_Forbidden() throws Exception {
+        when(audioMetadataService.getForSong(2L)).thenReturn(AudioObjectMetadata.builder()
+                .songId(2L)
+                .key("songs/premium.mp3")
+                .fileSize((long) CONTENT.length())
+                .premium(true)
+                .build());
+
+        mockMvc.perform(get("/api/v1/stream/songs/2"))
+                .andExpect(status().isForbidden());
+
+        verify(fileStorageService, never()).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_RedirectMode_FoundWithPresignedUrl() throws Exception {
+        when(presignedUrlService.urlFor("songs/test.mp3", "audio/mpeg")).thenReturn("https://bucket.s3.amazonaws.com/songs/test.mp3?X-Amz-Signature=abc");
+
+        mockMvc.perform(get("/api/v1/stream/songs/1").header(HttpHeaders.RANGE, "bytes=0-4"))
+                .andExpect(status().isFound())
+                .andExpect(header().string(HttpHeaders.LOCATION, "https://bucket.s3.amazonaws.com/songs/test.mp3?X-Amz-Signature=abc"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"));
+
+        verify(fileStorageService, never()).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testStream_RedirectMode_SeekByTimeStillProxied() throws Exception {
+        when(presignedUrlService.urlFor(anyString(), any())).thenReturn("https://bucket.s3.amazonaws.com/songs/test.mp3");
+        when(audioSeekIndexService.getTable("songs/test.mp3"))
+                .thenReturn(new SeekTable(1200, new long[]{0, 500, 1000}, new long[]{0, 8, 16}));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/songs/1").param("t", "0.7"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("89abcdefghij"));
+    }
+
+    @Test
+    void testStream_LegacySongWithoutMetadata_ServiceUnavailable() throws Exception {
+        // Bài cũ chưa được backfill: không HEAD tới storage trên request, client thử lại sau
+        when(audioMetadataService.getForSong(3L)).thenReturn(AudioObjectMetadata.builder()
+                .songId(3L)
+                .key("songs/legacy.mp3")
+                .build());
+
+        mockMvc.perform(get("/api/v1/stream/songs/3"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"));
+
+        verify(fileStorageService, never()).getObjectAttributes(anyString());
+        verify(fileStorageService, never()).streamRange(anyString(), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+}
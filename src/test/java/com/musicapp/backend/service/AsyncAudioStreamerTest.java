@@ -0,0 +1,98 @@
+package com.musicapp.backend.service;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AsyncAudioStreamerTest {
+
+    private static final String KEY = "audio/test.mp3";
+
+    private AsyncRangeReader rangeReader;
+    private FileStorageService fileStorageService;
+    private AsyncAudioStreamer streamer;
+    private AsyncContext asyncContext;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        rangeReader = mock(AsyncRangeReader.class);
+        fileStorageService = mock(FileStorageService.class);
+        streamer = new AsyncAudioStreamer(rangeReader, new StreamBufferPool(), fileStorageService);
+        ReflectionTestUtils.setField(streamer, "asyncTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(streamer, "readThreads", 2);
+        streamer.init();
+
+        // Lớn hơn size class lớn nhất của pool để range được đọc thành nhiều chunk
+        content = new byte[300_000];
+        new Random(42).nextBytes(content);
+        when(fileStorageService.usesBlockCache()).thenReturn(true);
+        doAnswer(invocation -> {
+            long start = invocation.getArgument(2);
+            long end = invocation.getArgument(3);
+            invocation.<OutputStream>getArgument(4).write(content, (int) start, (int) (end - start + 1));
+            return null;
+        }).when(fileStorageService).streamRange(eq(KEY), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+
+        // Socket luôn sẵn sàng ghi
+        ServletOutputStream outputStream = mock(ServletOutputStream.class);
+        when(outputStream.isReady()).thenReturn(true);
+        doAnswer(invocation -> {
+            received.write(invocation.<byte[]>getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(outputStream).write(any(byte[].class), anyInt(), anyInt());
+        asyncContext = mock(AsyncContext.class);
+        request = mock(HttpServletRequest.class);
+        when(request.startAsync()).thenReturn(asyncContext);
+        response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamer.shutdown();
+    }
+
+    @Test
+    void testStream_BlockCacheReadsRangeThroughFileStorageInChunks() throws Exception {
+        streamer.stream(request, response, KEY, content.length, 100, content.length - 1);
+
+        verify(asyncContext, timeout(5000)).complete();
+        assertArrayEquals(Arrays.copyOfRange(content, 100, content.length), received.toByteArray());
+        // Chunk đầu bằng buffer 256 KB của pool, chunk sau là phần còn lại
+        verify(fileStorageService).streamRange(eq(KEY), eq((long) content.length), eq(100L), eq(100L + 256 * 1024 - 1), any(OutputStream.class));
+        verify(fileStorageService).streamRange(eq(KEY), eq((long) content.length), eq(100L + 256 * 1024), eq(content.length - 1L), any(OutputStream.class));
+        verifyNoInteractions(rangeReader);
+        assertEquals(1L, streamer.getStats().get("completedStreams"));
+        assertEquals(1L, streamer.getStats().get("blockCacheStreams"));
+    }
+
+    @Test
+    void testStream_BlockCacheReadFailureFailsStream() throws Exception {
+        doThrow(new RuntimeException("Error streaming object " + KEY))
+                .when(fileStorageService).streamRange(eq(KEY), anyLong(), anyLong(), anyLong(), any(OutputStream.class));
+
+        streamer.stream(request, response, KEY, content.length, 0, 999);
+
+        verify(asyncContext, timeout(5000)).complete();
+        verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertEquals(1L, streamer.getStats().get("failedStreams"));
+    }
+}
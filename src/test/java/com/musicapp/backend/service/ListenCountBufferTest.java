@@ -0,0 +1,228 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ListenCountBufferTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private ListenEventJournal journal;
+    private final Map<String, Map<Long, Long>> counts = new HashMap<>();
+    private final List<List<Long>> history = new ArrayList<>();
+    private final List<ListenEventJournal> journals = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        // Nhật ký tắt (mock trả isEnabled = false)
+        journal = mock(ListenEventJournal.class);
+        recordWrites();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(ListenEventJournal::shutdown);
+    }
+
+    private ListenEventJournal openJournal() throws Exception {
+        ListenEventJournal journal = new ListenEventJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "journalDir", tempDir.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", 4096);
+        ReflectionTestUtils.setField(journal, "syncIntervalMs", 10L);
+        journal.init();
+        journals.add(journal);
+        return journal;
+    }
+
+    /**
+     * Giả lập process chết: tắt nhật ký mà không flush buffer.
+     */
+    private void crash(ListenEventJournal journal) {
+        journal.shutdown();
+        journals.remove(journal);
+    }
+
+    private ListenCountBuffer buffer(ListenEventJournal journal) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        ListenCountBuffer buffer = new ListenCountBuffer(jdbcTemplate, transactionTemplate, journal);
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        // Ngưỡng cao để chỉ có các lần flush do test gọi
+        ReflectionTestUtils.setField(buffer, "flushThreshold", 1000);
+        ReflectionTestUtils.setField(buffer, "historyBatchSize", 100);
+        ReflectionTestUtils.setField(buffer, "maxPendingHistory", 1000);
+        buffer.init();
+        return buffer;
+    }
+
+    /**
+     * Cộng dồn các cặp (id, delta) của UPDATE ... CASE theo bảng và ghi lại (song_id, user_id) của từng dòng lịch sử.
+     */
+    private void recordWrites() throws Exception {
+        doAnswer(invocation -> {
+            String table = invocation.<String>getArgument(0).startsWith("UPDATE songs") ? "songs" : "playlists";
+            Object[] args = Arrays.copyOfRange(invocation.getArguments(), 1, invocation.getArguments().length);
+            // WHEN ? THEN ? cho mỗi id rồi danh sách id của IN (...)
+            int pairs = args.length / 3;
+            for (int i = 0; i < pairs; i++) {
+                counts.computeIfAbsent(table, key -> new HashMap<>()).merge((Long) args[2 * i], (Long) args[2 * i + 1], Long::sum);
+            }
+            return pairs;
+        }).when(jdbcTemplate).update(anyString(), any(Object[].class));
+
+        doAnswer(invocation -> {
+            Collection<Object> rows = invocation.getArgument(1);
+            ParameterizedPreparedStatementSetter<Object> setter = invocation.getArgument(3);
+            for (Object row : rows) {
+                PreparedStatement statement = mock(PreparedStatement.class);
+                Long[] values = new Long[2];
+                doAnswer(set -> values[1] = set.getArgument(1)).when(statement).setObject(eq(1), any(), eq(Types.BIGINT));
+                doAnswer(set -> values[0] = set.getArgument(1)).when(statement).setLong(eq(3), anyLong());
+                setter.setValues(statement, row);
+                history.add(Arrays.asList(values));
+            }
+            return new int[][]{new int[rows.size()]};
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    private void failWrites() {
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(jdbcTemplate).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void testFlush_WritesSummedCountsAndHistoryInOrder() {
+        ListenCountBuffer buffer = buffer(journal);
+        buffer.recordSongListen(1L, 7L);
+        buffer.recordSongListen(1L, 8L);
+        buffer.recordSongListen(2L, null);
+        buffer.recordSongListen(1L, null);
+        buffer.recordPlaylistListen(5L);
+        buffer.recordPlaylistListen(5L);
+
+        buffer.flush();
+
+        // Mỗi bảng một câu UPDATE cho cả lô, lịch sử một lần batch
+        verify(jdbcTemplate, times(2)).update(anyString(), any(Object[].class));
+        verify(jdbcTemplate).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(Map.of(1L, 3L, 2L, 1L), counts.get("songs"));
+        assertEquals(Map.of(5L, 2L), counts.get("playlists"));
+        assertEquals(List.of(List.of(1L, 7L), List.of(1L, 8L), Arrays.asList(2L, null), Arrays.asList(1L, null)), history);
+    }
+
+    @Test
+    void testFlush_NothingPendingWritesNothing() {
+        ListenCountBuffer buffer = buffer(journal);
+
+        buffer.flush();
+
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(1L, buffer.getStats().get("flushes"));
+    }
+
+    @Test
+    void testFlush_FailedTransactionRestoresEverythingForNextFlush() throws Exception {
+        ListenCountBuffer buffer = buffer(journal);
+        buffer.recordSongListen(1L, 7L);
+        buffer.recordPlaylistListen(5L);
+        failWrites();
+
+        buffer.flush();
+
+        assertTrue(counts.isEmpty());
+        assertEquals(1L, buffer.getStats().get("failedFlushes"));
+        assertEquals(1, buffer.getStats().get("pendingHistory"));
+
+        // Lượt nghe đến trong lúc DB lỗi được cộng vào cùng lần flush sau, lịch sử giữ đúng thứ tự
+        buffer.recordSongListen(1L, 8L);
+        recordWrites();
+        buffer.flush();
+
+        assertEquals(Map.of(1L, 2L), counts.get("songs"));
+        assertEquals(Map.of(5L, 1L), counts.get("playlists"));
+        assertEquals(List.of(List.of(1L, 7L), List.of(1L, 8L)), history);
+    }
+
+    @Test
+    void testRecordSongListen_DisabledWritesThrough() {
+        ListenCountBuffer buffer = buffer(journal);
+        ReflectionTestUtils.setField(buffer, "enabled", false);
+
+        buffer.recordSongListen(1L, 7L);
+
+        verify(jdbcTemplate).update(contains("UPDATE songs"), eq(1L));
+        verify(jdbcTemplate).update(contains("INSERT INTO listen_history"), eq(1L), eq(7L), any());
+    }
+
+    @Test
+    void testRecover_ReplaysListensThatWereNeverCommitted() throws Exception {
+        ListenEventJournal journal = openJournal();
+        ListenCountBuffer buffer = buffer(journal);
+        buffer.recordSongListen(1L, 7L);
+        buffer.recordSongListen(2L, null);
+        // Flush lỗi: segment đã xoay nhưng phải được giữ lại
+        failWrites();
+        buffer.flush();
+        buffer.recordPlaylistListen(5L);
+        crash(journal);
+
+        recordWrites();
+        ListenCountBuffer restarted = buffer(openJournal());
+
+        assertEquals(3L, restarted.getStats().get("recoveredFromJournal"));
+        assertEquals(Map.of(1L, 1L, 2L, 1L), counts.get("songs"));
+        assertEquals(Map.of(5L, 1L), counts.get("playlists"));
+        assertEquals(List.of(List.of(1L, 7L), Arrays.asList(2L, null)), history);
+    }
+
+    @Test
+    void testRecover_CommittedFlushIsNotReplayed() throws Exception {
+        ListenEventJournal journal = openJournal();
+        ListenCountBuffer buffer = buffer(journal);
+        buffer.recordSongListen(1L, 7L);
+        buffer.flush();
+        buffer.recordSongListen(1L, 8L);
+        crash(journal);
+
+        ListenCountBuffer restarted = buffer(openJournal());
+
+        // Chỉ lượt nghe sau lần flush đã commit được đọc lại, lượt trước không bị đếm hai lần
+        assertEquals(1L, restarted.getStats().get("recoveredFromJournal"));
+        assertEquals(Map.of(1L, 2L), counts.get("songs"));
+        assertEquals(List.of(List.of(1L, 7L), List.of(1L, 8L)), history);
+    }
+
+    @Test
+    void testFlush_FailedFlushKeepsJournalSegments() {
+        ListenCountBuffer buffer = buffer(journal);
+        when(journal.isEnabled()).thenReturn(true);
+        when(journal.rotate()).thenReturn(3L);
+        buffer.recordSongListen(1L, 7L);
+        failWrites();
+
+        buffer.flush();
+
+        verify(journal).append(eq(ListenEventJournal.SONG_LISTEN), eq(1L), eq(7L), anyLong());
+        verify(journal, never()).compact(anyLong());
+    }
+}
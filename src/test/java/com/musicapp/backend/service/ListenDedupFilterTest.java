@@ -0,0 +1,91 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListenDedupFilterTest {
+
+    private static final int GENERATIONS = 4;
+
+    private ListenDedupFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ListenDedupFilter();
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "minGapSeconds", 30L);
+        ReflectionTestUtils.setField(filter, "generations", GENERATIONS);
+        ReflectionTestUtils.setField(filter, "expectedPerWindow", 10000);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.001);
+        filter.init();
+    }
+
+    /**
+     * Giả lập trôi qua một chu kỳ xoay (min-gap / (generations - 1)): lần gọi accept kế tiếp xoay đúng một lần.
+     */
+    private void elapseOneRotation() {
+        ReflectionTestUtils.setField(filter, "nextRotationAt", System.currentTimeMillis() - 1);
+    }
+
+    @Test
+    void testAccept_RepeatWithinGapIsRejected() {
+        assertTrue(filter.accept(1L, null, 10L));
+        assertFalse(filter.accept(1L, null, 10L));
+
+        // Người khác hoặc bài khác vẫn được đếm
+        assertTrue(filter.accept(2L, null, 10L));
+        assertTrue(filter.accept(1L, null, 11L));
+        assertEquals(3L, filter.getStats().get("accepted"));
+        assertEquals(1L, filter.getStats().get("rejected"));
+    }
+
+    @Test
+    void testRotation_KeepsListenForAtLeastMinimumGap() {
+        assertTrue(filter.accept(1L, null, 10L));
+
+        // generations - 1 chu kỳ = min-gap: lượt nghe vẫn được nhớ
+        for (int i = 0; i < GENERATIONS - 1; i++) {
+            elapseOneRotation();
+            assertFalse(filter.accept(1L, null, 10L), "forgotten after " + (i + 1) + " rotation(s)");
+        }
+
+        // Chu kỳ kế tiếp xóa thế hệ chứa lượt nghe đó
+        elapseOneRotation();
+        assertTrue(filter.accept(1L, null, 10L));
+        assertEquals((long) GENERATIONS, filter.getStats().get("rotations"));
+    }
+
+    @Test
+    void testRotation_RejectedListenDoesNotExtendWindow() {
+        assertTrue(filter.accept(1L, null, 10L));
+        elapseOneRotation();
+        assertFalse(filter.accept(1L, null, 10L));
+
+        // Lượt bị chặn không được ghi lại vào thế hệ mới, nên khoảng cách tính từ lượt được đếm
+        for (int i = 1; i < GENERATIONS; i++) {
+            elapseOneRotation();
+            filter.accept(2L, null, 20L + i);
+        }
+        assertTrue(filter.accept(1L, null, 10L));
+    }
+
+    @Test
+    void testRotation_AfterLongIdleEveryGenerationIsCleared() {
+        assertTrue(filter.accept(1L, null, 10L));
+        ReflectionTestUtils.setField(filter, "nextRotationAt", 0L);
+
+        assertTrue(filter.accept(1L, null, 10L));
+        assertEquals((long) GENERATIONS, filter.getStats().get("rotations"));
+    }
+
+    @Test
+    void testAccept_DisabledCountsEveryListen() {
+        ReflectionTestUtils.setField(filter, "enabled", false);
+
+        assertTrue(filter.accept(1L, null, 10L));
+        assertTrue(filter.accept(1L, null, 10L));
+    }
+}
@@ -0,0 +1,170 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListenEventJournalTest {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 29;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<ListenEventJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(ListenEventJournal::shutdown);
+    }
+
+    /**
+     * Mở nhật ký trên cùng thư mục, như một lần khởi động ứng dụng.
+     */
+    private ListenEventJournal open() throws Exception {
+        ListenEventJournal journal = new ListenEventJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "journalDir", tempDir.toString());
+        ReflectionTestUtils.setField(journal, "segmentBytes", 4096);
+        ReflectionTestUtils.setField(journal, "syncIntervalMs", 10L);
+        journal.init();
+        opened.add(journal);
+        return journal;
+    }
+
+    private static List<ListenEventJournal.Event> replay(ListenEventJournal journal) {
+        List<ListenEventJournal.Event> events = new ArrayList<>();
+        journal.replay(events::add);
+        return events;
+    }
+
+    @Test
+    void testReplay_ReturnsEventsOfPreviousRunInAppendOrder() throws Exception {
+        ListenEventJournal journal = open();
+        journal.append(ListenEventJournal.SONG_LISTEN, 10, 7L, 1000);
+        journal.append(ListenEventJournal.SONG_LISTEN, 11, null, 1001);
+        journal.rotate();
+        journal.append(ListenEventJournal.PLAYLIST_LISTEN, 5, null, 1002);
+        // Segment đang ghi không được đọc lại trong cùng lần chạy
+        assertEquals(2, replay(journal).size());
+        journal.shutdown();
+        opened.remove(journal);
+
+        List<ListenEventJournal.Event> events = replay(open());
+
+        assertEquals(List.of(
+                new ListenEventJournal.Event(ListenEventJournal.SONG_LISTEN, 10, 7L, 1000),
+                new ListenEventJournal.Event(ListenEventJournal.SONG_LISTEN, 11, null, 1001),
+                new ListenEventJournal.Event(ListenEventJournal.PLAYLIST_LISTEN, 5, null, 1002)), events);
+    }
+
+    @Test
+    void testCompact_DeletesOnlySegmentsBeforeBoundary() throws Exception {
+        ListenEventJournal journal = open();
+        journal.append(ListenEventJournal.SONG_LISTEN, 1, null, 1000);
+        long boundary = journal.rotate();
+        journal.append(ListenEventJournal.SONG_LISTEN, 2, null, 2000);
+        journal.compact(boundary);
+        journal.shutdown();
+        opened.remove(journal);
+
+        List<ListenEventJournal.Event> events = replay(open());
+
+        assertEquals(1, events.size());
+        assertEquals(2L, events.get(0).id());
+    }
+
+    @Test
+    void testReplay_TornRecordEndsOnlyThatSegment() throws Exception {
+        ListenEventJournal journal = open();
+        journal.append(ListenEventJournal.SONG_LISTEN, 1, 7L, 1000);
+        journal.append(ListenEventJournal.SONG_LISTEN, 2, 7L, 1001);
+        journal.append(ListenEventJournal.SONG_LISTEN, 3, 7L, 1002);
+        journal.rotate();
+        journal.append(ListenEventJournal.SONG_LISTEN, 4, 7L, 1003);
+        journal.shutdown();
+        opened.remove(journal);
+
+        // Giả lập máy sập giữa lúc ghi bản ghi thứ hai: hỏng một byte của id
+        Path first;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            first = files.sorted().findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), HEADER_SIZE + RECORD_SIZE + 5);
+        }
+
+        ListenEventJournal restarted = open();
+        List<ListenEventJournal.Event> events = replay(restarted);
+
+        assertEquals(List.of(1L, 4L), events.stream().map(ListenEventJournal.Event::id).toList());
+        assertEquals(1L, restarted.getStats().get("corruptSegments"));
+    }
+
+    @Test
+    void testAppend_SyncThreadForcesWithoutWaitingWriters() throws Exception {
+        ListenEventJournal journal = open();
+        for (int i = 0; i < 10; i++) {
+            journal.append(ListenEventJournal.SONG_LISTEN, i, null, i);
+        }
+
+        // append trả về ngay; luồng sync gom các bản ghi vào một vài lần force
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) journal.getStats().get("unsyncedRecords") > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "journal was never forced");
+            Thread.sleep(5);
+        }
+        assertTrue((Long) journal.getStats().get("forces") >= 1);
+    }
+
+    @Test
+    void testAppend_OpensNewSegmentWhenFull() throws Exception {
+        ListenEventJournal journal = open();
+        int perSegment = (4096 - HEADER_SIZE) / RECORD_SIZE;
+        for (int i = 0; i < perSegment + 1; i++) {
+            journal.append(ListenEventJournal.SONG_LISTEN, i, null, i);
+        }
+        journal.shutdown();
+        opened.remove(journal);
+
+        List<ListenEventJournal.Event> events = replay(open());
+
+        assertEquals(perSegment + 1, events.size());
+        assertEquals((long) perSegment, events.get(perSegment).id());
+    }
+
+    @Test
+    void testReplay_ReadsLegacySegmentWithoutHeader() throws Exception {
+        // Segment định dạng 1 do bản trước ghi: không header, bản ghi 21 byte (loại, id, thời điểm, CRC32), phần còn lại toàn 0
+        ByteBuffer legacy = ByteBuffer.allocate(4096);
+        for (long id = 1; id <= 2; id++) {
+            int start = legacy.position();
+            legacy.put(ListenEventJournal.SONG_LISTEN).putLong(id).putLong(1000 + id);
+            CRC32 crc = new CRC32();
+            crc.update(legacy.array(), start, legacy.position() - start);
+            legacy.putInt((int) crc.getValue());
+        }
+        Files.write(tempDir.resolve("listen-00000000000000000001.log"), legacy.array());
+
+        ListenEventJournal journal = open();
+
+        assertEquals(List.of(
+                new ListenEventJournal.Event(ListenEventJournal.SONG_LISTEN, 1, null, 1001),
+                new ListenEventJournal.Event(ListenEventJournal.SONG_LISTEN, 2, null, 1002)), replay(journal));
+        assertEquals(0L, journal.getStats().get("corruptSegments"));
+    }
+}
@@ -0,0 +1,177 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ListenRollupServiceTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2026, 3, 1, 10, 15);
+
+    private JdbcTemplate jdbcTemplate;
+    private ListenRollupService service;
+
+    // listen_history (id, song_id, user_id, listen_timestamp), listen_rollup_state và số lượt nghe theo bucket của rollup
+    private final List<Object[]> listenHistory = new ArrayList<>();
+    private final Map<List<Object>, Long> hourly = new HashMap<>();
+    private final Map<List<Object>, Long> daily = new HashMap<>();
+    private long lastId;
+    private long horizonId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new ListenRollupService(jdbcTemplate, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "maxBatchesPerRun", 20);
+
+        when(jdbcTemplate.queryForObject(contains("FROM listen_rollup_state"), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getLong(1)).thenReturn(lastId);
+                    when(rs.getLong(2)).thenReturn(horizonId);
+                    return invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0);
+                });
+        when(jdbcTemplate.queryForObject(contains("MAX(id)"), eq(Long.class)))
+                .thenAnswer(invocation -> (long) listenHistory.size());
+        when(jdbcTemplate.queryForList(contains("SELECT last_id"), eq(Long.class), any(Object[].class)))
+                .thenAnswer(invocation -> List.of(lastId));
+        when(jdbcTemplate.update(contains("SET horizon_id"), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    horizonId = invocation.getArgument(1);
+                    return 1;
+                });
+        when(jdbcTemplate.update(contains("SET last_id"), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    lastId = invocation.getArgument(1);
+                    return 1;
+                });
+        doAnswer(invocation -> {
+            long from = invocation.getArgument(2);
+            long to = invocation.getArgument(3);
+            int limit = invocation.getArgument(4);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            listenHistory.stream()
+                    .filter(listen -> (Long) listen[0] > from && (Long) listen[0] <= to)
+                    .limit(limit)
+                    .forEach(listen -> {
+                        try {
+                            handler.processRow(row(listen));
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+            return null;
+        }).when(jdbcTemplate).query(contains("FROM listen_history"), any(RowCallbackHandler.class), any(Object[].class));
+        // Không có sketch cũ: mock không gọi handler nên mỗi bucket bắt đầu từ sketch rỗng
+        recordUpserts();
+    }
+
+    private void recordUpserts() {
+        doAnswer(invocation -> {
+            Map<List<Object>, Long> table = invocation.<String>getArgument(0).contains("song_listen_hourly") ? hourly : daily;
+            List<Object[]> rows = invocation.getArgument(1);
+            rows.forEach(args -> table.merge(List.of(args[0], args[1]), (Long) args[2], Long::sum));
+            return new int[rows.size()];
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+    }
+
+    private void insertListen(Long songId, Long userId, LocalDateTime at) {
+        listenHistory.add(new Object[]{(long) listenHistory.size() + 1, songId, userId, Timestamp.valueOf(at)});
+    }
+
+    private static ResultSet row(Object[] listen) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn((Long) listen[0]);
+        when(rs.getLong(2)).thenReturn((Long) listen[1]);
+        when(rs.getLong(3)).thenReturn(listen[2] != null ? (Long) listen[2] : 0L);
+        // wasNull chỉ được hỏi ngay sau cột user_id
+        when(rs.wasNull()).thenReturn(listen[2] == null);
+        when(rs.getTimestamp(4)).thenReturn((Timestamp) listen[3]);
+        return rs;
+    }
+
+    @Test
+    void testRollup_FirstRunOnlyRecordsHorizon() {
+        insertListen(1L, 7L, AT);
+        insertListen(1L, 8L, AT);
+
+        service.rollup();
+
+        // Dòng có id nhỏ hơn MAX(id) có thể còn nằm trong transaction chưa commit -> chưa tổng hợp
+        assertEquals(0L, service.lastRolledUpId());
+        assertEquals(2L, horizonId);
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testRollup_RepeatedRunsDoNotDoubleCount() {
+        insertListen(1L, 7L, AT);
+        insertListen(1L, null, AT.plusMinutes(10));
+        insertListen(2L, 7L, AT.plusHours(1));
+
+        service.rollup();
+        service.rollup();
+        service.rollup();
+
+        assertEquals(3L, service.lastRolledUpId());
+        assertEquals(2L, hourly.get(List.of(1L, Timestamp.valueOf(AT.withMinute(0)))));
+        assertEquals(1L, hourly.get(List.of(2L, Timestamp.valueOf(AT.withMinute(0).plusHours(1)))));
+        assertEquals(2L, daily.get(List.of(1L, Date.valueOf(AT.toLocalDate()))));
+    }
+
+    @Test
+    void testRollup_RowsAfterHorizonWaitForNextRun() {
+        insertListen(1L, 7L, AT);
+        service.rollup();
+        insertListen(1L, 8L, AT);
+
+        service.rollup();
+
+        assertEquals(1L, service.lastRolledUpId());
+        assertEquals(1L, hourly.get(List.of(1L, Timestamp.valueOf(AT.withMinute(0)))));
+
+        service.rollup();
+
+        assertEquals(2L, service.lastRolledUpId());
+        assertEquals(2L, hourly.get(List.of(1L, Timestamp.valueOf(AT.withMinute(0)))));
+    }
+
+    @Test
+    void testRollup_FailedBatchKeepsHighWaterMark() {
+        for (int i = 0; i < 3; i++) {
+            insertListen(1L, (long) i, AT);
+        }
+        service.rollup();
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(jdbcTemplate).batchUpdate(anyString(), anyList());
+
+        service.rollup();
+
+        assertEquals(0L, service.lastRolledUpId());
+        assertEquals(1L, service.getStats().get("failures"));
+
+        recordUpserts();
+        service.rollup();
+
+        assertEquals(3L, service.lastRolledUpId());
+        assertEquals(3L, hourly.get(List.of(1L, Timestamp.valueOf(AT.withMinute(0)))));
+    }
+}
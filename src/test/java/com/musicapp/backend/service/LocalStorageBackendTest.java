@@ -0,0 +1,107 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalStorageBackendTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalStorageBackend backend;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        backend = new LocalStorageBackend(new StreamBufferPool());
+        ReflectionTestUtils.setField(backend, "rootDir", tempDir.toString());
+        backend.init();
+
+        // File giả 1 MB + vài byte để range cắt ngang ranh giới buffer
+        content = new byte[1024 * 1024 + 123];
+        new Random(42).nextBytes(content);
+        backend.put("audio/test.mp3", new ByteArrayInputStream(content), content.length, "audio/mpeg");
+    }
+
+    @Test
+    void testPut_StoresFileInShardedDirectoryWithoutTempLeftovers() throws Exception {
+        Path stored = backend.resolve("audio/test.mp3");
+
+        assertTrue(Files.isRegularFile(stored));
+        assertEquals(tempDir.resolve("audio"), stored.getParent().getParent());
+        assertEquals(2, stored.getParent().getFileName().toString().length());
+        try (var leftovers = Files.list(tempDir.resolve(".tmp"))) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    @Test
+    void testCopyRange_ReturnsExactBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        backend.copyRange("audio/test.mp3", 65530, 300000, out);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 65530, 300001), out.toByteArray());
+    }
+
+    @Test
+    void testCopyRange_RangePastEndOfFileFails() {
+        // File ngắn hơn range được hỏi (bị cắt hoặc bị thay): báo lỗi thay vì trả thiếu byte
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(EOFException.class, () -> backend.copyRange("audio/test.mp3", content.length - 10, content.length + 99, out));
+        assertEquals(10, out.size());
+    }
+
+    @Test
+    void testOpenRange_StopsAtEndOfRange() throws Exception {
+        try (InputStream in = backend.openRange("audio/test.mp3", 10, 19)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 20), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testStatAndDelete() throws Exception {
+        StorageBackend.ObjectStat stat = backend.stat("audio/test.mp3");
+        assertEquals(content.length, stat.size());
+        assertNotNull(stat.etag());
+
+        backend.delete("audio/test.mp3");
+        assertThrows(NoSuchFileException.class, () -> backend.stat("audio/test.mp3"));
+    }
+
+    @Test
+    void testResolve_RejectsPathTraversal() {
+        assertThrows(IllegalArgumentException.class, () -> backend.resolve("../etc/passwd"));
+    }
+
+    @Test
+    void testList_RebuildsKeysWithoutShardDirectory() throws Exception {
+        backend.put("images/songs/cover.jpg", new ByteArrayInputStream(new byte[10]), 10, "image/jpeg");
+
+        try (Stream<StorageBackend.ListedObject> objects = backend.list("audio/")) {
+            List<StorageBackend.ListedObject> listed = objects.toList();
+            assertEquals(1, listed.size());
+            assertEquals("audio/test.mp3", listed.get(0).key());
+            assertEquals(content.length, listed.get(0).size());
+        }
+        try (Stream<StorageBackend.ListedObject> objects = backend.list("images/")) {
+            assertEquals(List.of("images/songs/cover.jpg"), objects.map(StorageBackend.ListedObject::key).toList());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MediaBlockCacheTest {
+
+    private static final String KEY = "audio/test.mp3";
+    private static final int BLOCK_SIZE = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private MediaBlockCache cache;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cache = newCache();
+        // 3 block rưỡi để range cắt ngang ranh giới block và block cuối không đầy
+        content = new byte[BLOCK_SIZE * 3 + 500];
+        new Random(42).nextBytes(content);
+    }
+
+    private MediaBlockCache newCache() throws Exception {
+        MediaBlockCache cache = new MediaBlockCache(new StreamBufferPool());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cacheDir", tempDir.toString());
+        ReflectionTestUtils.setField(cache, "maxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "blockSize", BLOCK_SIZE);
+        ReflectionTestUtils.setField(cache, "coalesceWaitMs", 10000L);
+        ReflectionTestUtils.setField(cache, "fillAheadBlocks", 4);
+        cache.init();
+        return cache;
+    }
+
+    /**
+     * Origin trả đúng range được hỏi; nếu có gate thì báo opened rồi chỉ trả dữ liệu sau khi gate mở.
+     */
+    private MediaBlockCache.OriginReader origin(CountDownLatch opened, CountDownLatch gate) throws IOException {
+        MediaBlockCache.OriginReader origin = mock(MediaBlockCache.OriginReader.class);
+        when(origin.openRange(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long start = invocation.getArgument(0);
+            long end = invocation.getArgument(1);
+            if (opened != null) {
+                opened.countDown();
+            }
+            if (gate != null) {
+                gate.await();
+            }
+            return new ByteArrayInputStream(content, (int) start, (int) (end - start + 1));
+        });
+        return origin;
+    }
+
+    private MediaBlockCache.OriginReader origin() throws IOException {
+        return origin(null, null);
+    }
+
+    private byte[] read(long start, long end, MediaBlockCache.OriginReader origin) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.copyRange(KEY, content.length, start, end, out, origin);
+        return out.toByteArray();
+    }
+
+    private void awaitCoalescedWaits(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) cache.getStats().get("coalescedWaits") < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "second request never waited");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testCopyRange_MissIsFilledOnceThenServedFromDisk() throws Exception {
+        MediaBlockCache.OriginReader origin = origin();
+
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 3001), read(100, 3000, origin));
+        assertArrayEquals(Arrays.copyOfRange(content, 0, content.length), read(0, content.length - 1, origin));
+
+        // Lần đầu nạp block 0-2 bằng một request, lần sau chỉ còn thiếu block 3
+        verify(origin).openRange(0, 3 * BLOCK_SIZE - 1);
+        verify(origin).openRange(3 * BLOCK_SIZE, content.length - 1);
+        verifyNoMoreInteractions(origin);
+        assertTrue(cache.isCached(KEY, content.length - 1));
+        assertEquals(0, cache.getStats().get("fillingBlocks"));
+    }
+
+    @Test
+    void testCopyRange_ConcurrentMissesShareOneOriginRead() throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        MediaBlockCache.OriginReader origin = origin(opened, gate);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = executor.submit(() -> read(0, content.length - 1, origin));
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            Future<byte[]> second = executor.submit(() -> read(0, content.length - 1, origin));
+            awaitCoalescedWaits(1);
+            gate.countDown();
+
+            assertArrayEquals(content, first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(content, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(origin, times(1)).openRange(anyLong(), anyLong());
+        assertEquals(0, cache.getStats().get("fillingBlocks"));
+    }
+
+    @Test
+    void testCopyRange_SlowFillFallsBackToOriginWithoutCaching() throws Exception {
+        ReflectionTestUtils.setField(cache, "coalesceWaitMs", 50L);
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        MediaBlockCache.OriginReader slow = origin(opened, gate);
+        MediaBlockCache.OriginReader direct = origin();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<byte[]> first = executor.submit(() -> read(0, content.length - 1, slow));
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+
+            // Hết thời gian chờ: từng block đang được request kia nạp được đọc thẳng từ origin, không ghi cache
+            assertArrayEquals(Arrays.copyOfRange(content, 10, 3201), read(10, 3200, direct));
+            verify(direct, times(4)).openRange(anyLong(), anyLong());
+            assertFalse(cache.isCached(KEY, 0));
+            assertEquals(4, cache.getStats().get("fillingBlocks"));
+
+            gate.countDown();
+            assertArrayEquals(content, first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Request chậm vẫn nạp xong và không để lại latch nào
+        assertTrue(cache.isCached(KEY, 0));
+        assertEquals(0, cache.getStats().get("fillingBlocks"));
+    }
+
+    @Test
+    void testCopyRange_FailedFillReleasesClaimedBlocks() throws Exception {
+        MediaBlockCache.OriginReader broken = mock(MediaBlockCache.OriginReader.class);
+        when(broken.openRange(anyLong(), anyLong()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(content, (int) (long) invocation.getArgument(0), BLOCK_SIZE + 10));
+
+        assertThrows(IOException.class, () -> read(0, content.length - 1, broken));
+
+        // Block ghi xong vẫn được giữ, các block còn lại được trả để request sau tự nạp lại
+        assertEquals(0, cache.getStats().get("fillingBlocks"));
+        assertTrue(cache.isCached(KEY, 0));
+        assertArrayEquals(content, read(0, content.length - 1, origin()));
+    }
+
+    @Test
+    void testClaim_BlockFilledBeforeClaimIsNotFetchedAgain() throws Exception {
+        read(0, BLOCK_SIZE - 1, origin());
+        String keyHash = ReflectionTestUtils.invokeMethod(MediaBlockCache.class, "hash", KEY);
+
+        // Request khác nạp xong block 0 giữa lúc lookup và lúc nhận: không nhận lại block đó
+        List<?> claimed = ReflectionTestUtils.invokeMethod(cache, "claim", keyHash, 0L, 2L);
+
+        assertTrue(claimed.isEmpty());
+        assertEquals(0, cache.getStats().get("fillingBlocks"));
+    }
+
+    @Test
+    void testEvict_DuringFillIsDeferredUntilFillCompletes() throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        MediaBlockCache.OriginReader origin = origin(opened, gate);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<byte[]> reading = executor.submit(() -> read(0, content.length - 1, origin));
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+
+            cache.evict(KEY);
+            gate.countDown();
+
+            // Request đang nạp vẫn trả đủ dữ liệu, rồi các block của object bị xóa
+            assertArrayEquals(content, reading.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertFalse(cache.isCached(KEY, 0));
+        assertEquals(0, cache.getStats().get("blocks"));
+        assertEquals(0L, cache.getStats().get("usedBytes"));
+    }
+
+    @Test
+    void testInit_RemovesLeftoverTempFilesAndKeepsBlocks() throws Exception {
+        read(0, content.length - 1, origin());
+        Path keyDir;
+        try (var dirs = Files.walk(tempDir, 2)) {
+            keyDir = dirs.filter(path -> tempDir.relativize(path).getNameCount() == 2).findFirst().orElseThrow();
+        }
+        Path leftover = Files.write(keyDir.resolve("1-123.tmp"), new byte[100]);
+
+        MediaBlockCache restarted = newCache();
+
+        assertFalse(Files.exists(leftover));
+        assertTrue(restarted.isCached(KEY, 0));
+        assertEquals(4, restarted.getStats().get("blocks"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    private static byte[] body(byte[] file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "Bài hát\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"audioFile\"; filename=\"song; live.mp3\"\r\n"
+                + "Content-Type: audio/mpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(file);
+        out.write(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "mô tả\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    /**
+     * Stream trả về từng mẩu vài byte, như body đến dần qua mạng: delimiter bị cắt ngang giữa các lần đọc.
+     */
+    private static InputStream trickle(byte[] data) {
+        Random random = new Random(7);
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(97)));
+            }
+        };
+    }
+
+    private static byte[] fileContent() {
+        byte[] file = new byte[200_000];
+        new Random(42).nextBytes(file);
+        // Phần đầu của delimiter nằm ngay trong nội dung file nhưng không phải delimiter thật
+        byte[] almost = ("\r\n--" + BOUNDARY.substring(0, 20)).getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(almost, 0, file, 1000, almost.length);
+        return file;
+    }
+
+    @Test
+    void testNext_ReadsFieldsAndFileAcrossSmallReads() throws Exception {
+        byte[] file = fileContent();
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body(file)), BOUNDARY, 256);
+
+        MultipartStreamReader.Part title = reader.next();
+        assertEquals("title", title.name());
+        assertFalse(title.isFile());
+        assertEquals("Bài hát", new String(title.body().readAllBytes(), StandardCharsets.UTF_8));
+
+        MultipartStreamReader.Part audio = reader.next();
+        assertEquals("audioFile", audio.name());
+        assertEquals("song; live.mp3", audio.fileName());
+        assertEquals("audio/mpeg", audio.contentType());
+        assertArrayEquals(file, audio.body().readAllBytes());
+
+        MultipartStreamReader.Part description = reader.next();
+        assertEquals("mô tả", new String(description.body().readAllBytes(), StandardCharsets.UTF_8));
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void testNext_SkipsUnreadRestOfPart() throws Exception {
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body(fileContent())), BOUNDARY, 256);
+
+        reader.next();
+        MultipartStreamReader.Part audio = reader.next();
+        assertEquals(10, audio.body().read(new byte[10]));
+
+        MultipartStreamReader.Part description = reader.next();
+        assertEquals("description", description.name());
+        assertEquals("mô tả", new String(description.body().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRead_TruncatedBodyFails() throws Exception {
+        byte[] full = body(fileContent());
+        byte[] truncated = Arrays.copyOf(full, full.length / 2);
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(truncated), BOUNDARY, 256);
+
+        reader.next();
+        MultipartStreamReader.Part audio = reader.next();
+
+        assertThrows(IOException.class, () -> audio.body().readAllBytes());
+    }
+
+    @Test
+    void testBoundaryOf_ParsesQuotedBoundaryAndRejectsOtherTypes() {
+        assertEquals(BOUNDARY, MultipartStreamReader.boundaryOf("multipart/form-data; boundary=" + BOUNDARY));
+        assertEquals("a;b", MultipartStreamReader.boundaryOf("Multipart/Form-Data; charset=utf-8; boundary=\"a;b\""));
+        assertNull(MultipartStreamReader.boundaryOf("application/json"));
+        assertNull(MultipartStreamReader.boundaryOf("multipart/form-data"));
+        assertNull(MultipartStreamReader.boundaryOf(null));
+    }
+}
@@ -0,0 +1,160 @@
+package com.musicapp.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class S3StorageBackendTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final int UPLOAD_THREADS = 2;
+
+    private S3Client s3Client;
+    private S3StorageBackend backend;
+    private byte[] content;
+    // Nội dung các part S3 đã nhận, theo số part
+    private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            parts.put(request.partNumber(), bytesOf(invocation.getArgument(1)));
+            return UploadPartResponse.builder().eTag("\"part-" + request.partNumber() + "\"").build();
+        });
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().eTag("\"complete-etag\"").build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().eTag("\"single-etag\"").build());
+        backend = new S3StorageBackend(s3Client, new StreamBufferPool());
+        ReflectionTestUtils.setField(backend, "bucketName", "test-bucket");
+        ReflectionTestUtils.setField(backend, "multipartThreshold", (long) PART_SIZE);
+        ReflectionTestUtils.setField(backend, "partSize", (long) PART_SIZE);
+        ReflectionTestUtils.setField(backend, "uploadThreads", UPLOAD_THREADS);
+        ReflectionTestUtils.setField(backend, "partRetries", 0);
+        backend.init();
+
+        // Hai part đầy và một part cuối ngắn
+        content = new byte[PART_SIZE * 2 + 1000];
+        new Random(42).nextBytes(content);
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.shutdown();
+    }
+
+    private static byte[] bytesOf(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Integer> completedParts() {
+        ArgumentCaptor<CompleteMultipartUploadRequest> request = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(request.capture());
+        assertEquals("upload-1", request.getValue().uploadId());
+        return request.getValue().multipartUpload().parts().stream().map(CompletedPart::partNumber).toList();
+    }
+
+    private void verifyAborted() {
+        verify(s3Client).abortMultipartUpload(argThat((AbortMultipartUploadRequest request) -> "upload-1".equals(request.uploadId())));
+    }
+
+    private int availablePermits() {
+        return ((Semaphore) ReflectionTestUtils.getField(backend, "bufferedParts")).availablePermits();
+    }
+
+    @Test
+    void testPut_LargeFileUploadsPartsAndCompletesInOrder() throws Exception {
+        String etag = backend.put("audio/test.mp3", new ByteArrayInputStream(content), content.length, "audio/mpeg");
+
+        assertEquals("\"complete-etag\"", etag);
+        assertEquals(List.of(1, 2, 3), completedParts());
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int number = 1; number <= 3; number++) {
+            assembled.write(parts.get(number));
+        }
+        assertArrayEquals(content, assembled.toByteArray());
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        assertEquals(UPLOAD_THREADS * 2, availablePermits());
+    }
+
+    @Test
+    void testPut_PartFailureAbortsUploadAndReturnsPermits() {
+        doThrow(S3Exception.builder().message("part 2 failed").statusCode(500).build())
+                .when(s3Client).uploadPart(argThat((UploadPartRequest request) -> request.partNumber() == 2), any(RequestBody.class));
+
+        IOException e = assertThrows(IOException.class,
+                () -> backend.put("audio/test.mp3", new ByteArrayInputStream(content), content.length, "audio/mpeg"));
+
+        assertTrue(e.getCause() instanceof S3Exception);
+        verifyAborted();
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertEquals(UPLOAD_THREADS * 2, availablePermits());
+    }
+
+    @Test
+    void testPut_UnknownSizeStreamFailureAbortsUploadAndReturnsPermits() {
+        // Stream báo lỗi sau part đầu tiên (vd. client ngắt kết nối giữa lúc upload)
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(content, 0, PART_SIZE + 100), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+
+        IOException e = assertThrows(IOException.class, () -> backend.put("audio/test.mp3", broken, -1, "audio/mpeg"));
+
+        assertEquals("connection reset", e.getMessage());
+        verifyAborted();
+        assertEquals(UPLOAD_THREADS * 2, availablePermits());
+    }
+
+    @Test
+    void testPut_UnknownSizeShortStreamUsesSinglePut() throws Exception {
+        byte[] small = Arrays.copyOf(content, 1000);
+
+        backend.put("audio/test.mp3", new ByteArrayInputStream(small), -1, "audio/mpeg");
+
+        ArgumentCaptor<RequestBody> body = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client).putObject(any(PutObjectRequest.class), body.capture());
+        assertArrayEquals(small, bytesOf(body.getValue()));
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        assertEquals(UPLOAD_THREADS * 2, availablePermits());
+    }
+
+    @Test
+    void testPut_TruncatedStreamOfKnownSizeFails() {
+        InputStream truncated = new ByteArrayInputStream(content, 0, PART_SIZE + 100);
+
+        assertThrows(IOException.class, () -> backend.put("audio/test.mp3", truncated, content.length, "audio/mpeg"));
+
+        verifyAborted();
+        assertEquals(UPLOAD_THREADS * 2, availablePermits());
+    }
+}
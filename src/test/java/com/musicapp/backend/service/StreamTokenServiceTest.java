@@ -0,0 +1,138 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.entity.Song;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StreamTokenServiceTest {
+
+    private StreamTokenService service;
+    private Song song;
+
+    @BeforeEach
+    void setUp() {
+        service = tokenService("test-secret");
+        song = Song.builder()
+                .id(42L)
+                .title("Test Song")
+                .filePath("http://localhost:8081/uploads/audio/test.mp3")
+                .fileSize(123456L)
+                .contentType("audio/mpeg")
+                .etag("\"etag-1\"")
+                .isPremium(true)
+                .build();
+    }
+
+    private static StreamTokenService tokenService(String secret) {
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.toKey(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).replaceFirst(".*/uploads/", ""));
+        StreamTokenService service = new StreamTokenService(fileStorageService);
+        ReflectionTestUtils.setField(service, "secret", secret);
+        ReflectionTestUtils.setField(service, "ttlSeconds", 1800L);
+        return service;
+    }
+
+    private static AudioObjectMetadata metadataOf(Song song, String key, String etag) {
+        return AudioObjectMetadata.builder()
+                .songId(song.getId())
+                .key(key)
+                .fileSize(song.getFileSize())
+                .contentType(song.getContentType())
+                .etag(etag)
+                .checksum(song.getChecksum())
+                .build();
+    }
+
+    @Test
+    void testVerify_RoundTripsMetadataTierAndUser() {
+        StreamTokenService.StreamToken token = service.verify(service.issue(song, StreamTokenService.Tier.PREMIUM, 7L));
+
+        assertNotNull(token);
+        assertEquals("audio/test.mp3", token.metadata().getKey());
+        assertEquals(123456L, token.metadata().getFileSize());
+        assertEquals(StreamTokenService.Tier.PREMIUM, token.tier());
+        assertEquals(7L, token.userId());
+        assertTrue(token.metadata().isPremium());
+        assertTrue(service.matches(token, metadataOf(song, "audio/test.mp3", song.getEtag())));
+    }
+
+    @Test
+    void testVerify_FreeSongIsSignedAsNotPremium() {
+        song.setIsPremium(false);
+
+        StreamTokenService.StreamToken token = service.verify(service.issue(song, StreamTokenService.Tier.FREE, 7L));
+
+        assertNotNull(token);
+        assertFalse(token.metadata().isPremium());
+    }
+
+    @Test
+    void testVerify_GuestTokenHasNoUser() {
+        StreamTokenService.StreamToken token = service.verify(service.issue(song, StreamTokenService.Tier.FREE, null));
+
+        assertNotNull(token);
+        assertNull(token.userId());
+    }
+
+    @Test
+    void testVerify_TamperedPayloadIsRejected() {
+        String issued = service.issue(song, StreamTokenService.Tier.FREE, 7L);
+        int dot = issued.indexOf('.');
+        byte[] payload = Base64.getUrlDecoder().decode(issued.substring(0, dot));
+        // Byte cuối của payload là hạn dùng: kéo dài token mà không ký lại
+        payload[payload.length - 1]++;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(payload) + issued.substring(dot);
+
+        assertNull(service.verify(tampered));
+    }
+
+    @Test
+    void testVerify_TamperedSignatureOrOtherSecretIsRejected() {
+        String issued = service.issue(song, StreamTokenService.Tier.FREE, 7L);
+        int dot = issued.indexOf('.');
+        char first = issued.charAt(dot + 1);
+        String tampered = issued.substring(0, dot + 1) + (first == 'A' ? 'B' : 'A') + issued.substring(dot + 2);
+
+        assertNull(service.verify(tampered));
+        assertNull(tokenService("other-secret").verify(issued));
+    }
+
+    @Test
+    void testVerify_MalformedTokenIsRejected() {
+        assertNull(service.verify("not-a-token"));
+        assertNull(service.verify("."));
+        assertNull(service.verify("abc."));
+        assertNull(service.verify("!!!.???"));
+    }
+
+    @Test
+    void testVerify_ExpiredTokenIsRejected() {
+        String expired = service.issue(song, StreamTokenService.Tier.PREMIUM, 7L, System.currentTimeMillis() - 60_000);
+
+        assertNotNull(expired);
+        assertNull(service.verify(expired));
+    }
+
+    @Test
+    void testIssue_LegacySongWithoutMetadataGetsNoToken() {
+        song.setFileSize(null);
+
+        assertNull(service.issue(song, StreamTokenService.Tier.FREE, 7L));
+    }
+
+    @Test
+    void testMatches_ReplacedFileInvalidatesToken() {
+        StreamTokenService.StreamToken token = service.verify(service.issue(song, StreamTokenService.Tier.FREE, 7L));
+        AudioObjectMetadata replaced = metadataOf(song, "audio/other.mp3", "\"etag-2\"");
+
+        assertFalse(service.matches(token, replaced));
+    }
+}
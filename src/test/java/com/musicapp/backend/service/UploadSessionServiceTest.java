@@ -0,0 +1,94 @@
+package com.musicapp.backend.service;
+
+import com.musicapp.backend.dto.upload.UploadSessionDto;
+import com.musicapp.backend.entity.UploadSession;
+import com.musicapp.backend.entity.User;
+import com.musicapp.backend.exception.BadRequestException;
+import com.musicapp.backend.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadSessionServiceTest {
+
+    private static final String UPLOAD_ID = "upload-1";
+
+    @TempDir
+    Path tempDir;
+
+    private UploadSessionRepository uploadSessionRepository;
+    private FileStorageService fileStorageService;
+    private UploadSessionService service;
+    private User owner;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        uploadSessionRepository = mock(UploadSessionRepository.class);
+        fileStorageService = mock(FileStorageService.class);
+        service = new UploadSessionService(uploadSessionRepository, fileStorageService,
+                mock(AudioSeekIndexService.class), new StreamBufferPool());
+        ReflectionTestUtils.setField(service, "stagingDir", tempDir.toString());
+        service.init();
+        owner = User.builder().id(7L).build();
+
+        Path sessionDir = Files.createDirectories(tempDir.resolve(UPLOAD_ID));
+        Files.write(sessionDir.resolve("0.chunk"), new byte[]{1, 2});
+        Files.write(sessionDir.resolve("1.chunk"), new byte[]{3, 4});
+    }
+
+    private UploadSession session(UploadSession.UploadStatus status) {
+        return UploadSession.builder()
+                .id(UPLOAD_ID)
+                .owner(owner)
+                .fileName("song.mp3")
+                .totalSize(4L)
+                .chunkSize(2)
+                .chunkCount(2)
+                .status(status)
+                .filePath(status == UploadSession.UploadStatus.COMPLETED ? "/uploads/audio/song.mp3" : null)
+                .expiresAt(LocalDateTime.now().plusHours(1))
+                .build();
+    }
+
+    @Test
+    void testComplete_SessionCompletedByConcurrentRequestIsNotAssembledAgain() {
+        // Request khác hoàn tất phiên (và xóa staging) giữa lần đọc đầu và lúc giữ cờ completing
+        when(uploadSessionRepository.findById(UPLOAD_ID))
+                .thenReturn(Optional.of(session(UploadSession.UploadStatus.UPLOADING)))
+                .thenReturn(Optional.of(session(UploadSession.UploadStatus.COMPLETED)));
+
+        UploadSessionDto result = service.complete(UPLOAD_ID, owner);
+
+        assertEquals("COMPLETED", result.getStatus());
+        verify(fileStorageService, never()).storeStream(any(), anyLong(), anyString(), any(), anyString());
+        assertTrue(((Set<?>) ReflectionTestUtils.getField(service, "completing")).isEmpty());
+    }
+
+    @Test
+    void testComplete_ChunkDeletedWhileAssemblingIsBadRequest() {
+        when(uploadSessionRepository.findById(UPLOAD_ID)).thenReturn(Optional.of(session(UploadSession.UploadStatus.UPLOADING)));
+        // Phiên bị hủy giữa chừng: chunk cuối biến mất trong lúc storage đọc file ghép
+        when(fileStorageService.storeStream(any(), anyLong(), anyString(), any(), anyString())).thenAnswer(invocation -> {
+            Files.delete(tempDir.resolve(UPLOAD_ID).resolve("1.chunk"));
+            invocation.<InputStreamSource>getArgument(0).getInputStream().readAllBytes();
+            return null;
+        });
+
+        assertThrows(BadRequestException.class, () -> service.complete(UPLOAD_ID, owner));
+
+        verify(uploadSessionRepository, never()).save(any());
+        assertTrue(((Set<?>) ReflectionTestUtils.getField(service, "completing")).isEmpty());
+    }
+}